@@ -0,0 +1,68 @@
+package io.knifer.freebox.handler.impl;
+
+import io.knifer.freebox.model.domain.M3u8AdFilterResult;
+import io.knifer.freebox.util.hls.HlsCorpus;
+import org.apache.commons.lang3.tuple.Pair;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 广告过滤和ts代理处理器基准测试（播放前最耗时的路径）
+ * 主播放列表的子播放列表从语料中读取，不访问网络
+ * 分配速率通过GC分析器（./gradlew jmh 默认开启 -prof gc）得到
+ *
+ * @author Knifer
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn")
+@State(Scope.Benchmark)
+public class M3u8HandlerBenchmark {
+
+    private static final String TS_PROXY_URL_PREFIX = "http://127.0.0.1:9978/proxy/ts/";
+
+    @Param({
+            HlsCorpus.MASTER,
+            "media_digit_ad.m3u8",
+            "media_hash_ad.m3u8",
+            "media_discontinuity_ad.m3u8",
+            "media_10k.m3u8"
+    })
+    private String playlist;
+
+    private String url;
+    private String content;
+    private SmartM3u8AdFilterHandler adFilterHandler;
+    private BadM3u8TsProxyHandler tsProxyHandler;
+
+    @Setup
+    public void setup() {
+        url = HlsCorpus.url(playlist);
+        content = HlsCorpus.load(playlist);
+        adFilterHandler = new SmartM3u8AdFilterHandler();
+        // 关闭结果缓存，否则测到的只是缓存命中
+        adFilterHandler.setResultCache(null);
+        tsProxyHandler = new BadM3u8TsProxyHandler();
+    }
+
+    @Benchmark
+    public M3u8AdFilterResult adFilterHandle() {
+        return adFilterHandler.handle(
+                url,
+                content,
+                Map.of(
+                        SmartM3u8AdFilterHandler.EXTRA_KEY_DTF, 0.3,
+                        SmartM3u8AdFilterHandler.EXTRA_KEY_SUB_PLAYLIST_FETCHER, HlsCorpus.newSubPlaylistFetcher()
+                )
+        );
+    }
+
+    @Benchmark
+    public Pair<Boolean, String> badTsProxyHandle() {
+        return tsProxyHandler.handle(url, content, TS_PROXY_URL_PREFIX, HlsCorpus.newSubPlaylistFetcher());
+    }
+}
@@ -0,0 +1,39 @@
+package io.knifer.freebox.handler.impl;
+
+import io.knifer.freebox.util.hls.HlsCorpus;
+import io.knifer.freebox.util.hls.M3u8Parser;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 子播放列表合并基准测试
+ *
+ * @author Knifer
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn")
+@State(Scope.Benchmark)
+public class SubPlaylistMergeBenchmark {
+
+    private SmartM3u8AdFilterHandler adFilterHandler;
+    private List<List<String>> subPlaylists;
+
+    @Setup
+    public void setup() {
+        adFilterHandler = new SmartM3u8AdFilterHandler();
+        adFilterHandler.setResultCache(null);
+        subPlaylists = HlsCorpus.MASTER_VARIANTS.stream()
+                .map(variant -> M3u8Parser.parse(HlsCorpus.load("master_" + variant + ".m3u8")).asLines())
+                .toList();
+    }
+
+    @Benchmark
+    public String mergeSubPlaylists() {
+        return adFilterHandler.mergeSubPlaylists(subPlaylists);
+    }
+}
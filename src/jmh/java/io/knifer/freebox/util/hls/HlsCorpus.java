@@ -0,0 +1,60 @@
+package io.knifer.freebox.util.hls;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * 基准测试用的m3u8语料（src/jmh/resources/hls）
+ * 覆盖主播放列表、数字序号型广告、命名长度型广告、DISCONTINUITY分段广告和一万个分片的大文件
+ *
+ * @author Knifer
+ */
+public final class HlsCorpus {
+
+    /**
+     * 语料所在的虚拟目录，主播放列表中的相对地址据此补全
+     */
+    public static final String BASE_URL = "https://cdn.example.com/vod/20240601/";
+
+    public static final String MASTER = "master.m3u8";
+
+    /**
+     * 主播放列表中的子播放列表，与master.m3u8中的顺序一致
+     */
+    public static final List<String> MASTER_VARIANTS = List.of("360p", "480p", "720p");
+
+    private HlsCorpus() {}
+
+    public static String url(String name) {
+        return BASE_URL + name;
+    }
+
+    public static String load(String name) {
+        try (InputStream input = HlsCorpus.class.getResourceAsStream("/hls/" + name)) {
+            if (input == null) {
+                throw new IllegalArgumentException("corpus not found: " + name);
+            }
+
+            return new String(input.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 创建已放入全部子播放列表的下载器，处理主播放列表时不会访问网络
+     * @return 子播放列表下载器
+     */
+    public static SubPlaylistFetcher newSubPlaylistFetcher() {
+        SubPlaylistFetcher fetcher = new SubPlaylistFetcher();
+
+        for (String variant : MASTER_VARIANTS) {
+            fetcher.put(url(variant + "/index.m3u8"), load("master_" + variant + ".m3u8"));
+        }
+
+        return fetcher;
+    }
+}
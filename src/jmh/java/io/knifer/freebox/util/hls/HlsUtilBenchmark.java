@@ -0,0 +1,46 @@
+package io.knifer.freebox.util.hls;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * m3u8解析与子播放列表地址提取基准测试
+ *
+ * @author Knifer
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn")
+@State(Scope.Benchmark)
+public class HlsUtilBenchmark {
+
+    private String masterContent;
+    private M3u8Document masterDocument;
+    private String largeMediaContent;
+
+    @Setup
+    public void setup() {
+        masterContent = HlsCorpus.load(HlsCorpus.MASTER);
+        masterDocument = M3u8Parser.parse(masterContent);
+        largeMediaContent = HlsCorpus.load("media_10k.m3u8");
+    }
+
+    @Benchmark
+    public List<String> getSubPlaylistUrls() {
+        return HLSUtil.getSubPlaylistUrls(masterDocument, HlsCorpus.BASE_URL);
+    }
+
+    @Benchmark
+    public List<String> parseAndGetSubPlaylistUrls() {
+        return HLSUtil.getSubPlaylistUrls(M3u8Parser.parse(masterContent), HlsCorpus.BASE_URL);
+    }
+
+    @Benchmark
+    public M3u8Document parseLargeMediaPlaylist() {
+        return M3u8Parser.parse(largeMediaContent);
+    }
+}
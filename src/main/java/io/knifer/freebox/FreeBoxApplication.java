@@ -7,6 +7,7 @@ import io.knifer.freebox.context.Context;
 import io.knifer.freebox.exception.GlobalExceptionHandler;
 import io.knifer.freebox.helper.ToastHelper;
 import io.knifer.freebox.util.FXMLUtil;
+import io.knifer.freebox.util.HttpProfileMetrics;
 import javafx.application.Application;
 import javafx.stage.Stage;
 import lombok.extern.slf4j.Slf4j;
@@ -47,6 +48,9 @@ public class FreeBoxApplication extends Application {
     public void stop() {
         closeSplashScreen();
         Context.INSTANCE.destroy();
+        HttpProfileMetrics.getInstance()
+                .getSnapshots()
+                .forEach(snapshot -> log.info("http metrics: {}", snapshot));
     }
 
     private void closeSplashScreen() {
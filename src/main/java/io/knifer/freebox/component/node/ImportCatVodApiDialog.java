@@ -5,14 +5,15 @@ import com.google.common.base.Charsets;
 import com.google.gson.JsonSyntaxException;
 import io.knifer.freebox.constant.BaseValues;
 import io.knifer.freebox.constant.ClientType;
+import io.knifer.freebox.constant.HttpCacheCategory;
 import io.knifer.freebox.constant.I18nKeys;
 import io.knifer.freebox.helper.I18nHelper;
 import io.knifer.freebox.helper.ToastHelper;
 import io.knifer.freebox.model.domain.ClientInfo;
 import io.knifer.freebox.model.domain.FreeBoxApiConfig;
+import io.knifer.freebox.net.http.cache.HttpResponseCache;
 import io.knifer.freebox.service.FutureWaitingService;
 import io.knifer.freebox.util.CollectionUtil;
-import io.knifer.freebox.util.HttpUtil;
 import io.knifer.freebox.util.catvod.ApiConfigUtil;
 import io.knifer.freebox.util.json.GsonUtil;
 import javafx.concurrent.Service;
@@ -49,8 +50,8 @@ public class ImportCatVodApiDialog extends ImportUrlApiDialog {
 
             if (url.startsWith("http")) {
                 super.loadingProperty.set(true);
-                service = new FutureWaitingService<>(HttpUtil.getAsync(
-                        url, BaseValues.FETCH_CAT_VOD_API_CONFIG_HTTP_HEADERS
+                service = new FutureWaitingService<>(HttpResponseCache.getInstance().getAsync(
+                        HttpCacheCategory.API_CONFIG, url, BaseValues.FETCH_CAT_VOD_API_CONFIG_HTTP_HEADERS
                 ));
                 service.setOnSucceeded(
                         ignored -> dealWithApiConfig(
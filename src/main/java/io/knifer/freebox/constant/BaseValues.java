@@ -34,6 +34,30 @@ public class BaseValues {
      * KebSocket通信超时时间
      */
     public static final Long KEB_SOCKET_REQUEST_TIMEOUT = 12L;
+    /**
+     * 默认ts分片预读数量
+     */
+    public static final Integer DEFAULT_TS_PREFETCH_COUNT = 3;
+    /**
+     * HTTP客户端默认选项：优先使用HTTP/2、每个主机的最大并发请求数、连接超时时间（秒）、请求超时时间（秒）
+     */
+    public static final Boolean DEFAULT_HTTP_PREFER_HTTP2 = true;
+    public static final Integer DEFAULT_HTTP_MAX_CONNECTIONS_PER_HOST = 8;
+    public static final Integer DEFAULT_HTTP_CONNECT_TIMEOUT = 10;
+    public static final Integer DEFAULT_HTTP_REQUEST_TIMEOUT = 30;
+    /**
+     * HTTP服务各路由默认的最大并发数和最大排队数
+     */
+    public static final Integer DEFAULT_HTTP_SERVER_TS_POOL_SIZE = 16;
+    public static final Integer DEFAULT_HTTP_SERVER_TS_QUEUE_SIZE = 64;
+    public static final Integer DEFAULT_HTTP_SERVER_CACHE_POOL_SIZE = 4;
+    public static final Integer DEFAULT_HTTP_SERVER_CACHE_QUEUE_SIZE = 32;
+    public static final Integer DEFAULT_HTTP_SERVER_PROXY_POOL_SIZE = 6;
+    public static final Integer DEFAULT_HTTP_SERVER_PROXY_QUEUE_SIZE = 64;
+    public static final Integer DEFAULT_HTTP_SERVER_MSG_POOL_SIZE = 1;
+    public static final Integer DEFAULT_HTTP_SERVER_MSG_QUEUE_SIZE = 16;
+    public static final Integer DEFAULT_HTTP_SERVER_PAIRING_POOL_SIZE = 1;
+    public static final Integer DEFAULT_HTTP_SERVER_PAIRING_QUEUE_SIZE = 16;
     /**
      * “获取更多”项ID
      */
@@ -0,0 +1,56 @@
+package io.knifer.freebox.constant;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * HTTP响应缓存分类
+ * 每个分类单独存放、单独限制磁盘占用，响应未声明缓存时间时使用分类的默认值
+ *
+ * @author Knifer
+ */
+@Getter
+@AllArgsConstructor
+public enum HttpCacheCategory {
+
+    /**
+     * 影视源配置，每次使用前都向服务器确认
+     */
+    API_CONFIG("api_config", 8L * 1024 * 1024, 0, 0),
+    /**
+     * 直播源频道列表，其中常有带时效令牌的地址，过期后只在很短的时间内先返回缓存内容
+     */
+    LIVE("live", 32L * 1024 * 1024, 60 * 60, 5 * 60),
+    /**
+     * 电子节目单
+     */
+    EPG("epg", 16L * 1024 * 1024, 60 * 60, 6 * 60 * 60),
+    /**
+     * 影视排行榜
+     */
+    MOVIE_RANK("movie_rank", 1024 * 1024, 6 * 60 * 60, 24 * 60 * 60),
+    /**
+     * 升级信息，每次检查都向服务器确认
+     */
+    UPGRADE("upgrade", 256 * 1024, 0, 0);
+
+    /**
+     * 目录名
+     */
+    private final String name;
+
+    /**
+     * 最大磁盘占用（字节），超出后按最近最少使用淘汰
+     */
+    private final long maxBytes;
+
+    /**
+     * 响应未声明新鲜期（Cache-Control: max-age、Expires）时的默认新鲜期（秒），同时作为按Last-Modified推算新鲜期的上限
+     */
+    private final long defaultMaxAgeSeconds;
+
+    /**
+     * 响应未声明stale-while-revalidate时的默认值（秒）：过期后在此时间内先返回缓存内容，同时在后台重新验证
+     */
+    private final long defaultStaleWhileRevalidateSeconds;
+}
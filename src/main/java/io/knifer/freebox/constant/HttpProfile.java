@@ -0,0 +1,43 @@
+package io.knifer.freebox.constant;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * HTTP请求类型
+ * 所有类型共用同一个客户端（连接池、代理设置、每主机并发上限），按类型分别统计请求数、流量和耗时
+ *
+ * @author Knifer
+ */
+@Getter
+@AllArgsConstructor
+public enum HttpProfile {
+
+    /**
+     * 图片（海报等）
+     */
+    IMAGE("image", false),
+    /**
+     * m3u8播放列表
+     */
+    PLAYLIST("playlist", true),
+    /**
+     * 视频分片，需要按字节原样转发，不声明压缩
+     */
+    SEGMENT("segment", false),
+    /**
+     * 接口、配置、网页等文本
+     */
+    API("api", true),
+    /**
+     * 文件下载（爬虫jar、安装包等）
+     */
+    DOWNLOAD("download", false);
+
+    private final String name;
+
+    /**
+     * 是否声明支持压缩
+     */
+    private final boolean compressed;
+}
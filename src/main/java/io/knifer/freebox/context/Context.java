@@ -20,6 +20,7 @@ import io.knifer.freebox.net.websocket.server.KebSocketServerHolder;
 import io.knifer.freebox.service.LoadConfigService;
 import io.knifer.freebox.service.SingleInstanceApplicationService;
 import io.knifer.freebox.spider.template.SpiderTemplate;
+import io.knifer.freebox.spider.template.impl.CachingSpiderTemplate;
 import io.knifer.freebox.spider.template.impl.FreeBoxSpiderTemplate;
 import io.knifer.freebox.spider.template.impl.KebSocketSpiderTemplate;
 import io.knifer.freebox.util.AsyncUtil;
@@ -104,8 +105,13 @@ public enum Context {
             // 初始化websocket模板
             if (spiderTemplateMap == null) {
                 spiderTemplateMap = Map.of(
-                        ClientType.TVBOX_K, new KebSocketSpiderTemplate(KebSocketRunner.getInstance(), clientManager),
-                        ClientType.CATVOD_SPIDER, new FreeBoxSpiderTemplate(clientManager)
+                        ClientType.TVBOX_K, new CachingSpiderTemplate(
+                                new KebSocketSpiderTemplate(KebSocketRunner.getInstance(), clientManager),
+                                clientManager
+                        ),
+                        ClientType.CATVOD_SPIDER, new CachingSpiderTemplate(
+                                new FreeBoxSpiderTemplate(clientManager), clientManager
+                        )
                 );
             }
         });
@@ -148,6 +154,7 @@ public enum Context {
     private void doInit(Runnable callback) {
         // 清理临时目录
         StorageHelper.clearTemp();
+        StorageHelper.clearLegacyLiveCache();
         // 初始化服务管理器
         serviceManager.init(callback);
         log.info("application initialized");
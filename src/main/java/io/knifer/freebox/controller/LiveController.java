@@ -1,7 +1,6 @@
 package io.knifer.freebox.controller;
 
 import cn.hutool.core.collection.CollUtil;
-import cn.hutool.core.io.FileUtil;
 import io.knifer.freebox.component.node.player.BasePlayer;
 import io.knifer.freebox.constant.ClientType;
 import io.knifer.freebox.constant.I18nKeys;
@@ -34,7 +33,6 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Triple;
 
-import java.nio.file.Path;
 import java.util.List;
 
 /**
@@ -67,8 +65,6 @@ public class LiveController implements Destroyable {
     private ClientLiveProperties clientLiveProperties;
     private ClientLiveProperties clientLivePropertiesBackup;
 
-    private final static Path LIVE_CONFIG_CACHE_PATH = StorageHelper.getLiveConfigCachePath();
-
     @FXML
     private void initialize() {
         log.info("LiveController initialize");
@@ -236,10 +232,7 @@ public class LiveController implements Destroyable {
         }
         if (player != null) {
             saveClientProperties();
-            AsyncUtil.execute(() -> {
-                FileUtil.clean(LIVE_CONFIG_CACHE_PATH.toFile());
-                player.destroy();
-            });
+            AsyncUtil.execute(player::destroy);
         }
         ImageHelper.clearCache();
         Context.INSTANCE.popAndShowLastStage();
@@ -290,7 +283,7 @@ public class LiveController implements Destroyable {
      * @param tryApplyClientPropertiesFlag 是否尝试应用客户端属性（仅在初始化阶段可能为true）
      */
     private void switchLiveSource(FreeBoxLive live, boolean tryApplyClientPropertiesFlag) {
-        loadLiveChannelGroupService = new LoadLiveChannelGroupService(live, LIVE_CONFIG_CACHE_PATH);
+        loadLiveChannelGroupService = new LoadLiveChannelGroupService(live);
         loadingProperty.set(true);
         loadLiveChannelGroupService.setOnSucceeded(evt -> {
             List<LiveChannelGroup> liveChannelGroups = loadLiveChannelGroupService.getValue();
@@ -24,7 +24,8 @@ import io.knifer.freebox.model.domain.ClientInfo;
 import io.knifer.freebox.model.domain.ClientTVProperties;
 import io.knifer.freebox.model.s2c.*;
 import io.knifer.freebox.net.websocket.core.ClientManager;
-import io.knifer.freebox.service.MovieSearchService;
+import io.knifer.freebox.spider.MovieSearchEngine;
+import io.knifer.freebox.spider.MovieSearchResultIndex;
 import io.knifer.freebox.spider.template.SpiderTemplate;
 import io.knifer.freebox.util.CastUtil;
 import io.knifer.freebox.util.CollectionUtil;
@@ -33,7 +34,6 @@ import javafx.application.Platform;
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.SimpleBooleanProperty;
 import javafx.collections.ObservableList;
-import javafx.concurrent.Service;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
 import javafx.scene.input.KeyCode;
@@ -89,7 +89,9 @@ public class TVController implements Destroyable {
     @FXML
     private ProgressIndicator searchLoadingProgressIndicator;
 
-    private MovieSearchService movieSearchService;
+    private MovieSearchEngine movieSearchEngine;
+
+    private final MovieSearchResultIndex movieSearchResultIndex = new MovieSearchResultIndex();
 
     private Stage stage;
     private SourceBeanBlockPopOver sourceBeanBlockPopOver;
@@ -133,31 +135,24 @@ public class TVController implements Destroyable {
                destroy();
                Context.INSTANCE.popAndShowLastStage();
             });
-            movieSearchService = new MovieSearchService(keywordAndSearchContent ->
-                Platform.runLater(() -> {
-                    String keyword = keywordAndSearchContent.getLeft();
-                    AbsXml searchContent;
-
-                    if (
-                            movieSearchService.getState() != Service.State.SUCCEEDED ||
-                                    !keyword.equals(movieSearchService.getKeyword())
-                    ) {
-                        // 任务已取消
-
-                        return;
-                    }
-                    searchContent = keywordAndSearchContent.getRight();
-                    putVideosInView(
-                            MutablePair.of(searchContent.getMovie(), searchContent.getMovie().getVideoList()),
-                            false
-                    );
-                }), () -> searchLoadingProperty.set(false));
+            movieSearchEngine = new MovieSearchEngine(
+                    template,
+                    MovieSearchEngine.Config.builder().build(),
+                    videos -> videosGridView.getItems().addAll(movieSearchResultIndex.addAll(videos)),
+                    this::onMovieSearchRoundEnd
+            );
 
             // 源选择框字符串转换设置
             sourceBeanComboBox.setButtonCell(sourceBeanComboBox.getCellFactory().call(null));
             // 手动show并hide一次，让框架正确计算出下拉框坐标
             sourceBeanComboBox.show();
             sourceBeanComboBox.hide();
+            // 切换源时，使离开的源的缓存失效
+            sourceBeanComboBox.valueProperty().addListener((ob, oldVal, newVal) -> {
+                if (oldVal != null && !oldVal.equals(newVal)) {
+                    template.invalidateCache(oldVal.getKey());
+                }
+            });
             // 源屏蔽弹出框
             sourceBeanBlockPopOver = new SourceBeanBlockPopOver(sourceBeans -> {
                 clearMovieData();
@@ -211,7 +206,7 @@ public class TVController implements Destroyable {
             );
             // 影片列表单元格工厂
             videosGridView.setCellFactory(new VideoGridCellFactory(
-                    video -> openVideo(video.getSourceKey(), video.getId(), video.getName()),
+                    video -> openVideo(movieSearchResultIndex.getAlternatives(video), 0),
                     this::loadMoreMovie
             ));
             // 搜索框获取焦点时，显示热搜
@@ -340,6 +335,12 @@ public class TVController implements Destroyable {
         Movie movieCached;
         HashMap<String, String> filterSelectMap;
 
+        if (movieSearchEngine.getKeyword() != null) {
+            // 搜索结果，为还有更多结果的源获取下一页
+            loadMoreSearchResult();
+
+            return;
+        }
         loadMoreCell.setDisable(true);
         sortData = classesListView.getSelectionModel().getSelectedItem();
         if (sortData == null) {
@@ -394,10 +395,17 @@ public class TVController implements Destroyable {
      * @param videoId 影片ID
      * @param videoName 影片名称
      */
-    private void openVideo(String sourceKey, String videoId, String videoName) {
-        openVideo(sourceKey, videoId, videoName, null);
-    }
+    /**
+     * 打开影片，加载失败时依次换用其他源的同一影片
+     * @param videos 同一影片在各源的结果
+     * @param idx 要打开的结果下标
+     */
+    private void openVideo(List<Movie.Video> videos, int idx) {
+        Movie.Video video = videos.get(idx);
+        Runnable fallback = idx + 1 < videos.size() ? () -> openVideo(videos, idx + 1) : null;
 
+        openVideo(video.getSourceKey(), video.getId(), video.getName(), null, fallback);
+    }
 
     /**
      * 打开影片
@@ -407,6 +415,24 @@ public class TVController implements Destroyable {
      * @param playInfo 播放信息
      */
     private void openVideo(String sourceKey, String videoId, String videoName, @Nullable VideoPlayInfoBO playInfo) {
+        openVideo(sourceKey, videoId, videoName, playInfo, null);
+    }
+
+    /**
+     * 打开影片
+     * @param sourceKey 源ID
+     * @param videoId 影片ID
+     * @param videoName 影片名称
+     * @param playInfo 播放信息
+     * @param fallback 加载失败时的备用操作，为null时提示加载失败
+     */
+    private void openVideo(
+            String sourceKey,
+            String videoId,
+            String videoName,
+            @Nullable VideoPlayInfoBO playInfo,
+            @Nullable Runnable fallback
+    ) {
         SourceBean sourceBean = getSourceBean(sourceKey);
 
         Platform.runLater(
@@ -428,6 +454,12 @@ public class TVController implements Destroyable {
                                 (movie = detailContent.getMovie()) == null ||
                                 CollectionUtil.isEmpty(videos = movie.getVideoList())
                         ) {
+                            if (fallback != null) {
+                                log.info("load movie detail failed, try next source, sourceKey={}", sourceKey);
+                                fallback.run();
+
+                                return;
+                            }
                             ToastHelper.showErrorI18n(I18nKeys.TV_ERROR_LOAD_MOVIE_DETAIL_FAILED);
                             LoadingHelper.hideLoading();
 
@@ -436,6 +468,11 @@ public class TVController implements Destroyable {
                         urlBean = videos.get(0).getUrlBean();
                         if (CollectionUtil.isEmpty(urlBean.getInfoList())) {
                             // 没有播放列表，有可能不是影片，而是源作者自行添加的广告一类的东西
+                            if (fallback != null) {
+                                fallback.run();
+
+                                return;
+                            }
                             LoadingHelper.hideLoading();
 
                             return;
@@ -679,7 +716,7 @@ public class TVController implements Destroyable {
         MutablePair<Movie, List<Movie.Video>> movieAndVideosCached;
         HashMap<String, String> filterSelectMap;
 
-        resetMovieSearchService();
+        resetMovieSearch();
         movieLoadingProperty.set(true);
         items = videosGridView.getItems();
         if (!items.isEmpty()) {
@@ -726,9 +763,38 @@ public class TVController implements Destroyable {
         }
     }
 
-    private void resetMovieSearchService() {
-        movieSearchService.cancel();
-        movieSearchService.reset();
+    /**
+     * 获取更多搜索结果
+     */
+    private void loadMoreSearchResult() {
+        if (searchLoadingProperty.get()) {
+
+            return;
+        }
+        videosGridView.getItems().remove(fetchMoreItem);
+        searchLoadingProperty.set(true);
+        if (!movieSearchEngine.loadMore()) {
+            searchLoadingProperty.set(false);
+        }
+    }
+
+    /**
+     * 一轮搜索结束
+     * @param hasMore 是否还有更多结果
+     */
+    private void onMovieSearchRoundEnd(boolean hasMore) {
+        ObservableList<Movie.Video> items = videosGridView.getItems();
+
+        searchLoadingProperty.set(false);
+        if (hasMore && !items.isEmpty() && !items.contains(fetchMoreItem)) {
+            // 添加“获取更多”项
+            items.add(fetchMoreItem);
+        }
+    }
+
+    private void resetMovieSearch() {
+        movieSearchEngine.cancel();
+        template.cancelSearch();
         searchLoadingProperty.set(false);
     }
 
@@ -823,7 +889,8 @@ public class TVController implements Destroyable {
     private void clearMovieData() {
         videosGridView.getItems().clear();
         MOVIE_CACHE.clear();
-        resetMovieSearchService();
+        movieSearchResultIndex.clear();
+        resetMovieSearch();
     }
 
     @FXML
@@ -869,26 +936,22 @@ public class TVController implements Destroyable {
     @FXML
     private void onSearchBtnAction() {
         String searchKeyword = searchTextField.getText();
-        Iterator<String> sourceBeanKeyIterator;
+        List<SourceBean> sourceBeans;
 
         if (StringUtils.isBlank(searchKeyword)) {
             return;
         }
-        sourceBeanKeyIterator = sourceBeanComboBox.getItems()
+        sourceBeans = sourceBeanComboBox.getItems()
                 .stream()
                 .filter(SourceBean::isSearchable)
-                .map(SourceBean::getKey)
-                .toList()
-                .iterator();
-        if (!sourceBeanKeyIterator.hasNext()) {
+                .toList();
+        if (sourceBeans.isEmpty()) {
             return;
         }
         clearMovieData();
         setVideoGridShowSourceName(true);
         searchLoadingProperty.set(true);
-        movieSearchService.setKeyword(searchKeyword);
-        movieSearchService.setSourceKeyIterator(sourceBeanKeyIterator);
-        movieSearchService.start();
+        movieSearchEngine.search(searchKeyword, sourceBeans);
     }
 
     @FXML
@@ -3,19 +3,12 @@ package io.knifer.freebox.controller;
 import cn.hutool.core.collection.CollUtil;
 import com.google.common.base.Charsets;
 import com.google.common.collect.Maps;
-import com.google.common.net.HttpHeaders;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import io.knifer.freebox.component.node.player.BasePlayer;
 import io.knifer.freebox.component.node.player.VLCPlayer;
-import io.knifer.freebox.constant.BaseValues;
-import io.knifer.freebox.constant.CacheKeys;
 import io.knifer.freebox.constant.I18nKeys;
 import io.knifer.freebox.context.Context;
-import io.knifer.freebox.handler.M3u8AdFilterHandler;
-import io.knifer.freebox.handler.M3u8TsProxyHandler;
-import io.knifer.freebox.handler.impl.BadM3u8TsProxyHandler;
-import io.knifer.freebox.handler.impl.SmartM3u8AdFilterHandler;
 import io.knifer.freebox.helper.*;
 import io.knifer.freebox.model.bo.TVPlayBO;
 import io.knifer.freebox.model.bo.VideoDetailsBO;
@@ -23,15 +16,16 @@ import io.knifer.freebox.model.bo.VideoPlayInfoBO;
 import io.knifer.freebox.model.common.tvbox.Movie;
 import io.knifer.freebox.model.common.tvbox.SourceBean;
 import io.knifer.freebox.model.common.tvbox.VodInfo;
-import io.knifer.freebox.model.domain.M3u8AdFilterResult;
 import io.knifer.freebox.model.s2c.DeleteMovieCollectionDTO;
 import io.knifer.freebox.model.s2c.GetMovieCollectedStatusDTO;
 import io.knifer.freebox.model.s2c.GetPlayerContentDTO;
 import io.knifer.freebox.model.s2c.SaveMovieCollectionDTO;
+import io.knifer.freebox.net.http.proxy.M3u8ProxyPreparer;
+import io.knifer.freebox.net.http.proxy.ProxySession;
+import io.knifer.freebox.net.http.proxy.ProxySessionManager;
 import io.knifer.freebox.spider.template.SpiderTemplate;
 import io.knifer.freebox.util.AsyncUtil;
 import io.knifer.freebox.util.CollectionUtil;
-import io.knifer.freebox.util.HttpUtil;
 import io.knifer.freebox.util.json.GsonUtil;
 import javafx.application.Platform;
 import javafx.beans.property.BooleanProperty;
@@ -69,10 +63,7 @@ import javafx.scene.input.Clipboard;
 import javafx.scene.input.ClipboardContent;
 import javafx.stage.Screen;
 import javafx.geometry.Rectangle2D;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 /**
@@ -116,8 +107,11 @@ public class VideoController extends BaseController implements Destroyable {
     private SpiderTemplate template;
     private Consumer<VideoPlayInfoBO> onClose;
 
-    private M3u8AdFilterHandler m3u8AdFilterHandler;
-    private M3u8TsProxyHandler m3u8TsProxyHandler;
+    private final M3u8ProxyPreparer m3u8ProxyPreparer = new M3u8ProxyPreparer();
+    /**
+     * 当前播放使用的本地代理会话
+     */
+    private volatile ProxySession proxySession;
 
     private Button selectedEpBtn = null;
     private Movie.Video playingVideo;
@@ -125,17 +119,8 @@ public class VideoController extends BaseController implements Destroyable {
     private Movie.Video.UrlBean.UrlInfo.InfoBean playingInfoBean;
     public final BooleanProperty operationLoading = new SimpleBooleanProperty(true);
 
-    private static final Set<String> HTTP_HEADERS_PROXY_EXCLUDE = Set.of(
-            "content-length",
-            "Content-Length",
-            "transfer-encoding",
-            "Transfer-Encoding"
-    );
-
     @FXML
     private void initialize() {
-        m3u8AdFilterHandler = new SmartM3u8AdFilterHandler();
-        m3u8TsProxyHandler = new BadM3u8TsProxyHandler();
         Platform.runLater(() -> {
             VideoDetailsBO bo = getData();
 
@@ -670,106 +655,27 @@ public class VideoController extends BaseController implements Destroyable {
             String playUrl, Map<String, String> headers, Consumer<Pair<Boolean, String>> callback
     ) {
         AsyncUtil.execute(() -> {
-            HttpRequest.Builder requestBuilder;
-            M3u8AdFilterResult result;
-            String content;
-            HttpResponse<String> resp;
-            Map<String, List<String>> proxyHeaders = null;
-            boolean isAdFiltered = false;
-            String playUrlForTsProxy;
-            String proxyUrlPrefix;
-            Pair<Boolean, String> proxyTsFlagAndProxiedM3u8Content;
-            String resultPlayUrl;
-
-            requestBuilder = HttpRequest.newBuilder()
-                    .GET()
-                    .headers(HttpHeaders.USER_AGENT, BaseValues.USER_AGENT)
-                    .uri(HttpUtil.parseUrl(playUrl));
-            if (!headers.isEmpty()) {
-                headers.forEach(requestBuilder::header);
-            }
-            try {
-                resp = HttpUtil.getClient()
-                        .sendAsync(requestBuilder.build(), HttpResponse.BodyHandlers.ofString())
-                        .get(6, TimeUnit.SECONDS);
-            } catch (Exception e) {
-                // 下载m3u8失败，直接返回原地址
-                callback.accept(Pair.of(false, playUrl));
+            M3u8ProxyPreparer.Result result;
 
-                return;
-            }
-            proxyUrlPrefix = createProxyUrlPrefix();
-            // 处理m3u8广告过滤
-            try {
-                content = resp.body();
-                result = m3u8AdFilterHandler.handle(
-                        playUrl,
-                        content,
-                        Map.of(SmartM3u8AdFilterHandler.EXTRA_KEY_DTF, ConfigHelper.getAdFilterDynamicThresholdFactor())
-                );
-                isAdFiltered = result.getAdLineCount() > 0;
-                if (isAdFiltered) {
-                    content = result.getContent();
-                    proxyHeaders = Maps.filterKeys(
-                            resp.headers().map(), key -> !HTTP_HEADERS_PROXY_EXCLUDE.contains(key)
-                    );
-                }
-                playUrlForTsProxy = isAdFiltered ? proxyM3u8(content, proxyUrlPrefix, proxyHeaders) : playUrl;
-            } catch (Exception e) {
-                log.warn("filter ad exception", e);
-                content = resp.body();
-                playUrlForTsProxy = playUrl;
-            }
-            // 处理损坏文件头的ts代理
-            try {
-                proxyTsFlagAndProxiedM3u8Content =
-                        m3u8TsProxyHandler.handle(
-                                playUrlForTsProxy, content, proxyUrlPrefix + "/proxy/ts/"
-                        );
-                if (proxyTsFlagAndProxiedM3u8Content.getLeft()) {
-                    content = proxyTsFlagAndProxiedM3u8Content.getRight();
-                    if (proxyHeaders == null) {
-                        proxyHeaders = Maps.filterKeys(
-                                resp.headers().map(), key -> !HTTP_HEADERS_PROXY_EXCLUDE.contains(key)
-                        );
-                    }
-                    resultPlayUrl = proxyM3u8(content, proxyUrlPrefix, proxyHeaders);
-                } else {
-                    resultPlayUrl = playUrlForTsProxy;
-                }
-            } catch (Exception e) {
-                log.warn("proxy ts exception", e);
-                resultPlayUrl = playUrlForTsProxy;
-            }
-            callback.accept(Pair.of(isAdFiltered, resultPlayUrl));
+            closeProxySession();
+            result = m3u8ProxyPreparer.prepare(playUrl, headers, M3u8ProxyPreparer.Settings.fromConfig());
+            proxySession = result.session();
+            callback.accept(Pair.of(result.adFiltered(), result.playUrl()));
         });
     }
 
-    private String createProxyUrlPrefix() {
-        return "http://127.0.0.1:" + ConfigHelper.getHttpPort();
-    }
+    private void closeProxySession() {
+        ProxySession session = proxySession;
 
-    /**
-     * 代理m3u8内容
-     * @param m3u8Content m3u8内容
-     * @param proxyUrlPrefix 代理前缀
-     * @param proxyHeaders 代理请求头
-     * @return 代理链接
-     */
-    private String proxyM3u8(String m3u8Content, String proxyUrlPrefix, Map<String, List<String>> proxyHeaders) {
-        String proxyUrl = proxyUrlPrefix + "/proxy-cache/" + CacheKeys.AD_FILTERED_M3U8;
-
-        CacheHelper.put(CacheKeys.AD_FILTERED_M3U8, m3u8Content);
-        CacheHelper.put(
-                CacheKeys.PROXY_CACHE_HTTP_HEADERS + CacheKeys.AD_FILTERED_M3U8,
-                proxyHeaders
-        );
-
-        return proxyUrl;
+        if (session != null) {
+            proxySession = null;
+            ProxySessionManager.getInstance().close(session.getId());
+        }
     }
 
     @Override
     public void destroy() {
+        closeProxySession();
         AsyncUtil.execute(() -> {
             updatePlayInfo();
             onClose.accept(playInfo);
@@ -0,0 +1,202 @@
+package io.knifer.freebox.handler;
+
+import cn.hutool.crypto.digest.DigestUtil;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.knifer.freebox.helper.StorageHelper;
+import io.knifer.freebox.model.domain.M3u8AdFilterResult;
+import io.knifer.freebox.util.json.GsonUtil;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * m3u8广告过滤结果缓存
+ * 以播放列表地址、内容摘要和过滤参数作为键，重新打开同一个视频、来回切换剧集时无需重新下载子播放列表、取样识别和计算统计数据
+ * 内存中按内容大小加权淘汰（LRU），可选地持久化到临时目录，重启后仍可命中；
+ * 磁盘缓存同样按LRU淘汰：每次命中都会更新文件的修改时间，清理时删除最久未使用的文件
+ *
+ * @author Knifer
+ */
+@Slf4j
+public class M3u8AdFilterResultCache {
+
+    /**
+     * 内存缓存最大权重（约等于缓存内容的字节数）
+     */
+    private static final long MAX_MEMORY_WEIGHT = 16L * 1024 * 1024;
+    /**
+     * 磁盘缓存最大文件数，超出后删除最久未使用的文件
+     */
+    static final int MAX_DISK_ENTRIES = 256;
+    /**
+     * 每个缓存项的固定权重，避免空内容的结果不占权重
+     */
+    private static final int ENTRY_BASE_WEIGHT = 128;
+
+    private static final M3u8AdFilterResultCache INSTANCE = new M3u8AdFilterResultCache(
+            StorageHelper.getTempStoragePath().resolve("m3u8_ad_filter_cache")
+    );
+
+    private final Cache<String, M3u8AdFilterResult> memoryCache = CacheBuilder.newBuilder()
+            .maximumWeight(MAX_MEMORY_WEIGHT)
+            .weigher((String key, M3u8AdFilterResult value) ->
+                    ENTRY_BASE_WEIGHT + key.length() * 2 +
+                            (value.getContent() == null ? 0 : value.getContent().length() * 2)
+            )
+            .build();
+
+    /**
+     * 磁盘缓存目录，为null时不持久化
+     */
+    @Nullable
+    private final Path diskCachePath;
+
+    /**
+     * @param diskCachePath 磁盘缓存目录，为null时只使用内存缓存
+     */
+    public M3u8AdFilterResultCache(@Nullable Path diskCachePath) {
+        this.diskCachePath = diskCachePath;
+    }
+
+    public static M3u8AdFilterResultCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 生成缓存键
+     * @param url 播放列表地址
+     * @param content 播放列表原始内容
+     * @param params 影响过滤结果的参数（如动态阈值因子）
+     * @return 缓存键
+     */
+    public static String createKey(String url, CharSequence content, Object... params) {
+        StringBuilder keyBuilder = new StringBuilder(url)
+                .append('\n')
+                .append(DigestUtil.md5Hex(content.toString()));
+
+        for (Object param : params) {
+            keyBuilder.append('\n').append(param);
+        }
+
+        return keyBuilder.toString();
+    }
+
+    @Nullable
+    public M3u8AdFilterResult get(String key) {
+        M3u8AdFilterResult result = memoryCache.getIfPresent(key);
+        Path file;
+
+        if (diskCachePath == null) {
+
+            return result;
+        }
+        file = getDiskFile(key);
+        if (result != null) {
+            touch(file);
+
+            return result;
+        }
+        if (!Files.isRegularFile(file)) {
+
+            return null;
+        }
+        try {
+            result = GsonUtil.fromJson(Files.readString(file, StandardCharsets.UTF_8), M3u8AdFilterResult.class);
+        } catch (Exception e) {
+            log.warn("read m3u8 ad filter cache failed, file={}", file, e);
+
+            return null;
+        }
+        if (result != null) {
+            memoryCache.put(key, result);
+            touch(file);
+        }
+
+        return result;
+    }
+
+    public void put(String key, M3u8AdFilterResult result) {
+        Path file;
+
+        memoryCache.put(key, result);
+        if (diskCachePath == null) {
+
+            return;
+        }
+        file = getDiskFile(key);
+        try {
+            Files.createDirectories(diskCachePath);
+            Files.writeString(file, GsonUtil.toJson(result), StandardCharsets.UTF_8);
+            trimDiskCache();
+        } catch (IOException e) {
+            log.warn("write m3u8 ad filter cache failed, file={}", file, e);
+        }
+    }
+
+    public void clear() {
+        memoryCache.invalidateAll();
+        if (diskCachePath == null || !Files.isDirectory(diskCachePath)) {
+
+            return;
+        }
+        try (Stream<Path> files = Files.list(diskCachePath)) {
+            files.forEach(this::deleteQuietly);
+        } catch (IOException e) {
+            log.warn("clear m3u8 ad filter cache failed", e);
+        }
+    }
+
+    private Path getDiskFile(String key) {
+        return diskCachePath.resolve(DigestUtil.md5Hex(key) + ".json");
+    }
+
+    /**
+     * 更新文件的修改时间，记录最近一次使用
+     */
+    private void touch(Path file) {
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (NoSuchFileException ignored) {
+            // 内存中的结果对应的文件已被清理
+        } catch (IOException e) {
+            log.warn("touch m3u8 ad filter cache failed, file={}", file, e);
+        }
+    }
+
+    /**
+     * 文件数超出上限时，按修改时间（最近一次使用的时间）删除最久未使用的文件
+     */
+    private void trimDiskCache() throws IOException {
+        List<Path> files;
+
+        try (Stream<Path> fileStream = Files.list(diskCachePath)) {
+            files = fileStream.toList();
+        }
+        if (files.size() <= MAX_DISK_ENTRIES) {
+
+            return;
+        }
+        files.stream()
+                .sorted(Comparator.comparingLong(file -> file.toFile().lastModified()))
+                .limit(files.size() - MAX_DISK_ENTRIES)
+                .forEach(this::deleteQuietly);
+    }
+
+    private void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("delete m3u8 ad filter cache failed, file={}", file, e);
+        }
+    }
+}
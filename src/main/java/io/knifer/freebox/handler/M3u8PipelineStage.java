@@ -0,0 +1,16 @@
+package io.knifer.freebox.handler;
+
+/**
+ * m3u8处理阶段
+ * 由M3u8RewritePipeline按顺序调用，各阶段直接修改上下文中已解析的播放列表，不负责序列化
+ *
+ * @author Knifer
+ */
+public interface M3u8PipelineStage {
+
+    /**
+     * 处理播放列表
+     * @param context 上下文
+     */
+    void process(M3u8RewriteContext context);
+}
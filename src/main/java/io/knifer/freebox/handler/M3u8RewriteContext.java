@@ -0,0 +1,61 @@
+package io.knifer.freebox.handler;
+
+import io.knifer.freebox.util.hls.M3u8Playlist;
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * m3u8处理上下文
+ * 在各处理阶段之间传递已解析的播放列表和处理结果
+ *
+ * @author Knifer
+ */
+@Getter
+public class M3u8RewriteContext {
+
+    /**
+     * 播放列表
+     */
+    private final M3u8Playlist playlist;
+    /**
+     * ts代理地址前缀
+     */
+    private final String tsProxyUrlPrefix;
+    /**
+     * 扩展数据
+     */
+    private final Map<String, Object> extraData;
+    /**
+     * 过滤的广告行数
+     */
+    @Setter
+    private int adLineCount = 0;
+    /**
+     * 播放列表是否被修改（为false时无需代理，直接使用原地址即可）
+     */
+    @Setter
+    private boolean modified = false;
+    /**
+     * 经过ts代理的分片地址（按播放顺序）
+     */
+    private final List<String> proxiedSegmentUrls = new ArrayList<>();
+
+    public M3u8RewriteContext(M3u8Playlist playlist, String tsProxyUrlPrefix, Map<String, Object> extraData) {
+        this.playlist = playlist;
+        this.tsProxyUrlPrefix = tsProxyUrlPrefix;
+        this.extraData = extraData;
+    }
+
+    /**
+     * @return 处理后的m3u8内容，未被修改时返回null
+     */
+    @Nullable
+    public String getResult() {
+        return modified ? playlist.serialize() : null;
+    }
+}
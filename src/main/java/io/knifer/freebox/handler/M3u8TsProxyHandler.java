@@ -1,5 +1,6 @@
 package io.knifer.freebox.handler;
 
+import io.knifer.freebox.util.hls.SubPlaylistFetcher;
 import org.apache.commons.lang3.tuple.Pair;
 
 /**
@@ -16,5 +17,19 @@ public interface M3u8TsProxyHandler {
      * @param proxyUrlPrefix 代理地址前缀
      * @return 是否成功处理, 成功处理后的m3u8内容
      */
-    Pair<Boolean, String> handle(String m3u8Url, String content, String proxyUrlPrefix);
+    default Pair<Boolean, String> handle(String m3u8Url, String content, String proxyUrlPrefix) {
+        return handle(m3u8Url, content, proxyUrlPrefix, new SubPlaylistFetcher());
+    }
+
+    /**
+     * 处理m3u8 ts代理
+     * @param m3u8Url m3u8源地址（用于拼接绝对路径）
+     * @param content m3u8内容
+     * @param proxyUrlPrefix 代理地址前缀
+     * @param subPlaylistFetcher 子播放列表下载器（与广告过滤共用，避免重复下载）
+     * @return 是否成功处理, 成功处理后的m3u8内容
+     */
+    Pair<Boolean, String> handle(
+            String m3u8Url, String content, String proxyUrlPrefix, SubPlaylistFetcher subPlaylistFetcher
+    );
 }
@@ -1,12 +1,15 @@
 package io.knifer.freebox.handler.impl;
 
 import cn.hutool.core.text.StrPool;
-import com.google.common.net.HttpHeaders;
-import io.knifer.freebox.constant.BaseValues;
+import io.knifer.freebox.handler.M3u8PipelineStage;
+import io.knifer.freebox.handler.M3u8RewriteContext;
 import io.knifer.freebox.handler.M3u8TsProxyHandler;
-import io.knifer.freebox.util.HttpUtil;
 import io.knifer.freebox.util.UrlUtil;
 import io.knifer.freebox.util.hls.HLSUtil;
+import io.knifer.freebox.util.hls.M3u8Document;
+import io.knifer.freebox.util.hls.M3u8Parser;
+import io.knifer.freebox.util.hls.M3u8Playlist;
+import io.knifer.freebox.util.hls.SubPlaylistFetcher;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.MutablePair;
@@ -23,21 +26,28 @@ import java.util.concurrent.TimeUnit;
  * @author Knifer
  */
 @Slf4j
-public class BadM3u8TsProxyHandler implements M3u8TsProxyHandler {
+public class BadM3u8TsProxyHandler implements M3u8TsProxyHandler, M3u8PipelineStage {
+
+    /**
+     * 下载子播放列表文件的超时时间（所有子播放列表并发下载，共用此超时时间）
+     */
+    private static final int DOWNLOAD_TIMEOUT = 6;
 
     @Override
-    public Pair<Boolean, String> handle(String m3u8Url, String content, String proxyUrlPrefix) {
-        List<String> lines = List.of(content.split("\n"));
+    public Pair<Boolean, String> handle(
+            String m3u8Url, String content, String proxyUrlPrefix, SubPlaylistFetcher subPlaylistFetcher
+    ) {
+        M3u8Document document = M3u8Parser.parse(content);
         String baseUrl = UrlUtil.getParent(m3u8Url);
         Pair<Boolean, String> result;
 
-        if (HLSUtil.isMasterPlaylist(lines)) {
-            result = processMasterPlaylist(lines, baseUrl, proxyUrlPrefix);
+        if (document.isMaster()) {
+            result = processMasterPlaylist(document, baseUrl, proxyUrlPrefix, subPlaylistFetcher);
             if (!result.getLeft()) {
                 result.setValue(content);
             }
         } else {
-            result = processSinglePlaylist(lines, baseUrl, proxyUrlPrefix);
+            result = processSinglePlaylist(document.asLines(), baseUrl, proxyUrlPrefix);
         }
         log.info("fixed bad m3u8: {}", result.getLeft());
 
@@ -47,48 +57,76 @@ public class BadM3u8TsProxyHandler implements M3u8TsProxyHandler {
     /**
      * 处理主播放列表
      */
-    private Pair<Boolean, String> processMasterPlaylist(List<String> lines, String baseUrl, String proxyUrlPrefix) {
-        List<String> subPlaylistUrls = HLSUtil.getSubPlaylistUrls(lines, baseUrl);
-        List<String> processedSubPlaylistContents = new ArrayList<>(subPlaylistUrls.size());
+    private Pair<Boolean, String> processMasterPlaylist(
+            M3u8Document document, String baseUrl, String proxyUrlPrefix, SubPlaylistFetcher subPlaylistFetcher
+    ) {
+        List<String> subPlaylistFullUrls = HLSUtil.getSubPlaylistUrls(document, baseUrl);
+        List<String> subPlaylistContents;
+        List<List<String>> processedSubPlaylists = new ArrayList<>(subPlaylistFullUrls.size());
         boolean hasModified = false;
         String subPlaylistFullUrl;
         String subPlaylistContent;
-        Pair<Boolean, String> result;
+        Pair<Boolean, List<String>> result;
 
-        for (String subPlaylistUrl : subPlaylistUrls) {
+        subPlaylistContents = subPlaylistFetcher.fetchAll(subPlaylistFullUrls, DOWNLOAD_TIMEOUT, TimeUnit.SECONDS);
+        for (int i = 0; i < subPlaylistFullUrls.size(); i++) {
+            subPlaylistFullUrl = subPlaylistFullUrls.get(i);
+            subPlaylistContent = subPlaylistContents.get(i);
+            if (subPlaylistContent == null) {
+                continue;
+            }
             try {
-                subPlaylistFullUrl = UrlUtil.resolveRelative(subPlaylistUrl, baseUrl);
-                subPlaylistContent = HttpUtil.getAsync(
-                        subPlaylistFullUrl,
-                        HttpHeaders.USER_AGENT,
-                        BaseValues.USER_AGENT
-                ).get(6, TimeUnit.SECONDS);
-                if (StringUtils.isBlank(subPlaylistContent)) {
-                    log.warn("subPlaylist is empty, url={}", subPlaylistUrl);
-                    continue;
-                }
-                result = processSinglePlaylist(
-                        List.of(subPlaylistContent.split("\n")),
+                result = processLines(
+                        M3u8Parser.parse(subPlaylistContent).asLines(),
                         UrlUtil.getParent(subPlaylistFullUrl),
                         proxyUrlPrefix
                 );
                 if (result.getLeft() && !hasModified) {
                     hasModified = true;
                 }
-                processedSubPlaylistContents.add(result.getRight());
+                processedSubPlaylists.add(result.getRight());
             } catch (Exception e) {
-                log.error("process subPlaylist failed, url={}", subPlaylistUrl, e);
+                log.error("process subPlaylist failed, url={}", subPlaylistFullUrl, e);
             }
         }
         return hasModified ?
-                Pair.of(true, mergeSubPlaylists(processedSubPlaylistContents)) :
+                Pair.of(true, mergeSubPlaylists(processedSubPlaylists)) :
                 MutablePair.of(false, null);
     }
 
+    /**
+     * 流水线处理：只处理媒体播放列表，直接在已解析的行上代理
+     */
+    @Override
+    public void process(M3u8RewriteContext context) {
+        M3u8Playlist playlist = context.getPlaylist();
+        Pair<Boolean, List<String>> modifiedFlagAndLines;
+
+        if (playlist.isMaster()) {
+
+            return;
+        }
+        modifiedFlagAndLines = processLines(playlist.getLines(), playlist.getBaseUrl(), context.getTsProxyUrlPrefix());
+        if (modifiedFlagAndLines.getLeft()) {
+            playlist.setLines(modifiedFlagAndLines.getRight());
+            context.setModified(true);
+        }
+        log.info("fixed bad m3u8: {}", modifiedFlagAndLines.getLeft());
+    }
+
     /**
      * 处理单个播放列表
      */
     private Pair<Boolean, String> processSinglePlaylist(List<String> lines, String baseUrl, String proxyUrlPrefix) {
+        Pair<Boolean, List<String>> modifiedFlagAndLines = processLines(lines, baseUrl, proxyUrlPrefix);
+
+        return Pair.of(modifiedFlagAndLines.getLeft(), StringUtils.join(modifiedFlagAndLines.getRight(), StrPool.LF));
+    }
+
+    /**
+     * 逐行处理
+     */
+    private Pair<Boolean, List<String>> processLines(List<String> lines, String baseUrl, String proxyUrlPrefix) {
         List<String> processedLines = new ArrayList<>(lines.size());
         boolean hasModified = false;
         String processedLine;
@@ -101,7 +139,7 @@ public class BadM3u8TsProxyHandler implements M3u8TsProxyHandler {
             processedLines.add(processedLine);
         }
 
-        return Pair.of(hasModified, StringUtils.join(processedLines, StrPool.LF));
+        return Pair.of(hasModified, processedLines);
     }
 
     /**
@@ -131,23 +169,21 @@ public class BadM3u8TsProxyHandler implements M3u8TsProxyHandler {
     /**
      * 合并子播放列表
      */
-    private String mergeSubPlaylists(List<String> subPlaylistContents) {
+    private String mergeSubPlaylists(List<List<String>> subPlaylists) {
         List<String> mergedLines;
         boolean isFirstPlaylist;
-        List<String> lines;
         boolean inHeader;
 
-        if (subPlaylistContents.isEmpty()) {
+        if (subPlaylists.isEmpty()) {
 
             return StringUtils.EMPTY;
         }
         mergedLines = new ArrayList<>();
         isFirstPlaylist = true;
-        for (String content : subPlaylistContents) {
-            if (StringUtils.isBlank(content)) {
+        for (List<String> lines : subPlaylists) {
+            if (lines.isEmpty()) {
                 continue;
             }
-            lines = List.of(content.split("\n"));
             inHeader = true;
             for (String line : lines) {
                 if (inHeader && line.startsWith("#EXTINF:")) {
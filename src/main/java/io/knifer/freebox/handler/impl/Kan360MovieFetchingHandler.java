@@ -2,8 +2,9 @@ package io.knifer.freebox.handler.impl;
 
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import io.knifer.freebox.constant.HttpCacheCategory;
 import io.knifer.freebox.handler.MovieRankFetchingHandler;
-import io.knifer.freebox.util.HttpUtil;
+import io.knifer.freebox.net.http.cache.HttpResponseCache;
 import io.knifer.freebox.util.json.GsonUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
@@ -32,7 +33,8 @@ public class Kan360MovieFetchingHandler implements MovieRankFetchingHandler {
         JsonElement resultJsonElm;
 
         try {
-            resultBody = HttpUtil.getAsync(URL)
+            resultBody = HttpResponseCache.getInstance()
+                    .getAsync(HttpCacheCategory.MOVIE_RANK, URL)
                     .get(6, TimeUnit.SECONDS);
         } catch (ExecutionException | InterruptedException | TimeoutException e) {
             log.warn("request error", e);
@@ -0,0 +1,137 @@
+package io.knifer.freebox.handler.impl;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.Nullable;
+
+/**
+ * 直播m3u8增量广告过滤
+ * 直播播放列表是一个滑动窗口，每次刷新只追加少量分片，数量不足以进行SmartM3u8AdFilterHandler的取样识别，
+ * 因此在多次刷新中持续学习正常分片的命名特征（命名长度、数字序号），之后只对新追加的分片逐个判断
+ * 每个直播播放列表持有一个实例，非线程安全
+ *
+ * @author Knifer
+ */
+@Slf4j
+public class LiveM3u8AdFilter {
+
+    /**
+     * 连续出现相同命名长度（或数字序号连续递增）的分片数达到此值时，将其确定为正常分片的特征
+     */
+    private static final int BENCHMARK_COUNT = 5;
+    /**
+     * 连续判定为广告的分片数超过此值时，认为是直播流本身的命名方式发生了变化，重新学习特征
+     */
+    private static final int MAX_CONTINUOUS_AD_COUNT = 20;
+
+    /**
+     * 基准命名长度，未确定时为null
+     */
+    private Integer benchmarkNameLen;
+    private int lastNameLen;
+    private int sameNameLenCount;
+
+    /**
+     * 是否已确定为数字递增型
+     */
+    private boolean digitType;
+    private Long lastDigitName;
+    private int increasingDigitCount;
+
+    private int continuousAdCount;
+
+    public LiveM3u8AdFilter() {
+        resetFeatures();
+    }
+
+    /**
+     * 判断新追加的分片是否为广告，不是广告时用它更新学习到的特征
+     * @param uri 分片地址（上游播放列表中的原始内容）
+     * @return bool
+     */
+    public boolean isAd(String uri) {
+        int nameLen = SmartM3u8AdFilterHandler.getTsNameLen(uri);
+        Long digitName;
+
+        if (nameLen < 1) {
+            // 不是ts分片（或伪装成png的ts分片），无法判断
+
+            return false;
+        }
+        digitName = SmartM3u8AdFilterHandler.extractNumberBeforeTs(uri);
+        if (matchesFeatures(nameLen, digitName)) {
+            continuousAdCount = 0;
+            learn(nameLen, digitName);
+
+            return false;
+        }
+        if (++continuousAdCount > MAX_CONTINUOUS_AD_COUNT) {
+            log.info("live, too many continuous ad segments, relearn features");
+            resetFeatures();
+            learn(nameLen, digitName);
+
+            return false;
+        }
+        log.info("live, filter segment: {}", uri);
+
+        return true;
+    }
+
+    /**
+     * 分片不连续时调用（错过了部分分片，或直播流重新开始），此后的分片不再要求数字序号与之前的分片连续
+     */
+    public void onGap() {
+        lastDigitName = null;
+    }
+
+    private boolean matchesFeatures(int nameLen, @Nullable Long digitName) {
+        if (benchmarkNameLen != null && nameLen != benchmarkNameLen) {
+
+            return false;
+        }
+        if (digitType && lastDigitName != null) {
+
+            return digitName != null && (digitName.equals(lastDigitName) || digitName.equals(lastDigitName + 1));
+        }
+
+        return true;
+    }
+
+    private void learn(int nameLen, @Nullable Long digitName) {
+        if (benchmarkNameLen == null) {
+            if (nameLen == lastNameLen) {
+                sameNameLenCount++;
+            } else {
+                lastNameLen = nameLen;
+                sameNameLenCount = 1;
+            }
+            if (sameNameLenCount >= BENCHMARK_COUNT) {
+                benchmarkNameLen = nameLen;
+                log.info("live, benchmark ts name length: {}", nameLen);
+            }
+        }
+        if (!digitType) {
+            if (digitName != null && lastDigitName != null && digitName.equals(lastDigitName + 1)) {
+                increasingDigitCount++;
+            } else {
+                increasingDigitCount = 0;
+            }
+            // BENCHMARK_COUNT个连续分片之间有BENCHMARK_COUNT - 1次递增
+            if (increasingDigitCount >= BENCHMARK_COUNT - 1) {
+                digitType = true;
+                log.info("live, ts digit type recognized");
+            }
+        }
+        lastDigitName = digitName;
+    }
+
+    private void resetFeatures() {
+        benchmarkNameLen = null;
+        lastNameLen = -1;
+        sameNameLenCount = 0;
+        digitType = false;
+        lastDigitName = null;
+        increasingDigitCount = 0;
+        continuousAdCount = 0;
+    }
+}
@@ -0,0 +1,41 @@
+package io.knifer.freebox.handler.impl;
+
+import io.knifer.freebox.handler.M3u8PipelineStage;
+import io.knifer.freebox.handler.M3u8RewriteContext;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+
+/**
+ * m3u8处理流水线
+ * 播放列表只解析一次，依次经过各处理阶段（广告过滤、地址补全、ts代理、分片收集等），最后只序列化一次
+ *
+ * @author Knifer
+ */
+@Slf4j
+public class M3u8RewritePipeline {
+
+    private final List<M3u8PipelineStage> stages;
+
+    public M3u8RewritePipeline(M3u8PipelineStage... stages) {
+        this.stages = List.of(stages);
+    }
+
+    /**
+     * 执行流水线
+     * 单个阶段出错时跳过该阶段，不影响后续阶段
+     * @param context 上下文
+     * @return 上下文
+     */
+    public M3u8RewriteContext run(M3u8RewriteContext context) {
+        for (M3u8PipelineStage stage : stages) {
+            try {
+                stage.process(context);
+            } catch (Exception e) {
+                log.warn("m3u8 pipeline stage {} failed", stage.getClass().getSimpleName(), e);
+            }
+        }
+
+        return context;
+    }
+}
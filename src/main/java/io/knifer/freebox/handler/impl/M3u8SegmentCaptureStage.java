@@ -0,0 +1,34 @@
+package io.knifer.freebox.handler.impl;
+
+import io.knifer.freebox.handler.M3u8PipelineStage;
+import io.knifer.freebox.handler.M3u8RewriteContext;
+import io.knifer.freebox.util.hls.M3u8Playlist;
+
+import java.util.List;
+
+/**
+ * 分片收集
+ * 记录经过ts代理的分片地址（按播放顺序，相同地址只记录一次），供预读使用，无需再次扫描序列化后的内容
+ *
+ * @author Knifer
+ */
+public class M3u8SegmentCaptureStage implements M3u8PipelineStage {
+
+    @Override
+    public void process(M3u8RewriteContext context) {
+        String tsProxyUrlPrefix = context.getTsProxyUrlPrefix();
+        List<String> segmentUrls = context.getProxiedSegmentUrls();
+        String url;
+
+        for (String line : context.getPlaylist().getLines()) {
+            if (!M3u8Playlist.isUriLine(line) || !line.startsWith(tsProxyUrlPrefix)) {
+                continue;
+            }
+            url = line.substring(tsProxyUrlPrefix.length());
+            // 同一地址可能因EXT-X-BYTERANGE多次出现
+            if (segmentUrls.isEmpty() || !segmentUrls.get(segmentUrls.size() - 1).equals(url)) {
+                segmentUrls.add(url);
+            }
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package io.knifer.freebox.handler.impl;
+
+import io.knifer.freebox.handler.M3u8PipelineStage;
+import io.knifer.freebox.handler.M3u8RewriteContext;
+import io.knifer.freebox.util.UrlUtil;
+import io.knifer.freebox.util.hls.M3u8Playlist;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * m3u8地址补全
+ * 把播放列表中的相对地址（URI行、标签中的URI属性）转换为绝对地址，播放列表改由本地代理提供后仍能正确访问
+ * 只补全地址不算作修改播放列表
+ *
+ * @author Knifer
+ */
+public class M3u8UrlResolveStage implements M3u8PipelineStage {
+
+    private static final Pattern URI_ATTR_PATTERN = Pattern.compile("URI=\"([^\"]+)\"");
+
+    @Override
+    public void process(M3u8RewriteContext context) {
+        M3u8Playlist playlist = context.getPlaylist();
+        String baseUrl = playlist.getBaseUrl();
+        List<String> lines = playlist.getLines();
+        List<String> resolvedLines = new ArrayList<>(lines.size());
+
+        for (String line : lines) {
+            if (M3u8Playlist.isUriLine(line)) {
+                resolvedLines.add(UrlUtil.resolveRelative(line.trim(), baseUrl));
+            } else if (line.startsWith("#") && line.contains("URI=\"")) {
+                resolvedLines.add(resolveUriAttr(line, baseUrl));
+            } else {
+                resolvedLines.add(line);
+            }
+        }
+        playlist.setLines(resolvedLines);
+    }
+
+    private String resolveUriAttr(String line, String baseUrl) {
+        Matcher matcher = URI_ATTR_PATTERN.matcher(line);
+        StringBuilder result = new StringBuilder();
+
+        while (matcher.find()) {
+            matcher.appendReplacement(
+                    result,
+                    Matcher.quoteReplacement("URI=\"" + UrlUtil.resolveRelative(matcher.group(1), baseUrl) + "\"")
+            );
+        }
+        matcher.appendTail(result);
+
+        return result.toString();
+    }
+}
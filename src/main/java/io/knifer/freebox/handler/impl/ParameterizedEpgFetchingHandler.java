@@ -1,9 +1,10 @@
 package io.knifer.freebox.handler.impl;
 
 import cn.hutool.core.date.LocalDateTimeUtil;
+import io.knifer.freebox.constant.HttpCacheCategory;
 import io.knifer.freebox.handler.EpgFetchingHandler;
 import io.knifer.freebox.model.common.diyp.EPG;
-import io.knifer.freebox.util.HttpUtil;
+import io.knifer.freebox.net.http.cache.HttpResponseCache;
 import io.knifer.freebox.util.json.GsonUtil;
 import org.apache.commons.lang3.StringUtils;
 
@@ -24,7 +25,8 @@ public class ParameterizedEpgFetchingHandler implements EpgFetchingHandler {
         String url = epgServiceUrl.replace("{name}", channelName)
                 .replace("{date}", LocalDateTimeUtil.formatNormal(date));
 
-        return HttpUtil.getAsync(url)
+        return HttpResponseCache.getInstance()
+                .getAsync(HttpCacheCategory.EPG, url)
                 .thenApply(jsonContent -> {
                     if (StringUtils.isBlank(jsonContent)) {
 
@@ -3,15 +3,18 @@ package io.knifer.freebox.handler.impl;
 import cn.hutool.core.collection.CollUtil;
 import cn.hutool.core.map.MapUtil;
 import cn.hutool.core.text.StrPool;
-import cn.hutool.core.util.StrUtil;
-import com.google.common.net.HttpHeaders;
-import io.knifer.freebox.constant.BaseValues;
 import io.knifer.freebox.exception.FBException;
 import io.knifer.freebox.handler.M3u8AdFilterHandler;
+import io.knifer.freebox.handler.M3u8AdFilterResultCache;
+import io.knifer.freebox.handler.M3u8PipelineStage;
+import io.knifer.freebox.handler.M3u8RewriteContext;
 import io.knifer.freebox.model.domain.M3u8AdFilterResult;
-import io.knifer.freebox.util.HttpUtil;
 import io.knifer.freebox.util.UrlUtil;
 import io.knifer.freebox.util.hls.HLSUtil;
+import io.knifer.freebox.util.hls.M3u8Document;
+import io.knifer.freebox.util.hls.M3u8Parser;
+import io.knifer.freebox.util.hls.M3u8Playlist;
+import io.knifer.freebox.util.hls.SubPlaylistFetcher;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.RandomUtils;
@@ -38,7 +41,7 @@ import java.util.stream.Stream;
  */
 @Slf4j
 @Data
-public class SmartM3u8AdFilterHandler implements M3u8AdFilterHandler {
+public class SmartM3u8AdFilterHandler implements M3u8AdFilterHandler, M3u8PipelineStage {
 
     /**
      * 最小行数，小于此值不会触发任何过滤
@@ -73,7 +76,7 @@ public class SmartM3u8AdFilterHandler implements M3u8AdFilterHandler {
      */
     private int minSegmentCountForStats = 3;
     /**
-     * 下载子播放列表文件的超时时间
+     * 下载子播放列表文件的超时时间（所有子播放列表并发下载，共用此超时时间）
      */
     private int downloadTimeout = 6;
 
@@ -82,6 +85,11 @@ public class SmartM3u8AdFilterHandler implements M3u8AdFilterHandler {
      */
     private boolean doForceSegmentFilterFlag = false;
 
+    /**
+     * 过滤结果缓存，为null时不使用缓存；也可以通过扩展数据EXTRA_KEY_RESULT_CACHE按次关闭（对应配置项adFilterResultCache）
+     */
+    private M3u8AdFilterResultCache resultCache = M3u8AdFilterResultCache.getInstance();
+
     private static final String[] TAG_PREFIX_WITH_TS_LINE = {
             "#EXTINF",
             "#EXT-X-DISCONTINUITY",
@@ -89,33 +97,142 @@ public class SmartM3u8AdFilterHandler implements M3u8AdFilterHandler {
             "#EXT-X-PROGRAM-DATE-TIME"
     };
 
+    private static final String CACHE_MODE_HANDLE = "handle";
+    private static final String CACHE_MODE_PIPELINE = "pipeline";
+
     public static final String EXTRA_KEY_DTF = "dynamicThresholdFactor";
+    /**
+     * 扩展数据 - 子播放列表下载器，传入后可与其他处理器共用已下载的子播放列表
+     */
+    public static final String EXTRA_KEY_SUB_PLAYLIST_FETCHER = "subPlaylistFetcher";
+    /**
+     * 扩展数据 - 是否使用过滤结果缓存，未传入时使用
+     */
+    public static final String EXTRA_KEY_RESULT_CACHE = "resultCache";
 
     /**
      * 主处理方法 - 直接返回处理后的m3u8内容字符串
+     * 只缓存媒体播放列表的结果：主播放列表的结果包含子播放列表的内容，而缓存键只能覆盖主播放列表本身，
+     * 子播放列表更新（如分片签名过期）后缓存会返回旧内容
      */
     @Override
     public M3u8AdFilterResult handle(
             String url, String content, Map<String, Object> extraData
     ) {
-        List<String> lines;
+        M3u8Document document;
         M3u8AdFilterResult result;
+        SubPlaylistFetcher subPlaylistFetcher;
+        String cacheKey;
 
         init(extraData);
-        lines = List.of(content.split("\n"));
-        if (HLSUtil.isMasterPlaylist(lines)) {
+        document = M3u8Parser.parse(content);
+        if (document.isMaster()) {
             log.info("start process master play list");
-            result = processMasterPlaylist(url, lines);
+            subPlaylistFetcher = extraData != null &&
+                    extraData.get(EXTRA_KEY_SUB_PLAYLIST_FETCHER) instanceof SubPlaylistFetcher fetcher ?
+                    fetcher : new SubPlaylistFetcher();
+            result = processMasterPlaylist(url, document, subPlaylistFetcher);
             if (result.getAdLineCount() == 0) {
                 result.setContent(content);
             }
 
             return result;
+        }
+        cacheKey = createCacheKey(url, content, CACHE_MODE_HANDLE, extraData);
+        result = getCachedResult(cacheKey, url);
+        if (result != null) {
+
+            return result;
+        }
+        log.info("start process media play list");
+        result = processSinglePlayList(url, document.asLines());
+        if (cacheKey != null) {
+            resultCache.put(cacheKey, M3u8AdFilterResult.of(result.getAdLineCount(), result.getContent()));
+        }
+
+        return result;
+    }
+
+    /**
+     * 流水线处理：只处理媒体播放列表，直接在已解析的行上过滤
+     */
+    @Override
+    public void process(M3u8RewriteContext context) {
+        M3u8Playlist playlist = context.getPlaylist();
+        Pair<Integer, List<String>> adLineCountAndLinesFiltered;
+        String cacheKey;
+        M3u8AdFilterResult cachedResult;
+
+        if (playlist.isMaster()) {
+
+            return;
+        }
+        init(context.getExtraData());
+        cacheKey = createCacheKey(
+                playlist.getUrl(), playlist.getDocument().getSource(), CACHE_MODE_PIPELINE, context.getExtraData()
+        );
+        cachedResult = getCachedResult(cacheKey, playlist.getUrl());
+        if (cachedResult != null) {
+            adLineCountAndLinesFiltered = Pair.of(
+                    cachedResult.getAdLineCount(),
+                    cachedResult.getAdLineCount() > 0 ?
+                            M3u8Parser.parse(cachedResult.getContent()).asLines() : playlist.getLines()
+            );
         } else {
-            log.info("start process media play list");
+            adLineCountAndLinesFiltered = doFilter(playlist.getLines(), playlist.getBaseUrl());
+            if (cacheKey != null) {
+                resultCache.put(
+                        cacheKey,
+                        M3u8AdFilterResult.of(
+                                adLineCountAndLinesFiltered.getLeft(),
+                                adLineCountAndLinesFiltered.getLeft() > 0 ?
+                                        StringUtils.join(adLineCountAndLinesFiltered.getRight(), StrPool.LF) : null
+                        )
+                );
+            }
+        }
+        if (adLineCountAndLinesFiltered.getLeft() > 0) {
+            playlist.setLines(adLineCountAndLinesFiltered.getRight());
+            context.setAdLineCount(context.getAdLineCount() + adLineCountAndLinesFiltered.getLeft());
+            context.setModified(true);
+        }
+    }
+
+    /**
+     * 生成过滤结果缓存键，影响过滤结果的参数（动态阈值因子、是否强制过滤）也计入键中
+     * @param mode 调用方式，handle和流水线处理的结果格式不同（后者未修改时不保存内容），分开缓存
+     * @param extraData 扩展数据
+     * @return 缓存键，未启用缓存时返回null
+     */
+    @Nullable
+    private String createCacheKey(String url, CharSequence content, String mode, Map<String, Object> extraData) {
+        if (resultCache == null || !MapUtil.getBool(extraData, EXTRA_KEY_RESULT_CACHE, true)) {
+
+            return null;
+        }
+
+        return M3u8AdFilterResultCache.createKey(url, content, mode, dynamicThresholdFactor, doForceSegmentFilterFlag);
+    }
+
+    /**
+     * 获取缓存的过滤结果（副本）
+     */
+    @Nullable
+    private M3u8AdFilterResult getCachedResult(@Nullable String cacheKey, String url) {
+        M3u8AdFilterResult cachedResult;
+
+        if (cacheKey == null) {
 
-            return processSinglePlayList(url, lines);
+            return null;
+        }
+        cachedResult = resultCache.get(cacheKey);
+        if (cachedResult == null) {
+
+            return null;
         }
+        log.info("m3u8 ad filter cache hit, url={}", url);
+
+        return M3u8AdFilterResult.of(cachedResult.getAdLineCount(), cachedResult.getContent());
     }
 
     private void init(Map<String, Object> extraData) {
@@ -133,38 +250,39 @@ public class SmartM3u8AdFilterHandler implements M3u8AdFilterHandler {
     /**
      * 处理主播放列表并返回合并后的内容
      */
-    private M3u8AdFilterResult processMasterPlaylist(String masterUrl, List<String> lines) {
-        String baseUrl = UrlUtil.getParent(masterUrl);
-        List<String> subPlaylistUrls = HLSUtil.getSubPlaylistUrls(lines, baseUrl);
-        List<String> filteredSubPlaylistContents = new ArrayList<>(subPlaylistUrls.size());
+    private M3u8AdFilterResult processMasterPlaylist(
+            String masterUrl, M3u8Document document, SubPlaylistFetcher subPlaylistFetcher
+    ) {
+        List<String> subPlaylistFullUrls = HLSUtil.getSubPlaylistUrls(document, UrlUtil.getParent(masterUrl));
+        List<String> subPlaylistContents;
+        List<List<String>> filteredSubPlaylists = new ArrayList<>(subPlaylistFullUrls.size());
         String subPlaylistContent;
         Pair<Integer, List<String>> adLineCountAndLinesFiltered;
         int adLineCount = 0;
         String subPlaylistFullUrl;
 
-        for (String subPlaylistUrl : subPlaylistUrls) {
-            log.info("process subPlaylist, subPlaylistUrl={}", subPlaylistUrl);
+        subPlaylistContents = subPlaylistFetcher.fetchAll(subPlaylistFullUrls, downloadTimeout, TimeUnit.SECONDS);
+        for (int i = 0; i < subPlaylistFullUrls.size(); i++) {
+            subPlaylistFullUrl = subPlaylistFullUrls.get(i);
+            subPlaylistContent = subPlaylistContents.get(i);
+            if (subPlaylistContent == null) {
+                continue;
+            }
+            log.info("process subPlaylist, subPlaylistUrl={}", subPlaylistFullUrl);
             try {
-                subPlaylistFullUrl = UrlUtil.resolveRelative(subPlaylistUrl, baseUrl);
-                subPlaylistContent = HttpUtil.getAsync(
-                        subPlaylistFullUrl, HttpHeaders.USER_AGENT, BaseValues.USER_AGENT
-                ).get(downloadTimeout, TimeUnit.SECONDS);
-                if (StringUtils.isBlank(subPlaylistContent)) {
-                    log.warn("process subPlaylist failed, subPlaylistUrl={}, content is blank", subPlaylistUrl);
-                    continue;
-                }
-                adLineCountAndLinesFiltered =
-                        doFilter(StrUtil.split(subPlaylistContent, StrPool.LF), UrlUtil.getParent(subPlaylistFullUrl));
+                adLineCountAndLinesFiltered = doFilter(
+                        M3u8Parser.parse(subPlaylistContent).asLines(), UrlUtil.getParent(subPlaylistFullUrl)
+                );
                 adLineCount += adLineCountAndLinesFiltered.getLeft();
-                filteredSubPlaylistContents.add(StringUtils.join(adLineCountAndLinesFiltered.getRight(), StrPool.LF));
+                filteredSubPlaylists.add(adLineCountAndLinesFiltered.getRight());
             } catch (Exception e) {
-                log.error("process subPlaylist failed, subPlaylistUrl={}", subPlaylistUrl, e);
+                log.error("process subPlaylist failed, subPlaylistUrl={}", subPlaylistFullUrl, e);
             }
         }
 
-        return filteredSubPlaylistContents.isEmpty() ?
+        return filteredSubPlaylists.isEmpty() ?
                 M3u8AdFilterResult.of(0, null) :
-                M3u8AdFilterResult.of(adLineCount, mergeSubPlaylists(filteredSubPlaylistContents));
+                M3u8AdFilterResult.of(adLineCount, mergeSubPlaylists(filteredSubPlaylists));
     }
 
     /**
@@ -181,11 +299,12 @@ public class SmartM3u8AdFilterHandler implements M3u8AdFilterHandler {
 
     /**
      * 合并子播放列表为一个大的播放列表
+     * 包级可见，供基准测试直接调用
      */
-    private String mergeSubPlaylists(List<String> filteredSubPlaylistContents) {
+    String mergeSubPlaylists(List<List<String>> filteredSubPlaylists) {
         List<String> mergedLines = new ArrayList<>();
         boolean isFirstPlaylist = true;
-        double maxTargetDuration = calculateMaxTargetDuration(filteredSubPlaylistContents);
+        double maxTargetDuration = calculateMaxTargetDuration(filteredSubPlaylists);
         String lastLine;
 
         // 添加基本头部信息
@@ -197,8 +316,7 @@ public class SmartM3u8AdFilterHandler implements M3u8AdFilterHandler {
         mergedLines.add("#EXT-X-MEDIA-SEQUENCE:0");
 
         // 合并每个子播放列表的内容
-        for (String content : filteredSubPlaylistContents) {
-            List<String> lines = List.of(content.split("\n"));
+        for (List<String> lines : filteredSubPlaylists) {
             boolean inHeader = true;
 
             for (String line : lines) {
@@ -237,12 +355,11 @@ public class SmartM3u8AdFilterHandler implements M3u8AdFilterHandler {
         return StringUtils.join(mergedLines, StrPool.LF);
     }
 
-    private static double calculateMaxTargetDuration(List<String> filteredSubPlaylistContents) {
+    private static double calculateMaxTargetDuration(List<List<String>> filteredSubPlaylists) {
         double maxTargetDuration = 0;
 
         // 收集所有必要的头部信息
-        for (String content : filteredSubPlaylistContents) {
-            List<String> lines = List.of(content.split("\n"));
+        for (List<String> lines : filteredSubPlaylists) {
             for (String line : lines) {
                 if (line.startsWith("#EXT-X-TARGETDURATION:")) {
                     try {
@@ -484,7 +601,7 @@ public class SmartM3u8AdFilterHandler implements M3u8AdFilterHandler {
             if (StringUtils.isEmpty(line) || line.startsWith("#")) {
                 continue;
             }
-            tsNameLen = Math.max(line.indexOf(".ts"), line.indexOf(".png"));
+            tsNameLen = getTsNameLen(line);
             if (tsNameLen < 1) {
                 continue;
             }
@@ -678,7 +795,7 @@ public class SmartM3u8AdFilterHandler implements M3u8AdFilterHandler {
                 result.add(line);
                 continue;
             }
-            tsNameLen = Math.max(line.indexOf(".ts"), line.indexOf(".png"));
+            tsNameLen = getTsNameLen(line);
             if (tsNameLen < 1) {
                 continue;
             }
@@ -725,13 +842,22 @@ public class SmartM3u8AdFilterHandler implements M3u8AdFilterHandler {
         return adLineCount;
     }
 
+    /**
+     * 获取ts命名长度（.ts或.png在行中的位置）
+     * @param line m3u8行
+     * @return 命名长度，不是ts行时返回-1
+     */
+    static int getTsNameLen(String line) {
+        return Math.max(line.indexOf(".ts"), line.indexOf(".png"));
+    }
+
     /**
      * 提取.ts前的数字名称（移除数字外的字符）
      * @param line m3u8行
      * @return pair, left=过滤的广告数量，right=过滤后的行
      */
     @Nullable
-    private Long extractNumberBeforeTs(String line) {
+    static Long extractNumberBeforeTs(String line) {
         String fullName = StringUtils.substringAfterLast(line, StrPool.SLASH);
         String name;
         int nameLen;
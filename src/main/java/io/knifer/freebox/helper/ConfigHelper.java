@@ -196,6 +196,204 @@ public class ConfigHelper {
         config.setAdFilterDynamicThresholdFactor(adFilterDynamicThresholdFactor);
     }
 
+    public Boolean getAdFilterResultCache() {
+        assertIfConfigLoaded();
+
+        return config.getAdFilterResultCache();
+    }
+
+    public synchronized void setAdFilterResultCache(Boolean adFilterResultCache) {
+        assertIfConfigLoaded();
+        config.setAdFilterResultCache(adFilterResultCache);
+    }
+
+    public Integer getTsPrefetchCount() {
+        assertIfConfigLoaded();
+
+        return config.getTsPrefetchCount();
+    }
+
+    public synchronized void setTsPrefetchCount(Integer tsPrefetchCount) {
+        assertIfConfigLoaded();
+        config.setTsPrefetchCount(tsPrefetchCount);
+    }
+
+    public Long getMaxVariantBandwidth() {
+        assertIfConfigLoaded();
+
+        return config.getMaxVariantBandwidth();
+    }
+
+    public synchronized void setMaxVariantBandwidth(Long maxVariantBandwidth) {
+        assertIfConfigLoaded();
+        config.setMaxVariantBandwidth(maxVariantBandwidth);
+    }
+
+    public Boolean getHttpPreferHttp2() {
+        assertIfConfigLoaded();
+
+        return config.getHttpPreferHttp2();
+    }
+
+    public synchronized void setHttpPreferHttp2(Boolean httpPreferHttp2) {
+        assertIfConfigLoaded();
+        config.setHttpPreferHttp2(httpPreferHttp2);
+    }
+
+    public Integer getHttpMaxConnectionsPerHost() {
+        assertIfConfigLoaded();
+
+        return config.getHttpMaxConnectionsPerHost();
+    }
+
+    public synchronized void setHttpMaxConnectionsPerHost(Integer httpMaxConnectionsPerHost) {
+        assertIfConfigLoaded();
+        config.setHttpMaxConnectionsPerHost(httpMaxConnectionsPerHost);
+    }
+
+    public Integer getHttpConnectTimeout() {
+        assertIfConfigLoaded();
+
+        return config.getHttpConnectTimeout();
+    }
+
+    public synchronized void setHttpConnectTimeout(Integer httpConnectTimeout) {
+        assertIfConfigLoaded();
+        config.setHttpConnectTimeout(httpConnectTimeout);
+    }
+
+    public Integer getHttpRequestTimeout() {
+        assertIfConfigLoaded();
+
+        return config.getHttpRequestTimeout();
+    }
+
+    public synchronized void setHttpRequestTimeout(Integer httpRequestTimeout) {
+        assertIfConfigLoaded();
+        config.setHttpRequestTimeout(httpRequestTimeout);
+    }
+
+    public Integer getHttpServerTsPoolSize() {
+        assertIfConfigLoaded();
+
+        return config.getHttpServerTsPoolSize();
+    }
+
+    public synchronized void setHttpServerTsPoolSize(Integer httpServerTsPoolSize) {
+        assertIfConfigLoaded();
+        config.setHttpServerTsPoolSize(httpServerTsPoolSize);
+    }
+
+    public Integer getHttpServerTsQueueSize() {
+        assertIfConfigLoaded();
+
+        return config.getHttpServerTsQueueSize();
+    }
+
+    public synchronized void setHttpServerTsQueueSize(Integer httpServerTsQueueSize) {
+        assertIfConfigLoaded();
+        config.setHttpServerTsQueueSize(httpServerTsQueueSize);
+    }
+
+    public Integer getHttpServerCachePoolSize() {
+        assertIfConfigLoaded();
+
+        return config.getHttpServerCachePoolSize();
+    }
+
+    public synchronized void setHttpServerCachePoolSize(Integer httpServerCachePoolSize) {
+        assertIfConfigLoaded();
+        config.setHttpServerCachePoolSize(httpServerCachePoolSize);
+    }
+
+    public Integer getHttpServerCacheQueueSize() {
+        assertIfConfigLoaded();
+
+        return config.getHttpServerCacheQueueSize();
+    }
+
+    public synchronized void setHttpServerCacheQueueSize(Integer httpServerCacheQueueSize) {
+        assertIfConfigLoaded();
+        config.setHttpServerCacheQueueSize(httpServerCacheQueueSize);
+    }
+
+    public Integer getHttpServerProxyPoolSize() {
+        assertIfConfigLoaded();
+
+        return config.getHttpServerProxyPoolSize();
+    }
+
+    public synchronized void setHttpServerProxyPoolSize(Integer httpServerProxyPoolSize) {
+        assertIfConfigLoaded();
+        config.setHttpServerProxyPoolSize(httpServerProxyPoolSize);
+    }
+
+    public Integer getHttpServerProxyQueueSize() {
+        assertIfConfigLoaded();
+
+        return config.getHttpServerProxyQueueSize();
+    }
+
+    public synchronized void setHttpServerProxyQueueSize(Integer httpServerProxyQueueSize) {
+        assertIfConfigLoaded();
+        config.setHttpServerProxyQueueSize(httpServerProxyQueueSize);
+    }
+
+    public Integer getHttpServerMsgPoolSize() {
+        assertIfConfigLoaded();
+
+        return config.getHttpServerMsgPoolSize();
+    }
+
+    public synchronized void setHttpServerMsgPoolSize(Integer httpServerMsgPoolSize) {
+        assertIfConfigLoaded();
+        config.setHttpServerMsgPoolSize(httpServerMsgPoolSize);
+    }
+
+    public Integer getHttpServerMsgQueueSize() {
+        assertIfConfigLoaded();
+
+        return config.getHttpServerMsgQueueSize();
+    }
+
+    public synchronized void setHttpServerMsgQueueSize(Integer httpServerMsgQueueSize) {
+        assertIfConfigLoaded();
+        config.setHttpServerMsgQueueSize(httpServerMsgQueueSize);
+    }
+
+    public Integer getHttpServerPairingPoolSize() {
+        assertIfConfigLoaded();
+
+        return config.getHttpServerPairingPoolSize();
+    }
+
+    public synchronized void setHttpServerPairingPoolSize(Integer httpServerPairingPoolSize) {
+        assertIfConfigLoaded();
+        config.setHttpServerPairingPoolSize(httpServerPairingPoolSize);
+    }
+
+    public Integer getHttpServerPairingQueueSize() {
+        assertIfConfigLoaded();
+
+        return config.getHttpServerPairingQueueSize();
+    }
+
+    public synchronized void setHttpServerPairingQueueSize(Integer httpServerPairingQueueSize) {
+        assertIfConfigLoaded();
+        config.setHttpServerPairingQueueSize(httpServerPairingQueueSize);
+    }
+
+    public Boolean getSpiderWarmUp() {
+        assertIfConfigLoaded();
+
+        return config.getSpiderWarmUp();
+    }
+
+    public synchronized void setSpiderWarmUp(Boolean spiderWarmUp) {
+        assertIfConfigLoaded();
+        config.setSpiderWarmUp(spiderWarmUp);
+    }
+
     public PlayerType getPlayerType() {
         assertIfConfigLoaded();
 
@@ -250,6 +448,10 @@ public class ConfigHelper {
         config = loadConfigFromLocalPath();
     }
 
+    public boolean isConfigLoaded() {
+        return config != null;
+    }
+
     private Config loadConfigFromLocalPath() {
         Config configLoaded;
         String configJson;
@@ -280,6 +482,12 @@ public class ConfigHelper {
                 configLoaded.setUsageFontFamily(Font.getDefault().getFamily());
                 configLoaded.setAdFilter(true);
                 configLoaded.setAdFilterDynamicThresholdFactor(-1D);
+                configLoaded.setAdFilterResultCache(true);
+                configLoaded.setTsPrefetchCount(BaseValues.DEFAULT_TS_PREFETCH_COUNT);
+                configLoaded.setMaxVariantBandwidth(0L);
+                fixHttpClientOptions(configLoaded);
+                fixHttpServerRouteOptions(configLoaded);
+                configLoaded.setSpiderWarmUp(true);
                 configLoaded.setPlayerType(PlayerType.VLC);
                 configLoaded.setVideoPlaybackTrigger(VideoPlaybackTrigger.SINGLE_CLICK);
                 Files.createDirectories(CONFIG_PATH.getParent());
@@ -312,6 +520,28 @@ public class ConfigHelper {
             config.setAdFilterDynamicThresholdFactor(-1D);
             needSave = true;
         }
+        if (config.getAdFilterResultCache() == null) {
+            config.setAdFilterResultCache(true);
+            needSave = true;
+        }
+        if (config.getTsPrefetchCount() == null) {
+            config.setTsPrefetchCount(BaseValues.DEFAULT_TS_PREFETCH_COUNT);
+            needSave = true;
+        }
+        if (config.getMaxVariantBandwidth() == null) {
+            config.setMaxVariantBandwidth(0L);
+            needSave = true;
+        }
+        if (fixHttpClientOptions(config)) {
+            needSave = true;
+        }
+        if (fixHttpServerRouteOptions(config)) {
+            needSave = true;
+        }
+        if (config.getSpiderWarmUp() == null) {
+            config.setSpiderWarmUp(true);
+            needSave = true;
+        }
         if (config.getPlayerType() == null) {
             config.setPlayerType(PlayerType.VLC);
             needSave = true;
@@ -329,6 +559,84 @@ public class ConfigHelper {
         }
     }
 
+    /**
+     * 补全HTTP客户端选项（使用默认值）
+     * @return 是否有修改
+     */
+    private boolean fixHttpClientOptions(Config config) {
+        boolean fixed = false;
+
+        if (config.getHttpPreferHttp2() == null) {
+            config.setHttpPreferHttp2(BaseValues.DEFAULT_HTTP_PREFER_HTTP2);
+            fixed = true;
+        }
+        if (config.getHttpMaxConnectionsPerHost() == null) {
+            config.setHttpMaxConnectionsPerHost(BaseValues.DEFAULT_HTTP_MAX_CONNECTIONS_PER_HOST);
+            fixed = true;
+        }
+        if (config.getHttpConnectTimeout() == null) {
+            config.setHttpConnectTimeout(BaseValues.DEFAULT_HTTP_CONNECT_TIMEOUT);
+            fixed = true;
+        }
+        if (config.getHttpRequestTimeout() == null) {
+            config.setHttpRequestTimeout(BaseValues.DEFAULT_HTTP_REQUEST_TIMEOUT);
+            fixed = true;
+        }
+
+        return fixed;
+    }
+
+    /**
+     * 补全HTTP服务路由选项（使用默认值）
+     * @return 是否有修改
+     */
+    private boolean fixHttpServerRouteOptions(Config config) {
+        boolean fixed = false;
+
+        if (config.getHttpServerTsPoolSize() == null) {
+            config.setHttpServerTsPoolSize(BaseValues.DEFAULT_HTTP_SERVER_TS_POOL_SIZE);
+            fixed = true;
+        }
+        if (config.getHttpServerTsQueueSize() == null) {
+            config.setHttpServerTsQueueSize(BaseValues.DEFAULT_HTTP_SERVER_TS_QUEUE_SIZE);
+            fixed = true;
+        }
+        if (config.getHttpServerCachePoolSize() == null) {
+            config.setHttpServerCachePoolSize(BaseValues.DEFAULT_HTTP_SERVER_CACHE_POOL_SIZE);
+            fixed = true;
+        }
+        if (config.getHttpServerCacheQueueSize() == null) {
+            config.setHttpServerCacheQueueSize(BaseValues.DEFAULT_HTTP_SERVER_CACHE_QUEUE_SIZE);
+            fixed = true;
+        }
+        if (config.getHttpServerProxyPoolSize() == null) {
+            config.setHttpServerProxyPoolSize(BaseValues.DEFAULT_HTTP_SERVER_PROXY_POOL_SIZE);
+            fixed = true;
+        }
+        if (config.getHttpServerProxyQueueSize() == null) {
+            config.setHttpServerProxyQueueSize(BaseValues.DEFAULT_HTTP_SERVER_PROXY_QUEUE_SIZE);
+            fixed = true;
+        }
+        if (config.getHttpServerMsgPoolSize() == null) {
+            config.setHttpServerMsgPoolSize(BaseValues.DEFAULT_HTTP_SERVER_MSG_POOL_SIZE);
+            fixed = true;
+        }
+        if (config.getHttpServerMsgQueueSize() == null) {
+            config.setHttpServerMsgQueueSize(BaseValues.DEFAULT_HTTP_SERVER_MSG_QUEUE_SIZE);
+            fixed = true;
+        }
+        if (config.getHttpServerPairingPoolSize() == null) {
+            config.setHttpServerPairingPoolSize(BaseValues.DEFAULT_HTTP_SERVER_PAIRING_POOL_SIZE);
+            fixed = true;
+        }
+        if (config.getHttpServerPairingQueueSize() == null) {
+            config.setHttpServerPairingQueueSize(BaseValues.DEFAULT_HTTP_SERVER_PAIRING_QUEUE_SIZE);
+            fixed = true;
+        }
+
+        return fixed;
+    }
+
     public void markToUpdate() {
         setUpdateFlag(true);
     }
@@ -2,13 +2,16 @@ package io.knifer.freebox.helper;
 
 import cn.hutool.core.net.URLEncodeUtil;
 import cn.hutool.core.text.StrPool;
+import cn.hutool.http.HttpStatus;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.net.HttpHeaders;
 import io.knifer.freebox.constant.BaseResources;
 import io.knifer.freebox.constant.BaseValues;
+import io.knifer.freebox.constant.HttpProfile;
 import io.knifer.freebox.model.domain.ImageLoadingResult;
+import io.knifer.freebox.util.HttpUtil;
 import io.knifer.freebox.util.ValidationUtil;
 import javafx.scene.image.Image;
 import javafx.scene.image.PixelBuffer;
@@ -16,7 +19,6 @@ import javafx.scene.image.PixelFormat;
 import javafx.scene.image.WritableImage;
 import lombok.experimental.UtilityClass;
 import lombok.extern.slf4j.Slf4j;
-import okhttp3.*;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.jetbrains.annotations.NotNull;
@@ -27,11 +29,13 @@ import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferInt;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 import java.nio.IntBuffer;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.TimeUnit;
 
 /**
  * 图片加载
@@ -45,10 +49,10 @@ public class ImageHelper {
     private static final String PROXY_CDN_URL = "https://wsrv.nl/?url=";
     private static final ImageLoadingResult DEFAULT_RESULT =
             ImageLoadingResult.of(BaseResources.PICTURE_PLACEHOLDER_IMG, false);
-    private static final OkHttpClient CLIENT = new OkHttpClient.Builder()
-            .connectTimeout(5, TimeUnit.SECONDS)
-            .proxy(java.net.Proxy.NO_PROXY) // 不使用代理
-            .build();
+    /**
+     * 图片请求超时时间（秒），失败后尽快改用图片代理重试
+     */
+    private static final int REQUEST_TIMEOUT = 10;
     private static final Map<String, String> DEFAULT_HEADERS = Map.of(
             HttpHeaders.USER_AGENT, BaseValues.USER_AGENT
     );
@@ -79,7 +83,7 @@ public class ImageHelper {
             boolean isRetrying
     ) {
         Pair<String, Map<String, String>> fixedImageUrlAndHeaderMap;
-        Request request;
+        HttpRequest.Builder requestBuilder;
 
         if (!ValidationUtil.isURL(imageUrl)) {
             if (isRetrying) {
@@ -101,46 +105,53 @@ public class ImageHelper {
 
             return;
         }
-        request = new Request.Builder()
-                .url(imageUrl)
-                .headers(Headers.of(headers))
-                .build();
-        CLIENT.newCall(request)
-                .enqueue(new Callback() {
-                    @Override
-                    public void onResponse(@NotNull Call call, @NotNull Response response) {
-                        Image image;
-                        ByteArrayInputStream imageInputStream;
-
-                        try (response) {
-                            if (!response.isSuccessful()) {
-                                log.warn("download image failed, response={}", response);
-                                handleLoadImageFail(future, imageUrl, isRetrying);
-
-                                return;
-                            }
-                            imageInputStream = new ByteArrayInputStream(response.body().bytes());
-                            image = createImage(imageInputStream);
-                        } catch (IOException ex) {
-                            log.warn("read image failed: {}", imageUrl, ex);
-                            handleLoadImageFail(future, imageUrl, isRetrying);
-
-                            return;
-                        }
-                        if (image.getProgress() < 1.0 || image.isError()) {
-                            log.warn("load image failed: {}", imageUrl, image.getException());
-                            handleLoadImageFail(future, imageUrl, isRetrying);
-
-                            return;
-                        }
-                        future.complete(ImageLoadingResult.of(image, true));
-                    }
+        try {
+            requestBuilder = HttpUtil.newRequestBuilder(HttpProfile.IMAGE, imageUrl)
+                    .timeout(Duration.ofSeconds(REQUEST_TIMEOUT));
+        } catch (RuntimeException e) {
+            log.warn("invalid image url: {}", imageUrl, e);
+            handleLoadImageFail(future, imageUrl, isRetrying);
+
+            return;
+        }
+        headers.forEach((name, value) -> {
+            try {
+                requestBuilder.header(name, value);
+            } catch (IllegalArgumentException ignored) {
+                // HttpClient不允许设置的请求头
+            }
+        });
+        HttpUtil.sendAsync(HttpProfile.IMAGE, requestBuilder.build(), HttpResponse.BodyHandlers.ofByteArray())
+                .whenComplete((response, throwable) -> {
+                    Image image;
 
-                    @Override
-                    public void onFailure(@NotNull Call call, @NotNull IOException e) {
-                        log.warn("download image failed: {}", imageUrl, e);
+                    if (throwable != null) {
+                        log.warn("download image failed: {}", imageUrl, throwable);
                         handleLoadImageFail(future, imageUrl, true);
+
+                        return;
+                    }
+                    if (response.statusCode() >= HttpStatus.HTTP_BAD_REQUEST) {
+                        log.warn("download image failed, statusCode={}, url={}", response.statusCode(), imageUrl);
+                        handleLoadImageFail(future, imageUrl, isRetrying);
+
+                        return;
+                    }
+                    try {
+                        image = createImage(new ByteArrayInputStream(response.body()));
+                    } catch (IOException ex) {
+                        log.warn("read image failed: {}", imageUrl, ex);
+                        handleLoadImageFail(future, imageUrl, isRetrying);
+
+                        return;
+                    }
+                    if (image.getProgress() < 1.0 || image.isError()) {
+                        log.warn("load image failed: {}", imageUrl, image.getException());
+                        handleLoadImageFail(future, imageUrl, isRetrying);
+
+                        return;
                     }
+                    future.complete(ImageLoadingResult.of(image, true));
                 });
     }
 
@@ -21,7 +21,7 @@ public class StorageHelper {
 
     private final Path LOCAL_STORAGE_PATH;
     private final Path TEMP_STORAGE_PATH;
-    private final Path LIVE_CONFIG_CACHE_PATH;
+    private final Path HTTP_CACHE_PATH;
     private final Path SPIDER_CACHE_PATH;
     private final Filelizer filelizer;
 
@@ -43,7 +43,7 @@ public class StorageHelper {
             default:
                 throw new FBException("unsupported platform");
         }
-        LIVE_CONFIG_CACHE_PATH = LOCAL_STORAGE_PATH.resolve(Path.of("data", "live_cache"));
+        HTTP_CACHE_PATH = LOCAL_STORAGE_PATH.resolve(Path.of("data", "http_cache"));
         SPIDER_CACHE_PATH = LOCAL_STORAGE_PATH.resolve(Path.of("data", "spider_cache"));
         filelizer = new Filelizer(
                 LOCAL_STORAGE_PATH.resolve("data").toString()
@@ -58,6 +58,13 @@ public class StorageHelper {
         FileUtil.clean(TEMP_STORAGE_PATH.toString());
     }
 
+    /**
+     * 删除旧版本的直播源缓存目录（已由HTTP响应缓存取代）
+     */
+    public void clearLegacyLiveCache() {
+        FileUtil.del(LOCAL_STORAGE_PATH.resolve(Path.of("data", "live_cache")));
+    }
+
     public Path getLocalStoragePath() {
         return LOCAL_STORAGE_PATH;
     }
@@ -66,8 +73,8 @@ public class StorageHelper {
         return TEMP_STORAGE_PATH;
     }
 
-    public Path getLiveConfigCachePath() {
-        return LIVE_CONFIG_CACHE_PATH;
+    public Path getHttpCachePath() {
+        return HTTP_CACHE_PATH;
     }
 
     public Path getSpiderCachePath() {
@@ -23,4 +23,8 @@ public class SourceBean {
     public boolean isSearchable() {
         return searchable == 1;
     }
+
+    public boolean isQuickSearch() {
+        return quickSearch == 1;
+    }
 }
@@ -84,6 +84,99 @@ public class Config {
      */
     private Double adFilterDynamicThresholdFactor;
 
+    /**
+     * 缓存广告过滤结果（内存和临时目录），重新打开同一个视频时无需重新识别
+     */
+    private Boolean adFilterResultCache;
+
+    /**
+     * ts分片预读数量（仅对经过本地ts代理的分片生效）
+     * 0时禁用预读
+     */
+    private Integer tsPrefetchCount;
+
+    /**
+     * 码率上限（bit/s），主播放列表中超出上限的码率变体不会提供给播放器
+     * 0时不限制
+     */
+    private Long maxVariantBandwidth;
+
+    /**
+     * HTTP请求优先使用HTTP/2（服务器不支持时自动降级）
+     */
+    private Boolean httpPreferHttp2;
+
+    /**
+     * HTTP请求 - 每个主机的最大并发请求数
+     * 0时不限制
+     */
+    private Integer httpMaxConnectionsPerHost;
+
+    /**
+     * HTTP请求 - 连接超时时间（秒）
+     */
+    private Integer httpConnectTimeout;
+
+    /**
+     * HTTP请求 - 请求超时时间（秒）
+     */
+    private Integer httpRequestTimeout;
+
+    /**
+     * HTTP服务 - ts分片路由的最大并发数
+     */
+    private Integer httpServerTsPoolSize;
+
+    /**
+     * HTTP服务 - ts分片路由的最大排队数，超过后直接响应503
+     */
+    private Integer httpServerTsQueueSize;
+
+    /**
+     * HTTP服务 - 播放列表缓存路由的最大并发数
+     */
+    private Integer httpServerCachePoolSize;
+
+    /**
+     * HTTP服务 - 播放列表缓存路由的最大排队数，超过后直接响应503
+     */
+    private Integer httpServerCacheQueueSize;
+
+    /**
+     * HTTP服务 - 爬虫代理路由的最大并发数
+     */
+    private Integer httpServerProxyPoolSize;
+
+    /**
+     * HTTP服务 - 爬虫代理路由的最大排队数，超过后直接响应503
+     */
+    private Integer httpServerProxyQueueSize;
+
+    /**
+     * HTTP服务 - 消息路由的最大并发数
+     */
+    private Integer httpServerMsgPoolSize;
+
+    /**
+     * HTTP服务 - 消息路由的最大排队数，超过后直接响应503
+     */
+    private Integer httpServerMsgQueueSize;
+
+    /**
+     * HTTP服务 - 配对路由的最大并发数
+     */
+    private Integer httpServerPairingPoolSize;
+
+    /**
+     * HTTP服务 - 配对路由的最大排队数，超过后直接响应503
+     */
+    private Integer httpServerPairingQueueSize;
+
+    /**
+     * 加载配置后在后台预热爬虫（最后使用的源、可搜索的源）
+     */
+    private Boolean spiderWarmUp;
+
     /**
      * 播放器类型
      */
@@ -20,11 +20,27 @@ public class GetSearchContentDTO {
      */
     private String keyword;
 
+    /**
+     * 是否快速搜索
+     */
+    private boolean quick;
+
+    /**
+     * 页数，为空时获取第一页
+     */
+    private String page;
+
     public static GetSearchContentDTO of(String sourceKey, String keyword) {
+        return of(sourceKey, keyword, false, "1");
+    }
+
+    public static GetSearchContentDTO of(String sourceKey, String keyword, boolean quick, String page) {
         GetSearchContentDTO result = new GetSearchContentDTO();
 
         result.setSourceKey(sourceKey);
         result.setKeyword(keyword);
+        result.setQuick(quick);
+        result.setPage(page);
 
         return result;
     }
@@ -0,0 +1,84 @@
+package io.knifer.freebox.net.http.cache;
+
+import org.apache.commons.lang3.StringUtils;
+
+import javax.annotation.Nullable;
+import java.util.List;
+
+/**
+ * 响应的Cache-Control指令（RFC 9111、RFC 5861）
+ * 本地缓存属于私有缓存，忽略s-maxage、public、private等只对共享缓存有意义的指令
+ *
+ * @param noStore 不允许缓存
+ * @param noCache 可以缓存，但每次使用前都要向服务器确认
+ * @param mustRevalidate 过期后必须确认，不允许返回过期内容
+ * @param maxAge 新鲜期（秒）
+ * @param staleWhileRevalidate 过期后可以先返回缓存内容并在后台确认的时间（秒）
+ * @author Knifer
+ */
+record CacheControl(
+        boolean noStore,
+        boolean noCache,
+        boolean mustRevalidate,
+        @Nullable Long maxAge,
+        @Nullable Long staleWhileRevalidate
+) {
+
+    static final CacheControl EMPTY = new CacheControl(false, false, false, null, null);
+
+    /**
+     * 解析Cache-Control响应头，可能有多个
+     * @param values 响应头的值
+     * @return 指令
+     */
+    static CacheControl parse(List<String> values) {
+        boolean noStore = false;
+        boolean noCache = false;
+        boolean mustRevalidate = false;
+        Long maxAge = null;
+        Long staleWhileRevalidate = null;
+        String name;
+        String value;
+        int eqIdx;
+
+        if (values.isEmpty()) {
+
+            return EMPTY;
+        }
+        for (String headerValue : values) {
+            for (String directive : StringUtils.split(headerValue, ',')) {
+                directive = directive.strip();
+                eqIdx = directive.indexOf('=');
+                if (eqIdx == -1) {
+                    name = directive.toLowerCase();
+                    value = null;
+                } else {
+                    name = directive.substring(0, eqIdx).strip().toLowerCase();
+                    value = StringUtils.strip(directive.substring(eqIdx + 1).strip(), "\"");
+                }
+                switch (name) {
+                    case "no-store" -> noStore = true;
+                    case "no-cache" -> noCache = true;
+                    case "must-revalidate", "proxy-revalidate" -> mustRevalidate = true;
+                    case "max-age" -> maxAge = parseSeconds(value);
+                    case "stale-while-revalidate" -> staleWhileRevalidate = parseSeconds(value);
+                    default -> {}
+                }
+            }
+        }
+
+        return new CacheControl(noStore, noCache, mustRevalidate, maxAge, staleWhileRevalidate);
+    }
+
+    /**
+     * 解析秒数，无法解析时按0处理（RFC 9111 4.2.1：无效的新鲜期视为已过期）
+     */
+    private static long parseSeconds(@Nullable String value) {
+        try {
+            return value == null ? 0 : Math.max(Long.parseLong(value), 0);
+        } catch (NumberFormatException e) {
+
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package io.knifer.freebox.net.http.cache;
+
+import lombok.Data;
+
+import java.util.Map;
+
+/**
+ * HTTP响应缓存项（持久化为json）
+ *
+ * @author Knifer
+ */
+@Data
+public class HttpCacheEntry {
+
+    /**
+     * 缓存键，读取时用于校验，防止文件名摘要冲突
+     */
+    private String key;
+
+    private String etag;
+
+    private String lastModified;
+
+    /**
+     * 收到响应的时间（毫秒时间戳）
+     */
+    private long responseTime;
+
+    /**
+     * 收到响应时已经过的时间（秒），取Age响应头和Date响应头推算值中的较大者
+     */
+    private long initialAge;
+
+    /**
+     * 新鲜期（秒）
+     */
+    private long freshnessLifetime;
+
+    /**
+     * 过期后可以先返回缓存内容并在后台确认的时间（秒）
+     */
+    private long staleWhileRevalidate;
+
+    private boolean mustRevalidate;
+
+    /**
+     * Vary响应头列出的请求头（小写）及存储时的请求值，请求中没有该请求头时值为空字符串
+     */
+    private Map<String, String> varyHeaders;
+
+    private String body;
+
+    /**
+     * 当前已经过的时间（秒）
+     * @param now 当前时间（毫秒时间戳）
+     * @return 已经过的时间
+     */
+    public long getCurrentAge(long now) {
+        return initialAge + Math.max(now - responseTime, 0) / 1000;
+    }
+
+    public boolean isFresh(long now) {
+        return getCurrentAge(now) < freshnessLifetime;
+    }
+
+    /**
+     * 已过期但仍可先返回缓存内容、在后台确认
+     */
+    public boolean isStaleWhileRevalidate(long now) {
+        return !mustRevalidate && getCurrentAge(now) < freshnessLifetime + staleWhileRevalidate;
+    }
+}
@@ -0,0 +1,555 @@
+package io.knifer.freebox.net.http.cache;
+
+import cn.hutool.crypto.digest.DigestUtil;
+import cn.hutool.http.HttpStatus;
+import com.google.common.net.HttpHeaders;
+import io.knifer.freebox.constant.HttpCacheCategory;
+import io.knifer.freebox.helper.StorageHelper;
+import io.knifer.freebox.util.HttpUtil;
+import io.knifer.freebox.util.json.GsonUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+/**
+ * HTTP响应磁盘缓存（RFC 9111私有缓存）
+ * 只缓存GET请求的200响应，按Cache-Control（max-age、no-cache、no-store、must-revalidate）、Expires计算新鲜期，
+ * 没有声明时按Last-Modified推算（RFC 9111 4.2.2），再没有时使用分类的默认值；
+ * 过期后带ETag/Last-Modified发起条件请求，304时沿用缓存内容；
+ * 支持stale-while-revalidate（RFC 5861），网络错误或服务器错误时返回过期内容（must-revalidate除外）；
+ * 按Vary记录存储时的请求头，请求头不一致时不使用缓存（RFC 9111 4.1），Vary: *的响应不缓存；
+ * 每个分类单独限制磁盘占用，超出后按最近最少使用淘汰
+ *
+ * @author Knifer
+ */
+@Slf4j
+public class HttpResponseCache {
+
+    /**
+     * 按Last-Modified推算新鲜期时使用的比例
+     */
+    private static final double LAST_MODIFIED_FRESHNESS_FACTOR = 0.1;
+
+    private static final String ENTRY_FILE_SUFFIX = ".json";
+
+    private static final HttpResponseCache INSTANCE = new HttpResponseCache(
+            StorageHelper.getHttpCachePath()
+    );
+
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(2, r -> {
+        Thread t = new Thread(r, "HttpResponseCache");
+
+        t.setDaemon(true);
+
+        return t;
+    });
+
+    private final Map<HttpCacheCategory, CategoryIndex> indexes = new EnumMap<>(HttpCacheCategory.class);
+
+    /**
+     * 正在后台重新验证的缓存键，避免重复请求
+     */
+    private final Set<String> revalidatingKeys = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param rootPath 缓存根目录，每个分类使用其中的一个子目录
+     */
+    public HttpResponseCache(Path rootPath) {
+        for (HttpCacheCategory category : HttpCacheCategory.values()) {
+            indexes.put(category, new CategoryIndex(rootPath.resolve(category.getName()), category.getMaxBytes()));
+        }
+    }
+
+    public static HttpResponseCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 获取文本内容，优先使用缓存
+     * 与HttpUtil.getAsync一样，非200的响应也会返回响应体（但不会缓存）
+     * @param category 缓存分类
+     * @param url 地址
+     * @param headers 请求头（名称、值交替），参与缓存键的计算
+     * @return 响应体
+     */
+    public CompletableFuture<String> getAsync(HttpCacheCategory category, String url, String... headers) {
+        String key = createKey(url, headers);
+
+        return CompletableFuture.supplyAsync(() -> read(category, key), EXECUTOR)
+                .thenCompose(entry -> {
+                    long now = System.currentTimeMillis();
+
+                    if (entry == null || !matchesVary(entry, newRequestBuilder(url, headers).build().headers())) {
+
+                        return fetch(category, key, url, headers, null);
+                    }
+                    if (entry.isFresh(now)) {
+
+                        return CompletableFuture.completedFuture(entry.getBody());
+                    }
+                    if (entry.isStaleWhileRevalidate(now)) {
+                        revalidateInBackground(category, key, url, headers, entry);
+
+                        return CompletableFuture.completedFuture(entry.getBody());
+                    }
+
+                    return fetch(category, key, url, headers, entry);
+                });
+    }
+
+    public void clear(HttpCacheCategory category) {
+        indexes.get(category).clear();
+    }
+
+    public void clear() {
+        indexes.values().forEach(CategoryIndex::clear);
+    }
+
+    private static String createKey(String url, String... headers) {
+        return headers.length == 0 ? url : url + '\n' + String.join("\n", headers);
+    }
+
+    private static HttpRequest.Builder newRequestBuilder(String url, String[] headers) {
+        HttpRequest.Builder requestBuilder = HttpUtil.newRequestBuilder(url);
+
+        if (headers.length > 0) {
+            requestBuilder.headers(headers);
+        }
+
+        return requestBuilder;
+    }
+
+    /**
+     * 计算Vary响应头对应的请求头及其值
+     * @param respHeaders 响应头
+     * @param requestHeaders 请求头
+     * @return 请求头（小写）及其值，Vary: *时返回null（不能缓存）
+     */
+    @Nullable
+    private static Map<String, String> getVaryHeaders(
+            java.net.http.HttpHeaders respHeaders, java.net.http.HttpHeaders requestHeaders
+    ) {
+        Map<String, String> result = new TreeMap<>();
+        String name;
+
+        for (String value : respHeaders.allValues(HttpHeaders.VARY)) {
+            for (String field : value.split(",")) {
+                name = field.strip().toLowerCase();
+                if (name.isEmpty()) {
+                    continue;
+                }
+                if (name.equals("*")) {
+
+                    return null;
+                }
+                result.put(name, String.join(", ", requestHeaders.allValues(name)));
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * 判断请求头是否与缓存项存储时Vary列出的请求头一致
+     */
+    private static boolean matchesVary(HttpCacheEntry entry, java.net.http.HttpHeaders requestHeaders) {
+        Map<String, String> varyHeaders = entry.getVaryHeaders();
+
+        if (varyHeaders == null) {
+
+            return true;
+        }
+        for (Map.Entry<String, String> varyHeader : varyHeaders.entrySet()) {
+            if (!varyHeader.getValue().equals(String.join(", ", requestHeaders.allValues(varyHeader.getKey())))) {
+
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private void revalidateInBackground(
+            HttpCacheCategory category, String key, String url, String[] headers, HttpCacheEntry entry
+    ) {
+        if (!revalidatingKeys.add(key)) {
+
+            return;
+        }
+        fetch(category, key, url, headers, entry).whenComplete((body, throwable) -> {
+            revalidatingKeys.remove(key);
+            if (throwable != null) {
+                log.warn("revalidate http cache failed, url={}", url, throwable);
+            }
+        });
+    }
+
+    /**
+     * 发起请求，有缓存时发起条件请求
+     * @param entry 已有的缓存项（已过期）
+     */
+    private CompletableFuture<String> fetch(
+            HttpCacheCategory category, String key, String url, String[] headers, @Nullable HttpCacheEntry entry
+    ) {
+        HttpRequest.Builder requestBuilder = newRequestBuilder(url, headers);
+
+        if (entry != null) {
+            if (entry.getEtag() != null) {
+                requestBuilder.header(HttpHeaders.IF_NONE_MATCH, entry.getEtag());
+            }
+            if (entry.getLastModified() != null) {
+                requestBuilder.header(HttpHeaders.IF_MODIFIED_SINCE, entry.getLastModified());
+            }
+        }
+
+        return HttpUtil.sendAsync(requestBuilder.build(), HttpUtil.ofDecodedString())
+                .handle((resp, throwable) -> {
+                    int statusCode;
+
+                    if (throwable != null) {
+                        if (entry != null && !entry.isMustRevalidate()) {
+                            log.warn("request failed, use stale http cache, url={}", url, throwable);
+
+                            return entry.getBody();
+                        }
+
+                        throw throwable instanceof CompletionException completionException ?
+                                completionException : new CompletionException(throwable);
+                    }
+                    statusCode = resp.statusCode();
+                    if (statusCode == HttpStatus.HTTP_NOT_MODIFIED && entry != null) {
+                        // 沿用缓存内容，按304响应头更新新鲜期（RFC 9111 4.3.4）
+                        updateFreshness(category, entry, resp, entry.getEtag(), entry.getLastModified());
+                        write(category, entry);
+
+                        return entry.getBody();
+                    }
+                    if (statusCode == HttpStatus.HTTP_OK) {
+                        store(category, key, resp);
+
+                        return resp.body();
+                    }
+                    if (statusCode >= HttpStatus.HTTP_INTERNAL_ERROR && entry != null && !entry.isMustRevalidate()) {
+                        log.warn("server error {}, use stale http cache, url={}", statusCode, url);
+
+                        return entry.getBody();
+                    }
+
+                    return resp.body();
+                });
+    }
+
+    private void store(HttpCacheCategory category, String key, HttpResponse<String> resp) {
+        java.net.http.HttpHeaders respHeaders = resp.headers();
+        CacheControl cacheControl = CacheControl.parse(respHeaders.allValues(HttpHeaders.CACHE_CONTROL));
+        Map<String, String> varyHeaders = getVaryHeaders(respHeaders, resp.request().headers());
+        HttpCacheEntry entry;
+
+        if (cacheControl.noStore() || varyHeaders == null || resp.body() == null) {
+            indexes.get(category).delete(getEntryFileName(key));
+
+            return;
+        }
+        entry = new HttpCacheEntry();
+        entry.setKey(key);
+        entry.setBody(resp.body());
+        entry.setVaryHeaders(varyHeaders);
+        updateFreshness(
+                category,
+                entry,
+                resp,
+                respHeaders.firstValue(HttpHeaders.ETAG).orElse(null),
+                respHeaders.firstValue(HttpHeaders.LAST_MODIFIED).orElse(null)
+        );
+        write(category, entry);
+    }
+
+    /**
+     * 按响应头更新缓存项的验证器和新鲜期
+     */
+    private void updateFreshness(
+            HttpCacheCategory category,
+            HttpCacheEntry entry,
+            HttpResponse<?> resp,
+            @Nullable String defaultEtag,
+            @Nullable String defaultLastModified
+    ) {
+        java.net.http.HttpHeaders respHeaders = resp.headers();
+        CacheControl cacheControl = CacheControl.parse(respHeaders.allValues(HttpHeaders.CACHE_CONTROL));
+        long now = System.currentTimeMillis();
+        Long date = parseHttpDate(respHeaders.firstValue(HttpHeaders.DATE).orElse(null));
+        String etag = respHeaders.firstValue(HttpHeaders.ETAG).orElse(defaultEtag);
+        String lastModified = respHeaders.firstValue(HttpHeaders.LAST_MODIFIED).orElse(defaultLastModified);
+        long ageValue = NumberUtils.toLong(respHeaders.firstValue(HttpHeaders.AGE).orElse(null), 0);
+        long apparentAge = date == null ? 0 : Math.max(now - date, 0) / 1000;
+
+        entry.setEtag(etag);
+        entry.setLastModified(lastModified);
+        entry.setResponseTime(now);
+        entry.setInitialAge(Math.max(apparentAge, Math.max(ageValue, 0)));
+        entry.setFreshnessLifetime(
+                cacheControl.noCache() ?
+                        0 : getFreshnessLifetime(category, cacheControl, respHeaders, date, lastModified, now)
+        );
+        entry.setStaleWhileRevalidate(
+                cacheControl.staleWhileRevalidate() == null ?
+                        category.getDefaultStaleWhileRevalidateSeconds() : cacheControl.staleWhileRevalidate()
+        );
+        entry.setMustRevalidate(cacheControl.mustRevalidate() || cacheControl.noCache());
+    }
+
+    /**
+     * 计算新鲜期（RFC 9111 4.2.1）
+     */
+    private long getFreshnessLifetime(
+            HttpCacheCategory category,
+            CacheControl cacheControl,
+            java.net.http.HttpHeaders respHeaders,
+            @Nullable Long date,
+            @Nullable String lastModified,
+            long now
+    ) {
+        String expiresValue;
+        Long expires;
+        Long lastModifiedTime;
+        long baseTime = date == null ? now : date;
+
+        if (cacheControl.maxAge() != null) {
+
+            return cacheControl.maxAge();
+        }
+        expiresValue = respHeaders.firstValue(HttpHeaders.EXPIRES).orElse(null);
+        if (expiresValue != null) {
+            expires = parseHttpDate(expiresValue);
+
+            // 无效的Expires（如"0"）视为已过期
+            return expires == null ? 0 : Math.max(expires - baseTime, 0) / 1000;
+        }
+        lastModifiedTime = parseHttpDate(lastModified);
+        if (lastModifiedTime != null && lastModifiedTime < baseTime) {
+
+            return Math.min(
+                    (long) ((baseTime - lastModifiedTime) / 1000 * LAST_MODIFIED_FRESHNESS_FACTOR),
+                    category.getDefaultMaxAgeSeconds()
+            );
+        }
+
+        return category.getDefaultMaxAgeSeconds();
+    }
+
+    @Nullable
+    private static Long parseHttpDate(@Nullable String value) {
+        if (StringUtils.isBlank(value)) {
+
+            return null;
+        }
+        try {
+            return ZonedDateTime.parse(value.strip(), DateTimeFormatter.RFC_1123_DATE_TIME)
+                    .toInstant()
+                    .toEpochMilli();
+        } catch (DateTimeParseException e) {
+
+            return null;
+        }
+    }
+
+    @Nullable
+    private HttpCacheEntry read(HttpCacheCategory category, String key) {
+        String fileName = getEntryFileName(key);
+        String content = indexes.get(category).read(fileName);
+        HttpCacheEntry entry;
+
+        if (content == null) {
+
+            return null;
+        }
+        try {
+            entry = GsonUtil.fromJson(content, HttpCacheEntry.class);
+        } catch (Exception e) {
+            log.warn("parse http cache failed, category={}, file={}", category, fileName, e);
+            indexes.get(category).delete(fileName);
+
+            return null;
+        }
+
+        return entry != null && key.equals(entry.getKey()) ? entry : null;
+    }
+
+    private void write(HttpCacheCategory category, HttpCacheEntry entry) {
+        indexes.get(category).write(getEntryFileName(entry.getKey()), GsonUtil.toJson(entry));
+    }
+
+    private static String getEntryFileName(String key) {
+        return DigestUtil.md5Hex(key) + ENTRY_FILE_SUFFIX;
+    }
+
+    /**
+     * 单个分类的磁盘索引，记录文件大小和访问顺序
+     * 首次使用时按文件修改时间恢复访问顺序，读取时更新文件修改时间，重启后淘汰顺序不变
+     */
+    private static class CategoryIndex {
+
+        private final Path path;
+
+        private final long maxBytes;
+
+        private final LinkedHashMap<String, Long> fileSizes = new LinkedHashMap<>(16, 0.75f, true);
+
+        private long totalBytes;
+
+        private boolean loaded;
+
+        private CategoryIndex(Path path, long maxBytes) {
+            this.path = path;
+            this.maxBytes = maxBytes;
+        }
+
+        @Nullable
+        private synchronized String read(String fileName) {
+            Path file = path.resolve(fileName);
+            String content;
+
+            load();
+            if (!fileSizes.containsKey(fileName)) {
+
+                return null;
+            }
+            try {
+                content = Files.readString(file, StandardCharsets.UTF_8);
+                Files.setLastModifiedTime(file, FileTime.from(Instant.now()));
+            } catch (IOException e) {
+                log.warn("read http cache failed, file={}", file, e);
+                remove(fileName);
+
+                return null;
+            }
+            // 更新访问顺序
+            fileSizes.get(fileName);
+
+            return content;
+        }
+
+        private synchronized void write(String fileName, String content) {
+            Path file = path.resolve(fileName);
+            byte[] data = content.getBytes(StandardCharsets.UTF_8);
+
+            load();
+            if (data.length > maxBytes) {
+                delete(fileName);
+
+                return;
+            }
+            try {
+                Files.createDirectories(path);
+                Files.write(file, data);
+            } catch (IOException e) {
+                log.warn("write http cache failed, file={}", file, e);
+
+                return;
+            }
+            remove(fileName);
+            fileSizes.put(fileName, (long) data.length);
+            totalBytes += data.length;
+            evict();
+        }
+
+        private synchronized void delete(String fileName) {
+            load();
+            remove(fileName);
+            deleteQuietly(path.resolve(fileName));
+        }
+
+        private synchronized void clear() {
+            load();
+            fileSizes.keySet().forEach(fileName -> deleteQuietly(path.resolve(fileName)));
+            fileSizes.clear();
+            totalBytes = 0;
+        }
+
+        private void load() {
+            List<Path> files;
+
+            if (loaded) {
+
+                return;
+            }
+            loaded = true;
+            if (!Files.isDirectory(path)) {
+
+                return;
+            }
+            try (Stream<Path> fileStream = Files.list(path)) {
+                files = fileStream.filter(file -> file.getFileName().toString().endsWith(ENTRY_FILE_SUFFIX))
+                        .sorted(Comparator.comparingLong(file -> file.toFile().lastModified()))
+                        .toList();
+            } catch (IOException e) {
+                log.warn("list http cache failed, path={}", path, e);
+
+                return;
+            }
+            for (Path file : files) {
+                fileSizes.put(file.getFileName().toString(), file.toFile().length());
+                totalBytes += file.toFile().length();
+            }
+            evict();
+        }
+
+        private void remove(String fileName) {
+            Long size = fileSizes.remove(fileName);
+
+            if (size != null) {
+                totalBytes -= size;
+            }
+        }
+
+        /**
+         * 超出上限时删除最近最少使用的文件
+         */
+        private void evict() {
+            Iterator<Map.Entry<String, Long>> iterator = fileSizes.entrySet().iterator();
+            Map.Entry<String, Long> eldest;
+
+            while (totalBytes > maxBytes && iterator.hasNext()) {
+                eldest = iterator.next();
+                iterator.remove();
+                totalBytes -= eldest.getValue();
+                deleteQuietly(path.resolve(eldest.getKey()));
+            }
+        }
+
+        private static void deleteQuietly(Path file) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn("delete http cache failed, file={}", file, e);
+            }
+        }
+    }
+}
@@ -3,10 +3,14 @@ package io.knifer.freebox.net.http.handler;
 import cn.hutool.core.collection.CollUtil;
 import cn.hutool.core.net.Ipv4Util;
 import cn.hutool.http.HttpStatus;
+import com.google.common.net.HttpHeaders;
+import com.sun.net.httpserver.Headers;
 import com.sun.net.httpserver.HttpExchange;
 import io.knifer.freebox.constant.BaseValues;
 import io.knifer.freebox.constant.CacheKeys;
 import io.knifer.freebox.helper.CacheHelper;
+import io.knifer.freebox.net.http.proxy.ProxySession;
+import io.knifer.freebox.net.http.proxy.ProxySessionManager;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 
@@ -15,6 +19,8 @@ import java.util.Map;
 
 /**
  * 用于本地代理获取缓存数据
+ * 路径格式：/proxy-cache/{会话ID}/{播放列表名称}，不含会话ID时从CacheHelper中读取
+ * 会话中的直播播放列表每次被请求时都会尝试从上游获取新分片
  */
 @Slf4j
 public class ProxyCacheHandler implements HttpHandler{
@@ -28,24 +34,70 @@ public class ProxyCacheHandler implements HttpHandler{
     @Override
     public void handle(HttpExchange httpExchange) {
         String pathParam = StringUtils.substringAfter(httpExchange.getRequestURI().getPath(), "/proxy-cache/");
-        String cacheVal = CacheHelper.get(pathParam);
-        Map<String, List<String>> proxyRespHeaders;
-        byte[] respData;
 
         try (httpExchange) {
-            if (cacheVal == null) {
-                httpExchange.sendResponseHeaders(HttpStatus.HTTP_NOT_FOUND, -1);
+            if (pathParam.contains("/")) {
+                handleSessionPlaylist(httpExchange, pathParam);
             } else {
-                respData = cacheVal.getBytes();
-                proxyRespHeaders = CacheHelper.get(CacheKeys.PROXY_CACHE_HTTP_HEADERS + pathParam);
-                if (CollUtil.isNotEmpty(proxyRespHeaders)) {
-                    httpExchange.getResponseHeaders().putAll(proxyRespHeaders);
-                }
-                httpExchange.sendResponseHeaders(HttpStatus.HTTP_OK, respData.length);
-                httpExchange.getResponseBody().write(respData);
+                handleCacheValue(httpExchange, pathParam);
             }
         } catch (Exception e) {
             log.error("handle /proxy-cache failed, pathParam={}", pathParam, e);
         }
     }
+
+    private void handleSessionPlaylist(HttpExchange httpExchange, String pathParam) throws Exception {
+        String sessionId = StringUtils.substringBefore(pathParam, "/");
+        String playlistName = StringUtils.substringAfter(pathParam, "/");
+        ProxySession session = ProxySessionManager.getInstance().get(sessionId);
+        ProxySession.CachedPlaylist playlist;
+        Headers respHeaders;
+        byte[] respData;
+
+        if (session == null) {
+            httpExchange.sendResponseHeaders(HttpStatus.HTTP_NOT_FOUND, -1);
+
+            return;
+        }
+        // 直播播放列表在播放器每次重新加载时于后台刷新，本次返回上一次的内容
+        session.refreshLivePlaylist(playlistName);
+        playlist = session.getPlaylist(playlistName);
+        if (playlist == null) {
+            httpExchange.sendResponseHeaders(HttpStatus.HTTP_NOT_FOUND, -1);
+
+            return;
+        }
+        respHeaders = httpExchange.getResponseHeaders();
+        if (CollUtil.isNotEmpty(session.getHeaders())) {
+            respHeaders.putAll(session.getHeaders());
+        }
+        respHeaders.set(HttpHeaders.ETAG, playlist.etag());
+        respHeaders.set(HttpHeaders.CACHE_CONTROL, "no-cache");
+        if (playlist.etag().equals(httpExchange.getRequestHeaders().getFirst(HttpHeaders.IF_NONE_MATCH))) {
+            httpExchange.sendResponseHeaders(HttpStatus.HTTP_NOT_MODIFIED, -1);
+
+            return;
+        }
+        respData = playlist.data();
+        httpExchange.sendResponseHeaders(HttpStatus.HTTP_OK, respData.length);
+        httpExchange.getResponseBody().write(respData);
+    }
+
+    private void handleCacheValue(HttpExchange httpExchange, String pathParam) throws Exception {
+        String cacheVal = CacheHelper.get(pathParam);
+        Map<String, List<String>> proxyRespHeaders;
+        byte[] respData;
+
+        if (cacheVal == null) {
+            httpExchange.sendResponseHeaders(HttpStatus.HTTP_NOT_FOUND, -1);
+        } else {
+            respData = cacheVal.getBytes();
+            proxyRespHeaders = CacheHelper.get(CacheKeys.PROXY_CACHE_HTTP_HEADERS + pathParam);
+            if (CollUtil.isNotEmpty(proxyRespHeaders)) {
+                httpExchange.getResponseHeaders().putAll(proxyRespHeaders);
+            }
+            httpExchange.sendResponseHeaders(HttpStatus.HTTP_OK, respData.length);
+            httpExchange.getResponseBody().write(respData);
+        }
+    }
 }
@@ -5,11 +5,15 @@ import com.google.common.base.Charsets;
 import com.google.common.net.HttpHeaders;
 import com.sun.net.httpserver.HttpExchange;
 import io.knifer.freebox.constant.BaseValues;
+import io.knifer.freebox.net.http.proxy.ByteRange;
 import io.knifer.freebox.spider.SpiderJarLoader;
 import lombok.extern.slf4j.Slf4j;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
 import okhttp3.Response;
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -26,6 +30,11 @@ import java.util.stream.Collectors;
 @Slf4j
 public class ProxyHandler implements HttpHandler {
 
+    /**
+     * 带上Range重新请求上游时使用的客户端
+     */
+    private static final OkHttpClient RANGE_CLIENT = new OkHttpClient();
+
     @Override
     public boolean support(HttpExchange httpExchange) {
         return BaseValues.HTTP_GET.equalsIgnoreCase(httpExchange.getRequestMethod()) &&
@@ -42,8 +51,8 @@ public class ProxyHandler implements HttpHandler {
             log.info("parameters: {}, spider proxyInvoke result: {}", parameterMap, proxyInvokeResult);
             if (ArrayUtils.isEmpty(proxyInvokeResult)) {
                 httpExchange.sendResponseHeaders(HttpStatus.HTTP_INTERNAL_ERROR, -1);
-            } else if (proxyInvokeResult[0] instanceof Response proxyResp) {
-                try (proxyResp) {
+            } else if (proxyInvokeResult[0] instanceof Response spiderResp) {
+                try (Response proxyResp = forwardRangeIfNeeded(httpExchange, spiderResp)) {
                     proxyResp.headers().forEach(nameValPair -> {
                         String name = nameValPair.getFirst();
 
@@ -55,8 +64,12 @@ public class ProxyHandler implements HttpHandler {
                                 name, List.of(nameValPair.getSecond())
                         );
                     });
-                    httpExchange.sendResponseHeaders(proxyResp.code(), proxyResp.body().contentLength());
-                    proxyResp.body().byteStream().transferTo(httpExchange.getResponseBody());
+                    sendBody(
+                            httpExchange,
+                            proxyResp.code(),
+                            proxyResp.body().contentLength(),
+                            proxyResp.body().byteStream()
+                    );
                 }
             } else {
                 try {
@@ -80,8 +93,14 @@ public class ProxyHandler implements HttpHandler {
                                 }
                             }
                         }
-                        httpExchange.sendResponseHeaders(code, 0);
-                        input.transferTo(httpExchange.getResponseBody());
+                        sendBody(
+                                httpExchange,
+                                code,
+                                NumberUtils.toLong(
+                                        httpExchange.getResponseHeaders().getFirst(HttpHeaders.CONTENT_LENGTH), -1
+                                ),
+                                input
+                        );
 
                         return;
                     } catch (ClassCastException ignored) {}
@@ -95,6 +114,58 @@ public class ProxyHandler implements HttpHandler {
         }
     }
 
+    /**
+     * 客户端请求了Range，而爬虫返回的上游响应是完整内容时，带上Range重新请求上游，由上游返回206
+     * @param httpExchange exchange
+     * @param spiderResp 爬虫返回的上游响应
+     * @return 需要转发的响应，无需重新请求或重新请求失败时返回原响应
+     */
+    private Response forwardRangeIfNeeded(HttpExchange httpExchange, Response spiderResp) {
+        String range = httpExchange.getRequestHeaders().getFirst(HttpHeaders.RANGE);
+        Request request = spiderResp.request();
+        Response rangeResp;
+
+        if (
+                ByteRange.parse(range) == null ||
+                spiderResp.code() != HttpStatus.HTTP_OK ||
+                request.header(HttpHeaders.RANGE) != null ||
+                !BaseValues.HTTP_GET.equalsIgnoreCase(request.method())
+        ) {
+
+            return spiderResp;
+        }
+        try {
+            rangeResp = RANGE_CLIENT.newCall(request.newBuilder().header(HttpHeaders.RANGE, range).build()).execute();
+        } catch (IOException e) {
+            log.info("forward range failed, url={}", request.url(), e);
+
+            return spiderResp;
+        }
+        if (rangeResp.code() >= HttpStatus.HTTP_BAD_REQUEST) {
+            log.info("forward range failed, statusCode={}, url={}", rangeResp.code(), request.url());
+            rangeResp.close();
+
+            return spiderResp;
+        }
+        spiderResp.close();
+
+        return rangeResp;
+    }
+
+    /**
+     * 原样转发爬虫返回的响应体
+     * @param httpExchange exchange
+     * @param code 状态码
+     * @param contentLength 内容长度，未知时为-1（使用分块传输）
+     * @param input 响应体
+     */
+    private void sendBody(
+            HttpExchange httpExchange, int code, long contentLength, InputStream input
+    ) throws IOException {
+        httpExchange.sendResponseHeaders(code, Math.max(contentLength, 0));
+        input.transferTo(httpExchange.getResponseBody());
+    }
+
     private Map<String, String> parseParameterMap(HttpExchange exchange) {
         Map<String, String> result;
         String[] entry;
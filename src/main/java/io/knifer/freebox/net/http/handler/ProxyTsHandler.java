@@ -2,33 +2,49 @@ package io.knifer.freebox.net.http.handler;
 
 import cn.hutool.http.HttpStatus;
 import com.google.common.net.HttpHeaders;
+import com.sun.net.httpserver.Headers;
 import com.sun.net.httpserver.HttpExchange;
 import io.knifer.freebox.constant.BaseValues;
+import io.knifer.freebox.constant.HttpProfile;
+import io.knifer.freebox.net.http.proxy.ByteRange;
+import io.knifer.freebox.net.http.proxy.ProxySession;
+import io.knifer.freebox.net.http.proxy.ProxySessionManager;
+import io.knifer.freebox.net.http.proxy.ThroughputMeter;
 import io.knifer.freebox.util.HttpUtil;
 import io.knifer.freebox.util.ValidationUtil;
+import io.knifer.freebox.util.hls.TsUtil;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URI;
-import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
-import java.time.Duration;
-
-import io.knifer.freebox.constant.CacheKeys;
-import io.knifer.freebox.helper.CacheHelper;
-import java.util.List;
-import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * ts分片代理
  * 用于ts分片有非标准文件头的情况
+ * 只预读分片开头的少量字节，跳过第一个MPEG-TS同步字节（0x47）之前的无用数据（如伪装的PNG头），其余数据直接流式转发给播放器
+ * 路径格式：/proxy/ts/{会话ID}/{ts地址}，会话ID可省略（此时不携带上游请求头，也不使用预读）
+ * 支持Range请求（如EXT-X-BYTERANGE）：区间坐标以上游原始数据为准，分片已在预读池中时直接从中截取，否则把Range转发给上游；
+ * 区间响应按请求原样返回，不做修复，只有从头开始的完整响应（200）才跳过无用数据，此时不再声明支持Range
  * @author Knifer
  */
 @Slf4j
 public class ProxyTsHandler implements HttpHandler {
 
-    private static final byte[] WRONG_HEADER = { (byte) 0x89, 0x50, 0x4E, 0x47, 0x0D, 0x0A, 0x1A, 0x0A };
+    /**
+     * 预读字节数，只在这个范围内寻找同步字节
+     */
+    private static final int PEEK_SIZE = 8192;
+    /**
+     * 等待预读分片的超时时间
+     */
+    private static final int PREFETCH_WAIT_TIMEOUT = 15;
 
     @Override
     public boolean support(HttpExchange httpExchange) {
@@ -38,71 +54,179 @@ public class ProxyTsHandler implements HttpHandler {
 
     @Override
     public void handle(HttpExchange httpExchange) {
-        String tsUrl = StringUtils.substringAfter(httpExchange.getRequestURI().getPath(), "/proxy/ts/");
-        byte[] data = ValidationUtil.isURL(tsUrl) ? fixTSHeader(tsUrl) : ArrayUtils.EMPTY_BYTE_ARRAY;
+        URI uri = httpExchange.getRequestURI();
+        String rawQuery = uri.getRawQuery();
+        String tsUrl = StringUtils.substringAfter(uri.getRawPath(), "/proxy/ts/");
+        ProxySession session = null;
+        ByteRange range;
 
+        if (!tsUrl.startsWith("http")) {
+            session = ProxySessionManager.getInstance().get(StringUtils.substringBefore(tsUrl, "/"));
+            tsUrl = StringUtils.substringAfter(tsUrl, "/");
+        }
+        if (rawQuery != null) {
+            tsUrl = tsUrl + "?" + rawQuery;
+        }
+        range = ByteRange.parse(httpExchange.getRequestHeaders().getFirst(HttpHeaders.RANGE));
         try (httpExchange) {
-            httpExchange.getResponseHeaders().add(HttpHeaders.CONTENT_TYPE, "video/MP2T");
-            httpExchange.sendResponseHeaders(HttpStatus.HTTP_OK, data.length);
-            httpExchange.getResponseBody().write(data);
+            if (!ValidationUtil.isURL(tsUrl)) {
+                httpExchange.sendResponseHeaders(HttpStatus.HTTP_BAD_REQUEST, -1);
+
+                return;
+            }
+            if (session != null && sendPrefetchedTs(session, tsUrl, range, httpExchange)) {
+
+                return;
+            }
+            streamFixedTs(session, tsUrl, range, httpExchange);
         } catch (Exception e) {
             log.warn("send response failed", e);
         }
     }
 
-    @SuppressWarnings("unchecked")
-    private byte[] fixTSHeader(String tsUrl) {
-        HttpRequest.Builder requestBuilder;
+    /**
+     * 尝试从预读池中获取分片并发送
+     * @param session 代理会话
+     * @param tsUrl ts分片地址
+     * @param range 请求区间，可为null
+     * @param httpExchange exchange
+     * @return 是否已发送
+     */
+    private boolean sendPrefetchedTs(
+            ProxySession session, String tsUrl, @Nullable ByteRange range, HttpExchange httpExchange
+    ) throws IOException {
+        CompletableFuture<byte[]> future = session.getPrefetcher().take(tsUrl);
         byte[] data;
-        boolean needFix;
-        byte[] fixedData;
-        Map<String, List<String>> headers;
+        long[] bounds;
+        int start;
+        int end;
+        int syncOffset;
+        Headers respHeaders;
+
+        if (future == null) {
 
+            return false;
+        }
         try {
-            requestBuilder = HttpRequest.newBuilder()
-                    .uri(URI.create(tsUrl))
-                    .header(HttpHeaders.USER_AGENT, BaseValues.USER_AGENT)
-                    .header("Accept", "*/*")
-                    .timeout(Duration.ofSeconds(10))
-                    .GET();
-            headers = (Map<String, List<String>>) CacheHelper.get(
-                    CacheKeys.PROXY_CACHE_HTTP_HEADERS + CacheKeys.AD_FILTERED_M3U8
-            );
-            if (headers != null) {
-                headers.forEach((k, v) -> {
-                    if (StringUtils.isNotBlank(k) && !v.isEmpty()) {
-                        requestBuilder.header(k, v.get(0));
-                    }
-                });
-            }
-            data = HttpUtil.getClient()
-                    .send(requestBuilder.build(), HttpResponse.BodyHandlers.ofByteArray())
-                    .body();
+            data = future.get(PREFETCH_WAIT_TIMEOUT, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            return false;
         } catch (Exception e) {
-            log.info("fetch ts content failed", e);
+            log.info("prefetched ts unavailable, fallback to direct fetch, url={}", tsUrl);
+
+            return false;
+        }
+        respHeaders = httpExchange.getResponseHeaders();
+        respHeaders.add(HttpHeaders.CONTENT_TYPE, "video/MP2T");
+        if (range == null) {
+            syncOffset = TsUtil.findSyncOffset(data, Math.min(data.length, PEEK_SIZE));
+            if (syncOffset == 0) {
+                respHeaders.add(HttpHeaders.ACCEPT_RANGES, "bytes");
+            }
+            httpExchange.sendResponseHeaders(HttpStatus.HTTP_OK, data.length - syncOffset);
+            httpExchange.getResponseBody().write(data, syncOffset, data.length - syncOffset);
 
-            return ArrayUtils.EMPTY_BYTE_ARRAY;
+            return true;
         }
-        if (data == null) {
+        respHeaders.add(HttpHeaders.ACCEPT_RANGES, "bytes");
+        bounds = range.resolve(data.length);
+        if (bounds == null) {
+            respHeaders.add(HttpHeaders.CONTENT_RANGE, "bytes */" + data.length);
+            httpExchange.sendResponseHeaders(ByteRange.HTTP_RANGE_NOT_SATISFIABLE, -1);
 
-            return ArrayUtils.EMPTY_BYTE_ARRAY;
+            return true;
         }
-        if (data.length >= 8) {
-            needFix = true;
-            for (int i = 0; i < 8; i++) {
-                if (data[i] != WRONG_HEADER[i]) {
-                    needFix = false;
-                    break;
+        start = (int) bounds[0];
+        end = (int) bounds[1];
+        respHeaders.add(HttpHeaders.CONTENT_RANGE, ByteRange.contentRange(start, end, data.length));
+        httpExchange.sendResponseHeaders(HttpStatus.HTTP_PARTIAL, end - start + 1);
+        httpExchange.getResponseBody().write(data, start, end - start + 1);
+
+        return true;
+    }
+
+    /**
+     * 流式代理ts分片，同时修复文件头
+     * @param session 代理会话，可为null
+     * @param tsUrl ts分片地址
+     * @param range 请求区间，可为null
+     * @param httpExchange exchange
+     */
+    private void streamFixedTs(
+            @Nullable ProxySession session, String tsUrl, @Nullable ByteRange range, HttpExchange httpExchange
+    ) throws IOException {
+        HttpResponse<InputStream> resp;
+        int statusCode;
+        byte[] peekData;
+        int syncOffset;
+        long contentLength;
+        Headers respHeaders;
+        OutputStream output;
+        long startNanos = System.nanoTime();
+        long transferred;
+
+        try {
+            resp = HttpUtil.send(
+                    HttpProfile.SEGMENT,
+                    TsUtil.newSegmentRequest(
+                            tsUrl,
+                            session == null ? null : session.getHeaders(),
+                            range == null ? null : range.toHeaderValue()
+                    ),
+                    HttpResponse.BodyHandlers.ofInputStream()
+            );
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            httpExchange.sendResponseHeaders(HttpStatus.HTTP_BAD_GATEWAY, -1);
+
+            return;
+        } catch (IOException e) {
+            log.info("fetch ts content failed", e);
+            httpExchange.sendResponseHeaders(HttpStatus.HTTP_BAD_GATEWAY, -1);
+
+            return;
+        }
+        respHeaders = httpExchange.getResponseHeaders();
+        try (InputStream input = resp.body()) {
+            statusCode = resp.statusCode();
+            if (statusCode >= HttpStatus.HTTP_BAD_REQUEST) {
+                log.info("fetch ts content failed, statusCode={}, url={}", statusCode, tsUrl);
+                resp.headers()
+                        .firstValue(HttpHeaders.CONTENT_RANGE)
+                        .ifPresent(val -> respHeaders.add(HttpHeaders.CONTENT_RANGE, val));
+                httpExchange.sendResponseHeaders(statusCode, -1);
+
+                return;
+            }
+            peekData = input.readNBytes(PEEK_SIZE);
+            contentLength = resp.headers().firstValueAsLong(HttpHeaders.CONTENT_LENGTH).orElse(-1);
+            respHeaders.add(HttpHeaders.CONTENT_TYPE, "video/MP2T");
+            if (statusCode == HttpStatus.HTTP_PARTIAL) {
+                // 区间响应原样转发，坐标与上游一致
+                syncOffset = 0;
+                respHeaders.add(HttpHeaders.ACCEPT_RANGES, "bytes");
+                resp.headers()
+                        .firstValue(HttpHeaders.CONTENT_RANGE)
+                        .ifPresent(val -> respHeaders.add(HttpHeaders.CONTENT_RANGE, val));
+            } else {
+                // 从头开始的完整响应（包括上游忽略了Range的情况），跳过无用数据
+                syncOffset = TsUtil.findSyncOffset(peekData, peekData.length);
+                if (syncOffset == 0) {
+                    respHeaders.add(HttpHeaders.ACCEPT_RANGES, "bytes");
                 }
             }
-            if (needFix) {
-                fixedData = new byte[data.length - 8];
-                System.arraycopy(data, 8, fixedData, 0, fixedData.length);
-
-                return fixedData;
+            if (contentLength > syncOffset) {
+                httpExchange.sendResponseHeaders(statusCode, contentLength - syncOffset);
+            } else {
+                // 上游未给出长度，使用分块传输
+                httpExchange.sendResponseHeaders(statusCode, 0);
             }
+            output = httpExchange.getResponseBody();
+            output.write(peekData, syncOffset, peekData.length - syncOffset);
+            transferred = peekData.length + input.transferTo(output);
+            ThroughputMeter.getInstance().record(transferred, System.nanoTime() - startNanos);
         }
-
-        return data;
     }
 }
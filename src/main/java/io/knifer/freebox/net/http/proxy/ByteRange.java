@@ -0,0 +1,120 @@
+package io.knifer.freebox.net.http.proxy;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+
+import javax.annotation.Nullable;
+
+/**
+ * HTTP Range请求头（只支持单个区间）
+ * 例：bytes=0-499 -> first=0, last=499；bytes=500- -> first=500, last=-1；bytes=-500 -> first=-1, last=500（末尾500字节）
+ *
+ * @param first 起始位置，-1表示后缀区间
+ * @param last 结束位置（包含），-1表示直到末尾；后缀区间时表示后缀长度
+ * @author Knifer
+ */
+public record ByteRange(long first, long last) {
+
+    /**
+     * 416 Range Not Satisfiable（HttpStatus中未定义）
+     */
+    public static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
+    private static final String BYTES_UNIT = "bytes=";
+
+    /**
+     * 解析Range请求头
+     * @param rangeHeader Range请求头
+     * @return 区间，请求头为空、格式错误或包含多个区间时返回null（此时按完整内容响应即可）
+     */
+    @Nullable
+    public static ByteRange parse(@Nullable String rangeHeader) {
+        String spec;
+        String firstStr;
+        String lastStr;
+        long first;
+        long last;
+
+        if (StringUtils.isBlank(rangeHeader) || !rangeHeader.startsWith(BYTES_UNIT)) {
+
+            return null;
+        }
+        spec = rangeHeader.substring(BYTES_UNIT.length()).trim();
+        if (spec.contains(",") || !spec.contains("-")) {
+
+            return null;
+        }
+        firstStr = StringUtils.substringBefore(spec, "-").trim();
+        lastStr = StringUtils.substringAfter(spec, "-").trim();
+        if (firstStr.isEmpty()) {
+            // 后缀区间
+            if (!NumberUtils.isDigits(lastStr)) {
+
+                return null;
+            }
+            last = Long.parseLong(lastStr);
+
+            return last > 0 ? new ByteRange(-1, last) : null;
+        }
+        if (!NumberUtils.isDigits(firstStr)) {
+
+            return null;
+        }
+        first = Long.parseLong(firstStr);
+        if (lastStr.isEmpty()) {
+
+            return new ByteRange(first, -1);
+        }
+        if (!NumberUtils.isDigits(lastStr)) {
+
+            return null;
+        }
+        last = Long.parseLong(lastStr);
+
+        return last < first ? null : new ByteRange(first, last);
+    }
+
+    /**
+     * 根据内容总长度计算实际区间
+     * @param totalLength 内容总长度
+     * @return [起始位置, 结束位置（包含）]，区间无法满足时返回null
+     */
+    @Nullable
+    public long[] resolve(long totalLength) {
+        long start;
+        long end;
+
+        if (first == -1) {
+            start = Math.max(0, totalLength - last);
+            end = totalLength - 1;
+        } else {
+            start = first;
+            end = last == -1 ? totalLength - 1 : Math.min(last, totalLength - 1);
+        }
+
+        return start >= totalLength || start > end ? null : new long[]{ start, end };
+    }
+
+    /**
+     * @return Range请求头的值
+     */
+    public String toHeaderValue() {
+        if (first == -1) {
+
+            return BYTES_UNIT + "-" + last;
+        }
+
+        return BYTES_UNIT + first + "-" + (last == -1 ? StringUtils.EMPTY : last);
+    }
+
+    /**
+     * 构建Content-Range响应头的值
+     * @param start 起始位置
+     * @param end 结束位置（包含）
+     * @param totalLength 内容总长度，未知时传-1
+     * @return Content-Range
+     */
+    public static String contentRange(long start, long end, long totalLength) {
+        return "bytes " + start + "-" + end + "/" + (totalLength < 0 ? "*" : totalLength);
+    }
+}
@@ -0,0 +1,518 @@
+package io.knifer.freebox.net.http.proxy;
+
+import cn.hutool.http.HttpStatus;
+import com.google.common.net.HttpHeaders;
+import io.knifer.freebox.constant.BaseValues;
+import io.knifer.freebox.constant.HttpProfile;
+import io.knifer.freebox.handler.M3u8RewriteContext;
+import io.knifer.freebox.handler.impl.LiveM3u8AdFilter;
+import io.knifer.freebox.handler.impl.M3u8RewritePipeline;
+import io.knifer.freebox.util.HttpUtil;
+import io.knifer.freebox.util.hls.HLSUtil;
+import io.knifer.freebox.util.hls.M3u8Document;
+import io.knifer.freebox.util.hls.M3u8LineType;
+import io.knifer.freebox.util.hls.M3u8Playlist;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+
+import javax.annotation.Nullable;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 直播（滑动窗口）m3u8
+ * 播放器每次重新加载播放列表时（经由ProxyCacheHandler），在后台重新获取上游播放列表，只对新追加的分片进行广告过滤和代理，
+ * 已处理的分片保留在本地窗口中，窗口前端移出多少分片，EXT-X-MEDIA-SEQUENCE就增加多少，保证序号与分片的对应关系不变
+ * 每次刷新的开销只与新追加的分片数有关，刷新期间播放器拿到的是上一次的内容
+ * 没有声明类型、也没有#EXT-X-ENDLIST的播放列表先按点播处理（试探状态），刷新时上游序号前进或追加了分片才确认为直播
+ *
+ * @author Knifer
+ */
+@Slf4j
+public class LiveM3u8Playlist {
+
+    /**
+     * 获取上游播放列表的超时时间（秒）
+     */
+    private static final int FETCH_TIMEOUT = 6;
+    /**
+     * 两次刷新之间的最小间隔（毫秒），实际间隔取目标时长的一半与此值中的较大者
+     */
+    private static final long MIN_REFRESH_INTERVAL_MILLIS = 1000;
+    /**
+     * 试探状态下，连续多少次刷新内容都没有变化时认为是点播，停止刷新
+     */
+    private static final int MAX_PROBE_COUNT = 5;
+
+    private static final String EXT_X_MEDIA_SEQUENCE = "#EXT-X-MEDIA-SEQUENCE:";
+    private static final String EXT_X_DISCONTINUITY_SEQUENCE = "#EXT-X-DISCONTINUITY-SEQUENCE:";
+    private static final String EXT_X_DISCONTINUITY = "#EXT-X-DISCONTINUITY";
+    private static final String EXT_X_KEY = "#EXT-X-KEY:";
+    private static final String EXT_X_MAP = "#EXT-X-MAP:";
+    private static final String EXT_X_ENDLIST = "#EXT-X-ENDLIST";
+
+    /**
+     * 上游播放列表地址
+     */
+    private final String url;
+    /**
+     * 请求上游播放列表时携带的请求头
+     */
+    private final Map<String, String> requestHeaders;
+    private final String tsProxyUrlPrefix;
+    /**
+     * 处理新分片的流水线（地址补全、ts代理等，不包含整体广告过滤）
+     */
+    private final M3u8RewritePipeline pipeline;
+    private final LiveM3u8AdFilter adFilter = new LiveM3u8AdFilter();
+
+    private List<String> headerLines = List.of();
+    private final Deque<LiveSegment> segments = new ArrayDeque<>();
+    /**
+     * 输出窗口中第一个分片的序号
+     */
+    private long mediaSequence = -1;
+    private long discontinuitySequence = 0;
+    /**
+     * 已处理的最后一个上游分片的序号
+     */
+    private long lastUpstreamSequence = -1;
+    /**
+     * 下一个新分片前是否需要插入EXT-X-DISCONTINUITY（跳过了广告或上游分片不连续）
+     */
+    private boolean pendingDiscontinuity = false;
+    private boolean endList = false;
+    private long nextRefreshMillis = 0;
+    /**
+     * 试探状态下第一次获取的上游播放列表，确认为直播或放弃试探后为null
+     */
+    @Nullable
+    private M3u8Document probeDocument = null;
+    private int probeCount = 0;
+    /**
+     * 是否已确认为直播（输出内容由本类生成）
+     */
+    @Getter
+    private boolean live = false;
+    /**
+     * 放弃试探后不再刷新
+     */
+    private boolean stopped = false;
+    /**
+     * 是否有正在进行的刷新
+     */
+    private boolean refreshing = false;
+    /**
+     * 过滤的广告分片数
+     */
+    @Getter
+    private int adSegmentCount = 0;
+
+    public LiveM3u8Playlist(
+            String url, Map<String, String> requestHeaders, String tsProxyUrlPrefix, M3u8RewritePipeline pipeline
+    ) {
+        this.url = url;
+        this.requestHeaders = Map.copyOf(requestHeaders);
+        this.tsProxyUrlPrefix = tsProxyUrlPrefix;
+        this.pipeline = pipeline;
+    }
+
+    /**
+     * 进入试探状态：暂不生成输出内容，之后的刷新证实上游序号在前进时才按直播处理
+     * @param document 第一次获取的上游播放列表
+     */
+    public synchronized void probe(M3u8Document document) {
+        probeDocument = document;
+        probeCount = 0;
+        scheduleNextRefresh(document);
+    }
+
+    /**
+     * 距上次刷新超过半个目标时长时，在后台重新获取上游播放列表并处理新追加的分片
+     * 不等待刷新完成，调用方继续使用上一次的内容；同一时间最多只有一个刷新
+     * @param onChanged 输出内容有变化时的回调（在刷新线程中调用）
+     */
+    public void refreshInBackground(Runnable onChanged) {
+        HttpRequest.Builder requestBuilder;
+
+        synchronized (this) {
+            if (refreshing || endList || stopped || System.currentTimeMillis() < nextRefreshMillis) {
+
+                return;
+            }
+            refreshing = true;
+        }
+        requestBuilder = HttpUtil.newRequestBuilder(HttpProfile.PLAYLIST, url)
+                .header(HttpHeaders.USER_AGENT, BaseValues.USER_AGENT)
+                .timeout(Duration.ofSeconds(FETCH_TIMEOUT));
+        requestHeaders.forEach(requestBuilder::setHeader);
+        requestBuilder.setHeader(HttpHeaders.ACCEPT_ENCODING, HttpUtil.ACCEPT_ENCODING);
+        try {
+            HttpUtil.sendAsync(HttpProfile.PLAYLIST, requestBuilder.build(), HttpUtil.ofDecodedString())
+                    .whenComplete((resp, e) -> {
+                        try {
+                            if (onFetched(resp, e)) {
+                                onChanged.run();
+                            }
+                        } catch (Exception ex) {
+                            log.warn("refresh live playlist failed, url={}", url, ex);
+                        } finally {
+                            finishRefresh();
+                        }
+                    });
+        } catch (Exception e) {
+            log.info("refresh live playlist failed, url={}", url, e);
+            finishRefresh();
+        }
+    }
+
+    private synchronized void finishRefresh() {
+        refreshing = false;
+    }
+
+    /**
+     * 处理后台刷新的结果
+     * @param resp 上游响应，失败时为null
+     * @param error 异常，成功时为null
+     * @return 输出内容是否有变化
+     */
+    private synchronized boolean onFetched(@Nullable HttpResponse<String> resp, @Nullable Throwable error) {
+        if (error != null || resp == null) {
+            log.info("refresh live playlist failed, url={}", url, error);
+            nextRefreshMillis = System.currentTimeMillis() + MIN_REFRESH_INTERVAL_MILLIS;
+
+            return false;
+        }
+        if (resp.statusCode() >= HttpStatus.HTTP_BAD_REQUEST) {
+            log.info("refresh live playlist failed, statusCode={}, url={}", resp.statusCode(), url);
+            nextRefreshMillis = System.currentTimeMillis() + MIN_REFRESH_INTERVAL_MILLIS;
+
+            return false;
+        }
+
+        return update(M3u8Playlist.parse(url, resp.body()).getDocument());
+    }
+
+    /**
+     * 处理上游播放列表，只处理序号大于上次已处理分片的新分片
+     * 试探状态下，确认为直播之前不生成输出内容
+     * @param document 已解析的上游播放列表
+     * @return 输出内容是否有变化
+     */
+    public synchronized boolean update(M3u8Document document) {
+        int segmentCount = document.getSegmentCount();
+        long upstreamSequence = document.getMediaSequence();
+        int firstNewIdx;
+        List<Integer> newSegmentIdxList;
+        boolean changed;
+
+        if (document.isMaster()) {
+
+            return false;
+        }
+        scheduleNextRefresh(document);
+        if (stopped || probeDocument != null && !confirmLive(document)) {
+
+            return false;
+        }
+        live = true;
+        if (mediaSequence == -1) {
+            mediaSequence = upstreamSequence;
+            headerLines = extractHeaderLines(document);
+        }
+        if (lastUpstreamSequence != -1) {
+            if (upstreamSequence + segmentCount - 1 < lastUpstreamSequence) {
+                // 上游序号回退，直播流重新开始了
+                log.info("live playlist restarted, url={}", url);
+                lastUpstreamSequence = upstreamSequence - 1;
+                markGap();
+            } else if (upstreamSequence > lastUpstreamSequence + 1) {
+                // 刷新不及时，部分分片已移出上游窗口
+                log.info("live playlist skipped {} segments, url={}", upstreamSequence - lastUpstreamSequence - 1, url);
+                markGap();
+            }
+        }
+        firstNewIdx = lastUpstreamSequence == -1 ?
+                0 : (int) Math.max(0, lastUpstreamSequence + 1 - upstreamSequence);
+        newSegmentIdxList = new ArrayList<>(Math.max(0, segmentCount - firstNewIdx));
+        for (int i = firstNewIdx; i < segmentCount; i++) {
+            if (adFilter.isAd(document.getSegmentUri(i))) {
+                adSegmentCount++;
+                continue;
+            }
+            newSegmentIdxList.add(i);
+        }
+        if (segmentCount > 0) {
+            lastUpstreamSequence = Math.max(lastUpstreamSequence, upstreamSequence + segmentCount - 1);
+        }
+        changed = appendSegments(document, firstNewIdx, newSegmentIdxList);
+        if (document.isEndList() && !endList) {
+            endList = true;
+            changed = true;
+        }
+        // 保持与上游相同的窗口大小，从前端移出的分片数计入序号
+        while (segments.size() > Math.max(segmentCount, 1)) {
+            if (segments.pollFirst().discontinuity()) {
+                discontinuitySequence++;
+            }
+            mediaSequence++;
+            changed = true;
+        }
+
+        return changed;
+    }
+
+    private void scheduleNextRefresh(M3u8Document document) {
+        nextRefreshMillis = System.currentTimeMillis() +
+                Math.max(MIN_REFRESH_INTERVAL_MILLIS, document.getTargetDuration() * 500);
+    }
+
+    /**
+     * 试探状态下，检查刷新结果是否证实了直播
+     * 序号前进或追加了分片时确认为直播；出现#EXT-X-ENDLIST，或多次刷新内容都没有变化时认为是点播，停止刷新
+     * @param document 刷新获取的上游播放列表
+     * @return 是否确认为直播
+     */
+    private boolean confirmLive(M3u8Document document) {
+        if (HLSUtil.isLive(probeDocument, document)) {
+            log.info("live playlist confirmed, url={}", url);
+            probeDocument = null;
+
+            return true;
+        }
+        if (!HLSUtil.isMaybeLive(document) || ++probeCount >= MAX_PROBE_COUNT) {
+            log.info("playlist is not live, stop refreshing, url={}", url);
+            probeDocument = null;
+            stopped = true;
+        }
+
+        return false;
+    }
+
+    private void markGap() {
+        adFilter.onGap();
+        pendingDiscontinuity = true;
+    }
+
+    /**
+     * 把新分片交给流水线处理，再按URI行拆分回各个分片
+     * @param document 上游播放列表
+     * @param firstNewIdx 第一个新分片的索引
+     * @param segmentIdxList 需要保留的新分片索引
+     * @return 是否追加了分片
+     */
+    private boolean appendSegments(M3u8Document document, int firstNewIdx, List<Integer> segmentIdxList) {
+        StringBuilder newContent;
+        M3u8RewriteContext context;
+        List<String> blockLines;
+        String keyLine;
+        String mapLine;
+        boolean discontinuity;
+        int lastIdx;
+
+        if (segmentIdxList.isEmpty()) {
+            if (firstNewIdx < document.getSegmentCount()) {
+                // 新分片全部是广告
+                pendingDiscontinuity = true;
+            }
+
+            return false;
+        }
+        newContent = new StringBuilder();
+        lastIdx = firstNewIdx - 1;
+        for (int idx : segmentIdxList) {
+            if (idx != lastIdx + 1) {
+                // 中间有被过滤的广告分片
+                pendingDiscontinuity = true;
+            }
+            appendSegmentBlock(newContent, document, idx, pendingDiscontinuity);
+            pendingDiscontinuity = false;
+            lastIdx = idx;
+        }
+        if (lastIdx != document.getSegmentCount() - 1) {
+            pendingDiscontinuity = true;
+        }
+        context = pipeline.run(new M3u8RewriteContext(
+                M3u8Playlist.parse(url, newContent.toString()), tsProxyUrlPrefix, Map.of()
+        ));
+        blockLines = new ArrayList<>();
+        keyLine = null;
+        mapLine = null;
+        discontinuity = false;
+        for (String line : context.getPlaylist().getLines()) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            if (line.equals(EXT_X_DISCONTINUITY)) {
+                discontinuity = true;
+            } else if (line.startsWith(EXT_X_KEY)) {
+                keyLine = line;
+            } else if (line.startsWith(EXT_X_MAP)) {
+                mapLine = line;
+            } else {
+                blockLines.add(line);
+                if (M3u8Playlist.isUriLine(line)) {
+                    segments.addLast(new LiveSegment(blockLines, keyLine, mapLine, discontinuity));
+                    blockLines = new ArrayList<>();
+                    keyLine = null;
+                    mapLine = null;
+                    discontinuity = false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * 写入单个分片：分片前的标签（不含KEY、MAP、DISCONTINUITY，这些根据分片表重新生成）和URI行
+     */
+    private void appendSegmentBlock(StringBuilder builder, M3u8Document document, int idx, boolean discontinuity) {
+        int uriLineIdx = document.getSegmentUriLine(idx);
+        int blockStart = idx == 0 ? findFirstSegmentTagLine(document) : document.getSegmentUriLine(idx - 1) + 1;
+        int keyLineIdx = document.getSegmentKeyLine(idx);
+        int mapLineIdx = document.getSegmentMapLine(idx);
+        M3u8LineType lineType;
+
+        if (discontinuity || document.isDiscontinuityBefore(idx)) {
+            builder.append(EXT_X_DISCONTINUITY).append('\n');
+        }
+        if (keyLineIdx != -1) {
+            builder.append(document.getLine(keyLineIdx)).append('\n');
+        }
+        if (mapLineIdx != -1) {
+            builder.append(document.getLine(mapLineIdx)).append('\n');
+        }
+        for (int i = blockStart; i <= uriLineIdx; i++) {
+            lineType = document.getLineType(i);
+            if (
+                    lineType == M3u8LineType.BLANK ||
+                    lineType == M3u8LineType.KEY ||
+                    lineType == M3u8LineType.MAP ||
+                    lineType == M3u8LineType.DISCONTINUITY
+            ) {
+                continue;
+            }
+            builder.append(document.getLine(i)).append('\n');
+        }
+    }
+
+    /**
+     * 提取头部标签（第一个分片的标签之前的行），序号相关标签由本类生成，不保留
+     */
+    private List<String> extractHeaderLines(M3u8Document document) {
+        int headerEnd = findFirstSegmentTagLine(document);
+        List<String> result = new ArrayList<>(headerEnd);
+        String line;
+
+        for (int i = 0; i < headerEnd; i++) {
+            line = document.getLine(i);
+            if (
+                    line.isEmpty() ||
+                    line.startsWith(EXT_X_MEDIA_SEQUENCE) ||
+                    line.startsWith(EXT_X_DISCONTINUITY_SEQUENCE) ||
+                    line.startsWith(EXT_X_KEY) ||
+                    line.startsWith(EXT_X_MAP)
+            ) {
+                if (line.startsWith(EXT_X_DISCONTINUITY_SEQUENCE)) {
+                    discontinuitySequence = parseLong(
+                            StringUtils.substringAfter(line, ":"), discontinuitySequence
+                    );
+                }
+                continue;
+            }
+            result.add(line);
+        }
+
+        return result;
+    }
+
+    /**
+     * 寻找第一个分片相关标签所在的行（头部的结束位置）
+     */
+    private int findFirstSegmentTagLine(M3u8Document document) {
+        int lineCount = document.getLineCount();
+        M3u8LineType lineType;
+
+        for (int i = 0; i < lineCount; i++) {
+            lineType = document.getLineType(i);
+            if (
+                    lineType == M3u8LineType.EXTINF ||
+                    lineType == M3u8LineType.BYTERANGE ||
+                    lineType == M3u8LineType.DISCONTINUITY ||
+                    lineType == M3u8LineType.URI ||
+                    document.lineStartsWith(i, "#EXT-X-PROGRAM-DATE-TIME")
+            ) {
+
+                return i;
+            }
+        }
+
+        return lineCount;
+    }
+
+    private static long parseLong(String value, long defaultValue) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * 序列化为m3u8内容
+     * @return m3u8内容
+     */
+    public synchronized String serialize() {
+        StringBuilder result = new StringBuilder();
+        String currentKeyLine = null;
+        String currentMapLine = null;
+
+        for (String line : headerLines) {
+            result.append(line).append('\n');
+        }
+        result.append(EXT_X_MEDIA_SEQUENCE).append(Math.max(mediaSequence, 0)).append('\n');
+        if (discontinuitySequence > 0) {
+            result.append(EXT_X_DISCONTINUITY_SEQUENCE).append(discontinuitySequence).append('\n');
+        }
+        for (LiveSegment segment : segments) {
+            if (segment.discontinuity()) {
+                result.append(EXT_X_DISCONTINUITY).append('\n');
+            }
+            if (segment.keyLine() != null && !segment.keyLine().equals(currentKeyLine)) {
+                currentKeyLine = segment.keyLine();
+                result.append(currentKeyLine).append('\n');
+            }
+            if (segment.mapLine() != null && !segment.mapLine().equals(currentMapLine)) {
+                currentMapLine = segment.mapLine();
+                result.append(currentMapLine).append('\n');
+            }
+            for (String line : segment.lines()) {
+                result.append(line).append('\n');
+            }
+        }
+        if (endList) {
+            result.append(EXT_X_ENDLIST).append('\n');
+        }
+
+        return result.toString();
+    }
+
+    /**
+     * 输出窗口中的分片
+     * @param lines 分片标签和URI行（已补全地址、代理）
+     * @param keyLine 对该分片生效的EXT-X-KEY
+     * @param mapLine 对该分片生效的EXT-X-MAP
+     * @param discontinuity 分片前是否有EXT-X-DISCONTINUITY
+     */
+    private record LiveSegment(
+            List<String> lines, @Nullable String keyLine, @Nullable String mapLine, boolean discontinuity
+    ) {}
+}
@@ -0,0 +1,383 @@
+package io.knifer.freebox.net.http.proxy;
+
+import cn.hutool.http.HttpStatus;
+import com.google.common.collect.Maps;
+import com.google.common.net.HttpHeaders;
+import io.knifer.freebox.constant.BaseValues;
+import io.knifer.freebox.constant.CacheKeys;
+import io.knifer.freebox.constant.HttpProfile;
+import io.knifer.freebox.handler.M3u8RewriteContext;
+import io.knifer.freebox.handler.impl.*;
+import io.knifer.freebox.helper.ConfigHelper;
+import io.knifer.freebox.util.HttpUtil;
+import io.knifer.freebox.util.hls.HLSUtil;
+import io.knifer.freebox.util.hls.HlsVariant;
+import io.knifer.freebox.util.hls.M3u8Playlist;
+import io.knifer.freebox.util.hls.SubPlaylistFetcher;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.BooleanUtils;
+import org.apache.commons.lang3.tuple.Pair;
+
+import javax.annotation.Nullable;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * m3u8本地代理准备
+ * 下载m3u8，过滤广告、补全地址、代理ts，把结果保存到新的代理会话中，并返回本地代理链接
+ * 不依赖界面，播放器窗口和测试都通过它准备代理
+ *
+ * @author Knifer
+ */
+@Slf4j
+public class M3u8ProxyPreparer {
+
+    /**
+     * 下载m3u8（包括子播放列表）的超时时间（秒）
+     */
+    private static final int FETCH_TIMEOUT = 6;
+
+    private static final Set<String> HTTP_HEADERS_PROXY_EXCLUDE = Set.of(
+            "content-length",
+            "Content-Length",
+            "transfer-encoding",
+            "Transfer-Encoding",
+            // 播放列表已解压，不能把压缩方式转发给播放器
+            "content-encoding",
+            "Content-Encoding"
+    );
+
+    private final M3u8RewritePipeline m3u8RewritePipeline = new M3u8RewritePipeline(
+            new SmartM3u8AdFilterHandler(),
+            new M3u8UrlResolveStage(),
+            new BadM3u8TsProxyHandler(),
+            new M3u8SegmentCaptureStage()
+    );
+    /**
+     * 直播播放列表新分片的处理流水线（广告过滤由LiveM3u8AdFilter增量进行）
+     */
+    private final M3u8RewritePipeline liveM3u8RewritePipeline = new M3u8RewritePipeline(
+            new M3u8UrlResolveStage(),
+            new BadM3u8TsProxyHandler()
+    );
+
+    /**
+     * 过滤广告并创建本地代理链接
+     * @param playUrl 播放链接
+     * @param headers 请求源m3u8需要携带的请求头
+     * @param settings 代理设置
+     * @return 准备结果，未使用代理时播放链接为原链接，且不持有会话
+     */
+    public Result prepare(String playUrl, Map<String, String> headers, Settings settings) {
+        HttpRequest.Builder requestBuilder;
+        String content;
+        M3u8Playlist playlist;
+        List<HlsVariant> variants;
+        M3u8RewriteContext rewriteContext;
+        HttpResponse<String> resp;
+        Map<String, List<String>> proxyHeaders;
+        boolean isAdFiltered;
+        String proxyUrlPrefix = settings.proxyUrlPrefix();
+        Pair<Boolean, String> adFilteredFlagAndPlayUrl;
+        String resultPlayUrl;
+        String tsProxyUrlPrefix;
+        ProxySession session;
+        LiveM3u8Playlist livePlaylist;
+
+        requestBuilder = HttpUtil.newRequestBuilder(HttpProfile.PLAYLIST, playUrl)
+                .header(HttpHeaders.USER_AGENT, BaseValues.USER_AGENT);
+        if (!headers.isEmpty()) {
+            headers.forEach(requestBuilder::header);
+        }
+        requestBuilder.setHeader(HttpHeaders.ACCEPT_ENCODING, HttpUtil.ACCEPT_ENCODING);
+        try {
+            resp = HttpUtil.sendAsync(HttpProfile.PLAYLIST, requestBuilder.build(), HttpUtil.ofDecodedString())
+                    .get(FETCH_TIMEOUT, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            // 下载m3u8失败，直接返回原地址
+
+            return new Result(false, playUrl, null);
+        }
+        if (resp.statusCode() >= HttpStatus.HTTP_BAD_REQUEST) {
+            // 上游返回错误（响应体不是播放列表），交给播放器自行处理
+            log.info("fetch m3u8 failed, statusCode={}, url={}", resp.statusCode(), playUrl);
+
+            return new Result(false, playUrl, null);
+        }
+        proxyHeaders = Maps.filterKeys(
+                resp.headers().map(), key -> !HTTP_HEADERS_PROXY_EXCLUDE.contains(key)
+        );
+        session = ProxySessionManager.getInstance().create(proxyHeaders);
+        tsProxyUrlPrefix = proxyUrlPrefix + session.getTsPathPrefix();
+        playlist = M3u8Playlist.parse(playUrl, resp.body());
+        variants = playlist.isMaster() ?
+                HLSUtil.getVariants(playlist.getDocument(), playlist.getBaseUrl()) :
+                List.of();
+        if (variants.isEmpty() && HLSUtil.isLive(playlist.getDocument())) {
+            livePlaylist = proxyLivePlaylist(
+                    session, CacheKeys.AD_FILTERED_M3U8, playlist, headers, tsProxyUrlPrefix
+            );
+            isAdFiltered = livePlaylist.getAdSegmentCount() > 0;
+            resultPlayUrl = proxyUrlPrefix + session.getPlaylistPath(CacheKeys.AD_FILTERED_M3U8);
+        } else if (variants.isEmpty()) {
+            rewriteContext = rewriteMediaPlaylist(playlist, tsProxyUrlPrefix, settings);
+            isAdFiltered = rewriteContext.getAdLineCount() > 0;
+            content = rewriteContext.getResult();
+            if (content == null) {
+                resultPlayUrl = playUrl;
+            } else {
+                resultPlayUrl = proxyM3u8(session, content, proxyUrlPrefix);
+                session.getPrefetcher().start(
+                        rewriteContext.getProxiedSegmentUrls(),
+                        proxyHeaders,
+                        settings.tsPrefetchCount()
+                );
+                probeLivePlaylist(session, CacheKeys.AD_FILTERED_M3U8, playlist, headers, tsProxyUrlPrefix);
+            }
+        } else {
+            adFilteredFlagAndPlayUrl = proxyMasterPlaylist(
+                    session, playlist, variants, headers, settings, tsProxyUrlPrefix
+            );
+            isAdFiltered = adFilteredFlagAndPlayUrl.getLeft();
+            resultPlayUrl = adFilteredFlagAndPlayUrl.getRight();
+        }
+        if (resultPlayUrl.equals(playUrl)) {
+            // 未使用代理，释放会话
+            ProxySessionManager.getInstance().close(session.getId());
+
+            return new Result(isAdFiltered, playUrl, null);
+        }
+
+        return new Result(isAdFiltered, resultPlayUrl, session);
+    }
+
+    /**
+     * 代理主播放列表
+     * 根据码率上限和本地代理测得的吞吐量选择码率变体，对每个变体分别过滤广告、代理ts，
+     * 然后生成新的主播放列表（首选变体排在第一位），由播放器自行切换码率，而不是把所有变体合并成一个播放列表
+     * @param session 代理会话
+     * @param masterPlaylist 主播放列表
+     * @param variants 码率变体
+     * @param headers 请求上游播放列表需要携带的请求头
+     * @param settings 代理设置
+     * @param tsProxyUrlPrefix ts代理前缀
+     * @return 过滤广告成功标志, 播放链接
+     */
+    private Pair<Boolean, String> proxyMasterPlaylist(
+            ProxySession session,
+            M3u8Playlist masterPlaylist,
+            List<HlsVariant> variants,
+            Map<String, String> headers,
+            Settings settings,
+            String tsProxyUrlPrefix
+    ) {
+        String proxyUrlPrefix = settings.proxyUrlPrefix();
+        List<HlsVariant> selectedVariants = HLSUtil.selectVariants(
+                variants, settings.maxVariantBandwidth(), ThroughputMeter.getInstance().getEstimate()
+        );
+        List<String> variantContents = new SubPlaylistFetcher().fetchAll(
+                selectedVariants.stream().map(HlsVariant::url).toList(), FETCH_TIMEOUT, TimeUnit.SECONDS
+        );
+        List<Pair<HlsVariant, String>> variantAndUrls = new ArrayList<>(selectedVariants.size());
+        boolean isAdFiltered = false;
+        boolean isModified = !selectedVariants.equals(variants);
+        HlsVariant variant;
+        String variantContent;
+        M3u8RewriteContext rewriteContext;
+        String playlistName;
+        M3u8Playlist variantPlaylist;
+        LiveM3u8Playlist livePlaylist;
+
+        log.info(
+                "select variants, bandwidth={}, throughput={}",
+                selectedVariants.stream().map(HlsVariant::bandwidth).toList(),
+                ThroughputMeter.getInstance().getEstimate()
+        );
+        for (int i = 0; i < selectedVariants.size(); i++) {
+            variant = selectedVariants.get(i);
+            variantContent = variantContents.get(i);
+            if (variantContent == null) {
+                // 下载失败，交给播放器自行请求
+                variantAndUrls.add(Pair.of(variant, variant.url()));
+                continue;
+            }
+            variantPlaylist = M3u8Playlist.parse(variant.url(), variantContent);
+            if (HLSUtil.isLive(variantPlaylist.getDocument())) {
+                // 直播变体，播放器重新加载时增量刷新
+                isModified = true;
+                playlistName = "variant" + i + ".m3u8";
+                livePlaylist = proxyLivePlaylist(session, playlistName, variantPlaylist, headers, tsProxyUrlPrefix);
+                isAdFiltered |= livePlaylist.getAdSegmentCount() > 0;
+                variantAndUrls.add(Pair.of(variant, proxyUrlPrefix + session.getPlaylistPath(playlistName)));
+                continue;
+            }
+            rewriteContext = rewriteMediaPlaylist(variantPlaylist, tsProxyUrlPrefix, settings);
+            isAdFiltered |= rewriteContext.getAdLineCount() > 0;
+            variantContent = rewriteContext.getResult();
+            if (variantContent == null) {
+                variantAndUrls.add(Pair.of(variant, variant.url()));
+                continue;
+            }
+            isModified = true;
+            playlistName = "variant" + i + ".m3u8";
+            session.putPlaylist(playlistName, variantContent);
+            probeLivePlaylist(session, playlistName, variantPlaylist, headers, tsProxyUrlPrefix);
+            variantAndUrls.add(Pair.of(variant, proxyUrlPrefix + session.getPlaylistPath(playlistName)));
+            if (i == 0) {
+                // 只对首选变体预读
+                session.getPrefetcher().start(
+                        rewriteContext.getProxiedSegmentUrls(),
+                        session.getHeaders(),
+                        settings.tsPrefetchCount()
+                );
+            }
+        }
+        if (!isModified) {
+
+            return Pair.of(false, masterPlaylist.getUrl());
+        }
+
+        return Pair.of(
+                isAdFiltered,
+                proxyM3u8(
+                        session,
+                        HLSUtil.buildMasterPlaylist(
+                                masterPlaylist.getLines(), masterPlaylist.getBaseUrl(), variantAndUrls
+                        ),
+                        proxyUrlPrefix
+                )
+        );
+    }
+
+    /**
+     * 处理媒体播放列表：过滤广告、补全地址、代理损坏文件头的ts，并收集需要预读的分片
+     * @param playlist 已解析的播放列表
+     * @param tsProxyUrlPrefix ts代理前缀
+     * @param settings 代理设置
+     * @return 处理上下文
+     */
+    private M3u8RewriteContext rewriteMediaPlaylist(
+            M3u8Playlist playlist, String tsProxyUrlPrefix, Settings settings
+    ) {
+        return m3u8RewritePipeline.run(new M3u8RewriteContext(
+                playlist,
+                tsProxyUrlPrefix,
+                Map.of(
+                        SmartM3u8AdFilterHandler.EXTRA_KEY_DTF, settings.adFilterDynamicThresholdFactor(),
+                        SmartM3u8AdFilterHandler.EXTRA_KEY_RESULT_CACHE, settings.adFilterResultCache()
+                )
+        ));
+    }
+
+    /**
+     * 代理直播播放列表：先处理当前窗口内的分片，之后播放器每次重新加载时只处理新追加的分片
+     * 直播分片紧贴直播边缘，不进行预读
+     * @param session 代理会话
+     * @param playlistName 播放列表名称
+     * @param playlist 已解析的播放列表
+     * @param headers 请求上游播放列表需要携带的请求头
+     * @param tsProxyUrlPrefix ts代理前缀
+     * @return 直播播放列表
+     */
+    private LiveM3u8Playlist proxyLivePlaylist(
+            ProxySession session,
+            String playlistName,
+            M3u8Playlist playlist,
+            Map<String, String> headers,
+            String tsProxyUrlPrefix
+    ) {
+        LiveM3u8Playlist livePlaylist = new LiveM3u8Playlist(
+                playlist.getUrl(), headers, tsProxyUrlPrefix, liveM3u8RewritePipeline
+        );
+
+        log.info("live playlist detected, url={}", playlist.getUrl());
+        livePlaylist.update(playlist.getDocument());
+        session.putLivePlaylist(playlistName, livePlaylist);
+
+        return livePlaylist;
+    }
+
+    /**
+     * 播放列表没有声明类型、也没有#EXT-X-ENDLIST时，先按点播代理，
+     * 再在播放器重新加载时检查上游序号是否前进，确认是直播后改为增量刷新
+     * @param session 代理会话
+     * @param playlistName 播放列表名称（已保存点播内容）
+     * @param playlist 已解析的播放列表
+     * @param headers 请求上游播放列表需要携带的请求头
+     * @param tsProxyUrlPrefix ts代理前缀
+     */
+    private void probeLivePlaylist(
+            ProxySession session,
+            String playlistName,
+            M3u8Playlist playlist,
+            Map<String, String> headers,
+            String tsProxyUrlPrefix
+    ) {
+        LiveM3u8Playlist livePlaylist;
+
+        if (!HLSUtil.isMaybeLive(playlist.getDocument())) {
+
+            return;
+        }
+        livePlaylist = new LiveM3u8Playlist(playlist.getUrl(), headers, tsProxyUrlPrefix, liveM3u8RewritePipeline);
+        livePlaylist.probe(playlist.getDocument());
+        session.putLivePlaylist(playlistName, livePlaylist);
+    }
+
+    /**
+     * 代理m3u8内容
+     * @param session 代理会话
+     * @param m3u8Content m3u8内容
+     * @param proxyUrlPrefix 代理前缀
+     * @return 代理链接
+     */
+    private String proxyM3u8(ProxySession session, String m3u8Content, String proxyUrlPrefix) {
+        session.putPlaylist(CacheKeys.AD_FILTERED_M3U8, m3u8Content);
+
+        return proxyUrlPrefix + session.getPlaylistPath(CacheKeys.AD_FILTERED_M3U8);
+    }
+
+    /**
+     * 代理设置
+     * @param proxyUrlPrefix 本地代理地址前缀（如http://127.0.0.1:9978）
+     * @param tsPrefetchCount ts预读数量
+     * @param maxVariantBandwidth 码率上限（bit/s），小于1时不限制
+     * @param adFilterDynamicThresholdFactor 广告过滤动态阈值因子
+     * @param adFilterResultCache 是否缓存广告过滤结果
+     */
+    public record Settings(
+            String proxyUrlPrefix,
+            int tsPrefetchCount,
+            long maxVariantBandwidth,
+            double adFilterDynamicThresholdFactor,
+            boolean adFilterResultCache
+    ) {
+
+        /**
+         * 从配置中读取代理设置
+         * @return 代理设置
+         */
+        public static Settings fromConfig() {
+            return new Settings(
+                    "http://127.0.0.1:" + ConfigHelper.getHttpPort(),
+                    ConfigHelper.getTsPrefetchCount(),
+                    ConfigHelper.getMaxVariantBandwidth(),
+                    ConfigHelper.getAdFilterDynamicThresholdFactor(),
+                    BooleanUtils.toBoolean(ConfigHelper.getAdFilterResultCache())
+            );
+        }
+    }
+
+    /**
+     * 准备结果
+     * @param adFiltered 是否过滤了广告
+     * @param playUrl 播放链接（本地代理链接或原链接）
+     * @param session 代理会话，未使用代理时为null
+     */
+    public record Result(boolean adFiltered, String playUrl, @Nullable ProxySession session) {}
+}
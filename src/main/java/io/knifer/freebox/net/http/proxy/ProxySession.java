@@ -0,0 +1,120 @@
+package io.knifer.freebox.net.http.proxy;
+
+import cn.hutool.crypto.digest.DigestUtil;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import javax.annotation.Nullable;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 本地代理会话
+ * 每个代理中的视频流（一个播放窗口、一个外部播放器等）拥有自己的会话，互不干扰
+ * 会话保存了请求上游时使用的请求头、可直接发送的播放列表数据、直播播放列表的刷新状态，以及ts分片预读器
+ *
+ * @author Knifer
+ */
+@Getter
+public class ProxySession {
+
+    private final String id;
+
+    /**
+     * 上游请求头
+     */
+    private final Map<String, List<String>> headers;
+
+    private final TsSegmentPrefetcher prefetcher = new TsSegmentPrefetcher();
+
+    @Getter(AccessLevel.NONE)
+    private final Map<String, CachedPlaylist> playlists = new ConcurrentHashMap<>();
+
+    @Getter(AccessLevel.NONE)
+    private final Map<String, LiveM3u8Playlist> livePlaylists = new ConcurrentHashMap<>();
+
+    ProxySession(String id, @Nullable Map<String, List<String>> headers) {
+        this.id = id;
+        this.headers = headers == null ? Map.of() : Map.copyOf(headers);
+    }
+
+    /**
+     * 保存播放列表
+     * @param name 播放列表名称
+     * @param content 播放列表内容
+     */
+    public void putPlaylist(String name, String content) {
+        byte[] data = content.getBytes(StandardCharsets.UTF_8);
+
+        playlists.put(name, new CachedPlaylist(data, "\"" + DigestUtil.md5Hex(data) + "\""));
+    }
+
+    @Nullable
+    public CachedPlaylist getPlaylist(String name) {
+        return playlists.get(name);
+    }
+
+    /**
+     * 保存直播播放列表，播放器重新加载该播放列表时会刷新其内容
+     * 试探状态的播放列表保留已保存的点播内容，确认为直播后才替换
+     * @param name 播放列表名称
+     * @param livePlaylist 直播播放列表
+     */
+    public void putLivePlaylist(String name, LiveM3u8Playlist livePlaylist) {
+        livePlaylists.put(name, livePlaylist);
+        if (livePlaylist.isLive()) {
+            putPlaylist(name, livePlaylist.serialize());
+        }
+    }
+
+    /**
+     * 如果是直播播放列表，在后台从上游获取新分片，完成后更新已保存的内容
+     * 不等待刷新完成，本次请求拿到的是上一次保存的内容
+     * @param name 播放列表名称
+     */
+    public void refreshLivePlaylist(String name) {
+        LiveM3u8Playlist livePlaylist = livePlaylists.get(name);
+
+        if (livePlaylist == null) {
+
+            return;
+        }
+        livePlaylist.refreshInBackground(() -> {
+            if (livePlaylists.get(name) == livePlaylist) {
+                putPlaylist(name, livePlaylist.serialize());
+            }
+        });
+    }
+
+    /**
+     * 获取播放列表的代理路径
+     * @param name 播放列表名称
+     * @return 路径
+     */
+    public String getPlaylistPath(String name) {
+        return "/proxy-cache/" + id + "/" + name;
+    }
+
+    /**
+     * 获取ts分片的代理路径前缀
+     * @return 路径前缀
+     */
+    public String getTsPathPrefix() {
+        return "/proxy/ts/" + id + "/";
+    }
+
+    void close() {
+        prefetcher.stop();
+        playlists.clear();
+        livePlaylists.clear();
+    }
+
+    /**
+     * 已缓存的播放列表
+     * @param data 可直接发送的数据
+     * @param etag ETag
+     */
+    public record CachedPlaylist(byte[] data, String etag) {}
+}
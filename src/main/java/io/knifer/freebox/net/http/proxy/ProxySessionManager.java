@@ -0,0 +1,76 @@
+package io.knifer.freebox.net.http.proxy;
+
+import cn.hutool.core.util.IdUtil;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 本地代理会话管理
+ * 会话在一段时间未被访问后自动淘汰
+ *
+ * @author Knifer
+ */
+@Slf4j
+public class ProxySessionManager {
+
+    /**
+     * 会话最大数量
+     */
+    private static final int MAX_SESSION_COUNT = 32;
+    /**
+     * 会话空闲过期时间（小时）
+     */
+    private static final int SESSION_IDLE_TTL_HOURS = 2;
+
+    private static final ProxySessionManager INSTANCE = new ProxySessionManager();
+
+    private final Cache<String, ProxySession> sessions = CacheBuilder.newBuilder()
+            .maximumSize(MAX_SESSION_COUNT)
+            .expireAfterAccess(SESSION_IDLE_TTL_HOURS, TimeUnit.HOURS)
+            .removalListener((RemovalListener<String, ProxySession>) notification -> {
+                ProxySession session = notification.getValue();
+
+                if (session != null) {
+                    log.info("proxy session removed, id={}, cause={}", session.getId(), notification.getCause());
+                    session.close();
+                }
+            })
+            .build();
+
+    public static ProxySessionManager getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 创建会话
+     * @param headers 上游请求头
+     * @return 会话
+     */
+    public ProxySession create(@Nullable Map<String, List<String>> headers) {
+        ProxySession session = new ProxySession(IdUtil.fastSimpleUUID(), headers);
+
+        sessions.put(session.getId(), session);
+
+        return session;
+    }
+
+    @Nullable
+    public ProxySession get(String id) {
+        return sessions.getIfPresent(id);
+    }
+
+    public void close(String id) {
+        sessions.invalidate(id);
+    }
+
+    public void closeAll() {
+        sessions.invalidateAll();
+    }
+}
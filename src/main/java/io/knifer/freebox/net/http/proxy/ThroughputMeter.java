@@ -0,0 +1,55 @@
+package io.knifer.freebox.net.http.proxy;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 下载吞吐量统计
+ * 本地代理下载ts分片时记录传输字节数和耗时，以指数加权移动平均估算当前网络吞吐量，用于选择码率变体
+ *
+ * @author Knifer
+ */
+public class ThroughputMeter {
+
+    /**
+     * 参与统计的最小样本字节数，太小的样本主要反映连接延迟而不是带宽
+     */
+    private static final long MIN_SAMPLE_BYTES = 64 * 1024;
+    /**
+     * 新样本的权重
+     */
+    private static final double EWMA_ALPHA = 0.3;
+
+    private static final ThroughputMeter INSTANCE = new ThroughputMeter();
+
+    /**
+     * 估算吞吐量（bit/s），-1表示还没有样本
+     */
+    private double estimate = -1;
+
+    public static ThroughputMeter getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 记录一次下载
+     * @param bytes 下载字节数
+     * @param elapsedNanos 耗时（纳秒）
+     */
+    public synchronized void record(long bytes, long elapsedNanos) {
+        double sample;
+
+        if (bytes < MIN_SAMPLE_BYTES || elapsedNanos <= 0) {
+
+            return;
+        }
+        sample = bytes * 8D * TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+        estimate = estimate < 0 ? sample : EWMA_ALPHA * sample + (1 - EWMA_ALPHA) * estimate;
+    }
+
+    /**
+     * @return 估算吞吐量（bit/s），还没有样本时返回-1
+     */
+    public synchronized long getEstimate() {
+        return (long) estimate;
+    }
+}
@@ -0,0 +1,210 @@
+package io.knifer.freebox.net.http.proxy;
+
+import cn.hutool.http.HttpStatus;
+import io.knifer.freebox.constant.HttpProfile;
+import io.knifer.freebox.exception.FBException;
+import io.knifer.freebox.util.HttpUtil;
+import io.knifer.freebox.util.hls.TsUtil;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.Nullable;
+import java.net.http.HttpResponse;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+
+/**
+ * ts分片预读
+ * 根据代理播放列表中的分片顺序（由M3u8SegmentCaptureStage收集），在后台提前下载接下来的N个分片，ProxyTsHandler收到请求时优先从这里取数据
+ * 播放停止时取消全部任务；发生跳转（seek）时，取消整个旧窗口，从新位置重新预读
+ * 预读池的内存上限同时计入下载中的分片（按最近一个分片的大小估算），避免大分片的窗口超出上限
+ * 每个代理会话（ProxySession）持有一个实例
+ *
+ * @author Knifer
+ */
+@Slf4j
+public class TsSegmentPrefetcher {
+
+    /**
+     * 预读池最大占用内存
+     */
+    private static final long MAX_POOL_BYTES = 64L * 1024 * 1024;
+
+    /**
+     * 还没有下载完成的分片时，下载中的分片按该大小估算
+     */
+    private static final long DEFAULT_SEGMENT_BYTES = 2L * 1024 * 1024;
+
+    /**
+     * 分片下载，参数为分片地址和请求头
+     */
+    private final BiFunction<String, Map<String, List<String>>, CompletableFuture<byte[]>> fetcher;
+
+    private List<String> segmentUrls = List.of();
+    private Map<String, Integer> urlAndIdxMap = Map.of();
+    private Map<String, List<String>> headers = Map.of();
+    private int windowSize = 0;
+    private int lastRequestedIdx = -1;
+    /**
+     * 最近下载完成的分片大小，用于估算下载中的分片
+     */
+    private volatile long lastSegmentBytes = DEFAULT_SEGMENT_BYTES;
+    private final Map<Integer, CompletableFuture<byte[]>> pool = new ConcurrentHashMap<>();
+
+    public TsSegmentPrefetcher() {
+        this(TsSegmentPrefetcher::fetch);
+    }
+
+    /**
+     * 包级可见，测试中替换分片下载
+     */
+    TsSegmentPrefetcher(BiFunction<String, Map<String, List<String>>, CompletableFuture<byte[]>> fetcher) {
+        this.fetcher = fetcher;
+    }
+
+    /**
+     * 开始对新的播放列表进行预读（会停止之前的预读）
+     * @param segmentUrls 经过ProxyTsHandler的分片地址（按播放顺序）
+     * @param headers 请求分片时携带的请求头
+     * @param windowSize 预读窗口大小，小于1时不预读
+     */
+    public synchronized void start(
+            List<String> segmentUrls,
+            @Nullable Map<String, List<String>> headers,
+            int windowSize
+    ) {
+        List<String> urls;
+        Map<String, Integer> idxMap;
+
+        stop();
+        if (windowSize < 1 || segmentUrls.isEmpty()) {
+
+            return;
+        }
+        urls = new ArrayList<>(segmentUrls.size());
+        idxMap = new HashMap<>();
+        for (String url : segmentUrls) {
+            // 同一地址可能因EXT-X-BYTERANGE多次出现，只保留第一次
+            if (idxMap.putIfAbsent(url, urls.size()) == null) {
+                urls.add(url);
+            }
+        }
+        this.segmentUrls = urls;
+        this.urlAndIdxMap = idxMap;
+        this.headers = headers == null ? Map.of() : headers;
+        this.windowSize = windowSize;
+        log.info("ts prefetch started, segment count={}, window size={}", urls.size(), windowSize);
+        fill(0);
+    }
+
+    /**
+     * 停止预读，取消所有进行中的任务并清空预读池
+     */
+    public synchronized void stop() {
+        pool.values().forEach(future -> future.cancel(true));
+        pool.clear();
+        segmentUrls = List.of();
+        urlAndIdxMap = Map.of();
+        headers = Map.of();
+        windowSize = 0;
+        lastRequestedIdx = -1;
+    }
+
+    /**
+     * 获取分片数据，并推进预读窗口
+     * 当前分片会保留在预读池中，直到窗口越过它，以便同一分片的多次区间请求都能命中
+     * @param tsUrl ts分片地址
+     * @return 分片数据（可能仍在下载中），如果该分片不在预读池中，返回null
+     */
+    @Nullable
+    public synchronized CompletableFuture<byte[]> take(String tsUrl) {
+        Integer idx = urlAndIdxMap.get(tsUrl);
+        CompletableFuture<byte[]> result;
+
+        if (idx == null) {
+
+            return null;
+        }
+        if (lastRequestedIdx != -1 && (idx < lastRequestedIdx || idx > lastRequestedIdx + windowSize + 1)) {
+            // 跳转，旧窗口中的分片都不再需要
+            log.info("ts prefetch seek detected, {} -> {}, cancel old window", lastRequestedIdx, idx);
+            pool.values().forEach(future -> future.cancel(true));
+            pool.clear();
+        }
+        lastRequestedIdx = idx;
+        result = pool.get(idx);
+        // 取消窗口之外的任务（已播放的分片）
+        pool.entrySet().removeIf(entry -> {
+            int i = entry.getKey();
+
+            if (i < idx || i > idx + windowSize) {
+                entry.getValue().cancel(true);
+
+                return true;
+            }
+
+            return false;
+        });
+        fill(idx + 1);
+
+        return result;
+    }
+
+    private void fill(int fromIdx) {
+        int toIdx = Math.min(fromIdx + windowSize, segmentUrls.size());
+        CompletableFuture<byte[]> future;
+
+        for (int i = fromIdx; i < toIdx; i++) {
+            if (pool.containsKey(i)) {
+                continue;
+            }
+            if (getPooledBytes() >= MAX_POOL_BYTES) {
+                log.info("ts prefetch pool is full, skip");
+
+                return;
+            }
+            future = fetcher.apply(segmentUrls.get(i), headers);
+            future.thenAccept(body -> lastSegmentBytes = body.length);
+            pool.put(i, future);
+        }
+    }
+
+    private static CompletableFuture<byte[]> fetch(String tsUrl, Map<String, List<String>> headers) {
+        long startNanos = System.nanoTime();
+
+        return HttpUtil.sendAsync(
+                HttpProfile.SEGMENT,
+                TsUtil.newSegmentRequest(tsUrl, headers),
+                HttpResponse.BodyHandlers.ofByteArray()
+        ).thenApply(resp -> {
+            byte[] body;
+
+            if (resp.statusCode() >= HttpStatus.HTTP_BAD_REQUEST) {
+                throw new FBException("prefetch ts failed, statusCode=" + resp.statusCode());
+            }
+            body = resp.body();
+            ThroughputMeter.getInstance().record(body.length, System.nanoTime() - startNanos);
+
+            return body;
+        });
+    }
+
+    /**
+     * 预读池占用的内存，下载中的分片按最近一个分片的大小计算
+     */
+    private long getPooledBytes() {
+        long estimatedBytes = lastSegmentBytes;
+        long result = 0;
+
+        for (CompletableFuture<byte[]> future : pool.values()) {
+            if (!future.isDone()) {
+                result += estimatedBytes;
+            } else if (!future.isCompletedExceptionally()) {
+                result += future.join().length;
+            }
+        }
+
+        return result;
+    }
+}
@@ -1,12 +1,14 @@
 package io.knifer.freebox.net.http.server;
 
 import cn.hutool.core.io.IORuntimeException;
+import cn.hutool.http.HttpStatus;
 import cn.hutool.http.HttpUtil;
 import cn.hutool.http.server.SimpleServer;
 import io.knifer.freebox.constant.AppEvents;
 import io.knifer.freebox.constant.BaseValues;
 import io.knifer.freebox.constant.I18nKeys;
 import io.knifer.freebox.context.Context;
+import io.knifer.freebox.helper.ConfigHelper;
 import io.knifer.freebox.helper.I18nHelper;
 import io.knifer.freebox.helper.ToastHelper;
 import io.knifer.freebox.net.http.handler.*;
@@ -28,14 +30,39 @@ public class FreeBoxHttpServerHolder {
 
     private volatile SimpleServer server;
 
-    private static final List<HttpHandler> HANDLERS = List.of(
-            new TVBoxPairingInfoHandler(),
-            new MsgHandler(),
-            new ProxyCkHandler(),
-            new ProxyHandler(),
-            new ProxyCacheHandler(),
-            new ProxyTsHandler()
-    );
+    private volatile List<HttpRoute> routes = List.of();
+
+    /**
+     * 创建路由表
+     * 路由按路径前缀匹配（最长前缀优先），每个路由拥有独立的并发上限，互不抢占线程
+     * 包级可见，测试中挂载同样的路由，无需启动界面
+     * @param options 路由选项
+     */
+    static List<HttpRoute> createRoutes(RouteOptions options) {
+        return List.of(
+                new HttpRoute(
+                        "ts", "/proxy/ts/", options.tsPoolSize(), options.tsQueueSize(), new ProxyTsHandler()
+                ),
+                new HttpRoute(
+                        "cache", "/proxy-cache/",
+                        options.cachePoolSize(), options.cacheQueueSize(),
+                        new ProxyCacheHandler()
+                ),
+                new HttpRoute(
+                        "proxy", "/proxy",
+                        options.proxyPoolSize(), options.proxyQueueSize(),
+                        new ProxyCkHandler(), new ProxyHandler()
+                ),
+                new HttpRoute(
+                        "msg", "/postMsg", options.msgPoolSize(), options.msgQueueSize(), new MsgHandler()
+                ),
+                new HttpRoute(
+                        "pairing", "/pairing/tvbox",
+                        options.pairingPoolSize(), options.pairingQueueSize(),
+                        new TVBoxPairingInfoHandler()
+                )
+        );
+    }
 
     public synchronized boolean start(String hostname, int port) {
         try {
@@ -44,13 +71,11 @@ public class FreeBoxHttpServerHolder {
             } else {
                 server = new SimpleServer(hostname, port);
             }
-            server.addHandler("/", exchange ->
-                HANDLERS.forEach(handler -> {
-                    if (handler.support(exchange)) {
-                        handler.handle(exchange);
-                    }
-                })
-            );
+            routes = createRoutes(RouteOptions.fromConfig());
+            for (HttpRoute route : routes) {
+                server.addHandler(route.getPathPrefix(), route);
+            }
+            server.addHandler("/", exchange -> HttpRoute.sendEmptyResponse(exchange, HttpStatus.HTTP_NOT_FOUND));
             server.start();
             log.info("http service start successfully");
             Context.INSTANCE.postEvent(AppEvents.HTTP_SERVER_STARTED);
@@ -81,6 +106,7 @@ public class FreeBoxHttpServerHolder {
             service = new ShutdownHttpServerService(server.getRawServer());
             service.setOnSucceeded(evt -> {
                 server = null;
+                shutdownRoutes();
                 callback.run();
             });
             service.start();
@@ -90,10 +116,75 @@ public class FreeBoxHttpServerHolder {
     public synchronized void stopBlocking() {
         if (isRunning()) {
             server.getRawServer().stop(2);
+            shutdownRoutes();
         }
     }
 
+    private void shutdownRoutes() {
+        routes.forEach(HttpRoute::shutdown);
+        routes = List.of();
+    }
+
     public boolean isRunning() {
         return server != null;
     }
+
+    /**
+     * 路由选项（各路由的最大并发数和最大排队数）
+     * @param tsPoolSize ts分片路由的最大并发数
+     * @param tsQueueSize ts分片路由的最大排队数
+     * @param cachePoolSize 播放列表缓存路由的最大并发数
+     * @param cacheQueueSize 播放列表缓存路由的最大排队数
+     * @param proxyPoolSize 爬虫代理路由的最大并发数
+     * @param proxyQueueSize 爬虫代理路由的最大排队数
+     * @param msgPoolSize 消息路由的最大并发数
+     * @param msgQueueSize 消息路由的最大排队数
+     * @param pairingPoolSize 配对路由的最大并发数
+     * @param pairingQueueSize 配对路由的最大排队数
+     */
+    public record RouteOptions(
+            int tsPoolSize,
+            int tsQueueSize,
+            int cachePoolSize,
+            int cacheQueueSize,
+            int proxyPoolSize,
+            int proxyQueueSize,
+            int msgPoolSize,
+            int msgQueueSize,
+            int pairingPoolSize,
+            int pairingQueueSize
+    ) {
+
+        public static final RouteOptions DEFAULT = new RouteOptions(
+                BaseValues.DEFAULT_HTTP_SERVER_TS_POOL_SIZE,
+                BaseValues.DEFAULT_HTTP_SERVER_TS_QUEUE_SIZE,
+                BaseValues.DEFAULT_HTTP_SERVER_CACHE_POOL_SIZE,
+                BaseValues.DEFAULT_HTTP_SERVER_CACHE_QUEUE_SIZE,
+                BaseValues.DEFAULT_HTTP_SERVER_PROXY_POOL_SIZE,
+                BaseValues.DEFAULT_HTTP_SERVER_PROXY_QUEUE_SIZE,
+                BaseValues.DEFAULT_HTTP_SERVER_MSG_POOL_SIZE,
+                BaseValues.DEFAULT_HTTP_SERVER_MSG_QUEUE_SIZE,
+                BaseValues.DEFAULT_HTTP_SERVER_PAIRING_POOL_SIZE,
+                BaseValues.DEFAULT_HTTP_SERVER_PAIRING_QUEUE_SIZE
+        );
+
+        /**
+         * 从配置中读取路由选项
+         * @return 路由选项
+         */
+        public static RouteOptions fromConfig() {
+            return new RouteOptions(
+                    ConfigHelper.getHttpServerTsPoolSize(),
+                    ConfigHelper.getHttpServerTsQueueSize(),
+                    ConfigHelper.getHttpServerCachePoolSize(),
+                    ConfigHelper.getHttpServerCacheQueueSize(),
+                    ConfigHelper.getHttpServerProxyPoolSize(),
+                    ConfigHelper.getHttpServerProxyQueueSize(),
+                    ConfigHelper.getHttpServerMsgPoolSize(),
+                    ConfigHelper.getHttpServerMsgQueueSize(),
+                    ConfigHelper.getHttpServerPairingPoolSize(),
+                    ConfigHelper.getHttpServerPairingQueueSize()
+            );
+        }
+    }
 }
@@ -0,0 +1,103 @@
+package io.knifer.freebox.net.http.server;
+
+import cn.hutool.http.HttpStatus;
+import com.sun.net.httpserver.HttpExchange;
+import io.knifer.freebox.exception.GlobalExceptionHandler;
+import io.knifer.freebox.net.http.handler.HttpHandler;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * HTTP路由
+ * 每个路由对应一个路径前缀，并拥有独立的有界线程池（舱壁隔离），慢请求只会占满自己所在路由的线程，
+ * 不会影响其他路由（例如爬虫代理请求不会阻塞ts分片请求）
+ *
+ * @author Knifer
+ */
+@Slf4j
+public class HttpRoute implements com.sun.net.httpserver.HttpHandler {
+
+    @Getter
+    private final String pathPrefix;
+
+    private final List<HttpHandler> handlers;
+
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * @param name 路由名称（用于线程命名）
+     * @param pathPrefix 路径前缀
+     * @param maxConcurrency 最大并发数，小于1时按1处理
+     * @param maxQueueSize 最大排队数，超过后直接响应503，小于1时按1处理
+     * @param handlers 处理器，按顺序匹配
+     */
+    public HttpRoute(String name, String pathPrefix, int maxConcurrency, int maxQueueSize, HttpHandler... handlers) {
+        AtomicInteger threadIdx = new AtomicInteger(0);
+
+        this.pathPrefix = pathPrefix;
+        this.handlers = List.of(handlers);
+        this.executor = new ThreadPoolExecutor(
+                Math.max(1, maxConcurrency),
+                Math.max(1, maxConcurrency),
+                30L,
+                TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, maxQueueSize)),
+                r -> {
+                    Thread t = new Thread(r);
+
+                    t.setName("FreeBoxHttp-" + name + "-Thread-" + threadIdx.getAndIncrement());
+                    t.setDaemon(true);
+                    t.setUncaughtExceptionHandler(GlobalExceptionHandler.getInstance());
+
+                    return t;
+                }
+        );
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) {
+        try {
+            executor.execute(() -> dispatch(exchange));
+        } catch (RejectedExecutionException e) {
+            log.warn("route {} is busy, reject request: {}", pathPrefix, exchange.getRequestURI());
+            sendEmptyResponse(exchange, HttpStatus.HTTP_UNAVAILABLE);
+        }
+    }
+
+    private void dispatch(HttpExchange exchange) {
+        try {
+            for (HttpHandler handler : handlers) {
+                if (handler.support(exchange)) {
+                    handler.handle(exchange);
+
+                    return;
+                }
+            }
+        } catch (RuntimeException e) {
+            log.error("handle request failed: {}", exchange.getRequestURI(), e);
+            sendEmptyResponse(exchange, HttpStatus.HTTP_INTERNAL_ERROR);
+
+            return;
+        }
+        sendEmptyResponse(exchange, HttpStatus.HTTP_NOT_FOUND);
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    static void sendEmptyResponse(HttpExchange exchange, int code) {
+        try (exchange) {
+            exchange.sendResponseHeaders(code, -1);
+        } catch (IOException ignored) {}
+    }
+}
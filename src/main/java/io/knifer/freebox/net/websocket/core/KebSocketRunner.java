@@ -6,7 +6,7 @@ import io.knifer.freebox.util.json.GsonUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.java_websocket.WebSocket;
 
-import java.util.concurrent.Future;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * 通信执行器
@@ -36,20 +36,29 @@ public class KebSocketRunner {
         send(connection, Message.oneWay(code, data, topicId));
     }
 
-    public <T, R> Future<R> sendTopic(WebSocket connection, Integer code, T data, TypeToken<R> resultData) {
-        Message<T> topic = Message.topic(code, data);
-
-        send(connection, topic);
+    public <T, R> CompletableFuture<R> sendTopic(WebSocket connection, Integer code, T data, TypeToken<R> resultData) {
+        return sendTopic(connection, Message.topic(code, data), resultData);
+    }
 
-        return topicKeeper.getTopic(topic.getTopicId(), resultData, code);
+    public <T, R> CompletableFuture<R> sendTopic(
+            WebSocket connection, Integer code, T data, String topicId, TypeToken<R> resultData
+    ) {
+        return sendTopic(connection, Message.topic(code, data, topicId), resultData);
     }
 
-    public <T, R> Future<R> sendTopic(WebSocket connection, Integer code, T data, String topicId, TypeToken<R> resultData) {
-        Message<T> topic = Message.topic(code, data, topicId);
+    /**
+     * 发送Topic消息，先登记再发送，避免回复早于登记到达
+     */
+    private <T, R> CompletableFuture<R> sendTopic(WebSocket connection, Message<T> topic, TypeToken<R> resultData) {
+        CompletableFuture<R> result = topicKeeper.getTopic(topic.getTopicId(), resultData, topic.getCode());
 
-        send(connection, topic);
+        try {
+            send(connection, topic);
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+        }
 
-        return topicKeeper.getTopic(topic.getTopicId(), resultData, code);
+        return result;
     }
 
     public <T> void send(WebSocket connection, Message<T> message) {
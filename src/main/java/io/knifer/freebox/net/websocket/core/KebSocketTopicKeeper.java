@@ -8,22 +8,25 @@ import io.knifer.freebox.exception.GlobalExceptionHandler;
 import io.knifer.freebox.model.common.tvbox.Message;
 import io.knifer.freebox.util.json.GsonUtil;
 import lombok.extern.slf4j.Slf4j;
-import org.thavam.util.concurrent.blockingMap.BlockingHashMap;
-import org.thavam.util.concurrent.blockingMap.BlockingMap;
 
+import java.util.Map;
 import java.util.concurrent.*;
 
 /**
  * Topic保管
- * 接收来的Topic消息都会在这里保管和取用
+ * 发送Topic消息前先登记，收到回复时完成对应的future；等待期间不占用线程，
+ * 超时或被调用方取消后移除登记，之后到达的回复直接丢弃
  *
  * @author Knifer
  */
 @Slf4j
 public class KebSocketTopicKeeper {
 
-    private final BlockingMap<String, Message<JsonElement>> DATA_MAP = new BlockingHashMap<>();
+    private final Map<String, CompletableFuture<Message<JsonElement>>> PENDING_TOPICS = new ConcurrentHashMap<>();
 
+    /**
+     * 反序列化回复内容的线程，不在websocket线程中处理较大的回复
+     */
     private final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(
             1,
             1,
@@ -65,36 +68,49 @@ public class KebSocketTopicKeeper {
     }
 
     public void addTopic(Message<JsonElement> message) {
-        DATA_MAP.put(message.getTopicId(), message);
+        CompletableFuture<Message<JsonElement>> pending = PENDING_TOPICS.remove(message.getTopicId());
+
+        if (pending == null) {
+            log.warn("no pending topic, it may have timed out or been cancelled, topicId={}", message.getTopicId());
+
+            return;
+        }
+        pending.complete(message);
     }
 
-    public <T> Future<T> getTopic(String topicId, TypeToken<T> typeToken, Integer code) {
-        return CompletableFuture.supplyAsync(() -> {
-            Message<JsonElement> message;
-            JsonElement jsonData;
-
-            try {
-                message = DATA_MAP.take(topicId, BaseValues.KEB_SOCKET_REQUEST_TIMEOUT, TimeUnit.SECONDS);
-                if (message == null) {
-                    return null;
-                }
-                jsonData = message.getData();
-                if (jsonData == null) {
-                    return null;
-                }
-
-                return GsonUtil.fromJson(jsonData, typeToken);
-            } catch (Exception e) {
-                log.error("getTopic error", e);
+    /**
+     * 登记Topic，需要在发送消息前调用
+     * @param topicId topic id
+     * @param typeToken 回复数据类型
+     * @param code 消息类型
+     * @return 回复数据，超时（KEB_SOCKET_REQUEST_TIMEOUT）时以TimeoutException结束；取消后不再等待回复
+     */
+    public <T> CompletableFuture<T> getTopic(String topicId, TypeToken<T> typeToken, Integer code) {
+        CompletableFuture<Message<JsonElement>> pending = new CompletableFuture<>();
+        CompletableFuture<T> result;
+
+        PENDING_TOPICS.put(topicId, pending);
+        result = pending.orTimeout(BaseValues.KEB_SOCKET_REQUEST_TIMEOUT, TimeUnit.SECONDS)
+                .thenApplyAsync(message -> {
+                    JsonElement jsonData = message.getData();
+
+                    return jsonData == null ? null : GsonUtil.<T>fromJson(jsonData, typeToken);
+                }, code == MessageCodes.GET_SEARCH_CONTENT ? SEARCH_EXECUTOR : EXECUTOR);
+        result.whenComplete((data, throwable) -> {
+            if (throwable != null) {
+                // 超时或被取消，移除登记
+                PENDING_TOPICS.remove(topicId);
+                pending.cancel(false);
             }
+        });
 
-            return null;
-        }, code == MessageCodes.GET_SEARCH_CONTENT ? SEARCH_EXECUTOR : EXECUTOR);
+        return result;
     }
 
     public void destroy() {
         log.info("destroy KebSocketTopicKeeper......");
-        DATA_MAP.clear();
+        PENDING_TOPICS.values().forEach(pending -> pending.cancel(false));
+        PENDING_TOPICS.clear();
         EXECUTOR.shutdownNow();
         SEARCH_EXECUTOR.shutdownNow();
     }
@@ -1,13 +1,20 @@
 package io.knifer.freebox.service;
 
-import cn.hutool.core.io.StreamProgress;
-import cn.hutool.http.HttpUtil;
+import cn.hutool.http.HttpStatus;
+import com.google.common.net.HttpHeaders;
+import io.knifer.freebox.constant.HttpProfile;
+import io.knifer.freebox.util.HttpUtil;
 import javafx.concurrent.Service;
 import javafx.concurrent.Task;
 import javafx.util.Pair;
 import lombok.RequiredArgsConstructor;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
 import java.util.function.Consumer;
 
 /**
@@ -18,6 +25,8 @@ import java.util.function.Consumer;
 @RequiredArgsConstructor
 public class DownloadService extends Service<Void> {
 
+    private static final int BUFFER_SIZE = 8192;
+
     private final String url;
     private final File savePath;
     private final Runnable onStart;
@@ -30,48 +39,59 @@ public class DownloadService extends Service<Void> {
     protected Task<Void> createTask() {
         return new Task<>() {
             @Override
-            protected Void call() {
-                HttpUtil.downloadFileFromUrl(
-                        url,
-                        savePath,
-                        new StreamProgress() {
-                            @Override
-                            public void start() {
-                                if (isCancelled()) {
-                                    return;
-                                }
-                                if (onStart != null) {
-                                    onStart.run();
-                                }
-                            }
+            protected Void call() throws Exception {
+                HttpResponse<InputStream> response = HttpUtil.send(
+                        HttpProfile.DOWNLOAD,
+                        HttpUtil.newRequestBuilder(HttpProfile.DOWNLOAD, url).build(),
+                        HttpResponse.BodyHandlers.ofInputStream()
+                );
+                long total;
+                long progressSize = 0;
+                byte[] buffer;
+                int len;
 
-                            @Override
-                            public void progress(long total, long progressSize) {
-                                if (isCancelled() || progressSize - lastProgressSize < 1024) {
-                                    lastProgressSize = progressSize;
+                if (response.statusCode() >= HttpStatus.HTTP_BAD_REQUEST) {
+                    response.body().close();
 
-                                    return;
-                                }
-                                lastProgressSize = progressSize;
-                                if (onProgress != null) {
-                                    onProgress.accept(new Pair<>(total, progressSize));
-                                }
-                            }
+                    throw new IOException("download failed, statusCode=" + response.statusCode() + ", url=" + url);
+                }
+                total = response.headers()
+                        .firstValueAsLong(HttpHeaders.CONTENT_LENGTH)
+                        .orElse(-1);
+                if (!isCancelled() && onStart != null) {
+                    onStart.run();
+                }
+                buffer = new byte[BUFFER_SIZE];
+                try (
+                        InputStream input = response.body();
+                        OutputStream output = Files.newOutputStream(savePath.toPath())
+                ) {
+                    while ((len = input.read(buffer)) != -1) {
+                        if (isCancelled()) {
 
-                            @Override
-                            public void finish() {
-                                if (isCancelled()) {
-                                    return;
-                                }
-                                if (onFinish != null) {
-                                    onFinish.run();
-                                }
-                            }
+                            return null;
                         }
-                );
+                        output.write(buffer, 0, len);
+                        progressSize += len;
+                        onProgress(total, progressSize);
+                    }
+                }
+                if (!isCancelled() && onFinish != null) {
+                    onFinish.run();
+                }
 
                 return null;
             }
+
+            private void onProgress(long total, long progressSize) {
+                if (isCancelled() || progressSize - lastProgressSize < 1024) {
+                    return;
+                }
+                lastProgressSize = progressSize;
+                if (onProgress != null) {
+                    onProgress.accept(new Pair<>(total, progressSize));
+                }
+            }
         };
     }
 }
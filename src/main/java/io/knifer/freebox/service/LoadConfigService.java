@@ -1,6 +1,7 @@
 package io.knifer.freebox.service;
 
 import io.knifer.freebox.helper.ConfigHelper;
+import io.knifer.freebox.util.HttpUtil;
 import javafx.concurrent.Service;
 import javafx.concurrent.Task;
 import lombok.extern.slf4j.Slf4j;
@@ -18,6 +19,10 @@ public class LoadConfigService extends Service<Void> {
             @Override
             protected Void call() {
                 ConfigHelper.loadConfig();
+                if (ConfigHelper.isConfigLoaded()) {
+                    // 按配置重建HTTP客户端
+                    HttpUtil.configure(HttpUtil.ClientOptions.fromConfig());
+                }
 
                 return null;
             }
@@ -3,16 +3,16 @@ package io.knifer.freebox.service;
 import cn.hutool.core.io.FileUtil;
 import cn.hutool.core.map.multi.RowKeyTable;
 import cn.hutool.core.map.multi.Table;
-import cn.hutool.crypto.digest.DigestUtil;
 import com.google.common.base.Charsets;
 import com.google.common.net.HttpHeaders;
+import io.knifer.freebox.constant.HttpCacheCategory;
 import io.knifer.freebox.constant.I18nKeys;
 import io.knifer.freebox.helper.I18nHelper;
 import io.knifer.freebox.helper.ToastHelper;
 import io.knifer.freebox.model.c2s.FreeBoxLive;
 import io.knifer.freebox.model.domain.LiveChannel;
 import io.knifer.freebox.model.domain.LiveChannelGroup;
-import io.knifer.freebox.util.HttpUtil;
+import io.knifer.freebox.net.http.cache.HttpResponseCache;
 import io.knifer.freebox.util.ValidationUtil;
 import javafx.application.Platform;
 import javafx.concurrent.Service;
@@ -25,8 +25,6 @@ import net.bjoernpetersen.m3u.model.M3uMetadata;
 import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.StringUtils;
 
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -46,7 +44,6 @@ import java.util.concurrent.atomic.AtomicInteger;
 public class LoadLiveChannelGroupService extends Service<List<LiveChannelGroup>> {
 
     private final FreeBoxLive live;
-    private final Path liveConfigCachePath;
 
     @Override
     protected Task<List<LiveChannelGroup>> createTask() {
@@ -54,8 +51,6 @@ public class LoadLiveChannelGroupService extends Service<List<LiveChannelGroup>>
             @Override
             protected List<LiveChannelGroup> call() {
                 String url = live.getUrl();
-                String liveMd5;
-                Path livePath;
                 String ua;
                 String filePath;
                 String liveConfigContent;
@@ -71,46 +66,43 @@ public class LoadLiveChannelGroupService extends Service<List<LiveChannelGroup>>
 
                     return List.of();
                 }
-                liveMd5 = DigestUtil.md5Hex(url);
-                livePath = liveConfigCachePath.resolve(liveMd5);
-                if (Files.exists(livePath)) {
-                    liveConfigContent = FileUtil.readString(livePath.toFile(), Charsets.UTF_8);
+                if (url.startsWith("file:///")) {
+                    filePath = url.substring(7);
+                    liveConfigContent = FileUtil.readString(filePath, Charsets.UTF_8);
                 } else {
                     ua = live.getUa();
-                    if (url.startsWith("file:///")) {
-                        filePath = url.substring(7);
-                        liveConfigContent = FileUtil.readString(filePath, Charsets.UTF_8);
-                    } else {
-                        try {
-                            liveConfigContent = StringUtils.isBlank(ua) ?
-                                    HttpUtil.getAsync(url).get(10, TimeUnit.SECONDS) :
-                                    HttpUtil.getAsync(url, HttpHeaders.USER_AGENT, ua).get(10, TimeUnit.SECONDS);
-                        } catch (TimeoutException | ExecutionException e) {
-                            if (!isCancelled()) {
-                                Platform.runLater(() -> ToastHelper.showErrorI18n(I18nKeys.LIVE_MESSAGE_INVALID_LIVE));
-                            }
-
-                            return List.of();
-                        } catch (InterruptedException e) {
-                            if (!isCancelled()) {
-                                Platform.runLater(() -> ToastHelper.showException(e));
-                            }
-
-                            return List.of();
+                    try {
+                        liveConfigContent = StringUtils.isBlank(ua) ?
+                                HttpResponseCache.getInstance()
+                                        .getAsync(HttpCacheCategory.LIVE, url)
+                                        .get(10, TimeUnit.SECONDS) :
+                                HttpResponseCache.getInstance()
+                                        .getAsync(HttpCacheCategory.LIVE, url, HttpHeaders.USER_AGENT, ua)
+                                        .get(10, TimeUnit.SECONDS);
+                    } catch (TimeoutException | ExecutionException e) {
+                        if (!isCancelled()) {
+                            Platform.runLater(() -> ToastHelper.showErrorI18n(I18nKeys.LIVE_MESSAGE_INVALID_LIVE));
                         }
-                    }
-                    if (isCancelled()) {
 
                         return List.of();
-                    }
-                    if (StringUtils.isBlank(liveConfigContent)) {
-                        Platform.runLater(() -> ToastHelper.showErrorI18n(I18nKeys.LIVE_MESSAGE_INVALID_LIVE));
+                    } catch (InterruptedException e) {
+                        if (!isCancelled()) {
+                            Platform.runLater(() -> ToastHelper.showException(e));
+                        }
 
                         return List.of();
                     }
-                    liveConfigContent = liveConfigContent.trim();
-                    FileUtil.writeString(liveConfigContent, livePath.toFile(), Charsets.UTF_8);
                 }
+                if (isCancelled()) {
+
+                    return List.of();
+                }
+                if (StringUtils.isBlank(liveConfigContent)) {
+                    Platform.runLater(() -> ToastHelper.showErrorI18n(I18nKeys.LIVE_MESSAGE_INVALID_LIVE));
+
+                    return List.of();
+                }
+                liveConfigContent = liveConfigContent.trim();
                 if (url.contains(".m3u") || liveConfigContent.startsWith("#")) {
                     liveChannelGroups = parseM3uLive(liveConfigContent);
                 } else {
@@ -2,11 +2,12 @@ package io.knifer.freebox.service;
 
 import io.knifer.freebox.constant.BaseResources;
 import io.knifer.freebox.constant.BaseValues;
+import io.knifer.freebox.constant.HttpCacheCategory;
 import io.knifer.freebox.constant.I18nKeys;
 import io.knifer.freebox.helper.ToastHelper;
 import io.knifer.freebox.model.bo.UpgradeCheckResultBO;
 import io.knifer.freebox.model.domain.UpgradeConfig;
-import io.knifer.freebox.util.HttpUtil;
+import io.knifer.freebox.net.http.cache.HttpResponseCache;
 import io.knifer.freebox.util.json.GsonUtil;
 import javafx.application.Platform;
 import javafx.concurrent.Service;
@@ -37,7 +38,9 @@ public class UpgradeCheckService extends Service<UpgradeCheckResultBO> {
                 UpgradeCheckResultBO result;
 
                 try {
-                    jsonContent = HttpUtil.getAsync(PROPS_URL).get(10, TimeUnit.SECONDS);
+                    jsonContent = HttpResponseCache.getInstance()
+                            .getAsync(HttpCacheCategory.UPGRADE, PROPS_URL)
+                            .get(10, TimeUnit.SECONDS);
                 } catch (InterruptedException e) {
                     Platform.runLater(() -> ToastHelper.showException(e));
 
@@ -15,6 +15,8 @@ import java.util.List;
  */
 public class SourceAuditExecutorImpl implements SourceAuditExecutor {
 
+    private final SpiderTemplate spiderTemplate;
+
     private final List<SourceAuditor> AUDITORS;
 
     private SourceAuditContext context;
@@ -26,6 +28,7 @@ public class SourceAuditExecutorImpl implements SourceAuditExecutor {
         MovieDetailAuditor movieDetailAuditor = new MovieDetailAuditor(spiderTemplate);
         MoviePlayAuditor moviePlayAuditor = new MoviePlayAuditor(spiderTemplate);
 
+        this.spiderTemplate = spiderTemplate;
         movieSearchAuditor.setNextAuditor(homeAuditor);
         homeAuditor.setNextAuditor(movieExploreAuditor);
         movieExploreAuditor.setNextAuditor(movieDetailAuditor);
@@ -35,6 +38,8 @@ public class SourceAuditExecutorImpl implements SourceAuditExecutor {
 
     @Override
     public void execute(SourceAuditExecutionBo bo) {
+        // 审计需要源的实时结果，不使用缓存
+        spiderTemplate.invalidateCache(bo.getSourceBean().getKey());
         context = SourceAuditContext.of(bo);
         AUDITORS.get(0).audit(context, false);
     }
@@ -0,0 +1,400 @@
+package io.knifer.freebox.spider;
+
+import io.knifer.freebox.exception.GlobalExceptionHandler;
+import io.knifer.freebox.model.common.tvbox.AbsXml;
+import io.knifer.freebox.model.common.tvbox.Movie;
+import io.knifer.freebox.model.common.tvbox.SourceBean;
+import io.knifer.freebox.model.s2c.GetSearchContentDTO;
+import io.knifer.freebox.spider.template.SpiderTemplate;
+import io.knifer.freebox.util.AsyncUtil;
+import io.knifer.freebox.util.CollectionUtil;
+import javafx.application.Platform;
+import lombok.Builder;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * 多源影视搜索
+ * 同时搜索的源数量有上限，其余源排队，一个源结束后再开始下一个；每个源和每轮搜索各有截止时间；
+ * 搜索结果先放入缓冲区，按固定间隔合并成一批交给回调，避免结果密集到达时频繁刷新视图；
+ * 开始新的搜索或取消搜索时，进行中的请求立即被取消，尚未交给回调的结果直接丢弃
+ * 搜索分轮进行：第一轮获取每个源的第一页（支持快速搜索的源使用快速搜索），之后每次调用loadMore，
+ * 为还有更多结果的源获取下一页；某页没有结果、没有新结果（源不支持分页时会重复返回第一页）或到达总页数后，该源不再翻页
+ *
+ * @author Knifer
+ */
+@Slf4j
+public class MovieSearchEngine {
+
+    private static final ScheduledThreadPoolExecutor SCHEDULER;
+
+    static {
+        SCHEDULER = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r);
+
+            t.setName("MovieSearchEngine-Scheduler");
+            t.setDaemon(true);
+            t.setUncaughtExceptionHandler(GlobalExceptionHandler.getInstance());
+
+            return t;
+        });
+        SCHEDULER.setRemoveOnCancelPolicy(true);
+    }
+
+    private final SpiderTemplate template;
+
+    private final Config config;
+
+    /**
+     * 结果回调，在UI线程执行
+     */
+    private final Consumer<List<Movie.Video>> onBatch;
+
+    /**
+     * 每轮搜索结束回调（该轮所有源都已结束或到达截止时间），参数为是否还有更多结果，在UI线程执行，被取消的搜索不会回调
+     */
+    private final Consumer<Boolean> onEnd;
+
+    @Nullable
+    private volatile Session session;
+
+    public MovieSearchEngine(
+            SpiderTemplate template, Config config, Consumer<List<Movie.Video>> onBatch, Consumer<Boolean> onEnd
+    ) {
+        this.template = template;
+        this.config = config;
+        this.onBatch = onBatch;
+        this.onEnd = onEnd;
+    }
+
+    /**
+     * 开始搜索（第一轮），进行中的搜索会被取消
+     * @param keyword 关键字
+     * @param sourceBeans 要搜索的源
+     */
+    public void search(String keyword, List<SourceBean> sourceBeans) {
+        Session newSession = new Session(keyword, sourceBeans);
+
+        cancel();
+        session = newSession;
+        newSession.startRound();
+    }
+
+    /**
+     * 为还有更多结果的源获取下一页
+     * @return 是否开始了新一轮搜索（没有进行中的搜索、上一轮尚未结束或没有更多结果时返回false）
+     */
+    public boolean loadMore() {
+        Session current = session;
+
+        return current != null && current.startRound();
+    }
+
+    /**
+     * 取消进行中的搜索
+     */
+    public void cancel() {
+        Session oldSession = session;
+
+        session = null;
+        if (oldSession != null) {
+            oldSession.cancel();
+        }
+    }
+
+    @Nullable
+    public String getKeyword() {
+        Session current = session;
+
+        return current == null ? null : current.keyword;
+    }
+
+    /**
+     * 搜索配置
+     */
+    @Data
+    @Builder
+    public static class Config {
+
+        /**
+         * 同时搜索的最大源数量
+         */
+        @Builder.Default
+        private int fanOut = 10;
+
+        /**
+         * 每个源的截止时间（毫秒）
+         */
+        @Builder.Default
+        private long sourceTimeoutMillis = 15_000;
+
+        /**
+         * 每轮搜索的截止时间（毫秒），到达后未结束的源直接放弃
+         */
+        @Builder.Default
+        private long timeoutMillis = 45_000;
+
+        /**
+         * 合并结果的间隔（毫秒）
+         */
+        @Builder.Default
+        private long batchIntervalMillis = 200;
+    }
+
+    /**
+     * 一个源的翻页状态
+     */
+    private static class Cursor {
+
+        private final String sourceKey;
+
+        private final boolean quick;
+
+        /**
+         * 已获取的页数
+         */
+        private int page;
+
+        private boolean exhausted;
+
+        private final Set<String> videoIds = new HashSet<>();
+
+        private Cursor(SourceBean sourceBean) {
+            this.sourceKey = sourceBean.getKey();
+            this.quick = sourceBean.isQuickSearch();
+        }
+    }
+
+    private class Session {
+
+        private final String keyword;
+
+        private final List<Cursor> cursors;
+
+        private final Queue<Cursor> waitingCursors = new ArrayDeque<>();
+
+        private final Map<CompletableFuture<AbsXml>, Cursor> runningFutures = new HashMap<>();
+
+        private List<Movie.Video> buffer = new ArrayList<>();
+
+        private int remaining;
+
+        private boolean roundRunning;
+
+        private boolean cancelled;
+
+        private ScheduledFuture<?> flushTask;
+
+        private ScheduledFuture<?> deadlineTask;
+
+        private Session(String keyword, List<SourceBean> sourceBeans) {
+            this.keyword = keyword;
+            this.cursors = sourceBeans.stream().map(Cursor::new).toList();
+        }
+
+        /**
+         * 开始新一轮搜索
+         * @return 是否开始
+         */
+        private synchronized boolean startRound() {
+            long batchIntervalMillis = config.getBatchIntervalMillis();
+            int fanOut = Math.max(1, config.getFanOut());
+
+            if (cancelled || roundRunning) {
+
+                return false;
+            }
+            cursors.stream().filter(cursor -> !cursor.exhausted).forEach(waitingCursors::add);
+            remaining = waitingCursors.size();
+            if (remaining == 0) {
+
+                return false;
+            }
+            log.info("start searching, keyword={}, sourceCount={}", keyword, remaining);
+            roundRunning = true;
+            flushTask = SCHEDULER.scheduleWithFixedDelay(
+                    this::flush, batchIntervalMillis, batchIntervalMillis, TimeUnit.MILLISECONDS
+            );
+            deadlineTask = SCHEDULER.schedule(this::onDeadline, config.getTimeoutMillis(), TimeUnit.MILLISECONDS);
+            for (int i = 0; i < fanOut && !waitingCursors.isEmpty(); i++) {
+                searchNext();
+            }
+
+            return true;
+        }
+
+        private void searchNext() {
+            Cursor cursor = waitingCursors.poll();
+            CompletableFuture<AbsXml> future;
+
+            if (cursor == null) {
+
+                return;
+            }
+            future = searchSource(cursor);
+            runningFutures.put(future, cursor);
+            // 请求已经结束时，回调会在当前线程（已持有锁）立即执行
+            future.whenComplete((searchContent, throwable) -> onResult(future, searchContent, throwable));
+        }
+
+        private CompletableFuture<AbsXml> searchSource(Cursor cursor) {
+            GetSearchContentDTO dto = GetSearchContentDTO.of(
+                    cursor.sourceKey, keyword, cursor.quick, String.valueOf(cursor.page + 1)
+            );
+
+            try {
+                return template.getSearchContentAsync(dto)
+                        .orTimeout(config.getSourceTimeoutMillis(), TimeUnit.MILLISECONDS);
+            } catch (RuntimeException e) {
+
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+
+        private synchronized void onResult(
+                CompletableFuture<AbsXml> future, @Nullable AbsXml searchContent, @Nullable Throwable throwable
+        ) {
+            Cursor cursor = runningFutures.remove(future);
+            Throwable cause;
+
+            if (!roundRunning || cursor == null) {
+
+                return;
+            }
+            if (throwable == null) {
+                onPage(cursor, searchContent == null ? null : searchContent.getMovie());
+            } else {
+                cursor.exhausted = true;
+                cause = AsyncUtil.unwrap(throwable);
+                if (cause instanceof TimeoutException) {
+                    log.warn("search timeout, sourceKey={}, keyword={}", cursor.sourceKey, keyword);
+                } else if (!(cause instanceof CancellationException)) {
+                    log.warn("search failed, sourceKey={}, keyword={}", cursor.sourceKey, keyword, cause);
+                }
+            }
+            remaining--;
+            if (remaining == 0) {
+                finishRound();
+            } else {
+                searchNext();
+            }
+        }
+
+        /**
+         * 处理一个源的一页结果，只保留该源之前没有返回过的影片
+         */
+        private void onPage(Cursor cursor, @Nullable Movie movie) {
+            List<Movie.Video> videos = movie == null ? null : movie.getVideoList();
+            int newCount = 0;
+
+            cursor.page++;
+            if (CollectionUtil.isNotEmpty(videos)) {
+                for (Movie.Video video : videos) {
+                    if (video.getId() == null || cursor.videoIds.add(video.getId())) {
+                        buffer.add(video);
+                        newCount++;
+                    }
+                }
+            }
+            if (newCount == 0 || cursor.page >= movie.getPagecount()) {
+                cursor.exhausted = true;
+            }
+        }
+
+        /**
+         * 把缓冲区中的结果交给回调
+         */
+        private void flush() {
+            List<Movie.Video> batch;
+
+            synchronized (this) {
+                if (buffer.isEmpty()) {
+
+                    return;
+                }
+                batch = buffer;
+                buffer = new ArrayList<>();
+            }
+            Platform.runLater(() -> {
+                if (session == this) {
+                    onBatch.accept(batch);
+                }
+            });
+        }
+
+        private synchronized void onDeadline() {
+            if (!roundRunning) {
+
+                return;
+            }
+            log.warn(
+                    "search deadline reached, keyword={}, unfinishedSourceCount={}",
+                    keyword, remaining
+            );
+            // 超时的源不再翻页
+            runningFutures.values().forEach(cursor -> cursor.exhausted = true);
+            finishRound();
+        }
+
+        /**
+         * 结束本轮搜索：放弃未结束的源，交出剩余结果，回调结束
+         */
+        private synchronized void finishRound() {
+            boolean hasMore;
+
+            roundRunning = false;
+            stop();
+            flush();
+            hasMore = cursors.stream().anyMatch(cursor -> !cursor.exhausted);
+            Platform.runLater(() -> {
+                if (session == this) {
+                    onEnd.accept(hasMore);
+                }
+            });
+            log.info("searching round finished, keyword={}, hasMore={}", keyword, hasMore);
+        }
+
+        private synchronized void cancel() {
+            cancelled = true;
+            if (!roundRunning) {
+
+                return;
+            }
+            roundRunning = false;
+            stop();
+            buffer.clear();
+            log.info("searching cancelled, keyword={}", keyword);
+        }
+
+        private void stop() {
+            List<CompletableFuture<AbsXml>> futures = new ArrayList<>(runningFutures.keySet());
+
+            if (flushTask != null) {
+                flushTask.cancel(false);
+            }
+            if (deadlineTask != null) {
+                deadlineTask.cancel(false);
+            }
+            waitingCursors.clear();
+            runningFutures.clear();
+            futures.forEach(future -> future.cancel(true));
+        }
+    }
+}
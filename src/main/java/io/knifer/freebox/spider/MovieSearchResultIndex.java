@@ -0,0 +1,161 @@
+package io.knifer.freebox.spider;
+
+import io.knifer.freebox.model.common.tvbox.Movie;
+import org.apache.commons.lang3.StringUtils;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 搜索结果合并索引
+ * 按规范化后的片名、年份和类型，把不同源返回的同一影片合并为一项，每项持有按到达顺序排列的各源结果，
+ * 视图中只展示每项的第一个结果，打开失败时可以依次换用其他源；
+ * 年份或类型缺失时视为与任意值匹配，同一个源的多个同名结果不会合并
+ * 非线程安全，只在UI线程中使用
+ *
+ * @author Knifer
+ */
+public class MovieSearchResultIndex {
+
+    /**
+     * 规范化片名 -> 合并项
+     */
+    private final Map<String, List<Entry>> nameAndEntriesMap = new HashMap<>();
+
+    /**
+     * 搜索结果 -> 所属的合并项
+     */
+    private final Map<Movie.Video, Entry> videoAndEntryMap = new IdentityHashMap<>();
+
+    /**
+     * 添加一批搜索结果
+     * @param videos 搜索结果
+     * @return 新增合并项的首个结果（需要放入视图的结果），已合并到现有项的结果不在其中
+     */
+    public List<Movie.Video> addAll(List<Movie.Video> videos) {
+        List<Movie.Video> result = new ArrayList<>();
+
+        for (Movie.Video video : videos) {
+            if (add(video)) {
+                result.add(video);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * 添加一个搜索结果
+     * @param video 搜索结果
+     * @return 是否新增了合并项
+     */
+    private boolean add(Movie.Video video) {
+        String name = normalize(video.getName());
+        String type = normalize(video.getType());
+        List<Entry> entries;
+        Entry entry;
+
+        if (name.isEmpty()) {
+            // 没有片名的结果无法合并，单独展示
+            return true;
+        }
+        entries = nameAndEntriesMap.computeIfAbsent(name, k -> new ArrayList<>(1));
+        for (Entry e : entries) {
+            if (e.matches(video, type)) {
+                e.add(video, type);
+                videoAndEntryMap.put(video, e);
+
+                return false;
+            }
+        }
+        entry = new Entry();
+        entry.add(video, type);
+        entries.add(entry);
+        videoAndEntryMap.put(video, entry);
+
+        return true;
+    }
+
+    /**
+     * 获取与指定结果合并在一起的所有结果
+     * @param video 搜索结果
+     * @return 按到达顺序排列的结果，第一个为视图中展示的结果；不在索引中时只包含该结果本身
+     */
+    public List<Movie.Video> getAlternatives(Movie.Video video) {
+        Entry entry = videoAndEntryMap.get(video);
+
+        return entry == null ? List.of(video) : Collections.unmodifiableList(entry.videos);
+    }
+
+    public void clear() {
+        nameAndEntriesMap.clear();
+        videoAndEntryMap.clear();
+    }
+
+    /**
+     * 规范化片名或类型：统一全角半角和大小写，去掉空白和标点
+     * @param text 文本
+     * @return 规范化后的文本，为null时返回空字符串
+     */
+    static String normalize(String text) {
+        String normalized;
+        StringBuilder result;
+
+        if (StringUtils.isBlank(text)) {
+
+            return StringUtils.EMPTY;
+        }
+        normalized = Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+        result = new StringBuilder(normalized.length());
+        normalized.codePoints()
+                .filter(Character::isLetterOrDigit)
+                .forEach(result::appendCodePoint);
+
+        return result.toString();
+    }
+
+    /**
+     * 合并项
+     */
+    private static class Entry {
+
+        private final List<Movie.Video> videos = new ArrayList<>(1);
+
+        private int year;
+
+        private String type = StringUtils.EMPTY;
+
+        private boolean matches(Movie.Video video, String videoType) {
+            int videoYear = video.getYear();
+
+            if (year > 0 && videoYear > 0 && year != videoYear) {
+
+                return false;
+            }
+            if (!type.isEmpty() && !videoType.isEmpty() && !type.equals(videoType)) {
+
+                return false;
+            }
+
+            return videos.stream().noneMatch(v -> Objects.equals(v.getSourceKey(), video.getSourceKey()));
+        }
+
+        private void add(Movie.Video video, String videoType) {
+            videos.add(video);
+            // 补全缺失的年份和类型，使之后的匹配更准确
+            if (year <= 0) {
+                year = video.getYear();
+            }
+            if (type.isEmpty()) {
+                type = videoType;
+            }
+        }
+    }
+}
@@ -1,14 +1,11 @@
 package io.knifer.freebox.spider;
 
-import cn.hutool.core.io.FileUtil;
 import cn.hutool.crypto.digest.DigestUtil;
 import com.github.catvod.spider.Spider;
 import io.knifer.freebox.constant.I18nKeys;
-import io.knifer.freebox.helper.StorageHelper;
 import io.knifer.freebox.helper.ToastHelper;
 import io.knifer.freebox.model.domain.FreeBoxApiConfig;
 import io.knifer.freebox.util.CastUtil;
-import io.knifer.freebox.util.HttpUtil;
 import io.knifer.freebox.util.catvod.SpiderInvokeUtil;
 import javafx.application.Platform;
 import lombok.Setter;
@@ -18,15 +15,16 @@ import org.apache.commons.lang3.StringUtils;
 
 import javax.annotation.Nullable;
 import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.net.*;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Enumeration;
 import java.util.Map;
-import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
@@ -40,64 +38,103 @@ import java.util.jar.JarFile;
 public class SpiderJarLoader {
 
     private final ConcurrentHashMap<String, URLClassLoader> loaders = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<String, Method> methods = new ConcurrentHashMap<>();
+    /**
+     * 各jar中Proxy.proxy(Map)方法的句柄，加载jar时解析，本地代理请求时直接调用
+     */
+    private final ConcurrentHashMap<String, MethodHandle> proxyHandles = new ConcurrentHashMap<>();
     private final ConcurrentHashMap<String, Object> spiders = new ConcurrentHashMap<>();
-    private String recent = null;
+    /**
+     * 加载jar、创建爬虫时使用的锁（jar的key -> 锁，爬虫的key -> 锁）
+     */
+    private final ConcurrentHashMap<String, Object> loadLocks = new ConcurrentHashMap<>();
+    private volatile String recent = null;
     @Setter
     private FreeBoxApiConfig apiConfig = null;
 
     private final static String SPIDER_PACKAGE_NAME = "com.github.catvod.spider";
     private final static String SPIDER_PROXY_CLASS_NAME = SPIDER_PACKAGE_NAME + ".Proxy";
     private final static String SPIDER_INIT_CLASS_NAME = SPIDER_PACKAGE_NAME + ".Init";
-    private final static Path SPIDER_CACHE_PATH = StorageHelper.getSpiderCachePath();
     private final static SpiderJarLoader INSTANCE = new SpiderJarLoader();
 
-    static {
-        if (!Files.exists(SPIDER_CACHE_PATH)) {
-            try {
-                Files.createDirectories(SPIDER_CACHE_PATH);
-            } catch (IOException e) {
-                ToastHelper.showException(e);
-            }
-        }
-    }
-
     public static SpiderJarLoader getInstance() {
         return INSTANCE;
     }
 
     public Object getSpider(String key, String api, String ext, String jar) {
-        try {
-            String jaKey = DigestUtil.md5Hex(jar);
-            String spKey = jaKey + key;
+        return getSpider(key, api, ext, jar, false);
+    }
 
-            if (spiders.containsKey(spKey)) {
-                return spiders.get(spKey);
-            }
-            if (loaders.get(jaKey) == null) {
-                if (!loadJar(jaKey, jar)) {
+    /**
+     * 获取爬虫实例，不存在时加载jar并创建
+     * @param quiet 是否静默加载（后台预热）：加载失败时只记录日志，不提示用户（jar或爬虫加载失败不会被缓存，用户打开该源时会重新加载并提示），
+     *              也不会把该jar作为本地代理请求的处理者
+     */
+    public Object getSpider(String key, String api, String ext, String jar, boolean quiet) {
+        String jaKey = DigestUtil.md5Hex(jar);
+        Object spider = spiders.get(jaKey + key);
+
+        if (spider == null) {
+            spider = loadSpider(key, api, ext, jar, jaKey, quiet);
+        }
+        if (!quiet && loaders.containsKey(jaKey)) {
+            // 本地代理请求中没有源的信息，交给用户最近使用的源所在的jar处理
+            recent = jaKey;
+        }
+
+        return spider;
+    }
+
+    /**
+     * 加载jar并创建爬虫实例
+     * 爬虫请求会在多个线程中并发执行，按jar和爬虫分别加锁，避免同一个jar被重复下载、同一个爬虫被重复创建和初始化，
+     * 同时不同源的爬虫可以并行初始化（爬虫的init经常包含网络请求）
+     */
+    private Object loadSpider(String key, String api, String ext, String jar, String jaKey, boolean quiet) {
+        String spKey = jaKey + key;
+
+        synchronized (getLoadLock(spKey)) {
+            try {
+                if (spiders.containsKey(spKey)) {
+                    return spiders.get(spKey);
+                }
+                URLClassLoader loader = getLoader(jaKey, jar, quiet);
+                if (loader == null) {
                     return new Spider();
                 }
-            }
-            recent = jaKey;
-            URLClassLoader loader = loaders.get(jaKey);
-            if (loader == null) {
+                String classPath = SPIDER_PACKAGE_NAME + api.replace("csp_", ".");
+                Object spider = loader.loadClass(classPath).getDeclaredConstructor().newInstance();
+                SpiderInvokeUtil.init(spider, ext);
+                spiders.put(spKey, spider);
+
+                return spider;
+            } catch (Exception e){
+                reportException(quiet, "create spider failed, key=" + key, e);
+
                 return new Spider();
             }
-            String classPath = SPIDER_PACKAGE_NAME + api.replace("csp_", ".");
-            Object spider = loader.loadClass(classPath).getDeclaredConstructor().newInstance();
-            SpiderInvokeUtil.init(spider, ext);
-            spiders.put(spKey, spider);
+        }
+    }
 
-            return spider;
-        } catch (Exception e){
-            Platform.runLater(() -> ToastHelper.showException(e));
+    @Nullable
+    private URLClassLoader getLoader(String jaKey, String jar, boolean quiet) {
+        synchronized (getLoadLock(jaKey)) {
+            if (loaders.get(jaKey) == null && !loadJar(jaKey, jar, quiet)) {
+                return null;
+            }
 
-            return new Spider();
+            return loaders.get(jaKey);
         }
     }
 
+    private Object getLoadLock(String key) {
+        return loadLocks.computeIfAbsent(key, k -> new Object());
+    }
+
     public boolean loadJar(String key, String spider) {
+        return loadJar(key, spider, false);
+    }
+
+    private boolean loadJar(String key, String spider, boolean quiet) {
         String[] texts;
         String md5;
         String jar;
@@ -110,73 +147,61 @@ public class SpiderJarLoader {
         texts = spider.split(";md5;");
         md5 = texts.length > 1 ? texts[1].trim() : StringUtils.EMPTY;
         jar = texts[0];
+        if (jar.startsWith("file")) {
 
-        // 可以避免重复下载
-        if(!md5.isEmpty() && Objects.equals(parseJarUrl(jar), md5)){
-
-            return load(key, Paths.get(parseJarUrl(jar)));
-        }else if (jar.startsWith("file")) {
-
-            return load(key, Paths.get(jar.replace("file:///", StringUtils.EMPTY)));
+            return load(key, Paths.get(jar.replace("file:///", StringUtils.EMPTY)), quiet);
         } else if (jar.startsWith("http")) {
-            jarPath = download(jar);
+            jarPath = download(jar, md5, quiet);
             if (jarPath == null) {
 
                 return false;
             }
 
-            return load(key, jarPath);
+            return load(key, jarPath, quiet);
         } else {
+            // 相对路径，转换为完整地址，保留声明的md5
+            jar = convertUrl(apiConfig.getUrl(), jar, quiet);
 
-            return loadJar(key, convertUrl(apiConfig.getUrl(), jar));
-        }
-    }
-
-    /**
-     * 如果在配置文件种使用的相对路径，下载的时候使用的全路径 如果的判断md5是否一致的时候使用相对路径 就会造成重复下载
-     */
-    private String parseJarUrl(String jar) {
-        if (jar.startsWith("file") || jar.startsWith("http")) {
-            return jar;
+            return loadJar(key, md5.isEmpty() ? jar : jar + ";md5;" + md5, quiet);
         }
-
-        return convertUrl(apiConfig.getUrl(), jar);
     }
 
-    private String convertUrl(String baseUrl, String refUrl) {
+    private String convertUrl(String baseUrl, String refUrl, boolean quiet) {
         try {
             return new URI(baseUrl.replace("file://", "file:/")
                     .replace("\\", "/"))
                     .resolve(refUrl)
                     .toString();
         } catch (URISyntaxException e) {
-            Platform.runLater(() -> ToastHelper.showException(e));
+            reportException(quiet, "convert spider jar url failed, url=" + refUrl, e);
 
             return StringUtils.EMPTY;
         }
     }
 
-    private boolean load(String key, Path jar) {
+    private boolean load(String key, Path jar, boolean quiet) {
         log.info("load jar {}", jar);
         if (!isJarAvailable(jar)) {
             log.info("invalid jar: {}", jar);
-            Platform.runLater(() -> ToastHelper.showErrorAlert(
-                    I18nKeys.ERROR,
-                    I18nKeys.TV_ERROR_INVALID_SPIDER_JAR,
-                    null
-            ));
+            if (!quiet) {
+                Platform.runLater(() -> ToastHelper.showErrorAlert(
+                        I18nKeys.ERROR,
+                        I18nKeys.TV_ERROR_INVALID_SPIDER_JAR,
+                        null
+                ));
+            }
 
             return false;
         }
         try {
             loaders.put(key, new URLClassLoader(new URL[]{jar.toUri().toURL()}, this.getClass().getClassLoader()));
         } catch (MalformedURLException e) {
-            Platform.runLater(() -> ToastHelper.showException(e));
+            reportException(quiet, "create spider class loader failed, jar=" + jar, e);
 
             return false;
         }
-        putProxy(key);
-        invokeInit(key);
+        putProxy(key, quiet);
+        invokeInit(key, quiet);
 
         return true;
     }
@@ -206,24 +231,26 @@ public class SpiderJarLoader {
         return true;
     }
 
-    private void putProxy(String key) {
+    private void putProxy(String key, boolean quiet) {
         URLClassLoader classLoader = loaders.get(key);
         Class<?> clazz;
-        Method method;
+        MethodHandle handle;
 
         if (classLoader == null) {
             throw new AssertionError();
         }
         try {
             clazz = classLoader.loadClass(SPIDER_PROXY_CLASS_NAME);
-            method = clazz.getMethod("proxy", Map.class);
-            methods.put(key, method);
-        } catch (ClassNotFoundException | NoSuchMethodException e) {
-            Platform.runLater(() -> ToastHelper.showException(e));
+            handle = MethodHandles.publicLookup()
+                    .unreflect(clazz.getMethod("proxy", Map.class))
+                    .asType(MethodType.methodType(Object.class, Map.class));
+            proxyHandles.put(key, handle);
+        } catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException e) {
+            reportException(quiet, "resolve spider proxy failed, jar=" + key, e);
         }
     }
 
-    private void invokeInit(String key) {
+    private void invokeInit(String key, boolean quiet) {
         URLClassLoader classLoader = loaders.get(key);
         Class<?> clazz;
         Method method;
@@ -241,32 +268,49 @@ public class SpiderJarLoader {
                 IllegalAccessException |
                 InvocationTargetException e
         ) {
-            Platform.runLater(() -> ToastHelper.showException(e));
+            reportException(quiet, "invoke spider jar init failed, jar=" + key, e);
         }
     }
 
     @Nullable
-    private Path download(String jar) {
-        log.info("download jar: {}", jar);
+    private Path download(String jar, String md5, boolean quiet) {
         try {
-            return Files.write(SPIDER_CACHE_PATH.resolve(DigestUtil.md5Hex(jar)), HttpUtil.getFile(jar));
+            return SpiderJarStore.getInstance().get(jar, md5);
         } catch (IOException e) {
             log.error("download jar error", e);
-            Platform.runLater(() -> ToastHelper.showErrorI18n(I18nKeys.TV_ERROR_LOAD_SPIDER_JAR_FAILED));
+            if (!quiet) {
+                Platform.runLater(() -> ToastHelper.showErrorI18n(I18nKeys.TV_ERROR_LOAD_SPIDER_JAR_FAILED));
+            }
 
             return null;
         }
     }
 
+    /**
+     * 报告加载错误，静默加载时只记录日志
+     */
+    private void reportException(boolean quiet, String message, Exception e) {
+        if (quiet) {
+            log.warn(message, e);
+        } else {
+            Platform.runLater(() -> ToastHelper.showException(e));
+        }
+    }
+
     public Object[] proxyInvoke(Map<String, String> params) {
-        Method proxyMethod = methods.get(recent);
+        MethodHandle proxyHandle = recent == null ? null : proxyHandles.get(recent);
         Object[] result;
 
+        if (proxyHandle == null) {
+            log.warn("proxyInvoke error, proxy method not found, jar={}", recent);
+
+            return ArrayUtils.EMPTY_OBJECT_ARRAY;
+        }
         try {
-            result = CastUtil.cast(proxyMethod.invoke(null, params));
-        } catch (IllegalAccessException | InvocationTargetException e) {
+            result = CastUtil.cast((Object) proxyHandle.invokeExact(params));
+        } catch (Throwable e) {
             result = ArrayUtils.EMPTY_OBJECT_ARRAY;
-            log.warn("proxyInvoke error, proxyMethod={}", proxyMethod, e);
+            log.warn("proxyInvoke error, jar={}", recent, e);
         }
 
         return result;
@@ -279,6 +323,6 @@ public class SpiderJarLoader {
                 classLoader.close();
             } catch (IOException ignored) {}
         }
-        FileUtil.clean(SPIDER_CACHE_PATH.toString());
+        SpiderJarStore.getInstance().release();
     }
 }
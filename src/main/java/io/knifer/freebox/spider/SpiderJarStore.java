@@ -0,0 +1,436 @@
+package io.knifer.freebox.spider;
+
+import cn.hutool.crypto.digest.DigestUtil;
+import cn.hutool.http.HttpStatus;
+import com.google.common.net.HttpHeaders;
+import io.knifer.freebox.constant.HttpProfile;
+import io.knifer.freebox.helper.StorageHelper;
+import io.knifer.freebox.util.HttpUtil;
+import io.knifer.freebox.util.json.GsonUtil;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 爬虫jar磁盘存储
+ * jar按内容的md5命名（与配置中“;md5;”声明的值一致），配置声明了md5且已有对应jar时不发起请求；
+ * 每个地址记录最近一次下载得到的jar及其ETag/Last-Modified，超过确认间隔后发起条件请求，304时沿用已有jar；
+ * 网络错误或服务器错误时使用已有jar，离线也能启动；
+ * 文件先写入临时文件再原子替换，总大小超出上限后按最近最少使用淘汰，本次运行中使用过的jar不会被淘汰；
+ * 同一地址的请求按地址加锁，不同地址可以同时下载，整个存储的锁只在修改索引和淘汰时持有
+ *
+ * @author Knifer
+ */
+@Slf4j
+public class SpiderJarStore {
+
+    private static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+
+    /**
+     * 同一地址在该间隔内确认过时，直接使用已有jar（重新连接同一配置时不再发起请求）
+     */
+    private static final long DEFAULT_REVALIDATE_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    private static final String JAR_DIR_NAME = "jars";
+
+    private static final String REF_DIR_NAME = "refs";
+
+    private static final String JAR_FILE_SUFFIX = ".jar";
+
+    private static final String REF_FILE_SUFFIX = ".json";
+
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+    private static final SpiderJarStore INSTANCE = new SpiderJarStore(
+            StorageHelper.getSpiderCachePath(), DEFAULT_MAX_BYTES, DEFAULT_REVALIDATE_INTERVAL_MILLIS
+    );
+
+    private final Path rootPath;
+
+    private final Path jarPath;
+
+    private final Path refPath;
+
+    private final long maxBytes;
+
+    private final long revalidateIntervalMillis;
+
+    /**
+     * jar文件名 -> 文件大小，按访问顺序排列
+     */
+    private final LinkedHashMap<String, Long> jarSizes = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * 本次运行中使用过的jar，不会被淘汰
+     */
+    private final Set<String> pinnedFileNames = new HashSet<>();
+
+    /**
+     * 地址 -> 锁，避免同一地址被重复下载
+     */
+    private final ConcurrentHashMap<String, Object> urlLocks = new ConcurrentHashMap<>();
+
+    private long totalBytes;
+
+    private boolean loaded;
+
+    /**
+     * @param rootPath 存储根目录
+     * @param maxBytes jar总大小上限
+     * @param revalidateIntervalMillis 同一地址的确认间隔（毫秒）
+     */
+    public SpiderJarStore(Path rootPath, long maxBytes, long revalidateIntervalMillis) {
+        this.rootPath = rootPath;
+        this.jarPath = rootPath.resolve(JAR_DIR_NAME);
+        this.refPath = rootPath.resolve(REF_DIR_NAME);
+        this.maxBytes = maxBytes;
+        this.revalidateIntervalMillis = revalidateIntervalMillis;
+    }
+
+    public static SpiderJarStore getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 获取jar文件，必要时下载
+     * @param url jar地址
+     * @param md5 配置中声明的md5，可以为空
+     * @return jar文件
+     * @throws IOException 没有可用的jar且下载失败
+     */
+    public Path get(String url, @Nullable String md5) throws IOException {
+        synchronized (urlLocks.computeIfAbsent(url, k -> new Object())) {
+            return doGet(url, md5);
+        }
+    }
+
+    private Path doGet(String url, @Nullable String md5) throws IOException {
+        long now = System.currentTimeMillis();
+        Path jar;
+        JarRef ref;
+        HttpRequest.Builder requestBuilder;
+        HttpResponse<byte[]> resp;
+        int statusCode;
+        String contentMd5;
+
+        // 在任何写入之前完成首次加载，加载时会清理临时文件
+        ensureLoaded();
+        if (StringUtils.isNotBlank(md5)) {
+            jar = find(md5.strip().toLowerCase());
+            if (jar != null) {
+                log.info("spider jar hit by md5, url={}", url);
+
+                return jar;
+            }
+        }
+        ref = readRef(url);
+        jar = ref == null ? null : find(ref.getMd5());
+        if (jar != null && now - ref.getCheckedAt() < revalidateIntervalMillis) {
+            log.info("spider jar hit, url={}", url);
+
+            return jar;
+        }
+        requestBuilder = HttpUtil.newRequestBuilder(HttpProfile.DOWNLOAD, url);
+        if (jar != null) {
+            if (ref.getEtag() != null) {
+                requestBuilder.header(HttpHeaders.IF_NONE_MATCH, ref.getEtag());
+            }
+            if (ref.getLastModified() != null) {
+                requestBuilder.header(HttpHeaders.IF_MODIFIED_SINCE, ref.getLastModified());
+            }
+        }
+        log.info("download spider jar, url={}, conditional={}", url, jar != null);
+        try {
+            resp = HttpUtil.send(HttpProfile.DOWNLOAD, requestBuilder.build(), HttpUtil.ofDecodedByteArray());
+        } catch (IOException e) {
+            if (jar != null) {
+                log.warn("download spider jar failed, use cached jar, url={}", url, e);
+
+                return jar;
+            }
+
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw new InterruptedIOException("download spider jar interrupted");
+        }
+        statusCode = resp.statusCode();
+        if (statusCode == HttpStatus.HTTP_NOT_MODIFIED && jar != null) {
+            ref.setCheckedAt(now);
+            writeRef(ref);
+
+            return jar;
+        }
+        if (statusCode != HttpStatus.HTTP_OK || resp.body() == null || resp.body().length == 0) {
+            if (jar != null) {
+                log.warn("download spider jar failed, status={}, use cached jar, url={}", statusCode, url);
+
+                return jar;
+            }
+
+            throw new IOException("download spider jar failed, status=" + statusCode + ", url=" + url);
+        }
+        contentMd5 = DigestUtil.md5Hex(resp.body());
+        if (StringUtils.isNotBlank(md5) && !contentMd5.equalsIgnoreCase(md5.strip())) {
+            log.warn("spider jar md5 mismatch, declared={}, actual={}, url={}", md5, contentMd5, url);
+        }
+        jar = put(contentMd5, resp.body());
+        ref = new JarRef();
+        ref.setUrl(url);
+        ref.setMd5(contentMd5);
+        ref.setEtag(resp.headers().firstValue(HttpHeaders.ETAG).orElse(null));
+        ref.setLastModified(resp.headers().firstValue(HttpHeaders.LAST_MODIFIED).orElse(null));
+        ref.setCheckedAt(now);
+        writeRef(ref);
+
+        return jar;
+    }
+
+    /**
+     * 解除本次运行中对jar的占用，之后它们可以被淘汰
+     */
+    public synchronized void release() {
+        pinnedFileNames.clear();
+        evict();
+    }
+
+    /**
+     * 按md5查找已有的jar，找到时更新访问顺序并占用
+     */
+    @Nullable
+    private synchronized Path find(@Nullable String md5) {
+        String fileName;
+        Path file;
+
+        if (StringUtils.isBlank(md5)) {
+
+            return null;
+        }
+        fileName = md5 + JAR_FILE_SUFFIX;
+        if (!jarSizes.containsKey(fileName)) {
+
+            return null;
+        }
+        file = jarPath.resolve(fileName);
+        if (!Files.isRegularFile(file)) {
+            remove(fileName);
+
+            return null;
+        }
+        try {
+            Files.setLastModifiedTime(file, FileTime.from(Instant.now()));
+        } catch (IOException e) {
+            log.warn("touch spider jar failed, file={}", file, e);
+        }
+        // 更新访问顺序
+        jarSizes.get(fileName);
+        pinnedFileNames.add(fileName);
+
+        return file;
+    }
+
+    private Path put(String md5, byte[] data) throws IOException {
+        String fileName = md5 + JAR_FILE_SUFFIX;
+        Path file = jarPath.resolve(fileName);
+
+        // 内容相同的jar已经存在（可能已被加载），无需覆盖；不同地址同时写入同一内容时，原子替换保证文件完整
+        if (!Files.isRegularFile(file)) {
+            writeAtomically(file, data);
+        }
+        register(fileName, data.length);
+
+        return file;
+    }
+
+    /**
+     * 把新写入的jar加入索引并占用，必要时淘汰其他jar
+     */
+    private synchronized void register(String fileName, long size) {
+        remove(fileName);
+        jarSizes.put(fileName, size);
+        totalBytes += size;
+        pinnedFileNames.add(fileName);
+        evict();
+    }
+
+    @Nullable
+    private JarRef readRef(String url) {
+        Path file = refPath.resolve(getRefFileName(url));
+        JarRef ref;
+
+        if (!Files.isRegularFile(file)) {
+
+            return null;
+        }
+        try {
+            ref = GsonUtil.fromJson(Files.readString(file, StandardCharsets.UTF_8), JarRef.class);
+        } catch (Exception e) {
+            log.warn("read spider jar ref failed, file={}", file, e);
+            deleteQuietly(file);
+
+            return null;
+        }
+
+        return ref != null && url.equals(ref.getUrl()) ? ref : null;
+    }
+
+    private void writeRef(JarRef ref) {
+        try {
+            writeAtomically(
+                    refPath.resolve(getRefFileName(ref.getUrl())),
+                    GsonUtil.toJson(ref).getBytes(StandardCharsets.UTF_8)
+            );
+        } catch (IOException e) {
+            log.warn("write spider jar ref failed, url={}", ref.getUrl(), e);
+        }
+    }
+
+    private static String getRefFileName(String url) {
+        return DigestUtil.md5Hex(url) + REF_FILE_SUFFIX;
+    }
+
+    /**
+     * 先写入同一目录下的临时文件，再替换目标文件，避免中途退出留下不完整的文件
+     */
+    private static void writeAtomically(Path file, byte[] data) throws IOException {
+        Path dir = file.getParent();
+        Path tempFile;
+
+        Files.createDirectories(dir);
+        tempFile = Files.createTempFile(dir, file.getFileName().toString(), TEMP_FILE_SUFFIX);
+        try {
+            Files.write(tempFile, data);
+            try {
+                Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private synchronized void ensureLoaded() {
+        load();
+    }
+
+    /**
+     * 首次使用时按文件修改时间恢复访问顺序，并清理残留的临时文件和旧版本在根目录中留下的jar
+     */
+    private void load() {
+        List<Path> files;
+
+        if (loaded) {
+
+            return;
+        }
+        loaded = true;
+        try {
+            Files.createDirectories(jarPath);
+            Files.createDirectories(refPath);
+            try (Stream<Path> fileStream = Files.list(rootPath)) {
+                fileStream.filter(Files::isRegularFile).forEach(SpiderJarStore::deleteQuietly);
+            }
+            try (Stream<Path> fileStream = Files.list(jarPath)) {
+                files = fileStream.sorted(Comparator.comparingLong(file -> file.toFile().lastModified())).toList();
+            }
+        } catch (IOException e) {
+            log.warn("list spider jar store failed, path={}", rootPath, e);
+
+            return;
+        }
+        for (Path file : files) {
+            if (file.getFileName().toString().endsWith(JAR_FILE_SUFFIX)) {
+                jarSizes.put(file.getFileName().toString(), file.toFile().length());
+                totalBytes += file.toFile().length();
+            } else {
+                deleteQuietly(file);
+            }
+        }
+        evict();
+    }
+
+    private void remove(String fileName) {
+        Long size = jarSizes.remove(fileName);
+
+        if (size != null) {
+            totalBytes -= size;
+        }
+    }
+
+    /**
+     * 超出上限时删除最近最少使用且未被占用的jar
+     */
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> iterator = jarSizes.entrySet().iterator();
+        Map.Entry<String, Long> eldest;
+
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            eldest = iterator.next();
+            if (pinnedFileNames.contains(eldest.getKey())) {
+                continue;
+            }
+            iterator.remove();
+            totalBytes -= eldest.getValue();
+            deleteQuietly(jarPath.resolve(eldest.getKey()));
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("delete spider jar store file failed, file={}", file, e);
+        }
+    }
+
+    /**
+     * 地址与jar的对应关系（持久化为json）
+     */
+    @Data
+    private static class JarRef {
+
+        /**
+         * 地址，读取时用于校验，防止文件名摘要冲突
+         */
+        private String url;
+
+        /**
+         * 最近一次下载得到的jar的md5
+         */
+        private String md5;
+
+        private String etag;
+
+        private String lastModified;
+
+        /**
+         * 最近一次确认的时间（毫秒时间戳）
+         */
+        private long checkedAt;
+    }
+}
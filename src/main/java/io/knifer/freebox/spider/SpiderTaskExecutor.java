@@ -0,0 +1,260 @@
+package io.knifer.freebox.spider;
+
+import io.knifer.freebox.exception.GlobalExceptionHandler;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.Nullable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 爬虫任务执行器
+ * 所有源共用一个有界线程池，每个源同时执行的任务数有上限（舱壁），一个源卡住不会影响其他源；
+ * 排队的任务按优先级执行，播放、详情等交互请求优先于搜索等后台请求；
+ * 每个任务可以设置截止时间，超时或取消后返回的future立即结束，正在执行的任务会被中断，尚未开始的任务直接丢弃
+ *
+ * @author Knifer
+ */
+@Slf4j
+public class SpiderTaskExecutor {
+
+    private final ThreadPoolExecutor executor;
+
+    private final int maxConcurrencyPerSource;
+
+    private final Map<String, SourceState> sourceStates = new HashMap<>();
+
+    /**
+     * 提交顺序，同优先级的任务先进先出
+     */
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * @param poolSize 线程数
+     * @param maxConcurrencyPerSource 每个源同时执行的最大任务数
+     */
+    public SpiderTaskExecutor(int poolSize, int maxConcurrencyPerSource) {
+        AtomicInteger threadIdx = new AtomicInteger();
+
+        this.maxConcurrencyPerSource = maxConcurrencyPerSource;
+        this.executor = new ThreadPoolExecutor(
+                poolSize,
+                poolSize,
+                60L,
+                TimeUnit.SECONDS,
+                new PriorityBlockingQueue<>(),
+                r -> {
+                    Thread t = new Thread(r);
+
+                    t.setName("SpiderTaskExecutor-Thread-" + threadIdx.getAndIncrement());
+                    t.setDaemon(true);
+                    t.setUncaughtExceptionHandler(GlobalExceptionHandler.getInstance());
+
+                    return t;
+                }
+        );
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * 提交任务
+     * @param sourceKey 源，为null时不受每个源的并发上限约束（如读写本地历史记录）
+     * @param priority 优先级
+     * @param timeoutMillis 截止时间（毫秒），不大于0时不限制
+     * @param callable 任务
+     * @return 任务结果，调用cancel可以取消任务；执行器已关闭时以RejectedExecutionException异常结束
+     */
+    public <T> CompletableFuture<T> submit(
+            @Nullable String sourceKey, Priority priority, long timeoutMillis, Callable<T> callable
+    ) {
+        Task<T> task = new Task<>(sourceKey, priority, sequence.getAndIncrement(), callable);
+        CompletableFuture<T> future = task.future;
+        SourceState state;
+
+        if (timeoutMillis > 0) {
+            future.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        future.whenComplete((result, throwable) -> {
+            if (throwable != null) {
+                task.interruptIfRunning();
+            }
+        });
+        if (sourceKey == null) {
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                future.completeExceptionally(e);
+            }
+
+            return future;
+        }
+        synchronized (sourceStates) {
+            state = sourceStates.computeIfAbsent(sourceKey, key -> new SourceState());
+            if (state.running >= maxConcurrencyPerSource) {
+                state.waiting.add(task);
+
+                return future;
+            }
+            state.running++;
+        }
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+            release(sourceKey);
+        }
+
+        return future;
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 任务结束，许可交给该源下一个未结束的等待任务
+     * 等待任务被线程池拒绝时（执行器已关闭）以异常结束，许可继续向后传递，直到归还
+     */
+    private void release(String sourceKey) {
+        Task<?> next;
+
+        while ((next = pollNext(sourceKey)) != null) {
+            try {
+                executor.execute(next);
+
+                return;
+            } catch (RejectedExecutionException e) {
+                next.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * 取出该源下一个未结束的等待任务，没有时归还许可
+     * @return 下一个等待任务，为null时许可已归还
+     */
+    @Nullable
+    private Task<?> pollNext(String sourceKey) {
+        SourceState state;
+        Task<?> next;
+
+        synchronized (sourceStates) {
+            state = sourceStates.get(sourceKey);
+            do {
+                next = state.waiting.poll();
+            } while (next != null && next.future.isDone());
+            if (next == null) {
+                state.running--;
+                if (state.running == 0) {
+                    sourceStates.remove(sourceKey);
+                }
+            }
+
+            return next;
+        }
+    }
+
+    /**
+     * 任务优先级，越靠前越优先
+     */
+    public enum Priority {
+
+        /**
+         * 用户正在等待的请求（播放、详情）
+         */
+        INTERACTIVE,
+        /**
+         * 一般请求（首页、分类、历史记录）
+         */
+        NORMAL,
+        /**
+         * 后台请求（搜索、爬虫预热）
+         */
+        BACKGROUND
+    }
+
+    private static class SourceState {
+
+        private int running;
+
+        private final Queue<Task<?>> waiting = new PriorityQueue<>();
+    }
+
+    private class Task<T> implements Runnable, Comparable<Task<?>> {
+
+        @Nullable
+        private final String sourceKey;
+
+        private final Priority priority;
+
+        private final long seq;
+
+        private final Callable<T> callable;
+
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+
+        @Nullable
+        private Thread runner;
+
+        private Task(@Nullable String sourceKey, Priority priority, long seq, Callable<T> callable) {
+            this.sourceKey = sourceKey;
+            this.priority = priority;
+            this.seq = seq;
+            this.callable = callable;
+        }
+
+        @Override
+        public void run() {
+            try {
+                synchronized (this) {
+                    // 先设置runner再检查，与interruptIfRunning互斥，之后结束的future一定能中断本线程
+                    runner = Thread.currentThread();
+                    if (future.isDone()) {
+                        // 排队期间已超时或被取消
+                        runner = null;
+
+                        return;
+                    }
+                }
+                try {
+                    future.complete(callable.call());
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                } finally {
+                    synchronized (this) {
+                        runner = null;
+                    }
+                    // 清除超时、取消时设置的中断标记，避免影响线程执行下一个任务
+                    Thread.interrupted();
+                }
+            } finally {
+                if (sourceKey != null) {
+                    release(sourceKey);
+                }
+            }
+        }
+
+        private synchronized void interruptIfRunning() {
+            if (runner != null) {
+                runner.interrupt();
+            }
+        }
+
+        @Override
+        public int compareTo(Task<?> other) {
+            int result = priority.compareTo(other.priority);
+
+            return result == 0 ? Long.compare(seq, other.seq) : result;
+        }
+    }
+}
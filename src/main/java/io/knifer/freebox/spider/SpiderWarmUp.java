@@ -0,0 +1,160 @@
+package io.knifer.freebox.spider;
+
+import io.knifer.freebox.model.common.tvbox.SourceBean;
+import io.knifer.freebox.spider.SpiderTaskExecutor.Priority;
+import io.knifer.freebox.util.AsyncUtil;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * 爬虫预热
+ * 加载配置后在后台按顺序创建并初始化爬虫（加载jar、创建实例、调用init），避免第一次打开每个源时长时间等待；
+ * 同时预热的源数量有上限，任务以后台优先级提交，排队时让位于用户正在等待的请求；
+ * 预热中的爬虫被请求时，请求会等待这次初始化完成，不会重复初始化；
+ * 预热是静默的：出错时只记录日志（用户打开该源时会重新加载并提示），进度也只输出到日志
+ *
+ * @author Knifer
+ */
+@Slf4j
+public class SpiderWarmUp {
+
+    private final SpiderTaskExecutor executor;
+
+    private final int concurrency;
+
+    /**
+     * 创建并初始化爬虫
+     */
+    private final Consumer<SourceBean> initializer;
+
+    private final Queue<SourceBean> waitingSourceBeans = new ArrayDeque<>();
+
+    private final Set<CompletableFuture<Object>> runningFutures = new HashSet<>();
+
+    private int total;
+
+    private int finished;
+
+    private long startMillis;
+
+    private boolean cancelled;
+
+    public SpiderWarmUp(SpiderTaskExecutor executor, int concurrency, Consumer<SourceBean> initializer) {
+        this.executor = executor;
+        this.concurrency = Math.max(1, concurrency);
+        this.initializer = initializer;
+    }
+
+    /**
+     * 按优先级排列要预热的源：最后使用的源在前，之后是可搜索的源（保持配置中的顺序）
+     * @param sourceBeans 所有源
+     * @param sourceKeyLastUsed 最后使用的源
+     * @return 要预热的源
+     */
+    public static List<SourceBean> prioritize(List<SourceBean> sourceBeans, @Nullable String sourceKeyLastUsed) {
+        List<SourceBean> result = new ArrayList<>();
+
+        for (SourceBean sourceBean : sourceBeans) {
+            if (sourceBean.getKey().equals(sourceKeyLastUsed)) {
+                result.add(0, sourceBean);
+            } else if (sourceBean.isSearchable()) {
+                result.add(sourceBean);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * 开始预热
+     * @param sourceBeans 要预热的源（按优先级排列）
+     */
+    public synchronized void start(List<SourceBean> sourceBeans) {
+        if (cancelled || sourceBeans.isEmpty()) {
+
+            return;
+        }
+        waitingSourceBeans.addAll(sourceBeans);
+        total += sourceBeans.size();
+        startMillis = System.currentTimeMillis();
+        log.info("start warming up spiders, count={}, concurrency={}", total, concurrency);
+        for (int i = 0; i < concurrency && !waitingSourceBeans.isEmpty(); i++) {
+            warmUpNext();
+        }
+    }
+
+    /**
+     * 停止预热，尚未开始的源不再预热，正在初始化的爬虫不会被中断
+     */
+    public synchronized void cancel() {
+        if (cancelled) {
+
+            return;
+        }
+        cancelled = true;
+        if (finished < total) {
+            log.info("spider warm-up cancelled, progress={}/{}", finished, total);
+        }
+        waitingSourceBeans.clear();
+        runningFutures.clear();
+    }
+
+    private void warmUpNext() {
+        SourceBean sourceBean = waitingSourceBeans.poll();
+        CompletableFuture<Object> future;
+
+        if (sourceBean == null) {
+
+            return;
+        }
+        future = executor.submit(sourceBean.getKey(), Priority.BACKGROUND, 0, () -> {
+            initializer.accept(sourceBean);
+
+            return null;
+        });
+        runningFutures.add(future);
+        future.whenComplete((result, throwable) -> onFinished(future, sourceBean, throwable));
+    }
+
+    private synchronized void onFinished(
+            CompletableFuture<Object> future, SourceBean sourceBean, @Nullable Throwable throwable
+    ) {
+        if (!runningFutures.remove(future) || cancelled) {
+
+            return;
+        }
+        if (AsyncUtil.unwrap(throwable) instanceof RejectedExecutionException) {
+            // 执行器已关闭
+            cancel();
+
+            return;
+        }
+        finished++;
+        if (throwable == null) {
+            log.info("spider warm-up progress: {}/{}, sourceKey={}", finished, total, sourceBean.getKey());
+        } else {
+            log.warn(
+                    "spider warm-up failed, progress: {}/{}, sourceKey={}",
+                    finished, total, sourceBean.getKey(), AsyncUtil.unwrap(throwable)
+            );
+        }
+        if (finished == total) {
+            log.info(
+                    "spider warm-up finished, count={}, cost={}ms",
+                    total, System.currentTimeMillis() - startMillis
+            );
+        } else {
+            warmUpNext();
+        }
+    }
+}
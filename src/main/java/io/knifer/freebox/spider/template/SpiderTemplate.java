@@ -1,15 +1,27 @@
 package io.knifer.freebox.spider.template;
 
 import com.google.gson.JsonObject;
+import io.knifer.freebox.exception.GlobalExceptionHandler;
 import io.knifer.freebox.model.common.tvbox.*;
 import io.knifer.freebox.model.c2s.FreeBoxLive;
 import io.knifer.freebox.model.s2c.*;
+import io.knifer.freebox.util.AsyncUtil;
+import io.knifer.freebox.util.CastUtil;
+import javafx.application.Platform;
 
+import javax.annotation.Nullable;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 
 /**
  * Spider模板接口
+ * 每个请求都有返回CompletableFuture的版本（xxxAsync）和回调版本，回调版本是对前者的默认适配，
+ * 实现类只需提供xxxAsync，以及通过whenComplete决定回调所在的线程和出错时的处理
+ * 返回的future带有实现类的默认截止时间，调用方可以再用orTimeout缩短；
+ * 对返回的future调用cancel或使其超时，会中断正在执行的请求（本地爬虫）或停止等待回复（KebSocket），
+ * 注意对thenApply等派生出的future调用cancel不会传递到请求本身
  *
  * @author Knifer
  */
@@ -21,101 +33,271 @@ public interface SpiderTemplate {
 
     default void destroy() {}
 
+    /**
+     * 使当前客户端的缓存结果失效
+     * @param sourceKey 源，为null时使所有源的缓存失效
+     */
+    default void invalidateCache(@Nullable String sourceKey) {}
+
+    /**
+     * 把请求结果交给回调，超时或出错时回调null，被取消时不回调
+     * 回调所在的线程以及超时、出错时的提示由实现类决定，包装其他模板的实现应交给被包装的模板处理
+     * @param future 请求结果
+     * @param callback 回调
+     * @param quiet 超时或出错时是否只记录日志，不提示（聚合搜索会同时请求大量源）
+     */
+    <T> void whenComplete(CompletableFuture<T> future, Consumer<T> callback, boolean quiet);
+
+    /**
+     * 获取源列表
+     * @return 源列表
+     */
+    CompletableFuture<List<SourceBean>> getSourceBeanListAsync();
+
     /**
      * 获取源列表
      * @param callback 回调
      */
-    void getSourceBeanList(Consumer<List<SourceBean>> callback);
+    default void getSourceBeanList(Consumer<List<SourceBean>> callback) {
+        whenComplete(getSourceBeanListAsync(), callback, false);
+    }
+
+    /**
+     * 获取首页内容
+     * @param sourceBean 源
+     * @return 首页内容
+     */
+    CompletableFuture<AbsSortXml> getHomeContentAsync(SourceBean sourceBean);
 
     /**
      * 获取首页内容
      * @param sourceBean 源
      * @param callback 回调
      */
-    void getHomeContent(SourceBean sourceBean, Consumer<AbsSortXml> callback);
+    default void getHomeContent(SourceBean sourceBean, Consumer<AbsSortXml> callback) {
+        whenComplete(getHomeContentAsync(sourceBean), callback, false);
+    }
+
+    /**
+     * 获取指定分类信息
+     * @param dto 参数
+     * @return 分类信息
+     */
+    CompletableFuture<AbsXml> getCategoryContentAsync(GetCategoryContentDTO dto);
 
     /**
      * 获取指定分类信息
      * @param dto 参数
      * @param callback 回调
      */
-    void getCategoryContent(GetCategoryContentDTO dto, Consumer<AbsXml> callback);
+    default void getCategoryContent(GetCategoryContentDTO dto, Consumer<AbsXml> callback) {
+        whenComplete(getCategoryContentAsync(dto), callback, false);
+    }
+
+    /**
+     * 获取影视详情内容
+     * @param dto 参数
+     * @return 详情内容
+     */
+    CompletableFuture<AbsXml> getDetailContentAsync(GetDetailContentDTO dto);
 
     /**
      * 获取影视详情内容
      * @param dto 参数
      * @param callback 回调
      */
-    void getDetailContent(GetDetailContentDTO dto, Consumer<AbsXml> callback);
+    default void getDetailContent(GetDetailContentDTO dto, Consumer<AbsXml> callback) {
+        whenComplete(getDetailContentAsync(dto), callback, false);
+    }
+
+    /**
+     * 获取播放信息
+     * @param dto 参数
+     * @return 播放信息
+     */
+    CompletableFuture<JsonObject> getPlayerContentAsync(GetPlayerContentDTO dto);
 
     /**
      * 获取播放信息
      * @param dto 参数
      * @param callback 回调
      */
-    void getPlayerContent(GetPlayerContentDTO dto, Consumer<JsonObject> callback);
+    default void getPlayerContent(GetPlayerContentDTO dto, Consumer<JsonObject> callback) {
+        whenComplete(getPlayerContentAsync(dto), callback, false);
+    }
+
+    /**
+     * 获取历史记录
+     * @param dto 参数
+     * @return 历史记录
+     */
+    CompletableFuture<List<VodInfo>> getPlayHistoryAsync(GetPlayHistoryDTO dto);
 
     /**
      * 获取历史记录
      * @param dto 参数
      * @param callback 回调
      */
-    void getPlayHistory(GetPlayHistoryDTO dto, Consumer<List<VodInfo>> callback);
+    default void getPlayHistory(GetPlayHistoryDTO dto, Consumer<List<VodInfo>> callback) {
+        whenComplete(getPlayHistoryAsync(dto), callback, false);
+    }
+
+    /**
+     * 获取一条历史记录
+     * @param dto 参数
+     * @return 历史记录
+     */
+    CompletableFuture<VodInfo> getOnePlayHistoryAsync(GetOnePlayHistoryDTO dto);
 
     /**
      * 获取一条历史记录
      * @param dto 参数
      */
-    void getOnePlayHistory(GetOnePlayHistoryDTO dto, Consumer<VodInfo> callback);
+    default void getOnePlayHistory(GetOnePlayHistoryDTO dto, Consumer<VodInfo> callback) {
+        whenComplete(getOnePlayHistoryAsync(dto), callback, false);
+    }
+
+    /**
+     * 影视搜索
+     * @param dto 参数
+     * @return 搜索结果
+     */
+    CompletableFuture<AbsXml> getSearchContentAsync(GetSearchContentDTO dto);
 
     /**
      * 影视搜索
      * @param dto 参数
      * @param callback 回调
      */
-    void getSearchContent(GetSearchContentDTO dto, Consumer<AbsXml> callback);
+    default void getSearchContent(GetSearchContentDTO dto, Consumer<AbsXml> callback) {
+        whenComplete(getSearchContentAsync(dto), callback, true);
+    }
+
+    /**
+     * 取消尚未完成的影视搜索，被取消的搜索不再回调
+     */
+    default void cancelSearch() {}
 
     /**
      * 保存历史记录
      * @param dto 参数
+     * @return 保存结果
      */
-    <T extends RuntimeException> void savePlayHistory(SavePlayHistoryDTO dto, Consumer<T> onError);
+    CompletableFuture<Void> savePlayHistoryAsync(SavePlayHistoryDTO dto);
+
+    /**
+     * 保存历史记录
+     * @param dto 参数
+     * @param onError 保存失败时在UI线程回调
+     */
+    default <T extends RuntimeException> void savePlayHistory(SavePlayHistoryDTO dto, Consumer<T> onError) {
+        savePlayHistoryAsync(dto).whenComplete((result, throwable) -> {
+            Throwable cause;
+
+            if (throwable == null) {
+
+                return;
+            }
+            cause = AsyncUtil.unwrap(throwable);
+            if (cause instanceof CancellationException) {
+
+                return;
+            }
+            if (cause instanceof RuntimeException e) {
+                Platform.runLater(() -> onError.accept(CastUtil.cast(e)));
+            } else {
+                GlobalExceptionHandler.getInstance().uncaughtException(Thread.currentThread(), cause);
+            }
+        });
+    }
+
+    /**
+     * 删除历史记录
+     * @param dto 参数
+     * @return 删除结果
+     */
+    CompletableFuture<Void> deletePlayHistoryAsync(DeletePlayHistoryDTO dto);
 
     /**
      * 删除历史记录
      * @param dto 参数
      */
-    void deletePlayHistory(DeletePlayHistoryDTO dto, Runnable callback);
+    default void deletePlayHistory(DeletePlayHistoryDTO dto, Runnable callback) {
+        whenComplete(deletePlayHistoryAsync(dto), ignored -> callback.run(), false);
+    }
+
+    /**
+     * 收藏影片
+     * @param dto 参数
+     * @return 收藏结果
+     */
+    CompletableFuture<Void> saveMovieCollectionAsync(SaveMovieCollectionDTO dto);
 
     /**
      * 收藏影片
      * @param dto 参数
      * @param callback 回调
      */
-    void saveMovieCollection(SaveMovieCollectionDTO dto, Runnable callback);
+    default void saveMovieCollection(SaveMovieCollectionDTO dto, Runnable callback) {
+        whenComplete(saveMovieCollectionAsync(dto), ignored -> callback.run(), false);
+    }
+
+    /**
+     * 取消收藏
+     * @param dto 参数
+     * @return 取消结果
+     */
+    CompletableFuture<Void> deleteMovieCollectionAsync(DeleteMovieCollectionDTO dto);
 
     /**
      * 取消收藏
      * @param dto 参数
      * @param callback 回调
      */
-    void deleteMovieCollection(DeleteMovieCollectionDTO dto, Runnable callback);
+    default void deleteMovieCollection(DeleteMovieCollectionDTO dto, Runnable callback) {
+        whenComplete(deleteMovieCollectionAsync(dto), ignored -> callback.run(), false);
+    }
+
+    /**
+     * 获取收藏列表
+     * @return 收藏列表
+     */
+    CompletableFuture<List<VodCollect>> getMovieCollectionAsync();
 
     /**
      * 获取收藏列表
      * @param callback 回调
      */
-    void getMovieCollection(Consumer<List<VodCollect>> callback);
+    default void getMovieCollection(Consumer<List<VodCollect>> callback) {
+        whenComplete(getMovieCollectionAsync(), callback, false);
+    }
+
+    /**
+     * 获取影视收藏状态
+     * @param dto 参数
+     * @return 是否已收藏
+     */
+    CompletableFuture<Boolean> getMovieCollectedStatusAsync(GetMovieCollectedStatusDTO dto);
 
     /**
      * 获取影视收藏状态
      * @param dto 参数
      * @param callback 回调
      */
-    void getMovieCollectedStatus(GetMovieCollectedStatusDTO dto, Consumer<Boolean> callback);
+    default void getMovieCollectedStatus(GetMovieCollectedStatusDTO dto, Consumer<Boolean> callback) {
+        whenComplete(getMovieCollectedStatusAsync(dto), callback, false);
+    }
+
+    /**
+     * 获取直播配置列表
+     * @return 直播配置列表
+     */
+    CompletableFuture<List<FreeBoxLive>> getLivesAsync();
 
     /**
      * 获取直播配置列表
      */
-    void getLives(Consumer<List<FreeBoxLive>> callback);
+    default void getLives(Consumer<List<FreeBoxLive>> callback) {
+        whenComplete(getLivesAsync(), callback, false);
+    }
 }
@@ -0,0 +1,336 @@
+package io.knifer.freebox.spider.template.impl;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.gson.JsonObject;
+import io.knifer.freebox.model.c2s.FreeBoxLive;
+import io.knifer.freebox.model.common.tvbox.*;
+import io.knifer.freebox.model.domain.ClientInfo;
+import io.knifer.freebox.model.s2c.*;
+import io.knifer.freebox.net.websocket.core.ClientManager;
+import io.knifer.freebox.spider.template.SpiderTemplate;
+import io.knifer.freebox.util.AsyncUtil;
+import io.knifer.freebox.util.json.GsonUtil;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * 带结果缓存的爬虫模板
+ * 缓存首页、分类、详情内容，键为（客户端、源、方法、参数），每种方法有各自的有效期；
+ * 缓存以JSON形式保存，按大小加权做LRU淘汰，每次命中都反序列化出新对象，调用方可以随意修改结果；
+ * 相同的请求正在进行时不会重复发起，而是共用同一个请求的结果
+ * 调用方取消自己拿到的future不会取消共用的请求，该请求仍会在被代理模板的截止时间内结束并写入缓存；
+ * 缓存失效时，相应的进行中请求不再写入缓存，其他源的请求不受影响
+ * 回调所在的线程以及超时、出错时的提示与被代理模板一致
+ *
+ * @author Knifer
+ */
+@Slf4j
+public class CachingSpiderTemplate implements SpiderTemplate {
+
+    /**
+     * 缓存总大小上限（JSON字符数）
+     */
+    private static final long MAX_CACHE_WEIGHT = 8 * 1024 * 1024;
+
+    private final SpiderTemplate delegate;
+
+    private final ClientManager clientManager;
+
+    private final Cache<CacheKey, CachedResult> cache = CacheBuilder.newBuilder()
+            .maximumWeight(MAX_CACHE_WEIGHT)
+            .weigher((CacheKey key, CachedResult value) -> value.json().length())
+            .expireAfterWrite(CachedMethod.maxTtlSeconds(), TimeUnit.SECONDS)
+            .build();
+
+    /**
+     * 进行中的请求，结果为JSON
+     * 失效时移除相应的请求，请求结束时只有仍登记在此的请求才能写入缓存
+     */
+    private final Map<CacheKey, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+
+    public CachingSpiderTemplate(SpiderTemplate delegate, ClientManager clientManager) {
+        this.delegate = delegate;
+        this.clientManager = clientManager;
+    }
+
+    @Override
+    public void init(Consumer<Boolean> callback) {
+        // 重新加载配置后，同一个源key可能对应不同的站点
+        invalidateCache(null);
+        delegate.init(callback);
+    }
+
+    @Override
+    public void destroy() {
+        invalidateAll(key -> true);
+        delegate.destroy();
+    }
+
+    @Override
+    public void invalidateCache(@Nullable String sourceKey) {
+        ClientInfo clientInfo = clientManager.getCurrentClientImmediately();
+        String clientId;
+
+        if (clientInfo == null) {
+
+            return;
+        }
+        clientId = clientInfo.getId();
+        invalidateAll(
+                key -> key.clientId().equals(clientId) && (sourceKey == null || sourceKey.equals(key.sourceKey()))
+        );
+        log.info("spider cache invalidated, clientId={}, sourceKey={}", clientId, sourceKey);
+    }
+
+    @Override
+    public <T> void whenComplete(CompletableFuture<T> future, Consumer<T> callback, boolean quiet) {
+        delegate.whenComplete(future, callback, quiet);
+    }
+
+    @Override
+    public CompletableFuture<List<SourceBean>> getSourceBeanListAsync() {
+        return delegate.getSourceBeanListAsync();
+    }
+
+    @Override
+    public CompletableFuture<AbsSortXml> getHomeContentAsync(SourceBean sourceBean) {
+        return getCached(
+                CachedMethod.HOME_CONTENT,
+                sourceBean.getKey(),
+                List.of(),
+                AbsSortXml.class,
+                () -> delegate.getHomeContentAsync(sourceBean)
+        );
+    }
+
+    @Override
+    public CompletableFuture<AbsXml> getCategoryContentAsync(GetCategoryContentDTO dto) {
+        HashMap<String, String> extend = dto.getExtend();
+
+        return getCached(
+                CachedMethod.CATEGORY_CONTENT,
+                dto.getSourceKey(),
+                Arrays.asList(
+                        dto.getTid(), dto.getPage(), dto.isFilter(), extend == null ? null : new HashMap<>(extend)
+                ),
+                AbsXml.class,
+                () -> delegate.getCategoryContentAsync(dto)
+        );
+    }
+
+    @Override
+    public CompletableFuture<AbsXml> getDetailContentAsync(GetDetailContentDTO dto) {
+        return getCached(
+                CachedMethod.DETAIL_CONTENT,
+                dto.getSourceKey(),
+                Arrays.asList(dto.getVodId()),
+                AbsXml.class,
+                () -> delegate.getDetailContentAsync(dto)
+        );
+    }
+
+    @Override
+    public CompletableFuture<JsonObject> getPlayerContentAsync(GetPlayerContentDTO dto) {
+        return delegate.getPlayerContentAsync(dto);
+    }
+
+    @Override
+    public CompletableFuture<List<VodInfo>> getPlayHistoryAsync(GetPlayHistoryDTO dto) {
+        return delegate.getPlayHistoryAsync(dto);
+    }
+
+    @Override
+    public CompletableFuture<VodInfo> getOnePlayHistoryAsync(GetOnePlayHistoryDTO dto) {
+        return delegate.getOnePlayHistoryAsync(dto);
+    }
+
+    @Override
+    public CompletableFuture<AbsXml> getSearchContentAsync(GetSearchContentDTO dto) {
+        return delegate.getSearchContentAsync(dto);
+    }
+
+    @Override
+    public void cancelSearch() {
+        delegate.cancelSearch();
+    }
+
+    @Override
+    public CompletableFuture<Void> savePlayHistoryAsync(SavePlayHistoryDTO dto) {
+        return delegate.savePlayHistoryAsync(dto);
+    }
+
+    @Override
+    public CompletableFuture<Void> deletePlayHistoryAsync(DeletePlayHistoryDTO dto) {
+        return delegate.deletePlayHistoryAsync(dto);
+    }
+
+    @Override
+    public CompletableFuture<Void> saveMovieCollectionAsync(SaveMovieCollectionDTO dto) {
+        return delegate.saveMovieCollectionAsync(dto);
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteMovieCollectionAsync(DeleteMovieCollectionDTO dto) {
+        return delegate.deleteMovieCollectionAsync(dto);
+    }
+
+    @Override
+    public CompletableFuture<List<VodCollect>> getMovieCollectionAsync() {
+        return delegate.getMovieCollectionAsync();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> getMovieCollectedStatusAsync(GetMovieCollectedStatusDTO dto) {
+        return delegate.getMovieCollectedStatusAsync(dto);
+    }
+
+    @Override
+    public CompletableFuture<List<FreeBoxLive>> getLivesAsync() {
+        return delegate.getLivesAsync();
+    }
+
+    /**
+     * 读取缓存，未命中时发起请求（相同的请求进行中时共用其结果），结果不为null时写入缓存
+     * @param method 方法
+     * @param sourceKey 源
+     * @param args 除源以外的参数
+     * @param type 结果类型
+     * @param loader 请求
+     * @return 结果
+     */
+    private <T> CompletableFuture<T> getCached(
+            CachedMethod method,
+            String sourceKey,
+            List<Object> args,
+            Class<T> type,
+            Supplier<CompletableFuture<T>> loader
+    ) {
+        ClientInfo clientInfo = clientManager.getCurrentClientImmediately();
+        CacheKey key;
+        CachedResult cached;
+        CompletableFuture<String> pending;
+        CompletableFuture<String> existing;
+
+        if (clientInfo == null) {
+
+            return loader.get();
+        }
+        key = new CacheKey(clientInfo.getId(), sourceKey, method, args);
+        cached = cache.getIfPresent(key);
+        if (cached != null) {
+            if (cached.expiresAt() > System.currentTimeMillis()) {
+                log.debug("spider cache hit, key={}", key);
+
+                return CompletableFuture.completedFuture(GsonUtil.fromJson(cached.json(), type));
+            }
+            cache.invalidate(key);
+        }
+        pending = new CompletableFuture<>();
+        existing = inFlight.putIfAbsent(key, pending);
+        if (existing == null) {
+            load(key, pending, loader);
+            existing = pending;
+        } else {
+            log.debug("spider request joined in-flight request, key={}", key);
+        }
+
+        return existing.thenApply(json -> json == null ? null : GsonUtil.fromJson(json, type));
+    }
+
+    private <T> void load(CacheKey key, CompletableFuture<String> pending, Supplier<CompletableFuture<T>> loader) {
+        CompletableFuture<T> future;
+
+        try {
+            future = loader.get();
+        } catch (RuntimeException e) {
+            inFlight.remove(key, pending);
+            pending.completeExceptionally(e);
+
+            return;
+        }
+        future.whenComplete((result, throwable) -> {
+            String json;
+            CachedResult cachedResult;
+
+            if (throwable != null) {
+                inFlight.remove(key, pending);
+                pending.completeExceptionally(AsyncUtil.unwrap(throwable));
+
+                return;
+            }
+            try {
+                json = result == null ? null : GsonUtil.toJson(result);
+            } catch (RuntimeException e) {
+                inFlight.remove(key, pending);
+                pending.completeExceptionally(e);
+
+                return;
+            }
+            if (json == null) {
+                inFlight.remove(key, pending);
+            } else {
+                cachedResult = new CachedResult(
+                        json,
+                        System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(key.method().getTtlSeconds())
+                );
+                // 先写入再注销，注销失败说明请求期间缓存已失效，撤回刚写入的结果
+                cache.put(key, cachedResult);
+                if (!inFlight.remove(key, pending)) {
+                    cache.asMap().remove(key, cachedResult);
+                }
+            }
+            pending.complete(json);
+        });
+    }
+
+    /**
+     * 使缓存失效，进行中的相应请求结束后不再写入缓存
+     * 先移除进行中的请求再移除缓存，与load中先写入再注销的顺序配合，保证失效前发起的请求不会留下结果
+     */
+    private void invalidateAll(Predicate<CacheKey> predicate) {
+        inFlight.keySet().removeIf(predicate);
+        cache.asMap().keySet().removeIf(predicate);
+    }
+
+    /**
+     * 缓存的方法及其有效期
+     */
+    @Getter
+    @AllArgsConstructor
+    private enum CachedMethod {
+
+        HOME_CONTENT(600),
+        CATEGORY_CONTENT(300),
+        DETAIL_CONTENT(600);
+
+        private final long ttlSeconds;
+
+        private static long maxTtlSeconds() {
+            long result = 0;
+
+            for (CachedMethod method : values()) {
+                result = Math.max(result, method.ttlSeconds);
+            }
+
+            return result;
+        }
+    }
+
+    private record CacheKey(String clientId, String sourceKey, CachedMethod method, List<Object> args) {}
+
+    private record CachedResult(String json, long expiresAt) {}
+}
@@ -7,9 +7,11 @@ import com.google.common.base.Charsets;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonSyntaxException;
 import io.knifer.freebox.constant.BaseValues;
+import io.knifer.freebox.constant.HttpCacheCategory;
 import io.knifer.freebox.constant.I18nKeys;
 import io.knifer.freebox.exception.FBException;
 import io.knifer.freebox.exception.GlobalExceptionHandler;
+import io.knifer.freebox.helper.ConfigHelper;
 import io.knifer.freebox.helper.StorageHelper;
 import io.knifer.freebox.helper.ToastHelper;
 import io.knifer.freebox.model.c2s.FreeBoxLive;
@@ -17,26 +19,35 @@ import io.knifer.freebox.model.common.catvod.Result;
 import io.knifer.freebox.model.common.tvbox.*;
 import io.knifer.freebox.model.domain.*;
 import io.knifer.freebox.model.s2c.*;
+import io.knifer.freebox.net.http.cache.HttpResponseCache;
 import io.knifer.freebox.net.websocket.converter.CatVodBeanConverter;
 import io.knifer.freebox.net.websocket.core.ClientManager;
 import io.knifer.freebox.service.FutureWaitingService;
 import io.knifer.freebox.spider.SpiderJarLoader;
+import io.knifer.freebox.spider.SpiderTaskExecutor;
+import io.knifer.freebox.spider.SpiderTaskExecutor.Priority;
+import io.knifer.freebox.spider.SpiderWarmUp;
 import io.knifer.freebox.spider.template.SpiderTemplate;
+import io.knifer.freebox.util.AsyncUtil;
 import io.knifer.freebox.util.CollectionUtil;
-import io.knifer.freebox.util.HttpUtil;
 import io.knifer.freebox.util.ValidationUtil;
 import io.knifer.freebox.util.catvod.ApiConfigUtil;
 import io.knifer.freebox.util.catvod.SpiderInvokeUtil;
+import io.knifer.freebox.util.catvod.SpiderInvoker.SpiderMethod;
 import io.knifer.freebox.util.json.GsonUtil;
 import javafx.application.Platform;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.BooleanUtils;
 import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.StringUtils;
 
+import javax.annotation.Nullable;
 import java.util.*;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Consumer;
 
 /**
@@ -54,21 +65,36 @@ public class FreeBoxSpiderTemplate implements SpiderTemplate {
     private FreeBoxApiConfig apiConfig;
     private List<SourceBean> sourceBeans;
 
-    private final static ThreadPoolExecutor EXECUTOR =  new ThreadPoolExecutor(
-            1,
-            1,
-            0L,
-            TimeUnit.MILLISECONDS,
-            new LinkedBlockingQueue<>(),
-            r -> {
-                Thread t = new Thread(r);
-
-                t.setName("FreeBoxSpiderTemplate-Thread");
-                t.setUncaughtExceptionHandler(GlobalExceptionHandler.getInstance());
-
-                return t;
-            }
-    );
+    /**
+     * 爬虫线程数
+     */
+    private final static int SPIDER_POOL_SIZE = 16;
+    /**
+     * 每个源同时执行的最大请求数，搜索卡住时仍可以获取同一个源的详情和播放信息
+     */
+    private final static int MAX_CONCURRENCY_PER_SOURCE = 2;
+    private final static long INTERACTIVE_TIMEOUT_MILLIS = 30_000;
+    private final static long NORMAL_TIMEOUT_MILLIS = 30_000;
+    private final static long SEARCH_TIMEOUT_MILLIS = 20_000;
+    /**
+     * 同时预热的最大源数量
+     */
+    private final static int WARM_UP_CONCURRENCY = 4;
+
+    private final SpiderTaskExecutor executor = new SpiderTaskExecutor(SPIDER_POOL_SIZE, MAX_CONCURRENCY_PER_SOURCE);
+
+    /**
+     * 本地任务执行器（读写历史记录、收藏等），单线程依次执行，避免并发的读-改-写互相覆盖同一个文件
+     */
+    private final SpiderTaskExecutor localExecutor = createLocalExecutor();
+
+    /**
+     * 未结束的搜索请求，用于取消搜索
+     */
+    private final Set<CompletableFuture<?>> searchFutures = ConcurrentHashMap.newKeySet();
+
+    @Nullable
+    private volatile SpiderWarmUp spiderWarmUp;
 
     public FreeBoxSpiderTemplate(ClientManager clientManager) {
         this.clientManager = clientManager;
@@ -80,13 +106,20 @@ public class FreeBoxSpiderTemplate implements SpiderTemplate {
     @Override
     public void init(Consumer<Boolean> callback) {
         ClientInfo clientInfo = getClientInfo();
+        Consumer<Boolean> initCallback = success -> {
+            callback.accept(success);
+            if (success && BooleanUtils.toBoolean(ConfigHelper.getSpiderWarmUp())) {
+                warmUpSpiders(clientInfo.getId());
+            }
+        };
 
-        EXECUTOR.execute(() -> {
+        executeLocal(() -> {
             String configUrl = clientInfo.getConfigUrl();
             FutureWaitingService<String> service;
 
             if (configUrl.startsWith("http")) {
-                service = new FutureWaitingService<>(HttpUtil.getAsync(
+                service = new FutureWaitingService<>(HttpResponseCache.getInstance().getAsync(
+                        HttpCacheCategory.API_CONFIG,
                         configUrl,
                         BaseValues.FETCH_CAT_VOD_API_CONFIG_HTTP_HEADERS
                 ));
@@ -100,18 +133,18 @@ public class FreeBoxSpiderTemplate implements SpiderTemplate {
                     } else {
                         jsonVal = ApiConfigUtil.parseApiConfigJson(jsonVal.trim());
                     }
-                    doInit(configUrl, jsonVal, callback);
+                    doInit(configUrl, jsonVal, initCallback);
                 });
                 service.start();
             } else if (configUrl.startsWith("file:///")) {
                 doInit(
                         configUrl,
                         ApiConfigUtil.parseApiConfigJson(FileUtil.readString(configUrl, Charsets.UTF_8).trim()),
-                        callback
+                        initCallback
                 );
             } else {
                 Platform.runLater(() -> ToastHelper.showErrorI18n(I18nKeys.HOME_IMPORT_API_MESSAGE_INVALID_CONFIG_URL));
-                doInit(configUrl, null, callback);
+                doInit(configUrl, null, initCallback);
             }
         });
     }
@@ -157,33 +190,58 @@ public class FreeBoxSpiderTemplate implements SpiderTemplate {
         callback.accept(true);
     }
 
+    /**
+     * 在后台预热最后使用的源和可搜索的源
+     * @param clientId 客户端ID
+     */
+    private void warmUpSpiders(String clientId) {
+        String sourceKeyLastUsed = StorageHelper.find(clientId, ClientTVProperties.class)
+                .map(ClientTVProperties::getSourceKeyLastUsed)
+                .orElse(null);
+        SpiderWarmUp newWarmUp = new SpiderWarmUp(
+                executor, WARM_UP_CONCURRENCY, sourceBean -> getSpider(sourceBean, true)
+        );
+        SpiderWarmUp oldWarmUp = spiderWarmUp;
+
+        if (oldWarmUp != null) {
+            oldWarmUp.cancel();
+        }
+        spiderWarmUp = newWarmUp;
+        newWarmUp.start(SpiderWarmUp.prioritize(sourceBeans, sourceKeyLastUsed));
+    }
+
     @Override
     public void destroy() {
-        EXECUTOR.shutdownNow();
+        SpiderWarmUp warmUp = spiderWarmUp;
+
+        if (warmUp != null) {
+            warmUp.cancel();
+        }
+        executor.shutdown();
+        localExecutor.shutdown();
         spiderJarLoader.destroy();
     }
 
     @Override
-    public void getSourceBeanList(Consumer<List<SourceBean>> callback) {
-        callback.accept(sourceBeans);
+    public CompletableFuture<List<SourceBean>> getSourceBeanListAsync() {
+        return CompletableFuture.completedFuture(sourceBeans);
     }
 
     @Override
-    public void getHomeContent(SourceBean sourceBean, Consumer<AbsSortXml> callback) {
-        EXECUTOR.execute(() -> {
+    public CompletableFuture<AbsSortXml> getHomeContentAsync(SourceBean sourceBean) {
+        return executor.submit(sourceBean.getKey(), Priority.NORMAL, NORMAL_TIMEOUT_MILLIS, () -> {
             Object spider = getSpider(sourceBean);
             Result result = GsonUtil.fromJson(SpiderInvokeUtil.homeContent(spider, false), Result.class);
 
             log.info("getHomeContent: {}", result);
-            callback.accept(
-                    result == null ? null : beanConverter.resultToAbsSortXml(result, sourceBean.getKey())
-            );
+
+            return result == null ? null : beanConverter.resultToAbsSortXml(result, sourceBean.getKey());
         });
     }
 
     @Override
-    public void getCategoryContent(GetCategoryContentDTO dto, Consumer<AbsXml> callback) {
-        EXECUTOR.execute(() -> {
+    public CompletableFuture<AbsXml> getCategoryContentAsync(GetCategoryContentDTO dto) {
+        return executor.submit(dto.getSourceKey(), Priority.NORMAL, NORMAL_TIMEOUT_MILLIS, () -> {
             String sourceKey = dto.getSourceKey();
             Object spider = getSpider(sourceKey);
             HashMap<String, String> filterSelect = dto.getExtend();
@@ -196,26 +254,28 @@ public class FreeBoxSpiderTemplate implements SpiderTemplate {
             );
 
             log.info("getCategoryContent: {}", result);
-            callback.accept(result == null ? null : beanConverter.resultToAbsXml(result, dto.getSourceKey()));
+
+            return result == null ? null : beanConverter.resultToAbsXml(result, dto.getSourceKey());
         });
     }
 
     @Override
-    public void getDetailContent(GetDetailContentDTO dto, Consumer<AbsXml> callback) {
-        EXECUTOR.execute(() -> {
+    public CompletableFuture<AbsXml> getDetailContentAsync(GetDetailContentDTO dto) {
+        return executor.submit(dto.getSourceKey(), Priority.INTERACTIVE, INTERACTIVE_TIMEOUT_MILLIS, () -> {
             Object spider = getSpider(dto.getSourceKey());
             Result result = GsonUtil.fromJson(
                     SpiderInvokeUtil.detailContent(spider, List.of(dto.getVodId())), Result.class
             );
 
             log.info("getDetailContent: {}", result);
-            callback.accept(result == null ? null : beanConverter.resultToAbsXml(result, dto.getSourceKey()));
+
+            return result == null ? null : beanConverter.resultToAbsXml(result, dto.getSourceKey());
         });
     }
 
     @Override
-    public void getPlayerContent(GetPlayerContentDTO dto, Consumer<JsonObject> callback) {
-        EXECUTOR.execute(() -> {
+    public CompletableFuture<JsonObject> getPlayerContentAsync(GetPlayerContentDTO dto) {
+        return executor.submit(dto.getSourceKey(), Priority.INTERACTIVE, INTERACTIVE_TIMEOUT_MILLIS, () -> {
             Object spider = getSpider(dto.getSourceKey());
             JsonObject sourceResult = GsonUtil.fromJson(
                     SpiderInvokeUtil.playerContent(spider, dto.getPlayFlag(), dto.getVodId(), List.of()),
@@ -225,75 +285,102 @@ public class FreeBoxSpiderTemplate implements SpiderTemplate {
 
             log.info("getPlayerContent: {}", sourceResult);
             if (sourceResult == null) {
-                callback.accept(null);
 
-                return;
+                return null;
             }
             result = new JsonObject();
             result.add("nameValuePairs", sourceResult);
-            callback.accept(result);
+
+            return result;
         });
     }
 
     @Override
-    public void getPlayHistory(GetPlayHistoryDTO dto, Consumer<List<VodInfo>> callback) {
+    public CompletableFuture<List<VodInfo>> getPlayHistoryAsync(GetPlayHistoryDTO dto) {
         ClientInfo clientInfo = getClientInfo();
 
-        EXECUTOR.execute(() -> {
+        return submitLocal(() -> {
             MovieHistory movieHistory = StorageHelper.find(clientInfo.getId(), MovieHistory.class)
                     .orElse(null);
             Collection<VodInfo> result;
 
             if (movieHistory == null) {
                 log.info("getPlayHistory: null");
-                callback.accept(List.of());
-            } else {
-                result = movieHistory.getData().values();
-                log.info("getPlayHistory: {}", result);
-                callback.accept(result.isEmpty() ? List.of() : new ArrayList<>(result));
+
+                return List.of();
             }
+            result = movieHistory.getData().values();
+            log.info("getPlayHistory: {}", result);
+
+            return result.isEmpty() ? List.of() : new ArrayList<>(result);
         });
     }
 
     @Override
-    public void getOnePlayHistory(GetOnePlayHistoryDTO dto, Consumer<VodInfo> callback) {
+    public CompletableFuture<VodInfo> getOnePlayHistoryAsync(GetOnePlayHistoryDTO dto) {
         ClientInfo clientInfo = getClientInfo();
 
-        EXECUTOR.execute(() -> {
+        return submitLocal(() -> {
             MovieHistory movieHistory = StorageHelper.find(clientInfo.getId(), MovieHistory.class)
                     .orElse(null);
             VodInfo result;
 
             if (movieHistory == null) {
-                callback.accept(null);
                 log.info("getOnePlayHistory: null");
-            } else {
-                result = movieHistory.getData().get(DigestUtil.md5Hex(dto.getSourceKey() + dto.getVodId()));
-                log.info("getOnePlayHistory: {}", result);
-                callback.accept(result);
+
+                return null;
             }
+            result = movieHistory.getData().get(DigestUtil.md5Hex(dto.getSourceKey() + dto.getVodId()));
+            log.info("getOnePlayHistory: {}", result);
+
+            return result;
         });
     }
 
     @Override
-    public void getSearchContent(GetSearchContentDTO dto, Consumer<AbsXml> callback) {
-        EXECUTOR.execute(() -> {
-            Object spider = getSpider(dto.getSourceKey());
-            Result result = GsonUtil.fromJson(
-                    SpiderInvokeUtil.searchContent(spider, dto.getKeyword(), false),
-                    Result.class
-            );
+    public CompletableFuture<AbsXml> getSearchContentAsync(GetSearchContentDTO dto) {
+        CompletableFuture<AbsXml> future = executor.submit(
+                dto.getSourceKey(),
+                Priority.BACKGROUND,
+                SEARCH_TIMEOUT_MILLIS,
+                () -> {
+                    Object spider = getSpider(dto.getSourceKey());
+                    String page = dto.getPage();
+                    boolean firstPage = StringUtils.isBlank(page) || "1".equals(page);
+                    Result result;
+
+                    if (!SpiderInvokeUtil.has(
+                            spider, firstPage ? SpiderMethod.SEARCH_CONTENT : SpiderMethod.SEARCH_CONTENT_WITH_PAGE
+                    )) {
+                        // 爬虫没有实现搜索，基类默认实现只会返回空结果
+                        log.debug("spider does not support search, sourceKey={}", dto.getSourceKey());
+
+                        return null;
+                    }
+                    result = GsonUtil.fromJson(
+                            firstPage ?
+                                    SpiderInvokeUtil.searchContent(spider, dto.getKeyword(), dto.isQuick()) :
+                                    SpiderInvokeUtil.searchContent(spider, dto.getKeyword(), dto.isQuick(), page),
+                            Result.class
+                    );
 
-            log.info("getSearchContent: {}", result);
-            callback.accept(result == null ? null : beanConverter.resultToAbsXml(result, dto.getSourceKey()));
-        });
+                    log.info("getSearchContent: {}", result);
+
+                    return result == null ? null : beanConverter.resultToAbsXml(result, dto.getSourceKey());
+                }
+        );
+
+        searchFutures.add(future);
+        future.whenComplete((result, throwable) -> searchFutures.remove(future));
+
+        return future;
     }
 
     @Override
-    public <T extends RuntimeException> void savePlayHistory(SavePlayHistoryDTO dto, Consumer<T> onError) {
+    public CompletableFuture<Void> savePlayHistoryAsync(SavePlayHistoryDTO dto) {
         ClientInfo clientInfo = getClientInfo();
 
-        EXECUTOR.execute(() -> {
+        return submitLocal(() -> {
             MovieHistory movieHistory = StorageHelper.find(clientInfo.getId(), MovieHistory.class)
                     .orElse(null);
             Map<String, VodInfo> data;
@@ -312,38 +399,39 @@ public class FreeBoxSpiderTemplate implements SpiderTemplate {
             );
             StorageHelper.save(movieHistory);
             log.info("savePlayHistory: {}", movieHistory);
+
+            return null;
         });
     }
 
     @Override
-    public void deletePlayHistory(DeletePlayHistoryDTO dto, Runnable callback) {
+    public CompletableFuture<Void> deletePlayHistoryAsync(DeletePlayHistoryDTO dto) {
         ClientInfo clientInfo = getClientInfo();
 
-        EXECUTOR.execute(() -> {
+        return submitLocal(() -> {
             MovieHistory movieHistory = StorageHelper.find(clientInfo.getId(), MovieHistory.class)
                     .orElse(null);
             VodInfo removed;
 
-            if (movieHistory == null) {
-                callback.run();
-            } else {
+            if (movieHistory != null) {
                 removed = movieHistory.getData().remove(
                         DigestUtil.md5Hex(dto.getSourceKey() + dto.getVodId())
                 );
                 if (removed != null) {
                     StorageHelper.save(movieHistory);
                 }
-                callback.run();
             }
             log.info("deletePlayHistory: {}", movieHistory);
+
+            return null;
         });
     }
 
     @Override
-    public void saveMovieCollection(SaveMovieCollectionDTO dto, Runnable callback) {
+    public CompletableFuture<Void> saveMovieCollectionAsync(SaveMovieCollectionDTO dto) {
         ClientInfo clientInfo = getClientInfo();
 
-        EXECUTOR.execute(() -> {
+        return submitLocal(() -> {
             MovieCollection movieCollection = StorageHelper.find(clientInfo.getId(), MovieCollection.class)
                     .orElse(null);
             Map<String, VodCollect> data;
@@ -359,77 +447,143 @@ public class FreeBoxSpiderTemplate implements SpiderTemplate {
                     VodCollect.from(dto)
             );
             StorageHelper.save(movieCollection);
-            callback.run();
             log.info("saveMovieCollection: {}", movieCollection);
+
+            return null;
         });
     }
 
     @Override
-    public void deleteMovieCollection(DeleteMovieCollectionDTO dto, Runnable callback) {
+    public CompletableFuture<Void> deleteMovieCollectionAsync(DeleteMovieCollectionDTO dto) {
         ClientInfo clientInfo = getClientInfo();
 
-        EXECUTOR.execute(() -> {
+        return submitLocal(() -> {
             MovieCollection movieCollection = StorageHelper.find(clientInfo.getId(), MovieCollection.class)
                     .orElse(null);
             VodCollect removed;
 
-            if (movieCollection == null) {
-                callback.run();
-            } else {
+            if (movieCollection != null) {
                 removed = movieCollection.getData().remove(
                         DigestUtil.md5Hex(dto.getSourceKey() + dto.getVodId())
                 );
                 if (removed != null) {
                     StorageHelper.save(movieCollection);
                 }
-                callback.run();
             }
             log.info("deleteMovieCollection: {}", movieCollection);
+
+            return null;
         });
     }
 
     @Override
-    public void getMovieCollection(Consumer<List<VodCollect>> callback) {
+    public CompletableFuture<List<VodCollect>> getMovieCollectionAsync() {
         ClientInfo clientInfo = getClientInfo();
 
-        EXECUTOR.execute(() -> {
+        return submitLocal(() -> {
             MovieCollection movieCollection = StorageHelper.find(clientInfo.getId(), MovieCollection.class)
                     .orElse(null);
             Collection<VodCollect> result;
 
             if (movieCollection == null) {
                 log.info("getMovieCollection: null");
-                callback.accept(List.of());
-            } else {
-                result = movieCollection.getData().values();
-                log.info("getMovieCollection: {}", movieCollection);
-                callback.accept(result.isEmpty() ? List.of() : new ArrayList<>(result));
+
+                return List.of();
             }
+            result = movieCollection.getData().values();
+            log.info("getMovieCollection: {}", movieCollection);
+
+            return result.isEmpty() ? List.of() : new ArrayList<>(result);
         });
     }
 
     @Override
-    public void getMovieCollectedStatus(GetMovieCollectedStatusDTO dto, Consumer<Boolean> callback) {
+    public CompletableFuture<Boolean> getMovieCollectedStatusAsync(GetMovieCollectedStatusDTO dto) {
         ClientInfo clientInfo = getClientInfo();
 
-        EXECUTOR.execute(() -> {
+        return submitLocal(() -> {
             MovieCollection movieCollection = StorageHelper.find(clientInfo.getId(), MovieCollection.class)
                     .orElse(null);
             boolean flag;
 
             if (movieCollection == null) {
                 log.info("getMovieCollectedStatus: false");
-                callback.accept(false);
+
+                return false;
+            }
+            flag = movieCollection.getData().containsKey(
+                    DigestUtil.md5Hex(dto.getSourceKey() + dto.getVodId())
+            );
+            log.info("getMovieCollectedStatus: {}", flag);
+
+            return flag;
+        });
+    }
+
+    @Override
+    public void cancelSearch() {
+        searchFutures.forEach(future -> future.cancel(true));
+        searchFutures.clear();
+    }
+
+    /**
+     * 在完成请求的线程上把结果交给回调，超时或出错时回调null，被取消时不回调
+     */
+    @Override
+    public <T> void whenComplete(CompletableFuture<T> future, Consumer<T> callback, boolean quiet) {
+        future.whenComplete((result, throwable) -> {
+            Throwable cause;
+
+            if (throwable == null) {
+                acceptQuietly(callback, result);
+
+                return;
+            }
+            cause = AsyncUtil.unwrap(throwable);
+            if (cause instanceof CancellationException) {
+
+                return;
+            }
+            if (quiet || cause instanceof TimeoutException) {
+                log.warn("spider request failed", cause);
             } else {
-                flag = movieCollection.getData().containsKey(
-                        DigestUtil.md5Hex(dto.getSourceKey() + dto.getVodId())
-                );
-                log.info("getMovieCollectedStatus: {}", flag);
-                callback.accept(flag);
+                GlobalExceptionHandler.getInstance().uncaughtException(Thread.currentThread(), cause);
             }
+            acceptQuietly(callback, null);
         });
     }
 
+    private <T> void acceptQuietly(Consumer<T> callback, T result) {
+        try {
+            callback.accept(result);
+        } catch (Throwable e) {
+            GlobalExceptionHandler.getInstance().uncaughtException(Thread.currentThread(), e);
+        }
+    }
+
+    /**
+     * 创建本地任务执行器
+     * 包级可见，测试中验证并发提交的本地任务不会互相覆盖
+     */
+    static SpiderTaskExecutor createLocalExecutor() {
+        return new SpiderTaskExecutor(1, 1);
+    }
+
+    /**
+     * 执行本地任务（读写历史记录、收藏等），所有本地任务依次执行，不占用爬虫线程
+     */
+    private <T> CompletableFuture<T> submitLocal(Callable<T> callable) {
+        return localExecutor.submit(null, Priority.NORMAL, 0, callable);
+    }
+
+    private void executeLocal(Runnable runnable) {
+        whenComplete(submitLocal(() -> {
+            runnable.run();
+
+            return null;
+        }), result -> {}, false);
+    }
+
     private ClientInfo getClientInfo() {
         ClientInfo clientInfo = clientManager.getCurrentClientImmediately();
 
@@ -452,6 +606,16 @@ public class FreeBoxSpiderTemplate implements SpiderTemplate {
     }
 
     private Object getSpider(SourceBean sourceBean) {
+        return getSpider(sourceBean, false);
+    }
+
+    /**
+     * 获取爬虫
+     * @param sourceBean 源
+     * @param quiet 是否静默获取（后台预热），出错时只记录日志
+     * @return 爬虫
+     */
+    private Object getSpider(SourceBean sourceBean, boolean quiet) {
         String customJar = sourceBean.getJar();
         boolean hasCustomJar = StringUtils.isNotBlank(customJar);
 
@@ -461,7 +625,9 @@ public class FreeBoxSpiderTemplate implements SpiderTemplate {
                 !StringUtils.startsWith(customJar, "../") &&
                 !ValidationUtil.isURL(customJar)
         ) {
-            Platform.runLater(() -> ToastHelper.showErrorI18n(I18nKeys.TV_ERROR_LOAD_SPIDER_CONFIG_FAILED));
+            if (!quiet) {
+                Platform.runLater(() -> ToastHelper.showErrorI18n(I18nKeys.TV_ERROR_LOAD_SPIDER_CONFIG_FAILED));
+            }
             log.error("load site custom spider error, spider url invalid");
 
             return new Spider();
@@ -471,12 +637,14 @@ public class FreeBoxSpiderTemplate implements SpiderTemplate {
                 sourceBean.getKey(),
                 sourceBean.getApi(),
                 sourceBean.getExt(),
-                hasCustomJar ? customJar : apiConfig.getSpider()
+                hasCustomJar ? customJar : apiConfig.getSpider(),
+                quiet
         );
     }
 
     @Override
-    public void getLives(Consumer<List<FreeBoxLive>> callback) {
-        callback.accept(ObjectUtils.defaultIfNull(apiConfig.getLives(), List.of()));
+    public CompletableFuture<List<FreeBoxLive>> getLivesAsync() {
+        return CompletableFuture.completedFuture(ObjectUtils.defaultIfNull(apiConfig.getLives(), List.of()));
     }
+
 }
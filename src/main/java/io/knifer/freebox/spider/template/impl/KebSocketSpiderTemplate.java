@@ -2,7 +2,10 @@ package io.knifer.freebox.spider.template.impl;
 
 import com.google.gson.JsonObject;
 import com.google.gson.reflect.TypeToken;
+import io.knifer.freebox.constant.BaseValues;
+import io.knifer.freebox.constant.I18nKeys;
 import io.knifer.freebox.constant.MessageCodes;
+import io.knifer.freebox.helper.ToastHelper;
 import io.knifer.freebox.model.c2s.FreeBoxLive;
 import io.knifer.freebox.model.common.catvod.History;
 import io.knifer.freebox.model.common.catvod.Keep;
@@ -13,20 +16,26 @@ import io.knifer.freebox.model.s2c.*;
 import io.knifer.freebox.net.websocket.converter.CatVodBeanConverter;
 import io.knifer.freebox.net.websocket.core.ClientManager;
 import io.knifer.freebox.net.websocket.core.KebSocketRunner;
-import io.knifer.freebox.service.FutureWaitingService;
 import io.knifer.freebox.spider.template.SpiderTemplate;
-import io.knifer.freebox.util.CastUtil;
+import io.knifer.freebox.util.AsyncUtil;
 import io.knifer.freebox.util.CollectionUtil;
+import javafx.application.Platform;
 import lombok.extern.slf4j.Slf4j;
 
 import javax.annotation.Nullable;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * TVBox KebSocket 爬虫模板实现
+ * 请求在等待回复期间不占用线程；请求被取消或超时后移除Topic登记，之后到达的回复直接丢弃
  *
  * @author Knifer
  */
@@ -37,11 +46,13 @@ public class KebSocketSpiderTemplate implements SpiderTemplate {
 
     private final ClientManager clientManager;
 
-    private final Set<Class<? extends Throwable>> ignoringToastThrowableClassesInMovieSearching =
-            Set.of(TimeoutException.class);
-
     private final CatVodBeanConverter beanConverter;
 
+    /**
+     * 未结束的搜索请求，用于取消搜索
+     */
+    private final Set<CompletableFuture<?>> searchFutures = ConcurrentHashMap.newKeySet();
+
     public KebSocketSpiderTemplate(KebSocketRunner runner, ClientManager clientManager) {
         this.runner = runner;
         this.clientManager = clientManager;
@@ -49,54 +60,48 @@ public class KebSocketSpiderTemplate implements SpiderTemplate {
     }
 
     @Override
-    public void getSourceBeanList(Consumer<List<SourceBean>> callback) {
-        execute(
+    public CompletableFuture<List<SourceBean>> getSourceBeanListAsync() {
+        return sendTopic(
                 MessageCodes.GET_SOURCE_BEAN_LIST,
                 null,
                 new TypeToken<List<SourceBean>>(){},
-                msg -> callback.accept(CastUtil.cast(msg))
+                Function.identity()
         );
     }
 
     @Override
-    public void getHomeContent(SourceBean sourceBean, Consumer<AbsSortXml> callback) {
-        execute(
+    public CompletableFuture<AbsSortXml> getHomeContentAsync(SourceBean sourceBean) {
+        return sendTopic(
                 MessageCodes.GET_HOME_CONTENT,
                 sourceBean,
                 new TypeToken<Result>(){},
-                msg -> callback.accept(
-                        msg == null ? null : beanConverter.resultToAbsSortXml(msg, sourceBean.getKey())
-                )
+                msg -> msg == null ? null : beanConverter.resultToAbsSortXml(msg, sourceBean.getKey())
         );
     }
 
     @Override
-    public void getCategoryContent(GetCategoryContentDTO dto, Consumer<AbsXml> callback) {
-        execute(
+    public CompletableFuture<AbsXml> getCategoryContentAsync(GetCategoryContentDTO dto) {
+        return sendTopic(
                 MessageCodes.GET_CATEGORY_CONTENT,
                 dto,
                 new TypeToken<Result>(){},
-                msg -> callback.accept(
-                        msg == null ? null : beanConverter.resultToAbsXml(msg, dto.getSourceKey())
-                )
+                msg -> msg == null ? null : beanConverter.resultToAbsXml(msg, dto.getSourceKey())
         );
     }
 
     @Override
-    public void getDetailContent(GetDetailContentDTO dto, Consumer<AbsXml> callback) {
-        execute(
+    public CompletableFuture<AbsXml> getDetailContentAsync(GetDetailContentDTO dto) {
+        return sendTopic(
                 MessageCodes.GET_DETAIL_CONTENT,
                 dto,
                 new TypeToken<Result>(){},
-                msg -> callback.accept(
-                        msg == null ? null : beanConverter.resultToAbsXml(msg, dto.getSourceKey())
-                )
+                msg -> msg == null ? null : beanConverter.resultToAbsXml(msg, dto.getSourceKey())
         );
     }
 
     @Override
-    public void getPlayerContent(GetPlayerContentDTO dto, Consumer<JsonObject> callback) {
-        execute(
+    public CompletableFuture<JsonObject> getPlayerContentAsync(GetPlayerContentDTO dto) {
+        return sendTopic(
                 MessageCodes.GET_PLAYER_CONTENT,
                 dto,
                 new TypeToken<JsonObject>(){},
@@ -104,225 +109,222 @@ public class KebSocketSpiderTemplate implements SpiderTemplate {
                     ClientInfo clientInfo;
 
                     if (msg == null) {
-                        callback.accept(null);
 
-                        return;
+                        return null;
                     }
                     clientInfo = clientManager.getCurrentClientImmediately();
                     if (clientInfo == null) {
                         throw new AssertionError();
                     }
-                    callback.accept(beanConverter.catVodPlayContentToTVBoxPlayContent(msg, clientInfo));
+
+                    return beanConverter.catVodPlayContentToTVBoxPlayContent(msg, clientInfo);
                 }
         );
     }
 
     @Override
-    public void getPlayHistory(GetPlayHistoryDTO dto, Consumer<List<VodInfo>> callback) {
-        execute(
+    public CompletableFuture<List<VodInfo>> getPlayHistoryAsync(GetPlayHistoryDTO dto) {
+        return sendTopic(
                 MessageCodes.GET_PLAY_HISTORY,
                 dto,
                 new TypeToken<List<History>>(){},
-                msg -> callback.accept(
-                        CollectionUtil.isEmpty(msg) ? List.of() : msg.stream().map(VodInfo::from).toList()
-                )
+                msg -> CollectionUtil.isEmpty(msg) ? List.of() : msg.stream().map(VodInfo::from).toList()
         );
     }
 
     @Override
-    public void getOnePlayHistory(GetOnePlayHistoryDTO dto, Consumer<VodInfo> callback) {
-        execute(
+    public CompletableFuture<VodInfo> getOnePlayHistoryAsync(GetOnePlayHistoryDTO dto) {
+        return sendTopic(
                 MessageCodes.GET_ONE_PLAY_HISTORY,
                 dto,
                 new TypeToken<History>(){},
-                msg -> callback.accept(msg == null ? null : VodInfo.from(msg))
+                msg -> msg == null ? null : VodInfo.from(msg)
         );
     }
 
     @Override
-    public void getSearchContent(GetSearchContentDTO dto, Consumer<AbsXml> callback) {
-        execute(
+    public CompletableFuture<AbsXml> getSearchContentAsync(GetSearchContentDTO dto) {
+        CompletableFuture<AbsXml> future = sendTopic(
                 MessageCodes.GET_SEARCH_CONTENT,
                 dto,
                 new TypeToken<Result>(){},
-                msg -> callback.accept(
-                        msg == null ? null : beanConverter.resultToAbsXml(msg, dto.getSourceKey())
-                ),
-                ignoringToastThrowableClassesInMovieSearching
+                msg -> msg == null ? null : beanConverter.resultToAbsXml(msg, dto.getSourceKey())
         );
+
+        searchFutures.add(future);
+        future.whenComplete((result, throwable) -> searchFutures.remove(future));
+
+        return future;
     }
 
     @Override
-    public <T extends RuntimeException> void savePlayHistory(
-            SavePlayHistoryDTO dto, Consumer<T> onError
-    ) {
-        FutureWaitingService<ClientInfo> service = new FutureWaitingService<>(clientManager.getCurrentClient());
-
-        service.setOnSucceeded(evt -> {
-            ClientInfo clientInfo = service.getValue();
+    public void cancelSearch() {
+        searchFutures.forEach(future -> future.cancel(false));
+        searchFutures.clear();
+    }
 
-            if (clientInfo == null) {
-                return;
-            }
-            try {
-                runner.send(
-                        clientInfo.getConnection(),
-                        MessageCodes.SAVE_PLAY_HISTORY,
-                        dto
-                );
-            } catch (RuntimeException e) {
-                onError.accept(CastUtil.cast(e));
+    @Override
+    public CompletableFuture<Void> savePlayHistoryAsync(SavePlayHistoryDTO dto) {
+        return getCurrentClient().thenAccept(clientInfo -> {
+            if (clientInfo != null) {
+                runner.send(clientInfo.getConnection(), MessageCodes.SAVE_PLAY_HISTORY, dto);
             }
         });
-        service.start();
     }
 
     @Override
-    public void deletePlayHistory(DeletePlayHistoryDTO dto, Runnable callback) {
-        execute(
+    public CompletableFuture<Void> deletePlayHistoryAsync(DeletePlayHistoryDTO dto) {
+        return sendTopic(
                 MessageCodes.DELETE_PLAY_HISTORY,
                 dto,
                 new TypeToken<Void>(){},
-                msg -> callback.run()
+                Function.identity()
         );
     }
 
     @Override
-    public void saveMovieCollection(
-            SaveMovieCollectionDTO dto, Runnable callback
-    ) {
-        execute(
+    public CompletableFuture<Void> saveMovieCollectionAsync(SaveMovieCollectionDTO dto) {
+        return sendTopic(
                 MessageCodes.SAVE_MOVIE_COLLECTION,
                 dto,
                 new TypeToken<Void>(){},
-                ignored -> callback.run()
+                Function.identity()
         );
     }
 
     @Override
-    public void deleteMovieCollection(
-            DeleteMovieCollectionDTO dto, Runnable callback
-    ) {
-
-        execute(
+    public CompletableFuture<Void> deleteMovieCollectionAsync(DeleteMovieCollectionDTO dto) {
+        return sendTopic(
                 MessageCodes.DELETE_MOVIE_COLLECTION,
                 dto,
                 new TypeToken<Void>(){},
-                ignored -> callback.run()
+                Function.identity()
         );
     }
 
     @Override
-    public void getMovieCollection(Consumer<List<VodCollect>> callback) {
-        execute(
+    public CompletableFuture<List<VodCollect>> getMovieCollectionAsync() {
+        return sendTopic(
                 MessageCodes.GET_MOVIE_COLLECTION,
                 null,
                 new TypeToken<List<Keep>>(){},
-                msg -> callback.accept(
-                        CollectionUtil.isEmpty(msg) ? List.of() : msg.stream().map(VodCollect::from).toList()
-                )
+                msg -> CollectionUtil.isEmpty(msg) ? List.of() : msg.stream().map(VodCollect::from).toList()
         );
     }
 
     @Override
-    public void getMovieCollectedStatus(GetMovieCollectedStatusDTO dto, Consumer<Boolean> callback) {
-        execute(
+    public CompletableFuture<Boolean> getMovieCollectedStatusAsync(GetMovieCollectedStatusDTO dto) {
+        return sendTopic(
                 MessageCodes.GET_MOVIE_COLLECTED_STATUS,
                 dto,
                 new TypeToken<Boolean>(){},
-                msg -> callback.accept(CastUtil.cast(msg))
+                Function.identity()
         );
     }
 
     @Override
-    public void getLives(Consumer<List<FreeBoxLive>> callback) {
-        execute(
+    public CompletableFuture<List<FreeBoxLive>> getLivesAsync() {
+        return sendTopic(
                 MessageCodes.GET_LIVES,
                 null,
                 new TypeToken<List<FreeBoxLive>>(){},
-                msg -> callback.accept(CastUtil.cast(msg))
+                Function.identity()
         );
     }
 
-    private <T, R> void execute(
+    /**
+     * 发送Topic请求
+     * 返回的future被取消或超时后，会取消对回复的等待（移除Topic登记）
+     * @param messageCode 消息类型
+     * @param data 请求数据
+     * @param typeToken 回复数据类型
+     * @param converter 回复数据转换
+     * @return 转换后的回复数据，客户端断开且未能重连时为null
+     */
+    private <T, R, V> CompletableFuture<V> sendTopic(
             int messageCode,
-            T data,
+            @Nullable T data,
             TypeToken<R> typeToken,
-            Consumer<R> callback
+            Function<R, V> converter
     ) {
-        FutureWaitingService<ClientInfo> service = new FutureWaitingService<>(
-                clientManager.getCurrentClient(), false
-        );
+        CompletableFuture<V> result = new CompletableFuture<>();
 
-        dealWithClientInfoFutureWaitingService(
-                service,
-                messageCode,
-                data,
-                typeToken,
-                callback,
-                null
-        );
+        getCurrentClient().whenComplete((clientInfo, throwable) -> {
+            if (throwable != null) {
+                result.completeExceptionally(AsyncUtil.unwrap(throwable));
+
+                return;
+            }
+            if (clientInfo == null) {
+                result.complete(null);
+
+                return;
+            }
+            if (result.isDone()) {
+                // 等待客户端重连期间已被取消或超时
+
+                return;
+            }
+            bind(result, runner.sendTopic(clientInfo.getConnection(), messageCode, data, typeToken), converter);
+        });
+
+        return result;
     }
 
-    private <T, R> void execute(
-            int messageCode,
-            T data,
-            TypeToken<R> typeToken,
-            Consumer<R> callback,
-            Set<Class<? extends Throwable>> ignoringToastThrowableClasses
-    ) {
-        FutureWaitingService<ClientInfo> service = new FutureWaitingService<>(
-                clientManager.getCurrentClient(), false
-        );
+    /**
+     * 把Topic回复转换后交给result，result被取消或超时后取消Topic
+     */
+    private <R, V> void bind(CompletableFuture<V> result, CompletableFuture<R> topic, Function<R, V> converter) {
+        result.whenComplete((r, throwable) -> {
+            if (throwable != null) {
+                topic.cancel(false);
+            }
+        });
+        topic.whenComplete((msg, throwable) -> {
+            if (throwable != null) {
+                result.completeExceptionally(AsyncUtil.unwrap(throwable));
 
-        dealWithClientInfoFutureWaitingService(
-                service,
-                messageCode,
-                data,
-                typeToken,
-                callback,
-                ignoringToastThrowableClasses
-        );
+                return;
+            }
+            try {
+                result.complete(converter.apply(msg));
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        });
     }
 
-    private <T, R> void dealWithClientInfoFutureWaitingService(
-            FutureWaitingService<ClientInfo> service,
-            int messageCode,
-            T data,
-            TypeToken<R> typeToken,
-            Consumer<R> callback,
-            @Nullable Set<Class<? extends Throwable>> ignoringToastThrowableClasses
-    ) {
-        service.setOnSucceeded(evt -> {
-            ClientInfo clientInfo = service.getValue();
-            FutureWaitingService<R> processService;
+    private CompletableFuture<ClientInfo> getCurrentClient() {
+        return clientManager.getCurrentClient()
+                .orTimeout(BaseValues.KEB_SOCKET_REQUEST_TIMEOUT, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 在UI线程把请求结果交给回调，超时或出错时提示并回调null，被取消时不回调
+     */
+    @Override
+    public <R> void whenComplete(CompletableFuture<R> future, Consumer<R> callback, boolean quiet) {
+        future.whenComplete((result, throwable) -> Platform.runLater(() -> {
+            Throwable cause;
+
+            if (throwable == null) {
+                callback.accept(result);
+
+                return;
+            }
+            cause = AsyncUtil.unwrap(throwable);
+            if (cause instanceof CancellationException) {
 
-            if (clientInfo == null) {
                 return;
             }
-            if (ignoringToastThrowableClasses == null) {
-                processService = new FutureWaitingService<>(
-                        runner.sendTopic(
-                                clientInfo.getConnection(),
-                                messageCode,
-                                data,
-                                typeToken
-                        )
-                );
+            if (quiet) {
+                log.warn("KebSocket request failed", cause);
+            } else if (cause instanceof TimeoutException) {
+                ToastHelper.showErrorI18n(I18nKeys.COMMON_MESSAGE_TIMOUT_FAILED);
             } else {
-                processService = new FutureWaitingService<>(
-                        runner.sendTopic(
-                                clientInfo.getConnection(),
-                                messageCode,
-                                data,
-                                typeToken
-                        ),
-                        ignoringToastThrowableClasses
-                );
+                ToastHelper.showException(cause);
             }
-            processService.setOnSucceeded(event -> callback.accept(processService.getValue()));
-            processService.start();
-        });
-        service.start();
+            callback.accept(null);
+        }));
     }
 }
@@ -5,6 +5,7 @@ import lombok.experimental.UtilityClass;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -49,6 +50,19 @@ public class AsyncUtil {
         EXECUTOR.execute(runnable);
     }
 
+    /**
+     * 取出CompletableFuture回调中被CompletionException包装的原始异常
+     */
+    public Throwable unwrap(Throwable throwable) {
+        Throwable cause = throwable;
+
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+
+        return cause;
+    }
+
     public void cancelAllTask() {
         EXECUTOR.getQueue().clear();
     }
@@ -0,0 +1,163 @@
+package io.knifer.freebox.util;
+
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * 按主机限制并发请求数
+ * JDK HttpClient在HTTP/1.1下会为每个并发请求新建连接，同时向同一主机发出大量请求时容易被限流或拒绝，
+ * 超出上限的请求在队列中等待，前面的请求结束后再发出（不阻塞调用线程）
+ * 许可由任务在请求真正结束时释放（响应体读取完毕或关闭），而不是在收到响应头时
+ *
+ * @author Knifer
+ */
+public class HostConcurrencyLimiter {
+
+    private final int maxConcurrencyPerHost;
+
+    private final Map<String, HostState> hostStates = new HashMap<>();
+
+    /**
+     * @param maxConcurrencyPerHost 每个主机的最大并发数，小于1时不限制
+     */
+    public HostConcurrencyLimiter(int maxConcurrencyPerHost) {
+        this.maxConcurrencyPerHost = maxConcurrencyPerHost;
+    }
+
+    /**
+     * 提交请求
+     * 任务成功完成后，由任务负责释放许可；任务抛出异常、返回的结果异常完成、结果被取消时，由本类释放
+     * 取消返回的结果时，还在排队的请求会移出队列，已发出的请求会被取消
+     * @param host 主机（含端口）
+     * @param task 发出请求的任务，在获得许可后调用
+     * @return 请求结果
+     */
+    public <T> CompletableFuture<T> submit(String host, Function<Permit, CompletableFuture<T>> task) {
+        CompletableFuture<T> result;
+        Runnable starter;
+        HostState state;
+
+        if (maxConcurrencyPerHost < 1) {
+
+            return task.apply(new Permit(null));
+        }
+        result = new CompletableFuture<>();
+        starter = () -> start(host, task, result);
+        synchronized (hostStates) {
+            state = hostStates.computeIfAbsent(host, key -> new HostState());
+            if (state.running >= maxConcurrencyPerHost) {
+                state.waiting.add(starter);
+                result.whenComplete((value, throwable) -> {
+                    if (result.isCancelled()) {
+                        removeWaiting(host, starter);
+                    }
+                });
+
+                return result;
+            }
+            state.running++;
+        }
+        starter.run();
+
+        return result;
+    }
+
+    private <T> void start(String host, Function<Permit, CompletableFuture<T>> task, CompletableFuture<T> result) {
+        Permit permit = new Permit(host);
+        CompletableFuture<T> future;
+
+        if (result.isDone()) {
+            // 等待期间已被取消
+            permit.release();
+
+            return;
+        }
+        try {
+            future = task.apply(permit);
+        } catch (RuntimeException e) {
+            permit.release();
+            result.completeExceptionally(e);
+
+            return;
+        }
+        result.whenComplete((value, throwable) -> {
+            if (result.isCancelled()) {
+                future.cancel(true);
+            }
+        });
+        future.whenComplete((value, throwable) -> {
+            if (throwable != null) {
+                permit.release();
+                result.completeExceptionally(throwable);
+            } else if (!result.complete(value)) {
+                // 结果已被取消，没有人会读取响应
+                permit.release();
+            }
+        });
+    }
+
+    private void removeWaiting(String host, Runnable starter) {
+        HostState state;
+
+        synchronized (hostStates) {
+            state = hostStates.get(host);
+            if (state != null) {
+                state.waiting.remove(starter);
+            }
+        }
+    }
+
+    private void release(String host) {
+        Runnable next;
+        HostState state;
+
+        synchronized (hostStates) {
+            state = hostStates.get(host);
+            next = state.waiting.poll();
+            if (next == null) {
+                state.running--;
+                if (state.running == 0) {
+                    hostStates.remove(host);
+                }
+            }
+        }
+        if (next != null) {
+            // 许可直接交给下一个等待的请求
+            next.run();
+        }
+    }
+
+    /**
+     * 主机并发许可，重复释放无效
+     */
+    public class Permit {
+
+        @Nullable
+        private final String host;
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(@Nullable String host) {
+            this.host = host;
+        }
+
+        public void release() {
+            if (host != null && released.compareAndSet(false, true)) {
+                HostConcurrencyLimiter.this.release(host);
+            }
+        }
+    }
+
+    private static class HostState {
+
+        private int running;
+
+        private final Queue<Runnable> waiting = new ArrayDeque<>();
+    }
+}
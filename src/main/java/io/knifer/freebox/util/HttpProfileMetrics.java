@@ -0,0 +1,140 @@
+package io.knifer.freebox.util;
+
+import io.knifer.freebox.constant.HttpProfile;
+
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * HTTP请求统计
+ * 按请求类型统计请求数、失败数、接收字节数（压缩后的传输字节）和响应耗时（发出请求到收到响应头）
+ *
+ * @author Knifer
+ */
+public class HttpProfileMetrics {
+
+    private static final HttpProfileMetrics INSTANCE = new HttpProfileMetrics();
+
+    private final Map<HttpProfile, Counter> counters = new EnumMap<>(HttpProfile.class);
+
+    private HttpProfileMetrics() {
+        for (HttpProfile profile : HttpProfile.values()) {
+            counters.put(profile, new Counter());
+        }
+    }
+
+    public static HttpProfileMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 记录一次请求
+     * @param profile 请求类型
+     * @param latencyNanos 耗时（纳秒）
+     * @param failed 是否失败（网络错误，或响应状态码不小于400）
+     */
+    public void recordRequest(HttpProfile profile, long latencyNanos, boolean failed) {
+        Counter counter = counters.get(profile);
+
+        counter.requestCount.increment();
+        counter.latencyNanos.add(latencyNanos);
+        if (failed) {
+            counter.failureCount.increment();
+        }
+    }
+
+    /**
+     * 包装响应体处理器，统计接收的字节数
+     * @param profile 请求类型
+     * @param bodyHandler 响应体处理器
+     * @return 包装后的处理器
+     */
+    public <T> HttpResponse.BodyHandler<T> counting(HttpProfile profile, HttpResponse.BodyHandler<T> bodyHandler) {
+        LongAdder bytes = counters.get(profile).bytes;
+
+        return responseInfo -> new CountingBodySubscriber<>(bodyHandler.apply(responseInfo), bytes);
+    }
+
+    public Snapshot getSnapshot(HttpProfile profile) {
+        Counter counter = counters.get(profile);
+        long requestCount = counter.requestCount.sum();
+
+        return new Snapshot(
+                profile,
+                requestCount,
+                counter.failureCount.sum(),
+                counter.bytes.sum(),
+                requestCount == 0 ? 0 : counter.latencyNanos.sum() / requestCount / 1_000_000
+        );
+    }
+
+    public List<Snapshot> getSnapshots() {
+        return counters.keySet().stream().map(this::getSnapshot).toList();
+    }
+
+    private static class Counter {
+
+        private final LongAdder requestCount = new LongAdder();
+
+        private final LongAdder failureCount = new LongAdder();
+
+        private final LongAdder bytes = new LongAdder();
+
+        private final LongAdder latencyNanos = new LongAdder();
+    }
+
+    /**
+     * 统计快照
+     * @param profile 请求类型
+     * @param requestCount 请求数
+     * @param failureCount 失败数
+     * @param bytes 接收字节数
+     * @param averageLatencyMillis 平均耗时（毫秒）
+     */
+    public record Snapshot(
+            HttpProfile profile,
+            long requestCount,
+            long failureCount,
+            long bytes,
+            long averageLatencyMillis
+    ) {}
+
+    private record CountingBodySubscriber<T>(
+            HttpResponse.BodySubscriber<T> delegate, LongAdder bytes
+    ) implements HttpResponse.BodySubscriber<T> {
+
+        @Override
+        public CompletionStage<T> getBody() {
+            return delegate.getBody();
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            delegate.onSubscribe(subscription);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> item) {
+            for (ByteBuffer buffer : item) {
+                bytes.add(buffer.remaining());
+            }
+            delegate.onNext(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            delegate.onError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            delegate.onComplete();
+        }
+    }
+}
@@ -1,40 +1,84 @@
 package io.knifer.freebox.util;
 
 import cn.hutool.core.net.URLEncodeUtil;
-import lombok.Getter;
+import cn.hutool.http.HttpStatus;
+import com.google.common.net.HttpHeaders;
+import com.google.common.net.MediaType;
+import io.knifer.freebox.constant.BaseValues;
+import io.knifer.freebox.constant.HttpProfile;
+import io.knifer.freebox.helper.ConfigHelper;
 import lombok.experimental.UtilityClass;
 
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.io.UncheckedIOException;
 import java.net.IDN;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 /**
  * HTTP
+ * 应用内所有HTTP请求（接口、播放列表、分片、图片、下载）共用同一个客户端，共享连接池、代理设置和每主机并发上限，
+ * 按请求类型（HttpProfile）统计请求数、流量和耗时
+ * 文本请求会声明支持gzip/deflate压缩，并在读取响应体时流式解压
  *
  * @author Knifer
  */
 @UtilityClass
 public class HttpUtil {
 
-    @Getter
-    private final static HttpClient client = HttpClient.newBuilder()
-            .followRedirects(HttpClient.Redirect.ALWAYS)
-            .connectTimeout(Duration.ofSeconds(10))
-            .build();
+    /**
+     * 声明支持的压缩方式
+     * JDK中没有brotli解码器，不声明br，服务器会退回gzip
+     */
+    public final String ACCEPT_ENCODING = "gzip, deflate";
+
+    private volatile HttpClient client;
+
+    private volatile HostConcurrencyLimiter limiter;
+
+    private volatile ClientOptions options;
+
+    static {
+        configure(ClientOptions.DEFAULT);
+    }
+
+    /**
+     * 按给定选项重建客户端，之后发出的请求使用新的客户端
+     * @param clientOptions 客户端选项
+     */
+    public synchronized void configure(ClientOptions clientOptions) {
+        options = clientOptions;
+        client = HttpClient.newBuilder()
+                .version(clientOptions.preferHttp2() ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+                .followRedirects(HttpClient.Redirect.ALWAYS)
+                .connectTimeout(Duration.ofSeconds(Math.max(clientOptions.connectTimeoutSeconds(), 1)))
+                .build();
+        limiter = new HostConcurrencyLimiter(clientOptions.maxConnectionsPerHost());
+    }
+
+    public HttpClient getClient() {
+        return client;
+    }
 
     public byte[] getFile(String url) throws IOException {
         try {
-            return client.send(
-                    HttpRequest.newBuilder()
-                            .GET()
-                            .uri(parseUrl(url))
-                            .build(),
-                    HttpResponse.BodyHandlers.ofByteArray()
+            return send(
+                    HttpProfile.DOWNLOAD, newRequestBuilder(HttpProfile.DOWNLOAD, url).build(), ofDecodedByteArray()
             ).body();
         } catch (InterruptedException ignored) {}
 
@@ -42,26 +86,394 @@ public class HttpUtil {
     }
 
     public CompletableFuture<String> getAsync(String url) {
-        return client.sendAsync(
-                HttpRequest.newBuilder()
-                        .GET()
-                        .uri(parseUrl(url))
-                        .build(),
-                HttpResponse.BodyHandlers.ofString()
-        ).thenApply(HttpResponse::body);
+        return sendAsync(newRequestBuilder(url).build(), ofDecodedString()).thenApply(HttpResponse::body);
     }
 
     public CompletableFuture<String> getAsync(String url, String... headers) {
-        return client.sendAsync(
-                HttpRequest.newBuilder()
-                        .GET()
-                        .uri(parseUrl(url))
-                        .headers(headers)
-                        .build(),
-                HttpResponse.BodyHandlers.ofString()
+        return sendAsync(
+                newRequestBuilder(url).headers(headers).build(), ofDecodedString()
         ).thenApply(HttpResponse::body);
     }
 
+    /**
+     * 创建接口请求（API）的GET请求构建器
+     * @param url 地址
+     * @return 请求构建器
+     */
+    public HttpRequest.Builder newRequestBuilder(String url) {
+        return newRequestBuilder(HttpProfile.API, url);
+    }
+
+    /**
+     * 创建GET请求构建器，已设置请求超时时间，声明支持压缩的请求类型会设置Accept-Encoding
+     * 调用方覆盖Accept-Encoding时，需自行处理对应的压缩方式
+     * @param profile 请求类型
+     * @param url 地址
+     * @return 请求构建器
+     */
+    public HttpRequest.Builder newRequestBuilder(HttpProfile profile, String url) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .GET()
+                .uri(parseUrl(url))
+                .timeout(Duration.ofSeconds(Math.max(options.requestTimeoutSeconds(), 1)));
+
+        if (profile.isCompressed()) {
+            builder.header(HttpHeaders.ACCEPT_ENCODING, ACCEPT_ENCODING);
+        }
+
+        return builder;
+    }
+
+    /**
+     * 发送接口请求（API）
+     * @see #sendAsync(HttpProfile, HttpRequest, HttpResponse.BodyHandler)
+     */
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(
+            HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler
+    ) {
+        return sendAsync(HttpProfile.API, request, bodyHandler);
+    }
+
+    /**
+     * 发送请求（受每个主机的并发上限约束），并按请求类型统计
+     * 输入流形式的响应体在读到末尾或关闭时才释放主机并发许可，使用完毕后必须关闭
+     * @param profile 请求类型
+     * @param request 请求
+     * @param bodyHandler 响应体处理器
+     * @return 响应
+     */
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(
+            HttpProfile profile, HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler
+    ) {
+        HttpClient currentClient = client;
+        URI uri = request.uri();
+        HttpProfileMetrics metrics = HttpProfileMetrics.getInstance();
+        HttpResponse.BodyHandler<T> countingBodyHandler = metrics.counting(profile, bodyHandler);
+        long startNanos = System.nanoTime();
+
+        return limiter.<HttpResponse<T>>submit(
+                uri.getPort() == -1 ? uri.getHost() : uri.getHost() + ":" + uri.getPort(),
+                permit -> currentClient.sendAsync(request, releasing(countingBodyHandler, permit))
+        ).whenComplete((resp, throwable) -> metrics.recordRequest(
+                profile,
+                System.nanoTime() - startNanos,
+                throwable != null || resp.statusCode() >= HttpStatus.HTTP_BAD_REQUEST
+        ));
+    }
+
+    /**
+     * 响应体读取完毕时释放主机并发许可
+     * 输入流形式的响应体在收到响应头时就已完成，连接在读完或关闭之前仍被占用，因此在输入流读到末尾或关闭时才释放
+     */
+    @SuppressWarnings("unchecked")
+    private <T> HttpResponse.BodyHandler<T> releasing(
+            HttpResponse.BodyHandler<T> bodyHandler, HostConcurrencyLimiter.Permit permit
+    ) {
+        return responseInfo -> HttpResponse.BodySubscribers.mapping(
+                bodyHandler.apply(responseInfo),
+                body -> {
+                    if (body instanceof InputStream input) {
+
+                        return (T) new PermitReleasingInputStream(input, permit);
+                    }
+                    permit.release();
+
+                    return body;
+                }
+        );
+    }
+
+    /**
+     * 同步发送接口请求（API）
+     * @see #send(HttpProfile, HttpRequest, HttpResponse.BodyHandler)
+     */
+    public <T> HttpResponse<T> send(
+            HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler
+    ) throws IOException, InterruptedException {
+        return send(HttpProfile.API, request, bodyHandler);
+    }
+
+    /**
+     * 同步发送请求（受每个主机的并发上限约束），并按请求类型统计
+     * 等待期间线程被中断时，取消请求（排队中的请求移出队列）并抛出InterruptedException
+     * @param profile 请求类型
+     * @param request 请求
+     * @param bodyHandler 响应体处理器
+     * @return 响应
+     */
+    public <T> HttpResponse<T> send(
+            HttpProfile profile, HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler
+    ) throws IOException, InterruptedException {
+        CompletableFuture<HttpResponse<T>> future = sendAsync(profile, request, bodyHandler);
+        Throwable cause;
+
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+
+            throw e;
+        } catch (ExecutionException e) {
+            cause = e.getCause();
+            if (cause instanceof CompletionException && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (cause instanceof UncheckedIOException uncheckedIOException) {
+                throw uncheckedIOException.getCause();
+            }
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * 解压后的响应体输入流，边读边解压
+     * 映射函数中不能阻塞读取数据（如解析gzip头），所以解压流在第一次读取时才创建
+     */
+    public HttpResponse.BodyHandler<InputStream> ofDecodedInputStream() {
+        return responseInfo -> HttpResponse.BodySubscribers.mapping(
+                HttpResponse.BodySubscribers.ofInputStream(),
+                input -> {
+                    String contentEncoding = getContentEncoding(responseInfo.headers());
+
+                    return isCompressed(contentEncoding) ?
+                            new LazyDecodingInputStream(input, contentEncoding) :
+                            input;
+                }
+        );
+    }
+
+    /**
+     * 解压后的响应体字节
+     */
+    public HttpResponse.BodyHandler<byte[]> ofDecodedByteArray() {
+        return responseInfo -> HttpResponse.BodySubscribers.mapping(
+                HttpResponse.BodySubscribers.ofByteArray(),
+                data -> decodeBytes(data, getContentEncoding(responseInfo.headers()))
+        );
+    }
+
+    /**
+     * 解压后的响应体文本，字符集取自Content-Type，未指定时使用UTF-8
+     */
+    public HttpResponse.BodyHandler<String> ofDecodedString() {
+        return responseInfo -> HttpResponse.BodySubscribers.mapping(
+                HttpResponse.BodySubscribers.ofByteArray(),
+                data -> new String(
+                        decodeBytes(data, getContentEncoding(responseInfo.headers())),
+                        getCharset(responseInfo.headers())
+                )
+        );
+    }
+
+    private String getContentEncoding(java.net.http.HttpHeaders headers) {
+        return headers.firstValue(HttpHeaders.CONTENT_ENCODING).orElse("identity").trim().toLowerCase();
+    }
+
+    private Charset getCharset(java.net.http.HttpHeaders headers) {
+        String contentType = headers.firstValue(HttpHeaders.CONTENT_TYPE).orElse(null);
+
+        if (contentType == null) {
+
+            return StandardCharsets.UTF_8;
+        }
+        try {
+            return MediaType.parse(contentType).charset().or(StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+
+            return StandardCharsets.UTF_8;
+        }
+    }
+
+    private byte[] decodeBytes(byte[] data, String contentEncoding) {
+        if (data.length == 0 || !isCompressed(contentEncoding)) {
+
+            return data;
+        }
+        try (InputStream input = decode(new ByteArrayInputStream(data), contentEncoding)) {
+            return input.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private boolean isCompressed(String contentEncoding) {
+        return contentEncoding.equals("gzip") ||
+                contentEncoding.equals("x-gzip") ||
+                contentEncoding.equals("deflate");
+    }
+
+    private InputStream decode(InputStream input, String contentEncoding) {
+        PushbackInputStream pushbackInput;
+        int firstByte;
+
+        try {
+            switch (contentEncoding) {
+                case "gzip", "x-gzip" -> {
+                    return new GZIPInputStream(input);
+                }
+                case "deflate" -> {
+                    // 标准的deflate带zlib头（首字节低4位为8），部分服务器发送的是不带头的原始deflate数据
+                    pushbackInput = new PushbackInputStream(input, 1);
+                    firstByte = pushbackInput.read();
+                    if (firstByte == -1) {
+
+                        return pushbackInput;
+                    }
+                    pushbackInput.unread(firstByte);
+
+                    return new InflaterInputStream(pushbackInput, new Inflater((firstByte & 0x0F) != 8));
+                }
+                default -> {
+                    return input;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 读到末尾或关闭时释放主机并发许可的输入流
+     */
+    private static class PermitReleasingInputStream extends FilterInputStream {
+
+        private final HostConcurrencyLimiter.Permit permit;
+
+        private PermitReleasingInputStream(InputStream input, HostConcurrencyLimiter.Permit permit) {
+            super(input);
+            this.permit = permit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int result = super.read();
+
+            if (result == -1) {
+                permit.release();
+            }
+
+            return result;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int result = super.read(b, off, len);
+
+            if (result == -1) {
+                permit.release();
+            }
+
+            return result;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                permit.release();
+            }
+        }
+    }
+
+    /**
+     * 第一次读取时才创建解压流
+     */
+    private static class LazyDecodingInputStream extends InputStream {
+
+        private final InputStream input;
+
+        private final String contentEncoding;
+
+        private InputStream decoded;
+
+        private LazyDecodingInputStream(InputStream input, String contentEncoding) {
+            this.input = input;
+            this.contentEncoding = contentEncoding;
+        }
+
+        private InputStream getDecoded() throws IOException {
+            if (decoded == null) {
+                try {
+                    decoded = decode(input, contentEncoding);
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+            }
+
+            return decoded;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return getDecoded().read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return getDecoded().read(b, off, len);
+        }
+
+        @Override
+        public int available() throws IOException {
+            return decoded == null ? 0 : decoded.available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (decoded == null) {
+                input.close();
+            } else {
+                decoded.close();
+            }
+        }
+    }
+
+    /**
+     * 客户端选项
+     * @param preferHttp2 优先使用HTTP/2（服务器不支持时自动降级）
+     * @param maxConnectionsPerHost 每个主机的最大并发请求数，小于1时不限制
+     * @param connectTimeoutSeconds 连接超时时间（秒）
+     * @param requestTimeoutSeconds 请求超时时间（秒），从发出请求到收到响应头
+     */
+    public record ClientOptions(
+            boolean preferHttp2,
+            int maxConnectionsPerHost,
+            int connectTimeoutSeconds,
+            int requestTimeoutSeconds
+    ) {
+
+        public static final ClientOptions DEFAULT = new ClientOptions(
+                BaseValues.DEFAULT_HTTP_PREFER_HTTP2,
+                BaseValues.DEFAULT_HTTP_MAX_CONNECTIONS_PER_HOST,
+                BaseValues.DEFAULT_HTTP_CONNECT_TIMEOUT,
+                BaseValues.DEFAULT_HTTP_REQUEST_TIMEOUT
+        );
+
+        /**
+         * 从配置中读取客户端选项
+         * @return 客户端选项
+         */
+        public static ClientOptions fromConfig() {
+            return new ClientOptions(
+                    ConfigHelper.getHttpPreferHttp2(),
+                    ConfigHelper.getHttpMaxConnectionsPerHost(),
+                    ConfigHelper.getHttpConnectTimeout(),
+                    ConfigHelper.getHttpRequestTimeout()
+            );
+        }
+    }
+
     public URI parseUrl(String url) {
         String[] protocolAndPath = url.split("://", 2);
         String protocol = protocolAndPath[0];
@@ -2,20 +2,20 @@ package io.knifer.freebox.util.catvod;
 
 import io.knifer.freebox.constant.I18nKeys;
 import io.knifer.freebox.helper.ToastHelper;
+import io.knifer.freebox.util.catvod.SpiderInvoker.SpiderMethod;
 import javafx.application.Platform;
 import lombok.experimental.UtilityClass;
 import lombok.extern.slf4j.Slf4j;
 import okhttp3.OkHttpClient;
 
 import javax.annotation.Nullable;
-import java.lang.reflect.Method;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 
 /**
  * 爬虫执行工具类
+ * 通过SpiderInvoker调用，每个爬虫类只反射一次；爬虫没有实现的方法直接返回默认值，不再提示错误
  *
  * @author Knifer
  */
@@ -25,133 +25,108 @@ public class SpiderInvokeUtil {
 
     public void init(Object spider, @Nullable String extend) {
         if (extend == null) {
-            getMethod(spider, "init").ifPresent(method -> invoke(spider, method));
+            invoke(spider, SpiderMethod.INIT);
         } else {
-            getMethod(spider, "init", String.class)
-                    .ifPresent(method -> invoke(spider, method, extend));
+            invoke(spider, SpiderMethod.INIT_WITH_EXTEND, extend);
         }
     }
 
     @Nullable
     public String homeContent(Object spider, boolean filter) {
-        return getMethod(spider, "homeContent", boolean.class)
-                .map(method -> SpiderInvokeUtil.<String>invoke(spider, method, filter))
-                .orElse(null);
+        return invoke(spider, SpiderMethod.HOME_CONTENT, filter);
     }
 
     @Nullable
     public String homeVideoContent(Object spider) {
-        return getMethod(spider, "homeVideoContent")
-                .map(method -> SpiderInvokeUtil.<String>invoke(spider, method))
-                .orElse(null);
+        return invoke(spider, SpiderMethod.HOME_VIDEO_CONTENT);
     }
 
     @Nullable
     public String categoryContent(
             Object spider, String tid, String pg, boolean filter, @Nullable HashMap<String, String> extend
     ) {
-        return getMethod(spider, "categoryContent", String.class, String.class, boolean.class, HashMap.class)
-                .map(method -> SpiderInvokeUtil.<String>invoke(spider, method, tid, pg, filter, extend))
-                .orElse(null);
+        return invoke(spider, SpiderMethod.CATEGORY_CONTENT, tid, pg, filter, extend);
     }
 
     @Nullable
     public String detailContent(Object spider, List<String> ids) {
-        return getMethod(spider, "detailContent", List.class)
-                .map(method -> SpiderInvokeUtil.<String>invoke(spider, method, ids))
-                .orElse(null);
+        return invoke(spider, SpiderMethod.DETAIL_CONTENT, ids);
     }
 
+    /**
+     * 搜索
+     * 聚合搜索时会同时调用大量爬虫，失败时只记录日志，不提示
+     */
     @Nullable
     public String searchContent(Object spider, String key, boolean quick) {
-        Class<?> clazz = spider.getClass();
-        Method method;
-        Object result = null;
-
-        try {
-            method = clazz.getMethod("searchContent", String.class, boolean.class);
-            result = method.invoke(spider, key, quick);
-        } catch (Throwable ignored) {}
-
-        return result == null ? null : (String) result;
+        return invokeQuietly(spider, SpiderMethod.SEARCH_CONTENT, key, quick);
     }
 
     @Nullable
     public String searchContent(Object spider, String key, boolean quick, String pg) {
-        Class<?> clazz = spider.getClass();
-        Method method;
-        Object result = null;
-
-        try {
-            method = clazz.getMethod("searchContent", String.class, boolean.class, String.class);
-            result = method.invoke(spider, key, quick, pg);
-        } catch (Throwable ignored) {}
-
-        return result == null ? null : (String) result;
+        return invokeQuietly(spider, SpiderMethod.SEARCH_CONTENT_WITH_PAGE, key, quick, pg);
     }
 
     @Nullable
     public String playerContent(Object spider, String flag, String id, List<String> vipFlags) {
-        return getMethod(spider, "playerContent", String.class, String.class, List.class)
-                .map(method -> SpiderInvokeUtil.<String>invoke(spider, method, flag, id, vipFlags))
-                .orElse(null);
+        return invoke(spider, SpiderMethod.PLAYER_CONTENT, flag, id, vipFlags);
     }
 
     public boolean manualVideoCheck(Object spider) {
-        return (boolean) getMethod(spider, "manualVideoCheck")
-                .map(method -> invoke(spider, method))
-                .orElse(false);
+        return Boolean.TRUE.equals(invoke(spider, SpiderMethod.MANUAL_VIDEO_CHECK));
     }
 
     public boolean isVideoFormat(Object spider, String url) {
-        return (boolean) getMethod(spider, "isVideoFormat", String.class)
-                .map(method -> invoke(spider, method, url))
-                .orElse(false);
+        return Boolean.TRUE.equals(invoke(spider, SpiderMethod.IS_VIDEO_FORMAT, url));
     }
 
     @Nullable
     public Object[] proxyLocal(Object spider, Map<String, String> params) {
-        return getMethod(spider, "proxyLocal", Map.class)
-                .map(method -> SpiderInvokeUtil.<Object[]>invoke(spider, method, params))
-                .orElse(null);
+        return invoke(spider, SpiderMethod.PROXY_LOCAL, params);
     }
 
     public void destroy(Object spider) {
-        getMethod(spider, "destroy")
-                .ifPresent(method -> invoke(spider, method));
+        invoke(spider, SpiderMethod.DESTROY);
     }
 
     @Nullable
     public OkHttpClient client(Object spider) {
-        return getMethod(spider, "client")
-                .map(method -> SpiderInvokeUtil.<OkHttpClient>invoke(spider, method))
-                .orElse(null);
+        return invoke(spider, SpiderMethod.CLIENT);
     }
 
-    private Optional<Method> getMethod(Object spider, String methodName, Class<?> ... parameterTypes) {
-        Class<?> clazz = spider.getClass();
+    /**
+     * 爬虫是否自己实现了指定方法（不含基类Spider的默认实现）
+     */
+    public boolean has(Object spider, SpiderMethod spiderMethod) {
+        return SpiderInvoker.of(spider).has(spiderMethod);
+    }
 
-        try {
-            return Optional.of(clazz.getMethod(methodName, parameterTypes));
-        } catch (Throwable e) {
-            log.error("FreeBox spider exception", e);
-            Platform.runLater(() -> ToastHelper.showErrorI18n(I18nKeys.ERROR_SPIDER_INVOKE_FAILED));
+    @Nullable
+    private <T> T invoke(Object spider, SpiderMethod spiderMethod, Object... args) {
+        return doInvoke(spider, spiderMethod, false, args);
+    }
 
-            return Optional.empty();
-        }
+    @Nullable
+    private <T> T invokeQuietly(Object spider, SpiderMethod spiderMethod, Object... args) {
+        return doInvoke(spider, spiderMethod, true, args);
     }
 
+    @Nullable
     @SuppressWarnings("unchecked")
-    private <T> T invoke(Object spider, Method method, Object ... args) {
-        Object result;
+    private <T> T doInvoke(Object spider, SpiderMethod spiderMethod, boolean quiet, Object... args) {
+        SpiderInvoker invoker = SpiderInvoker.of(spider);
 
         try {
-            result = method.invoke(spider, args);
-
-            return result == null ? null : (T) result;
+            return (T) invoker.invoke(spiderMethod, spider, args);
+        } catch (NoSuchMethodException e) {
+            log.debug("spider method not found, class={}, method={}", spider.getClass().getName(), spiderMethod);
         } catch (Throwable e) {
-            log.error("FreeBox spider exception", e);
-            Platform.runLater(() -> ToastHelper.showErrorI18n(I18nKeys.ERROR_SPIDER_INVOKE_FAILED));
+            if (quiet) {
+                log.warn("FreeBox spider exception, method={}", spiderMethod, e);
+            } else {
+                log.error("FreeBox spider exception, method={}", spiderMethod, e);
+                Platform.runLater(() -> ToastHelper.showErrorI18n(I18nKeys.ERROR_SPIDER_INVOKE_FAILED));
+            }
         }
 
         return null;
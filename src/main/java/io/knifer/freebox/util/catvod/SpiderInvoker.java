@@ -0,0 +1,175 @@
+package io.knifer.freebox.util.catvod;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.Nullable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 爬虫方法调用器
+ * 每个爬虫类只在第一次使用时（实例化后调用init）反射查找一次CatVod入口方法，并转换为MethodHandle缓存，
+ * 之后的调用不再反射；同时记录爬虫自己实现了哪些方法（声明在CatVod基类Spider之下），调用方可以据此跳过不支持的调用
+ * 缓存使用ClassValue，不会阻止爬虫jar的类加载器被回收
+ *
+ * @author Knifer
+ */
+@Slf4j
+public class SpiderInvoker {
+
+    private static final ClassValue<SpiderInvoker> INVOKERS = new ClassValue<>() {
+        @Override
+        protected SpiderInvoker computeValue(Class<?> type) {
+            return new SpiderInvoker(type);
+        }
+    };
+
+    /**
+     * 方法句柄，统一为 (Object spider, Object[] args) -> Object 的形式，不存在的方法不放入
+     */
+    private final Map<SpiderMethod, MethodHandle> handles = new EnumMap<>(SpiderMethod.class);
+
+    /**
+     * 爬虫自己实现的方法，只继承自基类Spider的默认实现不算在内
+     */
+    private final Set<SpiderMethod> implementedMethods = EnumSet.noneOf(SpiderMethod.class);
+
+    private SpiderInvoker(Class<?> spiderClass) {
+        Class<?> baseClass = findBaseClass(spiderClass);
+        Method method;
+        MethodHandle handle;
+
+        for (SpiderMethod spiderMethod : SpiderMethod.values()) {
+            try {
+                method = spiderClass.getMethod(spiderMethod.getName(), spiderMethod.getParameterTypes());
+            } catch (NoSuchMethodException e) {
+                continue;
+            }
+            handle = resolve(spiderClass, method, spiderMethod.getParameterTypes().length);
+            if (handle == null) {
+                continue;
+            }
+            handles.put(spiderMethod, handle);
+            if (method.getDeclaringClass() != baseClass) {
+                implementedMethods.add(spiderMethod);
+            }
+        }
+        log.info(
+                "resolve spider methods, class={}, baseClass={}, implementedMethods={}",
+                spiderClass.getName(),
+                baseClass == null ? null : baseClass.getName(),
+                implementedMethods
+        );
+    }
+
+    public static SpiderInvoker of(Object spider) {
+        return INVOKERS.get(spider.getClass());
+    }
+
+    /**
+     * 爬虫是否自己实现了指定方法
+     * CatVod基类Spider声明了所有入口方法，只继承基类默认实现的方法视为不支持
+     */
+    public boolean has(SpiderMethod spiderMethod) {
+        return implementedMethods.contains(spiderMethod);
+    }
+
+    /**
+     * 调用爬虫方法
+     * @param spiderMethod 方法
+     * @param spider 爬虫实例
+     * @param args 参数
+     * @return 返回值，void方法返回null
+     * @throws NoSuchMethodException 爬虫及其基类都没有该方法
+     * @throws Throwable 爬虫方法抛出的异常
+     */
+    @Nullable
+    public Object invoke(SpiderMethod spiderMethod, Object spider, Object... args) throws Throwable {
+        MethodHandle handle = handles.get(spiderMethod);
+
+        if (handle == null) {
+
+            throw new NoSuchMethodException(spiderMethod.getName());
+        }
+
+        return (Object) handle.invokeExact(spider, args);
+    }
+
+    /**
+     * 查找CatVod基类，即继承链上最顶层（Object之下）的类
+     * @param spiderClass 爬虫类
+     * @return 基类，爬虫直接继承Object时返回null
+     */
+    @Nullable
+    private static Class<?> findBaseClass(Class<?> spiderClass) {
+        Class<?> clazz = spiderClass;
+
+        while (clazz.getSuperclass() != null && clazz.getSuperclass() != Object.class) {
+            clazz = clazz.getSuperclass();
+        }
+
+        return clazz == spiderClass ? null : clazz;
+    }
+
+    @Nullable
+    private static MethodHandle resolve(Class<?> spiderClass, Method method, int parameterCount) {
+        MethodHandle handle;
+
+        try {
+            handle = MethodHandles.publicLookup().unreflect(method);
+        } catch (IllegalAccessException e) {
+            // 公开方法声明在非公开类中时，publicLookup无法访问
+            try {
+                method.setAccessible(true);
+                handle = MethodHandles.lookup().unreflect(method);
+            } catch (RuntimeException | IllegalAccessException ex) {
+                log.warn("spider method is not accessible, class={}, method={}", spiderClass.getName(), method, ex);
+
+                return null;
+            }
+        }
+
+        return handle.asType(MethodType.genericMethodType(parameterCount + 1))
+                .asSpreader(Object[].class, parameterCount);
+    }
+
+    /**
+     * CatVod爬虫入口方法
+     */
+    @Getter
+    public enum SpiderMethod {
+
+        INIT("init"),
+        INIT_WITH_EXTEND("init", String.class),
+        HOME_CONTENT("homeContent", boolean.class),
+        HOME_VIDEO_CONTENT("homeVideoContent"),
+        CATEGORY_CONTENT("categoryContent", String.class, String.class, boolean.class, HashMap.class),
+        DETAIL_CONTENT("detailContent", List.class),
+        SEARCH_CONTENT("searchContent", String.class, boolean.class),
+        SEARCH_CONTENT_WITH_PAGE("searchContent", String.class, boolean.class, String.class),
+        PLAYER_CONTENT("playerContent", String.class, String.class, List.class),
+        MANUAL_VIDEO_CHECK("manualVideoCheck"),
+        IS_VIDEO_FORMAT("isVideoFormat", String.class),
+        PROXY_LOCAL("proxyLocal", Map.class),
+        DESTROY("destroy"),
+        CLIENT("client");
+
+        private final String name;
+
+        private final Class<?>[] parameterTypes;
+
+        SpiderMethod(String name, Class<?>... parameterTypes) {
+            this.name = name;
+            this.parameterTypes = parameterTypes;
+        }
+    }
+}
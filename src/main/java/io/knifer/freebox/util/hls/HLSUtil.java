@@ -1,14 +1,18 @@
 package io.knifer.freebox.util.hls;
 
+import io.knifer.freebox.util.UrlUtil;
 import lombok.experimental.UtilityClass;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.tuple.Pair;
 
 import javax.annotation.Nullable;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * hls工具类
@@ -19,6 +23,13 @@ import java.util.List;
 @UtilityClass
 public class HLSUtil {
 
+    private final Pattern RESOLUTION_PATTERN = Pattern.compile("[:,]RESOLUTION=(\\d+x\\d+)");
+    private final Pattern URI_ATTR_PATTERN = Pattern.compile("URI=\"([^\"]+)\"");
+    /**
+     * 选择码率变体时，只使用测得吞吐量的这一比例，给网络波动留出余量
+     */
+    private final double THROUGHPUT_SAFETY_FACTOR = 0.8;
+
     public void downloadVideo(String url, String outfile) throws IOException {
         createHlsDownloader(url).download(outfile);
     }
@@ -28,42 +39,182 @@ public class HLSUtil {
     }
 
     /**
-     * 根据m3u8文件行判断是否为主播放列表（包含子m3u8链接）
-     * @param m3u8Lines m3u8文件行
+     * 判断媒体播放列表是否声明为直播（#EXT-X-PLAYLIST-TYPE:EVENT）
+     * 没有声明类型的播放列表不能只凭一次获取的内容判断，许多点播源只是省略了#EXT-X-ENDLIST，
+     * 需要用isLive(previous, current)比较两次获取的结果
+     * @param document 已解析的m3u8
+     * @return bool
+     */
+    public boolean isLive(M3u8Document document) {
+        return isMaybeLive(document) && "EVENT".equalsIgnoreCase(document.getPlaylistType());
+    }
+
+    /**
+     * 根据同一播放列表先后两次获取的结果判断是否为直播：后一次仍可能是直播，且序号前进或追加了分片
+     * @param previous 先获取的m3u8
+     * @param current 后获取的m3u8
      * @return bool
      */
-    public boolean isMasterPlaylist(Collection<String> m3u8Lines) {
-        return m3u8Lines.stream().anyMatch(line -> line.startsWith("#EXT-X-STREAM-INF:"));
+    public boolean isLive(M3u8Document previous, M3u8Document current) {
+        long previousSequence = previous.getMediaSequence();
+        long currentSequence = current.getMediaSequence();
+
+        if (!isMaybeLive(current)) {
+
+            return false;
+        }
+
+        return currentSequence > previousSequence ||
+                currentSequence == previousSequence && current.getSegmentCount() > previous.getSegmentCount();
+    }
+
+    /**
+     * 判断媒体播放列表是否可能为直播：不是主播放列表，没有#EXT-X-ENDLIST，也没有声明为VOD
+     * @param document 已解析的m3u8
+     * @return bool
+     */
+    public boolean isMaybeLive(M3u8Document document) {
+        return !document.isMaster() &&
+                !document.isEndList() &&
+                !"VOD".equalsIgnoreCase(document.getPlaylistType());
     }
 
     /**
      * 从m3u8主播放列表中提取子m3u8URL，并根据baseUrl将遇到的相对URL转换为绝对URL
-     * @param lines m3u8文件行
+     * @param document 已解析的m3u8
      * @param baseUrl m3u8文件所在目录/网址
      * @return 子m3u8URL列表
      */
-    public List<String> getSubPlaylistUrls(List<String> lines, @Nullable String baseUrl) {
-        List<String> urls = new ArrayList<>();
-        boolean noBaseUrl = StringUtils.isBlank(baseUrl);
-        String line;
-        String urlLine;
-        String fullUrl;
-
-        for (int i = 0; i < lines.size(); i++) {
-            line = lines.get(i);
-            if (line.startsWith("#EXT-X-STREAM-INF:") && i + 1 < lines.size()) {
-                urlLine = lines.get(i + 1);
-                if (!urlLine.startsWith("#")) {
-                    if (noBaseUrl || urlLine.startsWith("http://") || urlLine.startsWith("https://")) {
-                        fullUrl = urlLine;
-                    } else {
-                        fullUrl = baseUrl + urlLine;
-                    }
-                    urls.add(fullUrl);
+    public List<String> getSubPlaylistUrls(M3u8Document document, @Nullable String baseUrl) {
+        int variantCount = document.getVariantCount();
+        List<String> urls = new ArrayList<>(variantCount);
+
+        for (int i = 0; i < variantCount; i++) {
+            urls.add(UrlUtil.resolveRelative(document.getVariantUri(i), baseUrl));
+        }
+
+        return urls;
+    }
+
+    /**
+     * 从m3u8主播放列表中提取码率变体
+     * @param document 已解析的m3u8
+     * @param baseUrl m3u8文件所在目录/网址
+     * @return 码率变体列表（保持原顺序）
+     */
+    public List<HlsVariant> getVariants(M3u8Document document, @Nullable String baseUrl) {
+        int variantCount = document.getVariantCount();
+        List<HlsVariant> variants = new ArrayList<>(variantCount);
+        String streamInf;
+        Matcher matcher;
+
+        for (int i = 0; i < variantCount; i++) {
+            streamInf = document.getLine(document.getVariantInfLine(i));
+            matcher = RESOLUTION_PATTERN.matcher(streamInf);
+            variants.add(new HlsVariant(
+                    streamInf,
+                    document.getVariantBandwidth(i),
+                    matcher.find() ? matcher.group(1) : null,
+                    UrlUtil.resolveRelative(document.getVariantUri(i), baseUrl)
+            ));
+        }
+
+        return variants;
+    }
+
+    /**
+     * 选择码率变体
+     * 先去掉码率超出上限的变体（若全部超出，保留码率最低的一个），
+     * 再根据测得的吞吐量选出首选变体：码率不超过可用吞吐量的最高变体，吞吐量未知时选择码率最高的变体
+     * @param variants 码率变体列表
+     * @param maxBandwidth 码率上限（bit/s），小于1时不限制
+     * @param throughput 测得的吞吐量（bit/s），小于1时表示未知
+     * @return 可用的码率变体，首选变体在第一位，其余按码率从高到低排列
+     */
+    public List<HlsVariant> selectVariants(List<HlsVariant> variants, long maxBandwidth, long throughput) {
+        List<HlsVariant> sorted = new ArrayList<>(variants);
+        List<HlsVariant> result;
+        HlsVariant preferred;
+        long usableThroughput;
+
+        if (sorted.isEmpty()) {
+
+            return sorted;
+        }
+        sorted.sort(Comparator.comparingLong(HlsVariant::bandwidth).reversed());
+        if (maxBandwidth > 0) {
+            result = new ArrayList<>(sorted.size());
+            for (HlsVariant variant : sorted) {
+                if (variant.bandwidth() <= maxBandwidth) {
+                    result.add(variant);
                 }
             }
+            if (result.isEmpty()) {
+                result.add(sorted.get(sorted.size() - 1));
+            }
+        } else {
+            result = sorted;
         }
+        if (throughput < 1) {
 
-        return urls;
+            return result;
+        }
+        usableThroughput = (long) (throughput * THROUGHPUT_SAFETY_FACTOR);
+        preferred = result.get(result.size() - 1);
+        for (HlsVariant variant : result) {
+            if (variant.bandwidth() <= usableThroughput) {
+                preferred = variant;
+                break;
+            }
+        }
+        result.remove(preferred);
+        result.add(0, preferred);
+
+        return result;
+    }
+
+    /**
+     * 构建主播放列表
+     * 保留原主播放列表中的其他标签（其中的URI属性会转换为绝对地址），码率变体替换为给定的变体和地址
+     * @param lines 原主播放列表文件行
+     * @param baseUrl 原主播放列表所在目录/网址
+     * @param variantAndUrls 码率变体及其对应的播放地址，按此顺序输出
+     * @return 主播放列表内容
+     */
+    public String buildMasterPlaylist(
+            List<String> lines, @Nullable String baseUrl, List<Pair<HlsVariant, String>> variantAndUrls
+    ) {
+        List<String> result = new ArrayList<>(lines.size());
+        Matcher matcher;
+        StringBuilder lineBuilder;
+
+        result.add("#EXTM3U");
+        for (String line : lines) {
+            line = line.trim();
+            if (line.isEmpty() || !line.startsWith("#") || line.startsWith("#EXTM3U")) {
+                continue;
+            }
+            if (line.startsWith("#EXT-X-STREAM-INF:")) {
+                continue;
+            }
+            matcher = URI_ATTR_PATTERN.matcher(line);
+            lineBuilder = new StringBuilder();
+            while (matcher.find()) {
+                matcher.appendReplacement(
+                        lineBuilder,
+                        Matcher.quoteReplacement(
+                                "URI=\"" + UrlUtil.resolveRelative(matcher.group(1), baseUrl) + "\""
+                        )
+                );
+            }
+            matcher.appendTail(lineBuilder);
+            result.add(lineBuilder.toString());
+        }
+        for (Pair<HlsVariant, String> variantAndUrl : variantAndUrls) {
+            result.add(variantAndUrl.getLeft().streamInf());
+            result.add(variantAndUrl.getRight());
+        }
+
+        return StringUtils.join(result, '\n');
     }
 }
@@ -0,0 +1,14 @@
+package io.knifer.freebox.util.hls;
+
+import javax.annotation.Nullable;
+
+/**
+ * 主播放列表中的子播放列表（码率变体）
+ *
+ * @param streamInf #EXT-X-STREAM-INF标签行（原样保留）
+ * @param bandwidth 码率（bit/s），未声明时为0
+ * @param resolution 分辨率（如1280x720），未声明时为null
+ * @param url 子播放列表地址（绝对地址）
+ * @author Knifer
+ */
+public record HlsVariant(String streamInf, long bandwidth, @Nullable String resolution, String url) {}
@@ -0,0 +1,273 @@
+package io.knifer.freebox.util.hls;
+
+import lombok.Getter;
+
+import javax.annotation.Nullable;
+import java.util.AbstractList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * 已解析的m3u8文档（由M3u8Parser创建）
+ * 不持有逐行的字符串，行、分片、码率变体都以基本类型数组的形式记录为源文本中的偏移量，需要字符串时再按需截取
+ *
+ * @author Knifer
+ */
+public class M3u8Document {
+
+    /**
+     * 源文本
+     */
+    @Getter
+    private final CharSequence source;
+
+    /* 行表 */
+    @Getter
+    private final int lineCount;
+    private final int[] lineStarts;
+    private final int[] lineEnds;
+    private final M3u8LineType[] lineTypes;
+
+    /* 分片表 */
+    @Getter
+    private final int segmentCount;
+    private final int[] segmentUriLines;
+    private final double[] segmentDurations;
+    private final long[] segmentByteRangeLengths;
+    private final long[] segmentByteRangeOffsets;
+    private final int[] segmentKeyLines;
+    private final int[] segmentMapLines;
+    private final BitSet segmentDiscontinuities;
+
+    /* 码率变体表 */
+    @Getter
+    private final int variantCount;
+    private final int[] variantInfLines;
+    private final int[] variantUriLines;
+    private final long[] variantBandwidths;
+
+    /**
+     * #EXT-X-TARGETDURATION，未声明时为-1
+     */
+    @Getter
+    private final long targetDuration;
+    /**
+     * #EXT-X-MEDIA-SEQUENCE，未声明时为0
+     */
+    @Getter
+    private final long mediaSequence;
+    /**
+     * 是否包含#EXT-X-ENDLIST
+     */
+    @Getter
+    private final boolean endList;
+    /**
+     * #EXT-X-PLAYLIST-TYPE（VOD或EVENT），未声明时为null
+     */
+    @Getter
+    @Nullable
+    private final String playlistType;
+
+    private List<String> lines;
+
+    M3u8Document(
+            CharSequence source,
+            int lineCount,
+            int[] lineStarts,
+            int[] lineEnds,
+            M3u8LineType[] lineTypes,
+            int segmentCount,
+            int[] segmentUriLines,
+            double[] segmentDurations,
+            long[] segmentByteRangeLengths,
+            long[] segmentByteRangeOffsets,
+            int[] segmentKeyLines,
+            int[] segmentMapLines,
+            BitSet segmentDiscontinuities,
+            int variantCount,
+            int[] variantInfLines,
+            int[] variantUriLines,
+            long[] variantBandwidths,
+            long targetDuration,
+            long mediaSequence,
+            boolean endList,
+            @Nullable String playlistType
+    ) {
+        this.source = source;
+        this.lineCount = lineCount;
+        this.lineStarts = lineStarts;
+        this.lineEnds = lineEnds;
+        this.lineTypes = lineTypes;
+        this.segmentCount = segmentCount;
+        this.segmentUriLines = segmentUriLines;
+        this.segmentDurations = segmentDurations;
+        this.segmentByteRangeLengths = segmentByteRangeLengths;
+        this.segmentByteRangeOffsets = segmentByteRangeOffsets;
+        this.segmentKeyLines = segmentKeyLines;
+        this.segmentMapLines = segmentMapLines;
+        this.segmentDiscontinuities = segmentDiscontinuities;
+        this.variantCount = variantCount;
+        this.variantInfLines = variantInfLines;
+        this.variantUriLines = variantUriLines;
+        this.variantBandwidths = variantBandwidths;
+        this.targetDuration = targetDuration;
+        this.mediaSequence = mediaSequence;
+        this.endList = endList;
+        this.playlistType = playlistType;
+    }
+
+    /**
+     * @return 是否为主播放列表
+     */
+    public boolean isMaster() {
+        return variantCount > 0;
+    }
+
+    public M3u8LineType getLineType(int lineIdx) {
+        return lineTypes[lineIdx];
+    }
+
+    /**
+     * 获取行内容（去除首尾空白），会创建字符串
+     * @param lineIdx 行索引
+     * @return 行内容
+     */
+    public String getLine(int lineIdx) {
+        return source.subSequence(lineStarts[lineIdx], lineEnds[lineIdx]).toString();
+    }
+
+    public int getLineLength(int lineIdx) {
+        return lineEnds[lineIdx] - lineStarts[lineIdx];
+    }
+
+    /**
+     * 判断行是否以指定前缀开头，不创建字符串
+     * @param lineIdx 行索引
+     * @param prefix 前缀
+     * @return bool
+     */
+    public boolean lineStartsWith(int lineIdx, String prefix) {
+        return M3u8Parser.regionMatches(source, lineStarts[lineIdx], lineEnds[lineIdx], prefix);
+    }
+
+    /**
+     * 以列表形式访问所有行（去除首尾空白，保留空行）
+     * 列表不可修改，每行在第一次访问时才创建字符串
+     * @return 行列表
+     */
+    public List<String> asLines() {
+        if (lines == null) {
+            lines = new LazyLineList();
+        }
+
+        return lines;
+    }
+
+    public String getSegmentUri(int segmentIdx) {
+        return getLine(segmentUriLines[segmentIdx]);
+    }
+
+    public int getSegmentUriLine(int segmentIdx) {
+        return segmentUriLines[segmentIdx];
+    }
+
+    /**
+     * @param segmentIdx 分片索引
+     * @return #EXTINF中的时长（秒），未声明时为0
+     */
+    public double getSegmentDuration(int segmentIdx) {
+        return segmentDurations[segmentIdx];
+    }
+
+    /**
+     * @param segmentIdx 分片索引
+     * @return #EXT-X-BYTERANGE中的长度，未声明时为-1
+     */
+    public long getSegmentByteRangeLength(int segmentIdx) {
+        return segmentByteRangeLengths[segmentIdx];
+    }
+
+    /**
+     * @param segmentIdx 分片索引
+     * @return #EXT-X-BYTERANGE中的起始位置，未声明时为-1（紧接上一个区间）
+     */
+    public long getSegmentByteRangeOffset(int segmentIdx) {
+        return segmentByteRangeOffsets[segmentIdx];
+    }
+
+    /**
+     * @param segmentIdx 分片索引
+     * @return 对该分片生效的#EXT-X-KEY所在行，没有时为-1
+     */
+    public int getSegmentKeyLine(int segmentIdx) {
+        return segmentKeyLines[segmentIdx];
+    }
+
+    /**
+     * @param segmentIdx 分片索引
+     * @return 对该分片生效的#EXT-X-MAP所在行，没有时为-1
+     */
+    public int getSegmentMapLine(int segmentIdx) {
+        return segmentMapLines[segmentIdx];
+    }
+
+    /**
+     * @param segmentIdx 分片索引
+     * @return 分片前是否有#EXT-X-DISCONTINUITY
+     */
+    public boolean isDiscontinuityBefore(int segmentIdx) {
+        return segmentDiscontinuities.get(segmentIdx);
+    }
+
+    /**
+     * @return 所有分片的总时长（秒）
+     */
+    public double getTotalDuration() {
+        double result = 0;
+
+        for (int i = 0; i < segmentCount; i++) {
+            result += segmentDurations[i];
+        }
+
+        return result;
+    }
+
+    public String getVariantUri(int variantIdx) {
+        return getLine(variantUriLines[variantIdx]);
+    }
+
+    public int getVariantInfLine(int variantIdx) {
+        return variantInfLines[variantIdx];
+    }
+
+    /**
+     * @param variantIdx 码率变体索引
+     * @return BANDWIDTH属性，未声明时为0
+     */
+    public long getVariantBandwidth(int variantIdx) {
+        return variantBandwidths[variantIdx];
+    }
+
+    private class LazyLineList extends AbstractList<String> implements RandomAccess {
+
+        private final String[] cache = new String[lineCount];
+
+        @Override
+        public String get(int index) {
+            String line = cache[index];
+
+            if (line == null) {
+                line = getLine(index);
+                cache[index] = line;
+            }
+
+            return line;
+        }
+
+        @Override
+        public int size() {
+            return lineCount;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package io.knifer.freebox.util.hls;
+
+/**
+ * m3u8行类型
+ *
+ * @author Knifer
+ */
+public enum M3u8LineType {
+
+    /**
+     * 空行
+     */
+    BLANK,
+    /**
+     * URI行（分片或子播放列表地址）
+     */
+    URI,
+    /**
+     * #EXTINF
+     */
+    EXTINF,
+    /**
+     * #EXT-X-KEY
+     */
+    KEY,
+    /**
+     * #EXT-X-MAP
+     */
+    MAP,
+    /**
+     * #EXT-X-BYTERANGE
+     */
+    BYTERANGE,
+    /**
+     * #EXT-X-DISCONTINUITY
+     */
+    DISCONTINUITY,
+    /**
+     * #EXT-X-STREAM-INF
+     */
+    STREAM_INF,
+    /**
+     * 其他标签或注释
+     */
+    OTHER
+}
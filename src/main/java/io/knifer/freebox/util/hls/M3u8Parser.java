@@ -0,0 +1,364 @@
+package io.knifer.freebox.util.hls;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * m3u8解析器
+ * 只扫描一遍文本，解析过程中不为每一行创建字符串，时长、区间等数值直接从源文本中读取
+ * 非线程安全，每次解析使用新的实例（通过静态方法parse）
+ *
+ * @author Knifer
+ */
+public class M3u8Parser {
+
+    private static final String EXTINF = "#EXTINF:";
+    private static final String EXT_X_KEY = "#EXT-X-KEY:";
+    private static final String EXT_X_MAP = "#EXT-X-MAP:";
+    private static final String EXT_X_BYTERANGE = "#EXT-X-BYTERANGE:";
+    private static final String EXT_X_DISCONTINUITY = "#EXT-X-DISCONTINUITY";
+    private static final String EXT_X_STREAM_INF = "#EXT-X-STREAM-INF:";
+    private static final String EXT_X_TARGETDURATION = "#EXT-X-TARGETDURATION:";
+    private static final String EXT_X_MEDIA_SEQUENCE = "#EXT-X-MEDIA-SEQUENCE:";
+    private static final String EXT_X_ENDLIST = "#EXT-X-ENDLIST";
+    private static final String EXT_X_PLAYLIST_TYPE = "#EXT-X-PLAYLIST-TYPE:";
+    private static final String BANDWIDTH_ATTR = "BANDWIDTH=";
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final CharSequence source;
+
+    private int lineCount = 0;
+    private int[] lineStarts = new int[INITIAL_CAPACITY];
+    private int[] lineEnds = new int[INITIAL_CAPACITY];
+    private M3u8LineType[] lineTypes = new M3u8LineType[INITIAL_CAPACITY];
+
+    private int segmentCount = 0;
+    private int[] segmentUriLines = new int[INITIAL_CAPACITY];
+    private double[] segmentDurations = new double[INITIAL_CAPACITY];
+    private long[] segmentByteRangeLengths = new long[INITIAL_CAPACITY];
+    private long[] segmentByteRangeOffsets = new long[INITIAL_CAPACITY];
+    private int[] segmentKeyLines = new int[INITIAL_CAPACITY];
+    private int[] segmentMapLines = new int[INITIAL_CAPACITY];
+    private final BitSet segmentDiscontinuities = new BitSet();
+
+    private int variantCount = 0;
+    private int[] variantInfLines = new int[0];
+    private int[] variantUriLines = new int[0];
+    private long[] variantBandwidths = new long[0];
+
+    private long targetDuration = -1;
+    private long mediaSequence = 0;
+    private boolean endList = false;
+    private String playlistType = null;
+
+    /* 等待URI行的标签状态 */
+    private double pendingDuration = 0;
+    private long pendingByteRangeLength = -1;
+    private long pendingByteRangeOffset = -1;
+    private boolean pendingDiscontinuity = false;
+    private int pendingStreamInfLine = -1;
+    private int currentKeyLine = -1;
+    private int currentMapLine = -1;
+
+    private M3u8Parser(CharSequence source) {
+        this.source = source;
+    }
+
+    /**
+     * 解析m3u8
+     * @param source m3u8内容
+     * @return 已解析的文档
+     */
+    public static M3u8Document parse(CharSequence source) {
+        return new M3u8Parser(source).doParse();
+    }
+
+    private M3u8Document doParse() {
+        int length = source.length();
+        int lineStart = 0;
+        int lineEnd;
+
+        while (lineStart < length) {
+            lineEnd = lineStart;
+            while (lineEnd < length && source.charAt(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            addLine(lineStart, lineEnd);
+            lineStart = lineEnd + 1;
+        }
+
+        return new M3u8Document(
+                source,
+                lineCount,
+                lineStarts,
+                lineEnds,
+                lineTypes,
+                segmentCount,
+                segmentUriLines,
+                segmentDurations,
+                segmentByteRangeLengths,
+                segmentByteRangeOffsets,
+                segmentKeyLines,
+                segmentMapLines,
+                segmentDiscontinuities,
+                variantCount,
+                variantInfLines,
+                variantUriLines,
+                variantBandwidths,
+                targetDuration,
+                mediaSequence,
+                endList,
+                playlistType
+        );
+    }
+
+    private void addLine(int start, int end) {
+        int lineIdx = lineCount;
+        M3u8LineType type;
+
+        // 去除首尾空白（包括\r）
+        while (start < end && source.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && source.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        if (lineIdx == lineStarts.length) {
+            lineStarts = Arrays.copyOf(lineStarts, lineIdx * 2);
+            lineEnds = Arrays.copyOf(lineEnds, lineIdx * 2);
+            lineTypes = Arrays.copyOf(lineTypes, lineIdx * 2);
+        }
+        type = parseLine(lineIdx, start, end);
+        lineStarts[lineIdx] = start;
+        lineEnds[lineIdx] = end;
+        lineTypes[lineIdx] = type;
+        lineCount++;
+    }
+
+    private M3u8LineType parseLine(int lineIdx, int start, int end) {
+        if (start == end) {
+
+            return M3u8LineType.BLANK;
+        }
+        if (source.charAt(start) != '#') {
+            if (pendingStreamInfLine == -1) {
+                addSegment(lineIdx);
+            } else {
+                addVariant(pendingStreamInfLine, lineIdx);
+                pendingStreamInfLine = -1;
+            }
+
+            return M3u8LineType.URI;
+        }
+        if (regionMatches(source, start, end, EXTINF)) {
+            pendingDuration = parseDecimal(start + EXTINF.length(), end);
+
+            return M3u8LineType.EXTINF;
+        }
+        if (regionMatches(source, start, end, EXT_X_BYTERANGE)) {
+            parseByteRange(start + EXT_X_BYTERANGE.length(), end);
+
+            return M3u8LineType.BYTERANGE;
+        }
+        if (regionMatches(source, start, end, EXT_X_DISCONTINUITY) && end - start == EXT_X_DISCONTINUITY.length()) {
+            pendingDiscontinuity = true;
+
+            return M3u8LineType.DISCONTINUITY;
+        }
+        if (regionMatches(source, start, end, EXT_X_KEY)) {
+            currentKeyLine = lineIdx;
+
+            return M3u8LineType.KEY;
+        }
+        if (regionMatches(source, start, end, EXT_X_MAP)) {
+            currentMapLine = lineIdx;
+
+            return M3u8LineType.MAP;
+        }
+        if (regionMatches(source, start, end, EXT_X_STREAM_INF)) {
+            pendingStreamInfLine = lineIdx;
+
+            return M3u8LineType.STREAM_INF;
+        }
+        if (regionMatches(source, start, end, EXT_X_TARGETDURATION)) {
+            targetDuration = (long) parseDecimal(start + EXT_X_TARGETDURATION.length(), end);
+        } else if (regionMatches(source, start, end, EXT_X_MEDIA_SEQUENCE)) {
+            mediaSequence = parseLong(start + EXT_X_MEDIA_SEQUENCE.length(), end);
+        } else if (regionMatches(source, start, end, EXT_X_ENDLIST)) {
+            endList = true;
+        } else if (regionMatches(source, start, end, EXT_X_PLAYLIST_TYPE)) {
+            playlistType = source.subSequence(start + EXT_X_PLAYLIST_TYPE.length(), end).toString().trim();
+        }
+
+        return M3u8LineType.OTHER;
+    }
+
+    private void addSegment(int uriLineIdx) {
+        int segmentIdx = segmentCount;
+        int newCapacity;
+
+        if (segmentIdx == segmentUriLines.length) {
+            newCapacity = segmentIdx * 2;
+            segmentUriLines = Arrays.copyOf(segmentUriLines, newCapacity);
+            segmentDurations = Arrays.copyOf(segmentDurations, newCapacity);
+            segmentByteRangeLengths = Arrays.copyOf(segmentByteRangeLengths, newCapacity);
+            segmentByteRangeOffsets = Arrays.copyOf(segmentByteRangeOffsets, newCapacity);
+            segmentKeyLines = Arrays.copyOf(segmentKeyLines, newCapacity);
+            segmentMapLines = Arrays.copyOf(segmentMapLines, newCapacity);
+        }
+        segmentUriLines[segmentIdx] = uriLineIdx;
+        segmentDurations[segmentIdx] = pendingDuration;
+        segmentByteRangeLengths[segmentIdx] = pendingByteRangeLength;
+        segmentByteRangeOffsets[segmentIdx] = pendingByteRangeOffset;
+        segmentKeyLines[segmentIdx] = currentKeyLine;
+        segmentMapLines[segmentIdx] = currentMapLine;
+        if (pendingDiscontinuity) {
+            segmentDiscontinuities.set(segmentIdx);
+        }
+        pendingDuration = 0;
+        pendingByteRangeLength = -1;
+        pendingByteRangeOffset = -1;
+        pendingDiscontinuity = false;
+        segmentCount++;
+    }
+
+    private void addVariant(int infLineIdx, int uriLineIdx) {
+        int variantIdx = variantCount;
+        int newCapacity;
+
+        if (variantIdx == variantInfLines.length) {
+            newCapacity = Math.max(variantIdx * 2, 4);
+            variantInfLines = Arrays.copyOf(variantInfLines, newCapacity);
+            variantUriLines = Arrays.copyOf(variantUriLines, newCapacity);
+            variantBandwidths = Arrays.copyOf(variantBandwidths, newCapacity);
+        }
+        variantInfLines[variantIdx] = infLineIdx;
+        variantUriLines[variantIdx] = uriLineIdx;
+        variantBandwidths[variantIdx] = parseBandwidth(lineStarts[infLineIdx], lineEnds[infLineIdx]);
+        variantCount++;
+    }
+
+    /**
+     * 解析#EXT-X-BYTERANGE:<n>[@<o>]
+     */
+    private void parseByteRange(int start, int end) {
+        int atIdx = indexOf('@', start, end);
+
+        if (atIdx == -1) {
+            pendingByteRangeLength = parseLong(start, end);
+            pendingByteRangeOffset = -1;
+        } else {
+            pendingByteRangeLength = parseLong(start, atIdx);
+            pendingByteRangeOffset = parseLong(atIdx + 1, end);
+        }
+    }
+
+    /**
+     * 解析BANDWIDTH属性（排除AVERAGE-BANDWIDTH）
+     */
+    private long parseBandwidth(int start, int end) {
+        int attrEnd = end - BANDWIDTH_ATTR.length();
+        char prev;
+
+        for (int i = start; i <= attrEnd; i++) {
+            if (!regionMatches(source, i, end, BANDWIDTH_ATTR)) {
+                continue;
+            }
+            prev = i > start ? source.charAt(i - 1) : ':';
+            if (prev == ':' || prev == ',') {
+
+                return parseLong(i + BANDWIDTH_ATTR.length(), end);
+            }
+        }
+
+        return 0;
+    }
+
+    private int indexOf(char c, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (source.charAt(i) == c) {
+
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * 从start开始读取连续数字，遇到非数字字符时停止
+     */
+    private long parseLong(int start, int end) {
+        long result = 0;
+        char c;
+
+        while (start < end && source.charAt(start) == ' ') {
+            start++;
+        }
+        for (int i = start; i < end; i++) {
+            c = source.charAt(i);
+            if (c < '0' || c > '9') {
+                break;
+            }
+            result = result * 10 + (c - '0');
+        }
+
+        return result;
+    }
+
+    /**
+     * 从start开始读取十进制小数（如#EXTINF:9.009,），遇到其他字符时停止
+     */
+    private double parseDecimal(int start, int end) {
+        long integerPart = 0;
+        long fractionPart = 0;
+        long fractionScale = 1;
+        boolean inFraction = false;
+        char c;
+
+        while (start < end && source.charAt(start) == ' ') {
+            start++;
+        }
+        for (int i = start; i < end; i++) {
+            c = source.charAt(i);
+            if (c == '.' && !inFraction) {
+                inFraction = true;
+                continue;
+            }
+            if (c < '0' || c > '9') {
+                break;
+            }
+            if (inFraction) {
+                if (fractionScale < 1_000_000_000L) {
+                    fractionPart = fractionPart * 10 + (c - '0');
+                    fractionScale *= 10;
+                }
+            } else {
+                integerPart = integerPart * 10 + (c - '0');
+            }
+        }
+
+        return integerPart + (double) fractionPart / fractionScale;
+    }
+
+    /**
+     * 判断source中[start, end)区间是否以prefix开头
+     */
+    static boolean regionMatches(CharSequence source, int start, int end, String prefix) {
+        int prefixLength = prefix.length();
+
+        if (end - start < prefixLength) {
+
+            return false;
+        }
+        for (int i = 0; i < prefixLength; i++) {
+            if (source.charAt(start + i) != prefix.charAt(i)) {
+
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
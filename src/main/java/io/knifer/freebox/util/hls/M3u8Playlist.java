@@ -0,0 +1,77 @@
+package io.knifer.freebox.util.hls;
+
+import io.knifer.freebox.util.UrlUtil;
+import lombok.Getter;
+import lombok.Setter;
+import org.apache.commons.lang3.StringUtils;
+
+import javax.annotation.Nullable;
+import java.util.List;
+
+/**
+ * m3u8播放列表
+ * 内容只在创建时由M3u8Parser解析一次，之后各处理阶段直接读写行列表，全部处理完成后再统一序列化
+ *
+ * @author Knifer
+ */
+@Getter
+public class M3u8Playlist {
+
+    /**
+     * 播放列表地址
+     */
+    private final String url;
+    /**
+     * 播放列表所在目录，用于拼接绝对路径
+     */
+    @Nullable
+    private final String baseUrl;
+    /**
+     * 是否为主播放列表
+     */
+    private final boolean master;
+    /**
+     * 原始内容的解析结果（各处理阶段修改行列表后不会同步更新）
+     */
+    private final M3u8Document document;
+    /**
+     * 播放列表行
+     */
+    @Setter
+    private List<String> lines;
+
+    private M3u8Playlist(String url, M3u8Document document) {
+        this.url = url;
+        this.baseUrl = UrlUtil.getParent(url);
+        this.document = document;
+        this.lines = document.asLines();
+        this.master = document.isMaster();
+    }
+
+    /**
+     * 解析播放列表
+     * @param url 播放列表地址
+     * @param content 播放列表内容
+     * @return 播放列表
+     */
+    public static M3u8Playlist parse(String url, String content) {
+        return new M3u8Playlist(url, M3u8Parser.parse(content));
+    }
+
+    /**
+     * 判断是否为URI行（分片或子播放列表地址）
+     * @param line 行
+     * @return bool
+     */
+    public static boolean isUriLine(String line) {
+        return StringUtils.isNotBlank(line) && !line.startsWith("#");
+    }
+
+    /**
+     * 序列化为m3u8内容
+     * @return m3u8内容
+     */
+    public String serialize() {
+        return String.join("\n", lines);
+    }
+}
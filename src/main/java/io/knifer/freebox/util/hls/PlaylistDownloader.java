@@ -22,7 +22,7 @@ import lombok.extern.slf4j.Slf4j;
 import java.io.*;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.ArrayList;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 @Slf4j
@@ -32,11 +32,10 @@ public class PlaylistDownloader {
     private Crypto crypto;
 
     private static String EXT_X_KEY = "#EXT-X-KEY";
-    private static final String BANDWIDTH = "BANDWIDTH";
 
     public PlaylistDownloader(String playlistUrl) throws MalformedURLException {
         this.url = new URL(playlistUrl);
-        this.playlist = new ArrayList<String>();
+        this.playlist = List.of();
     }
 
     public void download(String outfile) throws IOException {
@@ -110,43 +109,31 @@ public class PlaylistDownloader {
     }
 
     private void fetchPlaylist() throws IOException {
-        BufferedReader reader = new BufferedReader(new InputStreamReader(url.openStream()));
-        boolean isMaster = false;
-        long maxRate = 0L;
-        int maxRateIndex = 0;
+        String content;
 
-        String line;
-        int index = 0;
-
-        while ((line = reader.readLine()) != null) {
-            playlist.add(line);
-
-            if (line.contains(BANDWIDTH))
-                isMaster = true;
+        try (InputStream is = url.openStream()) {
+            content = new String(is.readAllBytes(), StandardCharsets.UTF_8);
+        }
 
-            if (isMaster && line.contains(BANDWIDTH)) {
-                try {
-                    int pos = line.lastIndexOf("=");
-                    long bandwidth = Long.parseLong(line.substring(++pos));
+        M3u8Document document = M3u8Parser.parse(content);
 
-                    maxRate = Math.max(bandwidth, maxRate);
+        if (document.isMaster()) {
+            long maxRate = -1L;
+            int maxRateIndex = 0;
 
-                    if (bandwidth == maxRate)
-                        maxRateIndex = index + 1;
-                } catch (NumberFormatException ignore) {}
+            for (int i = 0; i < document.getVariantCount(); i++) {
+                if (document.getVariantBandwidth(i) > maxRate) {
+                    maxRate = document.getVariantBandwidth(i);
+                    maxRateIndex = i;
+                }
             }
 
-            index++;
-        }
-
-        reader.close();
-
-        if (isMaster) {
             log.info("Found master playlist, fetching highest stream at {}Kb/s", maxRate / 1024);
-            this.url = updateUrlForSubPlaylist(playlist.get(maxRateIndex));
-            this.playlist.clear();
+            this.url = updateUrlForSubPlaylist(document.getVariantUri(maxRateIndex));
 
             fetchPlaylist();
+        } else {
+            this.playlist = document.asLines();
         }
     }
 
@@ -0,0 +1,100 @@
+package io.knifer.freebox.util.hls;
+
+import com.google.common.net.HttpHeaders;
+import io.knifer.freebox.constant.BaseValues;
+import io.knifer.freebox.constant.HttpProfile;
+import io.knifer.freebox.util.HttpUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * 子播放列表下载器
+ * 并发下载主播放列表中的各个子播放列表，所有下载共用一个整体超时时间，结果按原顺序返回
+ * 下载结果会被缓存：广告过滤和ts代理使用同一个实例时，每个子播放列表只会下载一次
+ *
+ * @author Knifer
+ */
+@Slf4j
+public class SubPlaylistFetcher {
+
+    private final Map<String, CompletableFuture<String>> urlAndFutureMap = new ConcurrentHashMap<>();
+
+    /**
+     * 并发下载子播放列表
+     * @param urls 子播放列表地址（绝对地址）
+     * @param timeout 整体超时时间
+     * @param unit 时间单位
+     * @return 子播放列表内容，与urls一一对应，下载失败、超时或内容为空的项为null
+     */
+    public List<String> fetchAll(List<String> urls, long timeout, TimeUnit unit) {
+        List<CompletableFuture<String>> futures = new ArrayList<>(urls.size());
+        List<String> result = new ArrayList<>(urls.size());
+        CompletableFuture<String> future;
+        String content;
+
+        for (String url : urls) {
+            futures.add(urlAndFutureMap.computeIfAbsent(url, this::fetch));
+        }
+        try {
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get(timeout, unit);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (TimeoutException e) {
+            log.warn("fetch subPlaylists timeout, timeout={} {}", timeout, unit);
+        } catch (ExecutionException ignored) {
+            // 单个子播放列表下载失败，下面逐个处理
+        }
+        for (int i = 0; i < urls.size(); i++) {
+            future = futures.get(i);
+            if (!future.isDone()) {
+                // 超时未完成的任务直接取消，后续使用同一实例时不再等待
+                future.cancel(true);
+            }
+            if (future.isCompletedExceptionally()) {
+                log.warn("fetch subPlaylist failed, url={}", urls.get(i));
+                result.add(null);
+                continue;
+            }
+            content = future.join();
+            if (StringUtils.isBlank(content)) {
+                log.warn("subPlaylist is empty, url={}", urls.get(i));
+                result.add(null);
+                continue;
+            }
+            result.add(content);
+        }
+
+        return result;
+    }
+
+    /**
+     * 放入已有的子播放列表内容，之后获取该地址时不再下载
+     * @param url 子播放列表地址（绝对地址）
+     * @param content 子播放列表内容
+     */
+    public void put(String url, String content) {
+        urlAndFutureMap.put(url, CompletableFuture.completedFuture(content));
+    }
+
+    private CompletableFuture<String> fetch(String url) {
+        try {
+            return HttpUtil.sendAsync(
+                    HttpProfile.PLAYLIST,
+                    HttpUtil.newRequestBuilder(HttpProfile.PLAYLIST, url)
+                            .header(HttpHeaders.USER_AGENT, BaseValues.USER_AGENT)
+                            .build(),
+                    HttpUtil.ofDecodedString()
+            ).thenApply(HttpResponse::body);
+        } catch (RuntimeException e) {
+            log.warn("invalid subPlaylist url: {}", url, e);
+
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+}
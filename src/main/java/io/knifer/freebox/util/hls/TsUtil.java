@@ -0,0 +1,116 @@
+package io.knifer.freebox.util.hls;
+
+import com.google.common.net.HttpHeaders;
+import io.knifer.freebox.constant.BaseValues;
+import lombok.experimental.UtilityClass;
+import org.apache.commons.lang3.StringUtils;
+
+import javax.annotation.Nullable;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ts分片工具类
+ *
+ * @author Knifer
+ */
+@UtilityClass
+public class TsUtil {
+
+    /**
+     * MPEG-TS同步字节
+     */
+    private final byte TS_SYNC_BYTE = 0x47;
+    /**
+     * MPEG-TS包长度
+     */
+    private final int TS_PACKET_SIZE = 188;
+    /**
+     * 判定同步字节位置时，需要连续命中的TS包数量（降低误判概率）
+     */
+    private final int TS_SYNC_CHECK_PACKETS = 4;
+
+    /**
+     * 在数据开头寻找第一个有效的MPEG-TS同步字节
+     * 只有从该位置开始，连续多个包的起始字节都是同步字节时，才认为找到了真正的ts数据起点
+     * @param data 数据
+     * @param length 有效数据长度
+     * @return 需要跳过的字节数，未找到时返回0（原样转发）
+     */
+    public int findSyncOffset(byte[] data, int length) {
+        int lastCandidateIdx = length - TS_PACKET_SIZE * (TS_SYNC_CHECK_PACKETS - 1);
+        boolean matched;
+
+        if (length > 0 && data[0] == TS_SYNC_BYTE) {
+
+            return 0;
+        }
+        for (int i = 0; i < lastCandidateIdx; i++) {
+            if (data[i] != TS_SYNC_BYTE) {
+                continue;
+            }
+            matched = true;
+            for (int j = 1; j < TS_SYNC_CHECK_PACKETS; j++) {
+                if (data[i + TS_PACKET_SIZE * j] != TS_SYNC_BYTE) {
+                    matched = false;
+                    break;
+                }
+            }
+            if (matched) {
+
+                return i;
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * 构建获取ts分片的请求
+     * @param tsUrl ts分片地址
+     * @param headers 额外请求头（通常是获取m3u8时的请求头）
+     * @return 请求
+     */
+    public HttpRequest newSegmentRequest(String tsUrl, @Nullable Map<String, List<String>> headers) {
+        return newSegmentRequest(tsUrl, headers, null);
+    }
+
+    /**
+     * 构建获取ts分片的请求
+     * @param tsUrl ts分片地址
+     * @param headers 额外请求头（通常是获取m3u8时的请求头）
+     * @param range Range请求头，为null时请求完整分片
+     * @return 请求
+     */
+    public HttpRequest newSegmentRequest(
+            String tsUrl, @Nullable Map<String, List<String>> headers, @Nullable String range
+    ) {
+        HttpRequest.Builder requestBuilder = HttpRequest.newBuilder()
+                .uri(URI.create(tsUrl))
+                .header(HttpHeaders.USER_AGENT, BaseValues.USER_AGENT)
+                .header(HttpHeaders.ACCEPT, "*/*")
+                .timeout(Duration.ofSeconds(10))
+                .GET();
+
+        if (headers != null) {
+            headers.forEach((k, v) -> {
+                if (StringUtils.isBlank(k) || v.isEmpty()) {
+                    return;
+                }
+                try {
+                    requestBuilder.header(k, v.get(0));
+                } catch (IllegalArgumentException ignored) {
+                    // HttpClient不允许设置的请求头
+                }
+            });
+        }
+        if (range != null) {
+            requestBuilder.setHeader(HttpHeaders.RANGE, range);
+        }
+
+        return requestBuilder.build();
+    }
+}
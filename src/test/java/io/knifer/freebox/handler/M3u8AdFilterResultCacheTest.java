@@ -0,0 +1,91 @@
+package io.knifer.freebox.handler;
+
+import cn.hutool.crypto.digest.DigestUtil;
+import io.knifer.freebox.model.domain.M3u8AdFilterResult;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * m3u8广告过滤结果缓存测试
+ *
+ * @author Knifer
+ */
+public class M3u8AdFilterResultCacheTest {
+
+    @TempDir
+    Path cachePath;
+
+    @Test
+    void keyCoversUrlContentAndParams() {
+        String key = M3u8AdFilterResultCache.createKey("http://a/index.m3u8", "#EXTM3U", 0.3, true);
+
+        assertEquals(key, M3u8AdFilterResultCache.createKey("http://a/index.m3u8", "#EXTM3U", 0.3, true));
+        assertNotEquals(key, M3u8AdFilterResultCache.createKey("http://b/index.m3u8", "#EXTM3U", 0.3, true));
+        assertNotEquals(key, M3u8AdFilterResultCache.createKey("http://a/index.m3u8", "#EXTM3U\n", 0.3, true));
+        assertNotEquals(key, M3u8AdFilterResultCache.createKey("http://a/index.m3u8", "#EXTM3U", 0.5, true));
+    }
+
+    @Test
+    void resultSurvivesRestart() {
+        String key = M3u8AdFilterResultCache.createKey("http://a/index.m3u8", "#EXTM3U");
+        M3u8AdFilterResult result;
+
+        new M3u8AdFilterResultCache(cachePath).put(key, M3u8AdFilterResult.of(3, "filtered"));
+        result = new M3u8AdFilterResultCache(cachePath).get(key);
+
+        assertNotNull(result);
+        assertEquals(3, result.getAdLineCount());
+        assertEquals("filtered", result.getContent());
+    }
+
+    @Test
+    void memoryOnlyCacheWritesNothing() throws Exception {
+        M3u8AdFilterResultCache cache = new M3u8AdFilterResultCache(null);
+
+        cache.put("key", M3u8AdFilterResult.of(1, "filtered"));
+
+        assertNotNull(cache.get("key"));
+        assertEquals(0, countFiles());
+    }
+
+    @Test
+    void diskEvictionIsLeastRecentlyUsed() throws Exception {
+        int count = M3u8AdFilterResultCache.MAX_DISK_ENTRIES;
+        M3u8AdFilterResultCache cache = new M3u8AdFilterResultCache(cachePath);
+
+        for (int i = 0; i < count; i++) {
+            cache.put(key(i), M3u8AdFilterResult.of(i, "content" + i));
+            // 写入顺序即修改时间顺序，key(0)最早
+            Files.setLastModifiedTime(diskFile(key(i)), FileTime.fromMillis(1_000_000L + i * 1000L));
+        }
+        // 重启后命中最早写入的结果，它成为最近使用的结果
+        assertNotNull(new M3u8AdFilterResultCache(cachePath).get(key(0)));
+        cache.put(key(count), M3u8AdFilterResult.of(count, "content" + count));
+
+        assertEquals(count, countFiles());
+        assertTrue(Files.exists(diskFile(key(0))));
+        assertFalse(Files.exists(diskFile(key(1))));
+        assertTrue(Files.exists(diskFile(key(count))));
+    }
+
+    private static String key(int idx) {
+        return M3u8AdFilterResultCache.createKey("http://a/" + idx + ".m3u8", "#EXTM3U");
+    }
+
+    private Path diskFile(String key) {
+        return cachePath.resolve(DigestUtil.md5Hex(key) + ".json");
+    }
+
+    private long countFiles() throws Exception {
+        try (Stream<Path> files = Files.list(cachePath)) {
+            return files.count();
+        }
+    }
+}
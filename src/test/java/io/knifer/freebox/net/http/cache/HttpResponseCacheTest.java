@@ -0,0 +1,197 @@
+package io.knifer.freebox.net.http.cache;
+
+import cn.hutool.http.HttpStatus;
+import com.google.common.net.HttpHeaders;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.knifer.freebox.constant.HttpCacheCategory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * HTTP响应磁盘缓存测试
+ *
+ * @author Knifer
+ */
+public class HttpResponseCacheTest {
+
+    @TempDir
+    Path cachePath;
+
+    private HttpServer server;
+
+    private HttpResponseCache cache;
+
+    private final Map<String, Resource> resources = new ConcurrentHashMap<>();
+
+    private final List<String> ifNoneMatchValues = new CopyOnWriteArrayList<>();
+
+    private final Map<String, Integer> requestCounts = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+        cache = new HttpResponseCache(cachePath);
+    }
+
+    @AfterEach
+    void stop() {
+        server.stop(0);
+    }
+
+    @Test
+    void freshResponseIsServedFromCache() throws Exception {
+        resources.put("/fresh", new Resource(HttpStatus.HTTP_OK, "v1", "max-age=60", null, null));
+        assertEquals("v1", get("/fresh"));
+        resources.put("/fresh", new Resource(HttpStatus.HTTP_OK, "v2", "max-age=60", null, null));
+        assertEquals("v1", get("/fresh"));
+        assertEquals(1, requestCounts.get("/fresh"));
+    }
+
+    @Test
+    void staleResponseIsRevalidatedWithEtag() throws Exception {
+        resources.put("/etag", new Resource(HttpStatus.HTTP_OK, "v1", "no-cache", "\"1\"", null));
+        assertEquals("v1", get("/etag"));
+        assertEquals("v1", get("/etag"));
+        assertEquals(2, requestCounts.get("/etag"));
+        assertEquals(List.of("\"1\""), ifNoneMatchValues);
+    }
+
+    @Test
+    void noStoreResponseIsNotCached() throws Exception {
+        resources.put("/no-store", new Resource(HttpStatus.HTTP_OK, "v1", "no-store", "\"1\"", null));
+        assertEquals("v1", get("/no-store"));
+        resources.put("/no-store", new Resource(HttpStatus.HTTP_OK, "v2", "no-store", "\"2\"", null));
+        assertEquals("v2", get("/no-store"));
+        assertTrue(ifNoneMatchValues.isEmpty());
+    }
+
+    @Test
+    void varyResponseIsCachedPerRequestHeaders() throws Exception {
+        resources.put("/vary", new Resource(HttpStatus.HTTP_OK, "v1", "max-age=60", null, "Accept-Encoding"));
+        assertEquals("v1", get("/vary"));
+        resources.put("/vary", new Resource(HttpStatus.HTTP_OK, "v2", "max-age=60", null, "Accept-Encoding"));
+        assertEquals("v1", get("/vary"));
+        assertEquals(1, requestCounts.get("/vary"));
+    }
+
+    @Test
+    void varyAnyResponseIsNotCached() throws Exception {
+        resources.put("/vary-any", new Resource(HttpStatus.HTTP_OK, "v1", "max-age=60", null, "*"));
+        assertEquals("v1", get("/vary-any"));
+        resources.put("/vary-any", new Resource(HttpStatus.HTTP_OK, "v2", "max-age=60", null, "*"));
+        assertEquals("v2", get("/vary-any"));
+    }
+
+    @Test
+    void staleWhileRevalidateServesCachedContentAndRefreshes() throws Exception {
+        long deadline;
+        String body;
+
+        resources.put(
+                "/swr", new Resource(HttpStatus.HTTP_OK, "v1", "max-age=0, stale-while-revalidate=60", null, null)
+        );
+        assertEquals("v1", get("/swr"));
+        resources.put("/swr", new Resource(HttpStatus.HTTP_OK, "v2", "max-age=60", null, null));
+        assertEquals("v1", get("/swr"));
+        deadline = System.currentTimeMillis() + 5000;
+        do {
+            body = get("/swr");
+        } while (!"v2".equals(body) && System.currentTimeMillis() < deadline);
+        assertEquals("v2", body);
+    }
+
+    @Test
+    void staleResponseIsServedOnServerError() throws Exception {
+        resources.put("/error", new Resource(HttpStatus.HTTP_OK, "v1", "max-age=0", null, null));
+        assertEquals("v1", get(HttpCacheCategory.UPGRADE, "/error"));
+        resources.put("/error", new Resource(HttpStatus.HTTP_INTERNAL_ERROR, "error", null, null, null));
+        assertEquals("v1", get(HttpCacheCategory.UPGRADE, "/error"));
+    }
+
+    @Test
+    void leastRecentlyUsedEntriesAreEvictedOverCategoryLimit() throws Exception {
+        String largeBody = "x".repeat((int) (HttpCacheCategory.MOVIE_RANK.getMaxBytes() * 2 / 5));
+
+        for (String path : List.of("/a", "/b")) {
+            resources.put(path, new Resource(HttpStatus.HTTP_OK, largeBody, "max-age=60", null, null));
+            get(HttpCacheCategory.MOVIE_RANK, path);
+        }
+        // 访问/a，使/b成为最近最少使用的项
+        get(HttpCacheCategory.MOVIE_RANK, "/a");
+        resources.put("/c", new Resource(HttpStatus.HTTP_OK, largeBody, "max-age=60", null, null));
+        get(HttpCacheCategory.MOVIE_RANK, "/c");
+        try (Stream<Path> files = Files.list(cachePath.resolve(HttpCacheCategory.MOVIE_RANK.getName()))) {
+            assertEquals(2, files.count());
+        }
+        get(HttpCacheCategory.MOVIE_RANK, "/a");
+        get(HttpCacheCategory.MOVIE_RANK, "/b");
+        assertEquals(1, requestCounts.get("/a"));
+        assertEquals(2, requestCounts.get("/b"));
+    }
+
+    private String get(String path) throws Exception {
+        return get(HttpCacheCategory.LIVE, path);
+    }
+
+    private String get(HttpCacheCategory category, String path) throws Exception {
+        return cache.getAsync(category, "http://127.0.0.1:" + server.getAddress().getPort() + path)
+                .get(10, TimeUnit.SECONDS);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        Resource resource = resources.get(path);
+        String ifNoneMatch = exchange.getRequestHeaders().getFirst(HttpHeaders.IF_NONE_MATCH);
+        byte[] data;
+
+        requestCounts.merge(path, 1, Integer::sum);
+        if (ifNoneMatch != null) {
+            ifNoneMatchValues.add(ifNoneMatch);
+        }
+        try (exchange) {
+            if (resource == null) {
+                exchange.sendResponseHeaders(HttpStatus.HTTP_NOT_FOUND, -1);
+
+                return;
+            }
+            if (resource.cacheControl() != null) {
+                exchange.getResponseHeaders().set(HttpHeaders.CACHE_CONTROL, resource.cacheControl());
+            }
+            if (resource.vary() != null) {
+                exchange.getResponseHeaders().set(HttpHeaders.VARY, resource.vary());
+            }
+            if (resource.etag() != null) {
+                exchange.getResponseHeaders().set(HttpHeaders.ETAG, resource.etag());
+                if (resource.etag().equals(ifNoneMatch)) {
+                    exchange.sendResponseHeaders(HttpStatus.HTTP_NOT_MODIFIED, -1);
+
+                    return;
+                }
+            }
+            data = resource.body().getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(resource.status(), data.length);
+            exchange.getResponseBody().write(data);
+        }
+    }
+
+    private record Resource(int status, String body, String cacheControl, String etag, String vary) {}
+}
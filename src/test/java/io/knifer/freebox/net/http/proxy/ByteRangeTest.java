@@ -0,0 +1,63 @@
+package io.knifer.freebox.net.http.proxy;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Range请求头测试
+ *
+ * @author Knifer
+ */
+public class ByteRangeTest {
+
+    @Test
+    void parseSupportedForms() {
+        assertEquals(new ByteRange(0, 499), ByteRange.parse("bytes=0-499"));
+        assertEquals(new ByteRange(500, -1), ByteRange.parse("bytes=500-"));
+        assertEquals(new ByteRange(-1, 500), ByteRange.parse("bytes=-500"));
+        assertEquals(new ByteRange(10, 20), ByteRange.parse("bytes= 10 - 20 "));
+    }
+
+    @Test
+    void parseRejectsInvalidOrMultipleRanges() {
+        assertNull(ByteRange.parse(null));
+        assertNull(ByteRange.parse(""));
+        assertNull(ByteRange.parse("items=0-499"));
+        assertNull(ByteRange.parse("bytes=0-99,200-299"));
+        assertNull(ByteRange.parse("bytes=abc-"));
+        assertNull(ByteRange.parse("bytes=100"));
+        assertNull(ByteRange.parse("bytes=500-100"));
+        assertNull(ByteRange.parse("bytes=-0"));
+    }
+
+    @Test
+    void resolveAgainstTotalLength() {
+        assertArrayEquals(new long[]{ 0, 499 }, ByteRange.parse("bytes=0-499").resolve(1000));
+        // 结束位置超出总长度时截断
+        assertArrayEquals(new long[]{ 500, 999 }, ByteRange.parse("bytes=500-5000").resolve(1000));
+        assertArrayEquals(new long[]{ 500, 999 }, ByteRange.parse("bytes=500-").resolve(1000));
+        assertArrayEquals(new long[]{ 800, 999 }, ByteRange.parse("bytes=-200").resolve(1000));
+        // 后缀长度超过总长度时返回完整内容
+        assertArrayEquals(new long[]{ 0, 999 }, ByteRange.parse("bytes=-5000").resolve(1000));
+    }
+
+    @Test
+    void unsatisfiableRangeResolvesToNull() {
+        // 以下情况由调用方响应416
+        assertNull(ByteRange.parse("bytes=1000-").resolve(1000));
+        assertNull(ByteRange.parse("bytes=1000-1999").resolve(1000));
+        assertNull(ByteRange.parse("bytes=0-").resolve(0));
+        assertNull(ByteRange.parse("bytes=-100").resolve(0));
+        assertEquals(416, ByteRange.HTTP_RANGE_NOT_SATISFIABLE);
+    }
+
+    @Test
+    void headerValues() {
+        assertEquals("bytes=0-499", new ByteRange(0, 499).toHeaderValue());
+        assertEquals("bytes=500-", new ByteRange(500, -1).toHeaderValue());
+        assertEquals("bytes=-500", new ByteRange(-1, 500).toHeaderValue());
+        assertEquals("bytes 0-499/1000", ByteRange.contentRange(0, 499, 1000));
+        assertEquals("bytes 0-499/*", ByteRange.contentRange(0, 499, -1));
+    }
+}
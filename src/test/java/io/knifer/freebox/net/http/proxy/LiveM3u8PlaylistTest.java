@@ -0,0 +1,128 @@
+package io.knifer.freebox.net.http.proxy;
+
+import io.knifer.freebox.handler.impl.BadM3u8TsProxyHandler;
+import io.knifer.freebox.handler.impl.M3u8RewritePipeline;
+import io.knifer.freebox.handler.impl.M3u8UrlResolveStage;
+import io.knifer.freebox.util.hls.M3u8Document;
+import io.knifer.freebox.util.hls.M3u8Parser;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 直播m3u8测试
+ *
+ * @author Knifer
+ */
+public class LiveM3u8PlaylistTest {
+
+    private static final String PLAYLIST_URL = "http://live.test/hls/index.m3u8";
+
+    private static final int WINDOW_SIZE = 6;
+
+    @Test
+    void updateSlidesWindowAndKeepsSequence() {
+        LiveM3u8Playlist livePlaylist = createLivePlaylist();
+        String content;
+
+        assertTrue(livePlaylist.update(document(100, false)));
+        assertTrue(livePlaylist.isLive());
+        content = livePlaylist.serialize();
+        assertTrue(content.contains("#EXT-X-MEDIA-SEQUENCE:100\n"));
+        assertTrue(content.contains("http://live.test/hls/" + segmentName(100)));
+        assertTrue(content.contains("http://live.test/hls/" + segmentName(105)));
+
+        // 相同窗口再次刷新，内容不变
+        assertFalse(livePlaylist.update(document(100, false)));
+
+        assertTrue(livePlaylist.update(document(102, false)));
+        content = livePlaylist.serialize();
+        assertTrue(content.contains("#EXT-X-MEDIA-SEQUENCE:102\n"));
+        assertTrue(content.contains(segmentName(107)));
+        assertFalse(content.contains(segmentName(101)));
+        assertEquals(WINDOW_SIZE, content.lines().filter(line -> line.startsWith("http://")).count());
+        assertFalse(content.contains("#EXT-X-ENDLIST"));
+    }
+
+    @Test
+    void endListIsKeptAfterLiveEnds() {
+        LiveM3u8Playlist livePlaylist = createLivePlaylist();
+
+        livePlaylist.update(document(100, false));
+
+        assertTrue(livePlaylist.update(document(101, true)));
+        assertTrue(livePlaylist.serialize().endsWith("#EXT-X-ENDLIST\n"));
+    }
+
+    @Test
+    void probeConfirmsLiveOnlyWhenSequenceMoves() {
+        LiveM3u8Playlist livePlaylist = createLivePlaylist();
+
+        livePlaylist.probe(document(100, false));
+        assertFalse(livePlaylist.isLive());
+
+        // 上游内容没有变化，仍可能是省略了#EXT-X-ENDLIST的点播
+        assertFalse(livePlaylist.update(document(100, false)));
+        assertFalse(livePlaylist.isLive());
+
+        assertTrue(livePlaylist.update(document(101, false)));
+        assertTrue(livePlaylist.isLive());
+        assertTrue(livePlaylist.serialize().contains("#EXT-X-MEDIA-SEQUENCE:101\n"));
+    }
+
+    @Test
+    void probeStopsWhenPlaylistEnds() {
+        LiveM3u8Playlist livePlaylist = createLivePlaylist();
+
+        livePlaylist.probe(document(0, false));
+
+        assertFalse(livePlaylist.update(document(0, true)));
+        // 确认为点播后不再按直播处理
+        assertFalse(livePlaylist.update(document(1, false)));
+        assertFalse(livePlaylist.isLive());
+    }
+
+    @Test
+    void probeStopsWhenPlaylistNeverChanges() {
+        LiveM3u8Playlist livePlaylist = createLivePlaylist();
+
+        livePlaylist.probe(document(0, false));
+        for (int i = 0; i < 10; i++) {
+            livePlaylist.update(document(0, false));
+        }
+
+        assertFalse(livePlaylist.update(document(1, false)));
+        assertFalse(livePlaylist.isLive());
+    }
+
+    private static LiveM3u8Playlist createLivePlaylist() {
+        return new LiveM3u8Playlist(
+                PLAYLIST_URL,
+                Map.of(),
+                "http://127.0.0.1:9978/proxy/ts/",
+                new M3u8RewritePipeline(new M3u8UrlResolveStage(), new BadM3u8TsProxyHandler())
+        );
+    }
+
+    private static M3u8Document document(int mediaSequence, boolean endList) {
+        StringBuilder builder = new StringBuilder("#EXTM3U\n#EXT-X-VERSION:3\n#EXT-X-TARGETDURATION:2\n")
+                .append("#EXT-X-MEDIA-SEQUENCE:")
+                .append(mediaSequence)
+                .append('\n');
+
+        for (int i = mediaSequence; i < mediaSequence + WINDOW_SIZE; i++) {
+            builder.append("#EXTINF:2.000000,\n").append(segmentName(i)).append('\n');
+        }
+        if (endList) {
+            builder.append("#EXT-X-ENDLIST\n");
+        }
+
+        return M3u8Parser.parse(builder.toString());
+    }
+
+    private static String segmentName(int idx) {
+        return String.format("live%08d.ts", idx);
+    }
+}
@@ -0,0 +1,138 @@
+package io.knifer.freebox.net.http.proxy;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ts分片预读测试
+ *
+ * @author Knifer
+ */
+public class TsSegmentPrefetcherTest {
+
+    private static final int WINDOW_SIZE = 3;
+
+    /**
+     * 每个分片地址对应的下载任务，按发起顺序排列，下载不会自动完成
+     */
+    private final Map<String, CompletableFuture<byte[]>> fetches = new LinkedHashMap<>();
+
+    private final TsSegmentPrefetcher prefetcher = new TsSegmentPrefetcher((url, headers) -> {
+        CompletableFuture<byte[]> future = new CompletableFuture<>();
+
+        fetches.put(url, future);
+
+        return future;
+    });
+
+    @Test
+    void startFetchesFirstWindow() {
+        prefetcher.start(urls(10), Map.of(), WINDOW_SIZE);
+
+        assertEquals(List.of(url(0), url(1), url(2)), new ArrayList<>(fetches.keySet()));
+    }
+
+    @Test
+    void takeAdvancesWindowAndCancelsPlayedSegments() {
+        CompletableFuture<byte[]> first;
+
+        prefetcher.start(urls(10), Map.of(), WINDOW_SIZE);
+
+        first = prefetcher.take(url(0));
+        assertSame(fetches.get(url(0)), first);
+        assertTrue(fetches.containsKey(url(3)));
+        // 当前分片保留在预读池中，同一分片的多次区间请求都能命中
+        assertSame(first, prefetcher.take(url(0)));
+
+        assertSame(fetches.get(url(1)), prefetcher.take(url(1)));
+        assertTrue(fetches.get(url(0)).isCancelled());
+        assertFalse(fetches.get(url(2)).isCancelled());
+        assertTrue(fetches.containsKey(url(4)));
+        assertFalse(fetches.containsKey(url(5)));
+    }
+
+    @Test
+    void skippingWithinWindowIsNotSeek() {
+        prefetcher.start(urls(10), Map.of(), WINDOW_SIZE);
+        prefetcher.take(url(0));
+
+        assertSame(fetches.get(url(2)), prefetcher.take(url(2)));
+        assertFalse(fetches.get(url(3)).isCancelled());
+    }
+
+    @Test
+    void seekForwardCancelsOldWindow() {
+        prefetcher.start(urls(20), Map.of(), WINDOW_SIZE);
+        prefetcher.take(url(0));
+
+        assertNull(prefetcher.take(url(10)));
+        IntStream.rangeClosed(0, 3).forEach(i -> assertTrue(fetches.get(url(i)).isCancelled(), url(i)));
+        assertTrue(fetches.containsKey(url(11)));
+        assertTrue(fetches.containsKey(url(13)));
+        assertFalse(fetches.containsKey(url(14)));
+    }
+
+    @Test
+    void seekBackwardCancelsOldWindow() {
+        CompletableFuture<byte[]> oldFetch;
+
+        prefetcher.start(urls(20), Map.of(), WINDOW_SIZE);
+        prefetcher.take(url(5));
+        oldFetch = fetches.get(url(6));
+
+        assertNull(prefetcher.take(url(2)));
+        assertTrue(oldFetch.isCancelled());
+        assertSame(fetches.get(url(3)), prefetcher.take(url(3)));
+        // 窗口再次经过旧位置时重新下载
+        assertNotSame(oldFetch, fetches.get(url(6)));
+        assertFalse(fetches.get(url(6)).isCancelled());
+    }
+
+    @Test
+    void inFlightSegmentsCountTowardsMemoryLimit() {
+        int windowSize = 100;
+
+        // 还没有下载完成的分片时按2MB估算，64MB上限内最多同时下载32个
+        prefetcher.start(urls(200), Map.of(), windowSize);
+        assertEquals(32, fetches.size());
+
+        // 分片完成后按实际大小估算，窗口继续扩大
+        fetches.get(url(0)).complete(new byte[1024]);
+        prefetcher.take(url(0));
+        assertEquals(windowSize + 1, fetches.size());
+    }
+
+    @Test
+    void duplicateUrlsArePrefetchedOnce() {
+        prefetcher.start(List.of(url(0), url(0), url(1), url(2), url(3)), Map.of(), WINDOW_SIZE);
+
+        assertEquals(List.of(url(0), url(1), url(2)), new ArrayList<>(fetches.keySet()));
+    }
+
+    @Test
+    void stopCancelsEverything() {
+        prefetcher.start(urls(10), Map.of(), WINDOW_SIZE);
+
+        prefetcher.stop();
+
+        fetches.values().forEach(future -> assertTrue(future.isCancelled()));
+        assertNull(prefetcher.take(url(0)));
+        assertNull(prefetcher.take("http://other.test/unknown.ts"));
+    }
+
+    private static List<String> urls(int count) {
+        return IntStream.range(0, count).mapToObj(TsSegmentPrefetcherTest::url).toList();
+    }
+
+    private static String url(int idx) {
+        return "http://127.0.0.1:9978/proxy/ts/http://cdn.test/seg" + idx + ".ts";
+    }
+}
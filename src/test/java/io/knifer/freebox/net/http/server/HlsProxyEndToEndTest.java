@@ -0,0 +1,424 @@
+package io.knifer.freebox.net.http.server;
+
+import cn.hutool.http.HttpStatus;
+import com.google.common.net.HttpHeaders;
+import com.sun.net.httpserver.HttpServer;
+import io.knifer.freebox.net.http.proxy.M3u8ProxyPreparer;
+import io.knifer.freebox.net.http.proxy.ProxySessionManager;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 本地代理端到端测试
+ * 源站和本地代理都运行在本机随机端口上，本地代理挂载与FreeBoxHttpServerHolder相同的路由，
+ * 覆盖广告过滤、ts修复、区间请求、预读、直播刷新，以及源站出错时的处理
+ *
+ * @author Knifer
+ */
+public class HlsProxyEndToEndTest {
+
+    private static final int NORMAL_SEGMENT_COUNT = 300;
+    private static final int AD_BLOCK_SIZE = 4;
+    private static final int TS_PACKET_COUNT = 20;
+    private static final int PREFETCH_COUNT = 4;
+    /**
+     * 预读测试中源站每个分片的响应延迟
+     */
+    private static final long SLOW_SEGMENT_DELAY_MILLIS = 100;
+    private static final int PREFETCH_CHECK_SEGMENT_COUNT = 20;
+
+    private static LocalHlsOrigin origin;
+    private static HttpServer proxyServer;
+    private static List<HttpRoute> routes;
+    private static String proxyUrlPrefix;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @BeforeAll
+    static void startServers() throws IOException {
+        origin = LocalHlsOrigin.start();
+        proxyServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        routes = FreeBoxHttpServerHolder.createRoutes(FreeBoxHttpServerHolder.RouteOptions.DEFAULT);
+        for (HttpRoute route : routes) {
+            proxyServer.createContext(route.getPathPrefix(), route);
+        }
+        proxyServer.createContext("/", exchange -> HttpRoute.sendEmptyResponse(exchange, HttpStatus.HTTP_NOT_FOUND));
+        proxyServer.start();
+        proxyUrlPrefix = "http://127.0.0.1:" + proxyServer.getAddress().getPort();
+    }
+
+    @AfterAll
+    static void stopServers() {
+        proxyServer.stop(0);
+        routes.forEach(HttpRoute::shutdown);
+        origin.close();
+    }
+
+    @AfterEach
+    void closeSessions() {
+        ProxySessionManager.getInstance().closeAll();
+    }
+
+    @Test
+    void tsProxyStripsPngHeader() throws Exception {
+        byte[] ts = LocalHlsOrigin.tsData(TS_PACKET_COUNT, 1);
+        HttpResponse<byte[]> resp;
+
+        origin.segment("/seg/png1.png", LocalHlsOrigin.pngPrefixed(ts));
+        resp = get(proxyUrlPrefix + "/proxy/ts/" + origin.url("/seg/png1.png"), Map.of());
+
+        assertEquals(HttpStatus.HTTP_OK, resp.statusCode());
+        assertEquals("video/MP2T", resp.headers().firstValue(HttpHeaders.CONTENT_TYPE).orElse(null));
+        assertArrayEquals(ts, resp.body());
+    }
+
+    @Test
+    void tsProxyForwardsRange() throws Exception {
+        byte[] ts = LocalHlsOrigin.tsData(TS_PACKET_COUNT, 2);
+        byte[] data = LocalHlsOrigin.pngPrefixed(ts);
+        HttpResponse<byte[]> resp;
+
+        origin.segment("/seg/png2.png", data);
+        // 区间按请求原样返回，坐标以源站数据为准，不跳过PNG头
+        resp = get(
+                proxyUrlPrefix + "/proxy/ts/" + origin.url("/seg/png2.png"),
+                Map.of(HttpHeaders.RANGE, "bytes=0-999")
+        );
+        assertEquals(HttpStatus.HTTP_PARTIAL, resp.statusCode());
+        assertEquals(
+                "bytes 0-999/" + data.length,
+                resp.headers().firstValue(HttpHeaders.CONTENT_RANGE).orElse(null)
+        );
+        assertArrayEquals(Arrays.copyOfRange(data, 0, 1000), resp.body());
+
+        // 未对齐到ts包的区间
+        resp = get(
+                proxyUrlPrefix + "/proxy/ts/" + origin.url("/seg/png2.png"),
+                Map.of(HttpHeaders.RANGE, "bytes=1234-2345")
+        );
+        assertEquals(HttpStatus.HTTP_PARTIAL, resp.statusCode());
+        assertEquals(
+                "bytes 1234-2345/" + data.length,
+                resp.headers().firstValue(HttpHeaders.CONTENT_RANGE).orElse(null)
+        );
+        assertArrayEquals(Arrays.copyOfRange(data, 1234, 2346), resp.body());
+    }
+
+    @Test
+    void tsProxyDoesNotAdvertiseRangesForStrippedResponse() throws Exception {
+        byte[] data = LocalHlsOrigin.pngPrefixed(LocalHlsOrigin.tsData(TS_PACKET_COUNT, 4));
+        HttpResponse<byte[]> resp;
+
+        origin.segment("/seg/png4.png", data);
+        resp = get(proxyUrlPrefix + "/proxy/ts/" + origin.url("/seg/png4.png"), Map.of());
+
+        // 跳过了PNG头，响应与源站数据的坐标不同，不能再按区间请求
+        assertEquals(HttpStatus.HTTP_OK, resp.statusCode());
+        assertEquals(data.length - LocalHlsOrigin.pngPrefixSize(), resp.body().length);
+        assertTrue(resp.headers().firstValue(HttpHeaders.ACCEPT_RANGES).isEmpty());
+    }
+
+    @Test
+    void tsProxyFollowsRedirect() throws Exception {
+        byte[] ts = LocalHlsOrigin.tsData(TS_PACKET_COUNT, 3);
+        HttpResponse<byte[]> resp;
+
+        origin.segment("/seg/png3.png", LocalHlsOrigin.pngPrefixed(ts));
+        origin.redirect("/seg/moved.png", "/seg/png3.png");
+        resp = get(proxyUrlPrefix + "/proxy/ts/" + origin.url("/seg/moved.png"), Map.of());
+
+        assertEquals(HttpStatus.HTTP_OK, resp.statusCode());
+        assertArrayEquals(ts, resp.body());
+    }
+
+    @Test
+    void tsProxyPassesUpstreamErrors() throws Exception {
+        assertEquals(
+                HttpStatus.HTTP_NOT_FOUND,
+                get(proxyUrlPrefix + "/proxy/ts/" + origin.url("/seg/missing.png"), Map.of()).statusCode()
+        );
+        // 端口1上没有服务，连接失败
+        assertEquals(
+                HttpStatus.HTTP_BAD_GATEWAY,
+                get(proxyUrlPrefix + "/proxy/ts/http://127.0.0.1:1/seg/missing.png", Map.of()).statusCode()
+        );
+    }
+
+    @Test
+    void prepareFiltersAdsAndPrefetchesSegments() throws Exception {
+        String playUrl = origin.url("/vod/index.m3u8");
+        M3u8ProxyPreparer.Result result;
+        HttpResponse<byte[]> resp;
+        String etag;
+        String playlist;
+        List<String> segmentUrls;
+
+        origin.playlist("/vod/index.m3u8", createVodPlaylist());
+        for (int i = 0; i < NORMAL_SEGMENT_COUNT; i++) {
+            origin.slowSegment(
+                    "/vod/" + normalSegmentName(i),
+                    LocalHlsOrigin.pngPrefixed(LocalHlsOrigin.tsData(TS_PACKET_COUNT, i)),
+                    SLOW_SEGMENT_DELAY_MILLIS
+            );
+        }
+        result = new M3u8ProxyPreparer().prepare(playUrl, Map.of(), createSettings());
+
+        assertTrue(result.adFiltered());
+        assertNotNull(result.session());
+        assertTrue(result.playUrl().startsWith(proxyUrlPrefix + "/proxy-cache/"));
+
+        resp = get(result.playUrl(), Map.of());
+        assertEquals(HttpStatus.HTTP_OK, resp.statusCode());
+        etag = resp.headers().firstValue(HttpHeaders.ETAG).orElse(null);
+        assertNotNull(etag);
+        playlist = new String(resp.body());
+        assertFalse(playlist.contains(adSegmentName(0)));
+        segmentUrls = playlist.lines().filter(line -> !line.isBlank() && !line.startsWith("#")).toList();
+        assertEquals(NORMAL_SEGMENT_COUNT, segmentUrls.size());
+        segmentUrls.forEach(url -> assertTrue(url.startsWith(proxyUrlPrefix + "/proxy/ts/"), url));
+        assertEquals(
+                HttpStatus.HTTP_NOT_MODIFIED,
+                get(result.playUrl(), Map.of(HttpHeaders.IF_NONE_MATCH, etag)).statusCode()
+        );
+
+        // 按播放顺序请求分片，预读窗口内的分片并发下载，源站上应出现同时进行的分片请求
+        for (int i = 0; i < PREFETCH_CHECK_SEGMENT_COUNT; i++) {
+            resp = get(segmentUrls.get(i), Map.of());
+            assertEquals(HttpStatus.HTTP_OK, resp.statusCode());
+            assertArrayEquals(LocalHlsOrigin.tsData(TS_PACKET_COUNT, i), resp.body());
+        }
+        assertTrue(origin.getMaxConcurrentSlowRequests("/vod/") > 1);
+        for (int i = 0; i < PREFETCH_CHECK_SEGMENT_COUNT; i++) {
+            // 预读命中，源站上的每个分片只被请求一次
+            assertEquals(1, origin.getRequestCount("/vod/" + normalSegmentName(i)));
+        }
+    }
+
+    @Test
+    void prepareRefreshesLivePlaylist() throws Exception {
+        String playUrl = origin.url("/live/index.m3u8");
+        M3u8ProxyPreparer.Result result;
+        String playlist;
+        String etag;
+        HttpResponse<byte[]> resp;
+
+        origin.playlist("/live/index.m3u8", createLivePlaylist(100));
+        result = new M3u8ProxyPreparer().prepare(playUrl, Map.of(), createSettings());
+
+        assertNotNull(result.session());
+        resp = get(result.playUrl(), Map.of());
+        etag = resp.headers().firstValue(HttpHeaders.ETAG).orElse(null);
+        playlist = new String(resp.body());
+        assertTrue(playlist.contains("#EXT-X-MEDIA-SEQUENCE:100"));
+        assertTrue(playlist.contains(liveSegmentName(105)));
+        assertFalse(playlist.contains("#EXT-X-ENDLIST"));
+
+        // 源站追加分片，超过刷新间隔后再次请求，后台刷新发现序号前进，确认为直播并滑动窗口
+        origin.playlist("/live/index.m3u8", createLivePlaylist(102));
+        Thread.sleep(1100);
+        playlist = awaitPlaylistChange(result.playUrl(), etag);
+        assertTrue(playlist.contains("#EXT-X-MEDIA-SEQUENCE:102"));
+        assertTrue(playlist.contains(liveSegmentName(107)));
+        assertFalse(playlist.contains(liveSegmentName(100)));
+    }
+
+    @Test
+    void liveReloadServesLastSnapshotWhileRefreshing() throws Exception {
+        String path = "/live-slow/index.m3u8";
+        M3u8ProxyPreparer.Result result;
+        String playlist;
+        String etag;
+        HttpResponse<byte[]> resp;
+
+        origin.playlist(path, createEventPlaylist(200));
+        result = new M3u8ProxyPreparer().prepare(origin.url(path), Map.of(), createSettings());
+
+        assertNotNull(result.session());
+        resp = get(result.playUrl(), Map.of());
+        etag = resp.headers().firstValue(HttpHeaders.ETAG).orElse(null);
+        assertTrue(new String(resp.body()).contains("#EXT-X-MEDIA-SEQUENCE:200"));
+
+        // 源站变慢，重新加载不等待刷新完成，直接返回上一次的内容
+        origin.slowPlaylist(path, createEventPlaylist(202), 1000);
+        Thread.sleep(1100);
+        assertEquals(
+                HttpStatus.HTTP_NOT_MODIFIED,
+                get(result.playUrl(), Map.of(HttpHeaders.IF_NONE_MATCH, etag)).statusCode()
+        );
+        playlist = awaitPlaylistChange(result.playUrl(), etag);
+        assertTrue(playlist.contains("#EXT-X-MEDIA-SEQUENCE:202"));
+        // 准备时请求一次，刷新期间的多次重新加载只触发一次刷新
+        assertEquals(2, origin.getRequestCount(path));
+    }
+
+    @Test
+    void prepareTreatsPlaylistWithoutEndListAsVod() throws Exception {
+        String playUrl = origin.url("/vod-open/index.m3u8");
+        String firstSegmentPath = "/vod-open/" + normalSegmentName(0);
+        M3u8ProxyPreparer.Result result;
+        long deadline;
+
+        // 点播源省略了#EXT-X-ENDLIST和#EXT-X-PLAYLIST-TYPE
+        origin.playlist(
+                "/vod-open/index.m3u8",
+                createVodPlaylist()
+                        .replace("#EXT-X-PLAYLIST-TYPE:VOD\n", "")
+                        .replace("\n#EXT-X-ENDLIST", "")
+        );
+        for (int i = 0; i < PREFETCH_COUNT; i++) {
+            origin.segment(
+                    "/vod-open/" + normalSegmentName(i),
+                    LocalHlsOrigin.pngPrefixed(LocalHlsOrigin.tsData(TS_PACKET_COUNT, i))
+            );
+        }
+        result = new M3u8ProxyPreparer().prepare(playUrl, Map.of(), createSettings());
+
+        assertTrue(result.adFiltered());
+        assertNotNull(result.session());
+        // 只有点播路径会预读开头的分片
+        deadline = System.currentTimeMillis() + 5000;
+        while (origin.getRequestCount(firstSegmentPath) == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(1, origin.getRequestCount(firstSegmentPath));
+    }
+
+    @Test
+    void prepareDecodesCompressedPlaylist() throws Exception {
+        String playUrl = origin.url("/gzip/index.m3u8");
+        M3u8ProxyPreparer.Result result;
+        HttpResponse<byte[]> resp;
+
+        origin.gzipPlaylist("/gzip/index.m3u8", createVodPlaylist());
+        result = new M3u8ProxyPreparer().prepare(playUrl, Map.of(), createSettings());
+
+        assertTrue(result.adFiltered());
+        resp = get(result.playUrl(), Map.of());
+        assertEquals(HttpStatus.HTTP_OK, resp.statusCode());
+        // 播放列表已解压，不能再声明压缩方式
+        assertTrue(resp.headers().firstValue(HttpHeaders.CONTENT_ENCODING).isEmpty());
+        assertTrue(new String(resp.body()).startsWith("#EXTM3U"));
+    }
+
+    @Test
+    void prepareFallsBackWhenPlaylistMissing() {
+        String playUrl = origin.url("/vod/missing.m3u8");
+        M3u8ProxyPreparer.Result result = new M3u8ProxyPreparer().prepare(playUrl, Map.of(), createSettings());
+
+        assertFalse(result.adFiltered());
+        assertEquals(playUrl, result.playUrl());
+        assertNull(result.session());
+    }
+
+    private M3u8ProxyPreparer.Settings createSettings() {
+        return new M3u8ProxyPreparer.Settings(proxyUrlPrefix, PREFETCH_COUNT, 0, 0, false);
+    }
+
+    private HttpResponse<byte[]> get(String url, Map<String, String> headers) throws Exception {
+        HttpRequest.Builder requestBuilder = HttpRequest.newBuilder(URI.create(url)).GET();
+
+        headers.forEach(requestBuilder::header);
+
+        return client.send(requestBuilder.build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    /**
+     * 反复请求播放列表，直到后台刷新更新了内容
+     * @param url 播放列表地址
+     * @param etag 上一次的ETag
+     * @return 新的播放列表内容
+     */
+    private String awaitPlaylistChange(String url, String etag) throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        HttpResponse<byte[]> resp;
+
+        while (System.currentTimeMillis() < deadline) {
+            resp = get(url, Map.of(HttpHeaders.IF_NONE_MATCH, etag));
+            if (resp.statusCode() == HttpStatus.HTTP_OK) {
+
+                return new String(resp.body());
+            }
+            assertEquals(HttpStatus.HTTP_NOT_MODIFIED, resp.statusCode());
+            Thread.sleep(50);
+        }
+
+        return fail("playlist was not refreshed, url=" + url);
+    }
+
+    /**
+     * 生成点播播放列表：数字递增命名的正常分片中，插入两段命名长度不同的广告
+     */
+    private static String createVodPlaylist() {
+        List<String> lines = new ArrayList<>();
+        int adIdx = 0;
+
+        lines.add("#EXTM3U");
+        lines.add("#EXT-X-VERSION:3");
+        lines.add("#EXT-X-TARGETDURATION:10");
+        lines.add("#EXT-X-PLAYLIST-TYPE:VOD");
+        lines.add("#EXT-X-MEDIA-SEQUENCE:0");
+        for (int i = 0; i < NORMAL_SEGMENT_COUNT; i++) {
+            if (i > 0 && i % 100 == 0) {
+                lines.add("#EXT-X-DISCONTINUITY");
+                for (int j = 0; j < AD_BLOCK_SIZE; j++) {
+                    lines.add("#EXTINF:3.000000,");
+                    lines.add(adSegmentName(adIdx++));
+                }
+                lines.add("#EXT-X-DISCONTINUITY");
+            }
+            lines.add(i % 3 == 0 ? "#EXTINF:10.000000," : "#EXTINF:8.341667,");
+            lines.add(normalSegmentName(i));
+        }
+        lines.add("#EXT-X-ENDLIST");
+
+        return String.join("\n", lines);
+    }
+
+    private static String createLivePlaylist(int mediaSequence) {
+        StringBuilder builder = new StringBuilder("#EXTM3U\n#EXT-X-VERSION:3\n#EXT-X-TARGETDURATION:2\n")
+                .append("#EXT-X-MEDIA-SEQUENCE:")
+                .append(mediaSequence)
+                .append('\n');
+
+        for (int i = mediaSequence; i < mediaSequence + 6; i++) {
+            builder.append("#EXTINF:2.000000,\n").append(liveSegmentName(i)).append('\n');
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * 声明为EVENT的直播播放列表
+     */
+    private static String createEventPlaylist(int mediaSequence) {
+        return createLivePlaylist(mediaSequence)
+                .replace("#EXT-X-TARGETDURATION", "#EXT-X-PLAYLIST-TYPE:EVENT\n#EXT-X-TARGETDURATION");
+    }
+
+    private static String normalSegmentName(int idx) {
+        return String.format("5c8e1f0a%05d.png", idx);
+    }
+
+    private static String adSegmentName(int idx) {
+        return String.format("5c8e1ad%04d.png", 600 + idx);
+    }
+
+    private static String liveSegmentName(int idx) {
+        return String.format("live%08d.png", idx);
+    }
+}
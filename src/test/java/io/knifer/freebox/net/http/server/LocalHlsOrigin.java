@@ -0,0 +1,283 @@
+package io.knifer.freebox.net.http.server;
+
+import cn.hutool.http.HttpStatus;
+import com.google.common.net.HttpHeaders;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 本地HLS源站
+ * 在随机端口上提供测试用的播放列表和分片，可模拟伪装成PNG的ts、gzip压缩、慢响应、404和重定向，
+ * 用于在不访问外网的情况下测试本地代理的完整流程
+ *
+ * @author Knifer
+ */
+class LocalHlsOrigin implements AutoCloseable {
+
+    private static final byte TS_SYNC_BYTE = 0x47;
+    private static final int TS_PACKET_SIZE = 188;
+    /**
+     * PNG文件签名，后面再补一些填充数据，模拟把ts伪装成图片的源站
+     */
+    private static final byte[] PNG_SIGNATURE = {
+            (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'
+    };
+    private static final int PNG_PADDING_SIZE = 100;
+
+    private final HttpServer server;
+
+    private final Map<String, Resource> resources = new ConcurrentHashMap<>();
+
+    private final Map<String, AtomicInteger> requestCounts = new ConcurrentHashMap<>();
+
+    /**
+     * 每个目录下正在等待响应的慢请求数，以及出现过的最大值，用于判断请求是否并发
+     */
+    private final Map<String, AtomicInteger> delayingRequests = new ConcurrentHashMap<>();
+
+    private final Map<String, AtomicInteger> maxDelayingRequests = new ConcurrentHashMap<>();
+
+    private LocalHlsOrigin(HttpServer server) {
+        this.server = server;
+    }
+
+    static LocalHlsOrigin start() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        LocalHlsOrigin origin = new LocalHlsOrigin(server);
+
+        server.createContext("/", origin::handle);
+        server.setExecutor(Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "LocalHlsOrigin");
+
+            t.setDaemon(true);
+
+            return t;
+        }));
+        server.start();
+
+        return origin;
+    }
+
+    String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    void playlist(String path, String content) {
+        slowPlaylist(path, content, 0);
+    }
+
+    /**
+     * 响应前等待指定时间的播放列表
+     */
+    void slowPlaylist(String path, String content, long delayMillis) {
+        resources.put(
+                path,
+                new Resource(
+                        HttpStatus.HTTP_OK,
+                        content.getBytes(StandardCharsets.UTF_8),
+                        "application/vnd.apple.mpegurl",
+                        null,
+                        delayMillis,
+                        null
+                )
+        );
+    }
+
+    /**
+     * gzip压缩的播放列表（不论请求是否声明支持压缩）
+     */
+    void gzipPlaylist(String path, String content) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        try (GZIPOutputStream gzipOutput = new GZIPOutputStream(output)) {
+            gzipOutput.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        resources.put(
+                path,
+                new Resource(
+                        HttpStatus.HTTP_OK,
+                        output.toByteArray(),
+                        "application/vnd.apple.mpegurl",
+                        "gzip",
+                        0,
+                        null
+                )
+        );
+    }
+
+    void segment(String path, byte[] data) {
+        slowSegment(path, data, 0);
+    }
+
+    /**
+     * 响应前等待指定时间的分片
+     */
+    void slowSegment(String path, byte[] data, long delayMillis) {
+        resources.put(path, new Resource(HttpStatus.HTTP_OK, data, "image/png", null, delayMillis, null));
+    }
+
+    void redirect(String path, String targetPath) {
+        resources.put(path, new Resource(HttpStatus.HTTP_MOVED_TEMP, new byte[0], null, null, 0, targetPath));
+    }
+
+    int getRequestCount(String path) {
+        AtomicInteger count = requestCounts.get(path);
+
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * 指定目录下同时等待响应的慢请求（slowPlaylist、slowSegment）的最大数量
+     * @param directory 目录，如"/vod/"
+     */
+    int getMaxConcurrentSlowRequests(String directory) {
+        AtomicInteger max = maxDelayingRequests.get(directory);
+
+        return max == null ? 0 : max.get();
+    }
+
+    /**
+     * 生成ts数据，每个包以同步字节开头，负载中不含同步字节
+     * @param packetCount 包数量
+     * @param seed 区分不同分片的种子
+     * @return ts数据
+     */
+    static byte[] tsData(int packetCount, int seed) {
+        byte[] data = new byte[packetCount * TS_PACKET_SIZE];
+
+        for (int i = 0; i < data.length; i++) {
+            data[i] = i % TS_PACKET_SIZE == 0 ? TS_SYNC_BYTE : (byte) ((i + seed) % TS_SYNC_BYTE);
+        }
+
+        return data;
+    }
+
+    /**
+     * 在ts数据前加上PNG文件头
+     * @param tsData ts数据
+     * @return 伪装成PNG的ts数据
+     */
+    static byte[] pngPrefixed(byte[] tsData) {
+        byte[] data = new byte[PNG_SIGNATURE.length + PNG_PADDING_SIZE + tsData.length];
+
+        System.arraycopy(PNG_SIGNATURE, 0, data, 0, PNG_SIGNATURE.length);
+        System.arraycopy(tsData, 0, data, PNG_SIGNATURE.length + PNG_PADDING_SIZE, tsData.length);
+
+        return data;
+    }
+
+    static int pngPrefixSize() {
+        return PNG_SIGNATURE.length + PNG_PADDING_SIZE;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        Resource resource = resources.get(path);
+        Headers respHeaders = exchange.getResponseHeaders();
+        String directory = path.substring(0, path.lastIndexOf('/') + 1);
+        AtomicInteger delaying;
+        String range;
+        long[] bounds;
+
+        requestCounts.computeIfAbsent(path, key -> new AtomicInteger()).incrementAndGet();
+        try (exchange) {
+            if (resource == null) {
+                exchange.sendResponseHeaders(HttpStatus.HTTP_NOT_FOUND, -1);
+
+                return;
+            }
+            if (resource.delayMillis() > 0) {
+                delaying = delayingRequests.computeIfAbsent(directory, key -> new AtomicInteger());
+                maxDelayingRequests.computeIfAbsent(directory, key -> new AtomicInteger())
+                        .accumulateAndGet(delaying.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(resource.delayMillis());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+
+                    return;
+                } finally {
+                    delaying.decrementAndGet();
+                }
+            }
+            if (resource.location() != null) {
+                respHeaders.set(HttpHeaders.LOCATION, url(resource.location()));
+                exchange.sendResponseHeaders(resource.status(), -1);
+
+                return;
+            }
+            respHeaders.set(HttpHeaders.CONTENT_TYPE, resource.contentType());
+            if (resource.contentEncoding() != null) {
+                respHeaders.set(HttpHeaders.CONTENT_ENCODING, resource.contentEncoding());
+            }
+            respHeaders.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+            range = exchange.getRequestHeaders().getFirst(HttpHeaders.RANGE);
+            bounds = range == null ? null : parseRange(range, resource.data().length);
+            if (bounds == null) {
+                exchange.sendResponseHeaders(resource.status(), resource.data().length);
+                exchange.getResponseBody().write(resource.data());
+
+                return;
+            }
+            respHeaders.set(
+                    HttpHeaders.CONTENT_RANGE,
+                    "bytes " + bounds[0] + "-" + bounds[1] + "/" + resource.data().length
+            );
+            exchange.sendResponseHeaders(HttpStatus.HTTP_PARTIAL, bounds[1] - bounds[0] + 1);
+            exchange.getResponseBody().write(
+                    Arrays.copyOfRange(resource.data(), (int) bounds[0], (int) bounds[1] + 1)
+            );
+        }
+    }
+
+    /**
+     * 解析"bytes=start-end"（end可省略），无法解析时返回null（返回完整数据）
+     */
+    @Nullable
+    private static long[] parseRange(String range, int length) {
+        String[] startAndEnd;
+        long start;
+        long end;
+
+        if (!range.startsWith("bytes=")) {
+
+            return null;
+        }
+        startAndEnd = range.substring("bytes=".length()).split("-", 2);
+        if (startAndEnd.length < 2 || startAndEnd[0].isEmpty()) {
+
+            return null;
+        }
+        start = Long.parseLong(startAndEnd[0]);
+        end = startAndEnd[1].isEmpty() ? length - 1 : Math.min(Long.parseLong(startAndEnd[1]), length - 1);
+
+        return start > end ? null : new long[]{start, end};
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private record Resource(
+            int status,
+            byte[] data,
+            @Nullable String contentType,
+            @Nullable String contentEncoding,
+            long delayMillis,
+            @Nullable String location
+    ) {}
+}
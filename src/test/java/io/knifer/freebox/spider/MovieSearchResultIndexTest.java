@@ -0,0 +1,67 @@
+package io.knifer.freebox.spider;
+
+import io.knifer.freebox.model.common.tvbox.Movie;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 搜索结果合并索引测试
+ *
+ * @author Knifer
+ */
+public class MovieSearchResultIndexTest {
+
+    @Test
+    void sameMovieFromDifferentSourcesIsMerged() {
+        MovieSearchResultIndex index = new MovieSearchResultIndex();
+        Movie.Video first = video("a", "流浪地球 2", 2023, "电影");
+        Movie.Video second = video("b", "流浪地球２", 0, "");
+        Movie.Video third = video("c", "流浪地球2", 2023, "电影");
+
+        assertEquals(List.of(first), index.addAll(List.of(first)));
+        assertEquals(List.of(), index.addAll(List.of(second, third)));
+        assertEquals(List.of(first, second, third), index.getAlternatives(second));
+    }
+
+    @Test
+    void differentYearOrTypeIsNotMerged() {
+        MovieSearchResultIndex index = new MovieSearchResultIndex();
+        Movie.Video movie = video("a", "三体", 2023, "电视剧");
+        Movie.Video remake = video("b", "三体", 2024, "电视剧");
+        Movie.Video anime = video("c", "三体", 2023, "动漫");
+
+        assertEquals(List.of(movie, remake, anime), index.addAll(List.of(movie, remake, anime)));
+        assertEquals(List.of(movie), index.getAlternatives(movie));
+    }
+
+    @Test
+    void sameSourceIsNotMerged() {
+        MovieSearchResultIndex index = new MovieSearchResultIndex();
+        Movie.Video first = video("a", "三体", 0, null);
+        Movie.Video second = video("a", "三体", 0, null);
+
+        assertEquals(List.of(first, second), index.addAll(List.of(first, second)));
+    }
+
+    @Test
+    void unknownVideoHasItselfAsAlternative() {
+        Movie.Video video = video("a", "三体", 0, null);
+
+        assertEquals(List.of(video), new MovieSearchResultIndex().getAlternatives(video));
+    }
+
+    private static Movie.Video video(String sourceKey, String name, int year, String type) {
+        Movie.Video video = new Movie.Video();
+
+        video.setSourceKey(sourceKey);
+        video.setId(sourceKey + "-" + name);
+        video.setName(name);
+        video.setYear(year);
+        video.setType(type);
+
+        return video;
+    }
+}
@@ -0,0 +1,116 @@
+package io.knifer.freebox.spider;
+
+import cn.hutool.crypto.digest.DigestUtil;
+import cn.hutool.http.HttpStatus;
+import com.google.common.net.HttpHeaders;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 爬虫jar磁盘存储测试
+ *
+ * @author Knifer
+ */
+public class SpiderJarStoreTest {
+
+    private static final byte[] JAR_CONTENT = "spider jar".getBytes(StandardCharsets.UTF_8);
+
+    private static final String ETAG = "\"1\"";
+
+    @TempDir
+    Path storePath;
+
+    private HttpServer server;
+
+    private final AtomicInteger requestCount = new AtomicInteger();
+
+    private final List<String> ifNoneMatchValues = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    @AfterEach
+    void stop() {
+        server.stop(0);
+    }
+
+    @Test
+    void declaredMd5SkipsRequestAfterRestart() throws Exception {
+        String md5 = DigestUtil.md5Hex(JAR_CONTENT);
+        Path jar = new SpiderJarStore(storePath, Long.MAX_VALUE, 0).get(getUrl(), md5);
+
+        assertArrayEquals(JAR_CONTENT, Files.readAllBytes(jar));
+        assertEquals(jar, new SpiderJarStore(storePath, Long.MAX_VALUE, 0).get(getUrl(), md5));
+        assertEquals(1, requestCount.get());
+    }
+
+    @Test
+    void cachedJarIsRevalidatedWithEtag() throws Exception {
+        SpiderJarStore store = new SpiderJarStore(storePath, Long.MAX_VALUE, 0);
+        Path jar = store.get(getUrl(), null);
+
+        assertEquals(jar, new SpiderJarStore(storePath, Long.MAX_VALUE, 0).get(getUrl(), null));
+        assertEquals(2, requestCount.get());
+        assertEquals(List.of(ETAG), ifNoneMatchValues);
+    }
+
+    @Test
+    void recentlyCheckedJarIsUsedWithoutRequest() throws Exception {
+        SpiderJarStore store = new SpiderJarStore(storePath, Long.MAX_VALUE, 60_000);
+        Path jar = store.get(getUrl(), null);
+
+        assertEquals(jar, store.get(getUrl(), null));
+        assertEquals(1, requestCount.get());
+    }
+
+    @Test
+    void cachedJarIsUsedWhenOffline() throws Exception {
+        String url = getUrl();
+        Path jar = new SpiderJarStore(storePath, Long.MAX_VALUE, 0).get(url, null);
+
+        server.stop(0);
+        assertEquals(jar, new SpiderJarStore(storePath, Long.MAX_VALUE, 0).get(url, null));
+    }
+
+    private String getUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/spider.jar";
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String ifNoneMatch = exchange.getRequestHeaders().getFirst(HttpHeaders.IF_NONE_MATCH);
+
+        requestCount.incrementAndGet();
+        if (ifNoneMatch != null) {
+            ifNoneMatchValues.add(ifNoneMatch);
+        }
+        try (exchange) {
+            exchange.getResponseHeaders().set(HttpHeaders.ETAG, ETAG);
+            if (ETAG.equals(ifNoneMatch)) {
+                exchange.sendResponseHeaders(HttpStatus.HTTP_NOT_MODIFIED, -1);
+
+                return;
+            }
+            exchange.sendResponseHeaders(HttpStatus.HTTP_OK, JAR_CONTENT.length);
+            exchange.getResponseBody().write(JAR_CONTENT);
+        }
+    }
+}
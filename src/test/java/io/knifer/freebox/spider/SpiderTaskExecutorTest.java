@@ -0,0 +1,149 @@
+package io.knifer.freebox.spider;
+
+import io.knifer.freebox.spider.SpiderTaskExecutor.Priority;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 爬虫任务执行器测试
+ *
+ * @author Knifer
+ */
+public class SpiderTaskExecutorTest {
+
+    private SpiderTaskExecutor executor;
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    @Test
+    void slowSourceDoesNotBlockOtherSources() throws Exception {
+        CountDownLatch blocker = new CountDownLatch(1);
+        CompletableFuture<String> slow;
+
+        executor = new SpiderTaskExecutor(4, 1);
+        slow = executor.submit("slow", Priority.NORMAL, 0, () -> {
+            blocker.await();
+
+            return "slow";
+        });
+        assertEquals("fast", executor.submit("fast", Priority.NORMAL, 0, () -> "fast").get(5, TimeUnit.SECONDS));
+        assertFalse(slow.isDone());
+        blocker.countDown();
+        assertEquals("slow", slow.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void perSourceLimitIsRespected() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<CompletableFuture<Object>> futures = new CopyOnWriteArrayList<>();
+
+        executor = new SpiderTaskExecutor(8, 2);
+        for (int i = 0; i < 10; i++) {
+            futures.add(executor.submit("source", Priority.NORMAL, 0, () -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                Thread.sleep(20);
+                running.decrementAndGet();
+
+                return null;
+            }));
+        }
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get(10, TimeUnit.SECONDS);
+        assertEquals(2, maxRunning.get());
+    }
+
+    @Test
+    void interactiveTasksRunBeforeQueuedBackgroundTasks() throws Exception {
+        CountDownLatch blocker = new CountDownLatch(1);
+        List<String> order = new CopyOnWriteArrayList<>();
+        CompletableFuture<Object> background;
+        CompletableFuture<Object> interactive;
+
+        executor = new SpiderTaskExecutor(4, 1);
+        executor.submit("source", Priority.NORMAL, 0, () -> {
+            blocker.await();
+
+            return null;
+        });
+        background = executor.submit("source", Priority.BACKGROUND, 0, () -> order.add("background"));
+        interactive = executor.submit("source", Priority.INTERACTIVE, 0, () -> order.add("interactive"));
+        blocker.countDown();
+        CompletableFuture.allOf(background, interactive).get(5, TimeUnit.SECONDS);
+        assertEquals(List.of("interactive", "background"), order);
+    }
+
+    @Test
+    void timedOutTaskIsInterruptedAndReleasesSource() throws Exception {
+        CompletableFuture<Object> timedOut;
+        ExecutionException e;
+
+        executor = new SpiderTaskExecutor(4, 1);
+        timedOut = executor.submit("source", Priority.NORMAL, 100, () -> {
+            Thread.sleep(10_000);
+
+            return null;
+        });
+        e = assertThrows(ExecutionException.class, () -> timedOut.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(TimeoutException.class, e.getCause());
+        assertEquals("next", executor.submit("source", Priority.NORMAL, 0, () -> "next").get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void cancelledQueuedTaskIsSkipped() throws Exception {
+        CountDownLatch blocker = new CountDownLatch(1);
+        AtomicInteger executed = new AtomicInteger();
+        CompletableFuture<Object> cancelled;
+
+        executor = new SpiderTaskExecutor(4, 1);
+        executor.submit("source", Priority.NORMAL, 0, () -> {
+            blocker.await();
+
+            return null;
+        });
+        cancelled = executor.submit("source", Priority.BACKGROUND, 0, executed::incrementAndGet);
+        cancelled.cancel(true);
+        blocker.countDown();
+        assertEquals("next", executor.submit("source", Priority.NORMAL, 0, () -> "next").get(5, TimeUnit.SECONDS));
+        assertEquals(0, executed.get());
+    }
+
+    @Test
+    void queuedTaskFailsWhenExecutorIsShutDown() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CompletableFuture<Object> queued;
+        ExecutionException e;
+
+        executor = new SpiderTaskExecutor(4, 1);
+        executor.submit("source", Priority.NORMAL, 0, () -> {
+            started.countDown();
+            Thread.sleep(10_000);
+
+            return null;
+        });
+        queued = executor.submit("source", Priority.NORMAL, 0, () -> "queued");
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        executor.shutdown();
+        e = assertThrows(ExecutionException.class, () -> queued.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(RejectedExecutionException.class, e.getCause());
+        e = assertThrows(
+                ExecutionException.class,
+                () -> executor.submit("source", Priority.NORMAL, 0, () -> "late").get(5, TimeUnit.SECONDS)
+        );
+        assertInstanceOf(RejectedExecutionException.class, e.getCause());
+    }
+}
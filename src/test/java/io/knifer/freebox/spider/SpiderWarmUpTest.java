@@ -0,0 +1,72 @@
+package io.knifer.freebox.spider;
+
+import io.knifer.freebox.model.common.tvbox.SourceBean;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 爬虫预热测试
+ *
+ * @author Knifer
+ */
+public class SpiderWarmUpTest {
+
+    private final SpiderTaskExecutor executor = new SpiderTaskExecutor(8, 2);
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    @Test
+    void lastUsedSourceComesFirstFollowedBySearchableSources() {
+        SourceBean a = sourceBean("a", true);
+        SourceBean b = sourceBean("b", false);
+        SourceBean c = sourceBean("c", true);
+        SourceBean d = sourceBean("d", false);
+
+        assertEquals(List.of(d, a, c), SpiderWarmUp.prioritize(List.of(a, b, c, d), "d"));
+        assertEquals(List.of(a, c), SpiderWarmUp.prioritize(List.of(a, b, c, d), null));
+    }
+
+    @Test
+    void concurrencyIsBounded() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch finished = new CountDownLatch(10);
+        SpiderWarmUp warmUp = new SpiderWarmUp(executor, 3, sourceBean -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            running.decrementAndGet();
+            finished.countDown();
+        });
+
+        warmUp.start(List.of(
+                sourceBean("0", true), sourceBean("1", true), sourceBean("2", true), sourceBean("3", true),
+                sourceBean("4", true), sourceBean("5", true), sourceBean("6", true), sourceBean("7", true),
+                sourceBean("8", true), sourceBean("9", true)
+        ));
+        assertTrue(finished.await(10, TimeUnit.SECONDS));
+        assertTrue(maxRunning.get() <= 3);
+    }
+
+    private static SourceBean sourceBean(String key, boolean searchable) {
+        SourceBean sourceBean = new SourceBean();
+
+        sourceBean.setKey(key);
+        sourceBean.setSearchable(searchable ? 1 : 0);
+
+        return sourceBean;
+    }
+}
@@ -0,0 +1,82 @@
+package io.knifer.freebox.spider.template.impl;
+
+import io.knifer.freebox.spider.SpiderTaskExecutor;
+import io.knifer.freebox.spider.SpiderTaskExecutor.Priority;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 本地爬虫模板测试
+ *
+ * @author Knifer
+ */
+public class FreeBoxSpiderTemplateTest {
+
+    private static final int SAVE_COUNT = 32;
+
+    private final SpiderTaskExecutor localExecutor = FreeBoxSpiderTemplate.createLocalExecutor();
+
+    private final ExecutorService callers = Executors.newFixedThreadPool(8);
+
+    @TempDir
+    Path storagePath;
+
+    @AfterEach
+    void shutdown() {
+        localExecutor.shutdown();
+        callers.shutdownNow();
+    }
+
+    @Test
+    void concurrentLocalSavesAreAllKept() throws Exception {
+        Path file = storagePath.resolve("history.txt");
+        CountDownLatch ready = new CountDownLatch(1);
+        List<Future<CompletableFuture<Object>>> submissions = new ArrayList<>(SAVE_COUNT);
+        List<CompletableFuture<Object>> saves = new ArrayList<>(SAVE_COUNT);
+        Set<String> expected = new HashSet<>();
+
+        Files.createFile(file);
+        for (int i = 0; i < SAVE_COUNT; i++) {
+            String entry = "vod" + i;
+
+            expected.add(entry);
+            // 与保存历史记录相同的读-改-写，并发执行时后写入的会覆盖先写入的
+            submissions.add(callers.submit(() -> {
+                ready.await();
+
+                return localExecutor.submit(null, Priority.NORMAL, 0, () -> {
+                    List<String> lines = new ArrayList<>(Files.readAllLines(file, StandardCharsets.UTF_8));
+
+                    Thread.sleep(2);
+                    lines.add(entry);
+                    Files.write(file, lines, StandardCharsets.UTF_8);
+
+                    return null;
+                });
+            }));
+        }
+        ready.countDown();
+        for (Future<CompletableFuture<Object>> submission : submissions) {
+            saves.add(submission.get(5, TimeUnit.SECONDS));
+        }
+        CompletableFuture.allOf(saves.toArray(CompletableFuture[]::new)).get(10, TimeUnit.SECONDS);
+        assertEquals(expected, new HashSet<>(Files.readAllLines(file, StandardCharsets.UTF_8)));
+    }
+}
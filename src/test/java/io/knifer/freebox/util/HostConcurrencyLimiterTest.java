@@ -0,0 +1,112 @@
+package io.knifer.freebox.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 按主机限制并发请求数测试
+ *
+ * @author Knifer
+ */
+public class HostConcurrencyLimiterTest {
+
+    private static final String HOST = "example.com";
+
+    @Test
+    void permitIsHeldUntilReleased() {
+        HostConcurrencyLimiter limiter = new HostConcurrencyLimiter(1);
+        AtomicReference<HostConcurrencyLimiter.Permit> firstPermit = new AtomicReference<>();
+        AtomicInteger started = new AtomicInteger();
+        CompletableFuture<String> first;
+        CompletableFuture<String> second;
+
+        first = limiter.submit(HOST, permit -> {
+            firstPermit.set(permit);
+            started.incrementAndGet();
+
+            return CompletableFuture.completedFuture("first");
+        });
+        second = limiter.submit(HOST, permit -> {
+            started.incrementAndGet();
+            permit.release();
+
+            return CompletableFuture.completedFuture("second");
+        });
+
+        // 第一个请求已完成，但响应体还没有读完，许可仍被占用
+        assertEquals("first", first.join());
+        assertFalse(second.isDone());
+        assertEquals(1, started.get());
+
+        firstPermit.get().release();
+        // 重复释放无效
+        firstPermit.get().release();
+        assertEquals("second", second.join());
+        assertEquals(2, started.get());
+    }
+
+    @Test
+    void failedRequestReleasesPermit() {
+        HostConcurrencyLimiter limiter = new HostConcurrencyLimiter(1);
+        CompletableFuture<String> first = limiter.submit(
+                HOST, permit -> CompletableFuture.failedFuture(new IllegalStateException("failed"))
+        );
+        CompletableFuture<String> second = limiter.submit(HOST, permit -> {
+            permit.release();
+
+            return CompletableFuture.completedFuture("second");
+        });
+
+        assertTrue(first.isCompletedExceptionally());
+        assertEquals("second", second.join());
+    }
+
+    @Test
+    void cancelQueuedRequestRemovesItFromQueue() {
+        HostConcurrencyLimiter limiter = new HostConcurrencyLimiter(1);
+        CompletableFuture<String> running = new CompletableFuture<>();
+        AtomicInteger started = new AtomicInteger();
+        CompletableFuture<String> queued;
+        CompletableFuture<String> next;
+
+        limiter.submit(HOST, permit -> running);
+        queued = limiter.submit(HOST, permit -> {
+            started.incrementAndGet();
+
+            return new CompletableFuture<>();
+        });
+        next = limiter.submit(HOST, permit -> {
+            permit.release();
+
+            return CompletableFuture.completedFuture("next");
+        });
+
+        queued.cancel(true);
+        running.completeExceptionally(new IllegalStateException("done"));
+
+        assertEquals("next", next.join());
+        assertEquals(0, started.get());
+    }
+
+    @Test
+    void cancelRunningRequestCancelsItAndReleasesPermit() {
+        HostConcurrencyLimiter limiter = new HostConcurrencyLimiter(1);
+        CompletableFuture<String> inFlight = new CompletableFuture<>();
+        CompletableFuture<String> running = limiter.submit(HOST, permit -> inFlight);
+        CompletableFuture<String> next = limiter.submit(HOST, permit -> {
+            permit.release();
+
+            return CompletableFuture.completedFuture("next");
+        });
+
+        running.cancel(true);
+
+        assertTrue(inFlight.isCancelled());
+        assertEquals("next", next.join());
+    }
+}
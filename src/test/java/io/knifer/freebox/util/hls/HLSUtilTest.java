@@ -0,0 +1,63 @@
+package io.knifer.freebox.util.hls;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * hls工具类测试
+ *
+ * @author Knifer
+ */
+public class HLSUtilTest {
+
+    @Test
+    void onlyEventPlaylistIsDeclaredLive() {
+        assertTrue(HLSUtil.isLive(parse(mediaPlaylist(0, 3, "EVENT", false))));
+        assertFalse(HLSUtil.isLive(parse(mediaPlaylist(0, 3, "VOD", false))));
+        assertFalse(HLSUtil.isLive(parse(mediaPlaylist(0, 3, "EVENT", true))));
+        // 没有声明类型也没有#EXT-X-ENDLIST，序号和时长都不能作为直播的依据
+        assertFalse(HLSUtil.isLive(parse(mediaPlaylist(0, 3, null, false))));
+        assertFalse(HLSUtil.isLive(parse(mediaPlaylist(1000, 3, null, false))));
+        assertFalse(HLSUtil.isLive(parse("#EXTM3U\n#EXT-X-STREAM-INF:BANDWIDTH=800000\nlow/index.m3u8\n")));
+    }
+
+    @Test
+    void maybeLiveWithoutEndListOrType() {
+        assertTrue(HLSUtil.isMaybeLive(parse(mediaPlaylist(0, 3, null, false))));
+        assertTrue(HLSUtil.isMaybeLive(parse(mediaPlaylist(0, 3, "EVENT", false))));
+        assertFalse(HLSUtil.isMaybeLive(parse(mediaPlaylist(0, 3, null, true))));
+        assertFalse(HLSUtil.isMaybeLive(parse(mediaPlaylist(0, 3, "VOD", false))));
+    }
+
+    @Test
+    void liveConfirmedWhenSequenceMovesOrSegmentsAppended() {
+        M3u8Document first = parse(mediaPlaylist(100, 3, null, false));
+
+        assertTrue(HLSUtil.isLive(first, parse(mediaPlaylist(101, 3, null, false))));
+        assertTrue(HLSUtil.isLive(first, parse(mediaPlaylist(100, 4, null, false))));
+        assertFalse(HLSUtil.isLive(first, parse(mediaPlaylist(100, 3, null, false))));
+        assertFalse(HLSUtil.isLive(first, parse(mediaPlaylist(101, 3, null, true))));
+    }
+
+    private static M3u8Document parse(String content) {
+        return M3u8Parser.parse(content);
+    }
+
+    private static String mediaPlaylist(long mediaSequence, int segmentCount, String playlistType, boolean endList) {
+        StringBuilder builder = new StringBuilder("#EXTM3U\n#EXT-X-TARGETDURATION:2\n");
+
+        if (playlistType != null) {
+            builder.append("#EXT-X-PLAYLIST-TYPE:").append(playlistType).append('\n');
+        }
+        builder.append("#EXT-X-MEDIA-SEQUENCE:").append(mediaSequence).append('\n');
+        for (long i = mediaSequence; i < mediaSequence + segmentCount; i++) {
+            builder.append("#EXTINF:2.000000,\n").append(i).append(".ts\n");
+        }
+        if (endList) {
+            builder.append("#EXT-X-ENDLIST\n");
+        }
+
+        return builder.toString();
+    }
+}
@@ -0,0 +1,199 @@
+package io.knifer.freebox.util.hls;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * m3u8解析器测试
+ *
+ * @author Knifer
+ */
+public class M3u8ParserTest {
+
+    private static final String BASE_URL = "http://cdn.test/vod/";
+
+    @Test
+    void masterPlaylistRecordsVariants() {
+        M3u8Document document = M3u8Parser.parse("""
+                #EXTM3U
+                #EXT-X-MEDIA:TYPE=AUDIO,GROUP-ID="aac",NAME="main",URI="audio/index.m3u8"
+                #EXT-X-STREAM-INF:AVERAGE-BANDWIDTH=600000,BANDWIDTH=800000,RESOLUTION=640x360
+                low/index.m3u8
+                #EXT-X-STREAM-INF:BANDWIDTH=2400000,RESOLUTION=1280x720
+                http://other.test/high/index.m3u8
+                """);
+        List<HlsVariant> variants;
+
+        assertTrue(document.isMaster());
+        assertEquals(0, document.getSegmentCount());
+        assertEquals(2, document.getVariantCount());
+        // AVERAGE-BANDWIDTH不能当作BANDWIDTH
+        assertEquals(800000, document.getVariantBandwidth(0));
+        assertEquals(2400000, document.getVariantBandwidth(1));
+        assertEquals("low/index.m3u8", document.getVariantUri(0));
+        assertEquals(M3u8LineType.STREAM_INF, document.getLineType(document.getVariantInfLine(0)));
+        assertEquals(M3u8LineType.OTHER, document.getLineType(1));
+
+        variants = HLSUtil.getVariants(document, BASE_URL);
+        assertEquals(BASE_URL + "low/index.m3u8", variants.get(0).url());
+        assertEquals("640x360", variants.get(0).resolution());
+        // 绝对地址保持不变
+        assertEquals("http://other.test/high/index.m3u8", variants.get(1).url());
+        assertEquals(
+                List.of(BASE_URL + "low/index.m3u8", "http://other.test/high/index.m3u8"),
+                HLSUtil.getSubPlaylistUrls(document, BASE_URL)
+        );
+    }
+
+    @Test
+    void mediaPlaylistRecordsSegments() {
+        M3u8Document document = M3u8Parser.parse("""
+                #EXTM3U
+                #EXT-X-VERSION:3
+                #EXT-X-TARGETDURATION:10
+                #EXT-X-MEDIA-SEQUENCE:42
+                #EXT-X-PLAYLIST-TYPE:VOD
+                #EXTINF:9.009,
+                seg0.ts
+                #EXTINF:4.5,title
+                http://other.test/seg1.ts
+                #EXT-X-ENDLIST
+                """);
+
+        assertFalse(document.isMaster());
+        assertEquals(10, document.getTargetDuration());
+        assertEquals(42, document.getMediaSequence());
+        assertEquals("VOD", document.getPlaylistType());
+        assertTrue(document.isEndList());
+        assertEquals(2, document.getSegmentCount());
+        assertEquals(9.009, document.getSegmentDuration(0), 1e-9);
+        assertEquals(4.5, document.getSegmentDuration(1), 1e-9);
+        assertEquals(13.509, document.getTotalDuration(), 1e-9);
+        assertEquals("seg0.ts", document.getSegmentUri(0));
+        assertEquals("http://other.test/seg1.ts", document.getSegmentUri(1));
+        assertEquals(M3u8LineType.URI, document.getLineType(document.getSegmentUriLine(0)));
+        assertEquals(-1, document.getSegmentKeyLine(0));
+        assertEquals(-1, document.getSegmentByteRangeLength(0));
+    }
+
+    @Test
+    void missingTagsUseDefaults() {
+        M3u8Document document = M3u8Parser.parse("#EXTM3U\nseg0.ts\n");
+
+        assertEquals(-1, document.getTargetDuration());
+        assertEquals(0, document.getMediaSequence());
+        assertNull(document.getPlaylistType());
+        assertFalse(document.isEndList());
+        assertEquals(1, document.getSegmentCount());
+        assertEquals(0, document.getSegmentDuration(0), 1e-9);
+    }
+
+    @Test
+    void segmentTagsOverSeveralLinesApplyToNextUri() {
+        // 标签分散在多行，中间夹有注释、空行和\r\n换行
+        M3u8Document document = M3u8Parser.parse(
+                "#EXTM3U\r\n" +
+                "#EXT-X-TARGETDURATION:6\r\n" +
+                "#EXTINF:6.0,\r\n" +
+                "# comment\r\n" +
+                "\r\n" +
+                "#EXT-X-BYTERANGE:1000@0\r\n" +
+                "#EXT-X-DISCONTINUITY\r\n" +
+                "  main.ts  \r\n" +
+                "#EXTINF:5.0,\r\n" +
+                "#EXT-X-BYTERANGE:500\r\n" +
+                "main.ts\r\n" +
+                "#EXTINF:4.0,\r\n" +
+                "other.ts\r\n"
+        );
+
+        assertEquals(3, document.getSegmentCount());
+        assertEquals(6.0, document.getSegmentDuration(0), 1e-9);
+        assertEquals("main.ts", document.getSegmentUri(0));
+        assertTrue(document.isDiscontinuityBefore(0));
+        assertEquals(1000, document.getSegmentByteRangeLength(0));
+        assertEquals(0, document.getSegmentByteRangeOffset(0));
+
+        // 没有@时起始位置紧接上一个区间
+        assertFalse(document.isDiscontinuityBefore(1));
+        assertEquals(500, document.getSegmentByteRangeLength(1));
+        assertEquals(-1, document.getSegmentByteRangeOffset(1));
+
+        // 上一个分片的区间不会带到下一个分片
+        assertEquals(4.0, document.getSegmentDuration(2), 1e-9);
+        assertEquals(-1, document.getSegmentByteRangeLength(2));
+        assertEquals(-1, document.getSegmentByteRangeOffset(2));
+    }
+
+    @Test
+    void keyAndMapApplyUntilReplaced() {
+        M3u8Document document = M3u8Parser.parse("""
+                #EXTM3U
+                #EXT-X-MAP:URI="init.mp4"
+                #EXTINF:4,
+                seg0.m4s
+                #EXT-X-KEY:METHOD=AES-128,URI="key1.bin",IV=0x00000000000000000000000000000001
+                #EXTINF:4,
+                seg1.m4s
+                #EXTINF:4,
+                seg2.m4s
+                #EXT-X-KEY:METHOD=AES-128,URI="http://keys.test/key2.bin"
+                #EXTINF:4,
+                seg3.m4s
+                """);
+        int firstKeyLine = document.getSegmentKeyLine(1);
+
+        assertEquals(4, document.getSegmentCount());
+        assertEquals(-1, document.getSegmentKeyLine(0));
+        assertEquals(M3u8LineType.KEY, document.getLineType(firstKeyLine));
+        assertEquals(
+                "#EXT-X-KEY:METHOD=AES-128,URI=\"key1.bin\",IV=0x00000000000000000000000000000001",
+                document.getLine(firstKeyLine)
+        );
+        assertEquals(firstKeyLine, document.getSegmentKeyLine(2));
+        assertTrue(document.getLine(document.getSegmentKeyLine(3)).contains("URI=\"http://keys.test/key2.bin\""));
+
+        for (int i = 0; i < document.getSegmentCount(); i++) {
+            assertEquals(M3u8LineType.MAP, document.getLineType(document.getSegmentMapLine(i)));
+        }
+        assertTrue(document.lineStartsWith(document.getSegmentMapLine(0), "#EXT-X-MAP:"));
+    }
+
+    @Test
+    void uriAttributesAreResolvedAgainstBaseUrl() {
+        M3u8Document document = M3u8Parser.parse("""
+                #EXTM3U
+                #EXT-X-MEDIA:TYPE=AUDIO,GROUP-ID="aac",URI="audio/index.m3u8"
+                #EXT-X-SESSION-KEY:METHOD=AES-128,URI="http://keys.test/key.bin"
+                #EXT-X-STREAM-INF:BANDWIDTH=800000
+                low/index.m3u8
+                """);
+        HlsVariant variant = HLSUtil.getVariants(document, BASE_URL).get(0);
+        String master = HLSUtil.buildMasterPlaylist(
+                document.asLines(), BASE_URL, List.of(Pair.of(variant, "http://127.0.0.1/low.m3u8"))
+        );
+
+        assertTrue(master.contains("URI=\"" + BASE_URL + "audio/index.m3u8\""));
+        assertTrue(master.contains("URI=\"http://keys.test/key.bin\""));
+        assertTrue(master.endsWith("#EXT-X-STREAM-INF:BANDWIDTH=800000\nhttp://127.0.0.1/low.m3u8"));
+    }
+
+    @Test
+    void lazyLinesAreTrimmedAndKeepBlankLines() {
+        M3u8Document document = M3u8Parser.parse("#EXTM3U\r\n\r\n  #EXTINF:2,\t\r\nseg0.ts");
+        List<String> lines = document.asLines();
+
+        assertEquals(List.of("#EXTM3U", "", "#EXTINF:2,", "seg0.ts"), lines);
+        assertEquals(document.getLineCount(), lines.size());
+        assertEquals(M3u8LineType.BLANK, document.getLineType(1));
+        assertEquals(M3u8LineType.EXTINF, document.getLineType(2));
+        // 同一行只创建一次字符串
+        assertSame(lines.get(3), lines.get(3));
+        assertSame(lines, document.asLines());
+        assertThrows(UnsupportedOperationException.class, () -> lines.add("seg1.ts"));
+    }
+}
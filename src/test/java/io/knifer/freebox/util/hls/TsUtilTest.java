@@ -0,0 +1,81 @@
+package io.knifer.freebox.util.hls;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ts分片工具类测试
+ *
+ * @author Knifer
+ */
+public class TsUtilTest {
+
+    private static final byte TS_SYNC_BYTE = 0x47;
+
+    private static final int TS_PACKET_SIZE = 188;
+
+    @Test
+    void plainTsStartsAtZero() {
+        byte[] data = tsData(0, 5);
+
+        assertEquals(0, TsUtil.findSyncOffset(data, data.length));
+    }
+
+    @Test
+    void disguisedTsSkipsPrefix() {
+        byte[] data = tsData(108, 5);
+
+        assertEquals(108, TsUtil.findSyncOffset(data, data.length));
+    }
+
+    @Test
+    void straySyncByteInPrefixIsIgnored() {
+        byte[] data = tsData(108, 5);
+
+        // 前缀中单独出现的同步字节，后续位置不是同步字节，不能当作起点
+        data[20] = TS_SYNC_BYTE;
+
+        assertEquals(108, TsUtil.findSyncOffset(data, data.length));
+    }
+
+    @Test
+    void notEnoughPacketsIsForwardedAsIs() {
+        byte[] data = tsData(108, 3);
+
+        // 只有3个包，无法确认，原样转发
+        assertEquals(0, TsUtil.findSyncOffset(data, data.length));
+        // 只检查有效长度内的数据
+        data = tsData(108, 5);
+        assertEquals(0, TsUtil.findSyncOffset(data, 108 + TS_PACKET_SIZE * 3));
+        assertEquals(0, TsUtil.findSyncOffset(new byte[0], 0));
+    }
+
+    @Test
+    void dataWithoutSyncBytesIsForwardedAsIs() {
+        byte[] data = new byte[TS_PACKET_SIZE * 5];
+
+        Arrays.fill(data, (byte) 0x11);
+
+        assertEquals(0, TsUtil.findSyncOffset(data, data.length));
+    }
+
+    /**
+     * 生成ts数据，前面加上不含同步字节的前缀
+     * @param prefixSize 前缀长度
+     * @param packetCount ts包数量
+     * @return 数据
+     */
+    private static byte[] tsData(int prefixSize, int packetCount) {
+        byte[] data = new byte[prefixSize + packetCount * TS_PACKET_SIZE];
+
+        Arrays.fill(data, (byte) 0x11);
+        for (int i = 0; i < packetCount; i++) {
+            data[prefixSize + i * TS_PACKET_SIZE] = TS_SYNC_BYTE;
+        }
+
+        return data;
+    }
+}